@@ -47,6 +47,11 @@ class BAMFileWriter extends SAMFileWriterImpl {
     private final BlockCompressedOutputStream blockCompressedOutputStream;
     private BAMIndexer bamIndexer = null;
 
+    // the last header whose sequence dictionary was checked against this one for raw records, and the last position
+    private SAMFileHeader checkedRawRecordHeader = null;
+    private int lastRawReference = 0;
+    private int lastRawStart = 0;
+
     protected BAMFileWriter(final File path) {
         blockCompressedOutputStream = new BlockCompressedOutputStream(path);
         outputBinaryCodec = new BinaryCodec(blockCompressedOutputStream);
@@ -144,6 +149,52 @@ class BAMFileWriter extends SAMFileWriterImpl {
         }
     }
 
+    /**
+     * Write a record read from another BAM file without decoding and re-encoding it.  Records must be added in the
+     * order of the header, which is only checked for coordinate order.
+     *
+     * @throws IllegalArgumentException if the record comes from a file with another sequence dictionary, so that its
+     * reference indices would be wrong in this one, or if it is out of coordinate order
+     */
+    void writeRawRecord(final RawBAMRecord record) {
+        if (record.getHeader() != checkedRawRecordHeader) {
+            if (record.getHeader() == null ||
+                    !getFileHeader().getSequenceDictionary().isSameDictionary(record.getHeader().getSequenceDictionary())) {
+                throw new IllegalArgumentException("Raw record " + record + " cannot be written to " + getFilename() +
+                        " because it is from a file with another sequence dictionary");
+            }
+            checkedRawRecordHeader = record.getHeader();
+        }
+        final int reference = record.getReferenceIndex();
+        final int start = record.getAlignmentStart();
+        if (getSortOrder() == SAMFileHeader.SortOrder.coordinate) {
+            // records without a reference go last
+            final int key = reference == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX ? Integer.MAX_VALUE : reference;
+            final int lastKey = lastRawReference == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX ? Integer.MAX_VALUE : lastRawReference;
+            if (key < lastKey || key == lastKey && start < lastRawStart) {
+                throw new IllegalArgumentException("Raw records added out of order to " + getFilename() +
+                        ": " + record + " is after " + lastRawReference + ":" + lastRawStart);
+            }
+            lastRawReference = reference;
+            lastRawStart = start;
+        }
+
+        final byte[] data = record.getData();
+        final long startOffset = blockCompressedOutputStream.getFilePointer();
+        outputBinaryCodec.writeInt(data.length);
+        outputBinaryCodec.writeBytes(data);
+        if (bamIndexer != null) {
+            try {
+                final long stopOffset = blockCompressedOutputStream.getFilePointer();
+                bamIndexer.processAlignment(reference, start, record.getAlignmentEnd(), record.getIndexingBin(),
+                        record.getReadUnmappedFlag(), startOffset, stopOffset);
+            } catch (Exception e) {
+                bamIndexer = null;
+                throw new SAMException("Exception when processing raw record for BAM index " + record, e);
+            }
+        }
+    }
+
     @Override
     protected void writeHeader(final String textHeader) {
         writeHeader(outputBinaryCodec, getFileHeader(), textHeader);
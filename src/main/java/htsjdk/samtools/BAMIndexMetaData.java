@@ -130,10 +130,25 @@ public class BAMIndexMetaData {
             throw new SAMException("BAM cannot be indexed without setting a fileSource for record " + rec);
         }
         final Chunk newChunk = ((BAMFileSpan) rec.getFileSource().getFilePointer()).getSingleChunk();
-        final long start = newChunk.getChunkStart();
-        final long end = newChunk.getChunkEnd();
+        recordMetaData(alignmentStart, rec.getReadUnmappedFlag(), newChunk.getChunkStart(), newChunk.getChunkEnd());
+    }
+
+    /**
+     * Extract relevant metaData from the fields of a record read without decoding it
+     * Call only once per record in the file being indexed
+     *
+     * @param alignmentStart 1-based start of the record, or {@link SAMRecord#NO_ALIGNMENT_START}
+     * @param unmapped       whether the read unmapped flag of the record is set
+     * @param start          virtual file offset of the record
+     * @param end            virtual file offset just after the record
+     */
+    void recordMetaData(final int alignmentStart, final boolean unmapped, final long start, final long end) {
+        if (alignmentStart == SAMRecord.NO_ALIGNMENT_START) {
+            incrementNoCoordinateRecordCount();
+            return;
+        }
 
-        if (rec.getReadUnmappedFlag()) {
+        if (unmapped) {
             unAlignedRecords++;
         } else {
             alignedRecords++;
@@ -0,0 +1,430 @@
+package htsjdk.samtools;
+
+import htsjdk.samtools.seekablestream.SeekablePathStream;
+import htsjdk.samtools.seekablestream.SeekableStream;
+import htsjdk.samtools.util.BinaryCodec;
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
+import htsjdk.samtools.util.CloserUtil;
+import htsjdk.samtools.util.Log;
+import htsjdk.samtools.util.RuntimeIOException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads the fields needed for indexing from the raw records of a BAM file, without decoding them into
+ * {@link SAMRecord}s.
+ * <p>
+ * The file is split at BGZF block boundaries into ranges of {@link #BLOCKS_PER_RANGE} blocks by default, which are
+ * inflated on a pool of worker threads, each with its own stream. The calling thread walks the records of the inflated ranges in
+ * file order, reads the reference index, position, bin, flags and cigar of each in place, and computes the same
+ * virtual file offsets as {@link BAMFileReader}, so that an index built from the scan is identical to one built from
+ * the decoded records.
+ */
+final class BAMIndexScanner implements Closeable {
+    private static final Log log = Log.getInstance(BAMIndexScanner.class);
+
+    /**
+     * Number of BGZF blocks inflated by a worker at a time, about 4MB of uncompressed data
+     */
+    static final int BLOCKS_PER_RANGE = 64;
+
+    // offsets of the fixed-size fields of a record, after its block_size
+    private static final int REFERENCE_OFFSET = 0;
+    private static final int POSITION_OFFSET = 4;
+    private static final int READ_NAME_LENGTH_OFFSET = 8;
+    private static final int BIN_OFFSET = 10;
+    private static final int CIGAR_LENGTH_OFFSET = 12;
+    private static final int FLAGS_OFFSET = 14;
+    private static final int FIXED_LENGTH = 32;
+
+    private static final AtomicInteger threadsCreated = new AtomicInteger(0);
+
+    /**
+     * Receives the indexing fields of each record of the file, in file order.
+     */
+    interface RecordVisitor {
+        /**
+         * @param reference      reference index, or {@link SAMRecord#NO_ALIGNMENT_REFERENCE_INDEX}
+         * @param alignmentStart 1-based start, or {@link SAMRecord#NO_ALIGNMENT_START}
+         * @param alignmentEnd   1-based inclusive end as given by {@link SAMRecord#getAlignmentEnd()}
+         * @param bin            the indexing bin stored in the record
+         * @param flags          the SAM flags of the record
+         * @param chunkStart     virtual file offset of the record
+         * @param chunkEnd       virtual file offset just after the record
+         */
+        void visit(int reference, int alignmentStart, int alignmentEnd, int bin, int flags, long chunkStart, long chunkEnd);
+    }
+
+    /**
+     * The inflated contents of a range of blocks
+     */
+    private static final class Range {
+        final int firstBlock;
+        final byte[] data;
+        // offset in data of the start of each block of the range
+        final int[] blockStarts;
+
+        Range(final int firstBlock, final byte[] data, final int[] blockStarts) {
+            this.firstBlock = firstBlock;
+            this.data = data;
+            this.blockStarts = blockStarts;
+        }
+    }
+
+    private final Path input;
+    private final int threads;
+    private final int blocksPerRange;
+    private final ExecutorService workers;
+    private final Queue<BlockCompressedInputStream> idleStreams = new ConcurrentLinkedQueue<>();
+    private final List<BlockCompressedInputStream> allStreams = new ArrayList<>();
+
+    private final SAMFileHeader header;
+    private final long firstRecordPosition;
+
+    // compressed offsets and uncompressed sizes of the blocks of the file
+    private long[] blockAddresses = new long[1024];
+    private int[] blockSizes = new int[1024];
+    private int nBlocks = 0;
+    private long fileLength;
+
+    private final Deque<Future<Range>> pending = new ArrayDeque<>();
+    private int nextRangeBlock;
+
+    // the range being read, and the block of it holding the last byte read
+    private Range range = null;
+    private int position = 0;
+    private int block = 0;
+
+    // holds the bytes of fields that span two ranges
+    private byte[] carry = new byte[1024];
+    // the array returned by the last call to take
+    private byte[] bytes;
+
+    /**
+     * @param input   a BAM file
+     * @param threads number of inflating threads, or 0 to inflate on the calling thread
+     */
+    BAMIndexScanner(final Path input, final int threads) {
+        this(input, threads, BLOCKS_PER_RANGE);
+    }
+
+    /**
+     * @param blocksPerRange number of blocks inflated by a worker at a time
+     */
+    BAMIndexScanner(final Path input, final int threads, final int blocksPerRange) {
+        if (threads < 0) {
+            throw new IllegalArgumentException("Number of indexing threads cannot be negative: " + threads);
+        }
+        if (blocksPerRange <= 0) throw new IllegalArgumentException("Must inflate at least 1 block at a time.");
+        this.input = input;
+        this.threads = threads;
+        this.blocksPerRange = blocksPerRange;
+        try {
+            final BlockCompressedInputStream stream = open();
+            header = BAMFileReader.readHeader(new BinaryCodec(stream), ValidationStringency.DEFAULT_STRINGENCY, input.toString());
+            firstRecordPosition = stream.getFilePointer();
+            idleStreams.add(stream);
+            scanBlocks();
+        } catch (final IOException e) {
+            close();
+            throw new RuntimeIOException("Unable to read the BAM file " + input, e);
+        }
+        nextRangeBlock = findBlock(BlockCompressedFilePointerUtil.getBlockAddress(firstRecordPosition));
+
+        if (threads == 0) {
+            workers = null;
+        } else {
+            final int threadNumber = threadsCreated.incrementAndGet();
+            final AtomicInteger workerNumber = new AtomicInteger(0);
+            workers = Executors.newFixedThreadPool(threads, runnable -> {
+                final Thread thread = new Thread(runnable, "BAMIndexScanner" + threadNumber + "-inflater" + workerNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        log.debug("Indexing " + nBlocks + " blocks of " + input + " on " + threads + " threads");
+    }
+
+    SAMFileHeader getFileHeader() {
+        return header;
+    }
+
+    private BlockCompressedInputStream open() throws IOException {
+        final BlockCompressedInputStream stream = new BlockCompressedInputStream(new SeekablePathStream(input));
+        synchronized (allStreams) {
+            allStreams.add(stream);
+        }
+        return stream;
+    }
+
+    /**
+     * Read the compressed offset and the uncompressed size of every block, from the block headers and footers only
+     */
+    private void scanBlocks() throws IOException {
+        final byte[] buffer = new byte[BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH];
+        try (final SeekableStream file = new SeekablePathStream(input)) {
+            fileLength = file.length();
+            long address = 0;
+            while (address < fileLength) {
+                file.seek(address);
+                if (readFully(file, buffer, BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH)) {
+                    throw new IOException("Truncated block header at offset " + address);
+                }
+                final int blockLength = unpackInt16(buffer, BlockCompressedStreamConstants.BLOCK_LENGTH_OFFSET) + 1;
+                if (blockLength < BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH || address + blockLength > fileLength) {
+                    throw new IOException("Unexpected compressed block length " + blockLength + " at offset " + address);
+                }
+                file.seek(address + blockLength - 4);
+                if (readFully(file, buffer, 4)) {
+                    throw new IOException("Truncated block at offset " + address);
+                }
+                if (nBlocks == blockAddresses.length) {
+                    blockAddresses = Arrays.copyOf(blockAddresses, nBlocks * 2);
+                    blockSizes = Arrays.copyOf(blockSizes, nBlocks * 2);
+                }
+                blockAddresses[nBlocks] = address;
+                blockSizes[nBlocks] = unpackInt16(buffer, 0) | (unpackInt16(buffer, 2) << 16);
+                nBlocks++;
+                address += blockLength;
+            }
+        }
+    }
+
+    /** @return true if the buffer could not be filled */
+    private static boolean readFully(final InputStream stream, final byte[] buffer, final int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            final int count = stream.read(buffer, read, length - read);
+            if (count <= 0) return true;
+            read += count;
+        }
+        return false;
+    }
+
+    private static long makeFilePointer(final long blockAddress, final int blockOffset) {
+        return blockAddress << 16 | blockOffset;
+    }
+
+    private static int unpackInt16(final byte[] buffer, final int offset) {
+        return (buffer[offset] & 0xFF) | ((buffer[offset + 1] & 0xFF) << 8);
+    }
+
+    private static int unpackInt32(final byte[] buffer, final int offset) {
+        return unpackInt16(buffer, offset) | (unpackInt16(buffer, offset + 2) << 16);
+    }
+
+    private int findBlock(final long address) {
+        final int i = Arrays.binarySearch(blockAddresses, 0, nBlocks, address);
+        return i >= 0 ? i : nBlocks;
+    }
+
+    private void submitRanges() {
+        while (nextRangeBlock < nBlocks && pending.size() < 2 * threads) {
+            final int first = nextRangeBlock;
+            final int end = Math.min(nBlocks, first + blocksPerRange);
+            nextRangeBlock = end;
+            pending.add(workers.submit(() -> inflateRange(first, end)));
+        }
+    }
+
+    /**
+     * Inflate the blocks [first, end) with an idle stream
+     */
+    private Range inflateRange(final int first, final int end) throws IOException {
+        final int[] blockStarts = new int[end - first + 1];
+        for (int i = first; i < end; i++) {
+            blockStarts[i - first + 1] = blockStarts[i - first] + blockSizes[i];
+        }
+        final byte[] data = new byte[blockStarts[end - first]];
+        BlockCompressedInputStream stream = idleStreams.poll();
+        if (stream == null) {
+            stream = open();
+        }
+        try {
+            stream.seek(makeFilePointer(blockAddresses[first], 0));
+            if (readFully(stream, data, data.length)) {
+                throw new IOException("Truncated BGZF block in range starting at offset " + blockAddresses[first]);
+            }
+        } finally {
+            idleStreams.add(stream);
+        }
+        return new Range(first, data, blockStarts);
+    }
+
+    /**
+     * Move to the next range of blocks
+     *
+     * @return false if there is none
+     */
+    private boolean nextRange() {
+        final Range next;
+        if (workers == null) {
+            if (nextRangeBlock == nBlocks) return false;
+            final int first = nextRangeBlock;
+            nextRangeBlock = Math.min(nBlocks, first + blocksPerRange);
+            try {
+                next = inflateRange(first, nextRangeBlock);
+            } catch (final IOException e) {
+                throw new RuntimeIOException("Unable to read the BAM file " + input, e);
+            }
+        } else {
+            submitRanges();
+            if (pending.isEmpty()) return false;
+            try {
+                next = pending.remove().get();
+            } catch (final InterruptedException e) {
+                throw new RuntimeException("Interrupted waiting for inflated blocks", e);
+            } catch (final ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof Error) throw (Error) cause;
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new RuntimeIOException("Unable to read the BAM file " + input, cause);
+            }
+            submitRanges();
+        }
+        range = next;
+        position = 0;
+        block = 0;
+        return true;
+    }
+
+    /**
+     * @return true if there is at least one more byte to read
+     */
+    private boolean hasMore() {
+        while (range == null || position == range.data.length) {
+            if (!nextRange()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Consume the next n bytes, which are then available in {@link #bytes} from the returned offset on
+     */
+    private int take(final int n) {
+        if (range.data.length - position >= n) {
+            bytes = range.data;
+            position += n;
+            return position - n;
+        }
+        if (carry.length < n) {
+            carry = new byte[Math.max(n, carry.length * 2)];
+        }
+        int copied = 0;
+        while (true) {
+            final int count = Math.min(n - copied, range.data.length - position);
+            System.arraycopy(range.data, position, carry, copied, count);
+            copied += count;
+            position += count;
+            if (copied == n) break;
+            if (!nextRange()) {
+                throw new SAMFormatException("Truncated BAM record at the end of " + input);
+            }
+        }
+        bytes = carry;
+        return 0;
+    }
+
+    /**
+     * @return the virtual file offset after the last byte read, as {@link BlockCompressedInputStream#getFilePointer()}
+     * gives it, which points to the start of the next block at the end of a block
+     */
+    private long filePointer() {
+        final int last = position - 1;
+        while (last >= range.blockStarts[block + 1]) {
+            block++;
+        }
+        final int offset = position - range.blockStarts[block];
+        final int index = range.firstBlock + block;
+        if (offset == blockSizes[index]) {
+            final long nextAddress = index + 1 < nBlocks ? blockAddresses[index + 1] : fileLength;
+            return makeFilePointer(nextAddress, 0);
+        }
+        return makeFilePointer(blockAddresses[index], offset);
+    }
+
+    /**
+     * Read every record of the file, in file order
+     *
+     * @return the number of records
+     */
+    long scan(final RecordVisitor visitor) {
+        if (range != null) {
+            throw new IllegalStateException("The file has already been scanned");
+        }
+        long count = 0;
+        long chunkStart = firstRecordPosition;
+        if (!hasMore()) {
+            return count;
+        }
+        // the first range starts at the block holding the end of the header
+        position = BlockCompressedFilePointerUtil.getBlockOffset(firstRecordPosition);
+        while (hasMore()) {
+            final int sizeOffset = take(4);
+            final int blockSize = unpackInt32(bytes, sizeOffset);
+            if (blockSize < FIXED_LENGTH) {
+                throw new SAMFormatException("Invalid BAM record size " + blockSize + " at " +
+                        BlockCompressedFilePointerUtil.asString(chunkStart) + " in " + input);
+            }
+            final int offset = take(blockSize);
+            final byte[] record = bytes;
+
+            final int reference = unpackInt32(record, offset + REFERENCE_OFFSET);
+            final int alignmentStart = unpackInt32(record, offset + POSITION_OFFSET) + 1;
+            final int bin = unpackInt16(record, offset + BIN_OFFSET);
+            final int flags = unpackInt16(record, offset + FLAGS_OFFSET);
+            final int alignmentEnd;
+            if ((flags & SAMFlag.READ_UNMAPPED.intValue()) != 0) {
+                alignmentEnd = SAMRecord.NO_ALIGNMENT_START;
+            } else {
+                final int cigarOffset = offset + FIXED_LENGTH + (record[offset + READ_NAME_LENGTH_OFFSET] & 0xFF);
+                final int cigarLength = unpackInt16(record, offset + CIGAR_LENGTH_OFFSET);
+                if (cigarOffset + 4 * cigarLength > offset + blockSize) {
+                    throw new SAMFormatException("Invalid BAM record at " + BlockCompressedFilePointerUtil.asString(chunkStart) +
+                            " in " + input + ": the cigar does not fit in the record");
+                }
+                int referenceLength = 0;
+                for (int i = 0; i < cigarLength; i++) {
+                    final int operation = unpackInt32(record, cigarOffset + 4 * i);
+                    if (CigarOperator.binaryToEnum(operation & 0xF).consumesReferenceBases()) {
+                        referenceLength += operation >>> 4;
+                    }
+                }
+                alignmentEnd = alignmentStart + referenceLength - 1;
+            }
+
+            final long chunkEnd = filePointer();
+            visitor.visit(reference, alignmentStart, alignmentEnd, bin, flags, chunkStart, chunkEnd);
+            chunkStart = chunkEnd;
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public void close() {
+        if (workers != null) workers.shutdownNow();
+        synchronized (allStreams) {
+            for (final BlockCompressedInputStream stream : allStreams) {
+                CloserUtil.close(stream);
+            }
+        }
+    }
+}
@@ -23,6 +23,7 @@
  */
 package htsjdk.samtools;
 
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
 import htsjdk.samtools.util.Log;
 
 import java.io.File;
@@ -120,6 +121,32 @@ public class BAMIndexer {
         }
     }
 
+    /**
+     * Record the index information of a BAM record read without decoding it.
+     * If this alignment starts a new reference, write out the old reference.
+     *
+     * @param reference      reference index, or {@link SAMRecord#NO_ALIGNMENT_REFERENCE_INDEX}
+     * @param alignmentStart 1-based start, or {@link SAMRecord#NO_ALIGNMENT_START}
+     * @param alignmentEnd   1-based inclusive end, as given by {@link SAMRecord#getAlignmentEnd()}
+     * @param bin            the indexing bin stored in the record
+     * @param unmapped       whether the read unmapped flag of the record is set
+     * @param chunkStart     virtual file offset of the record
+     * @param chunkEnd       virtual file offset just after the record
+     */
+    void processAlignment(final int reference, final int alignmentStart, final int alignmentEnd, final int bin,
+                          final boolean unmapped, final long chunkStart, final long chunkEnd) {
+        try {
+            if (reference != SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX && reference != currentReference) {
+                // process any completed references
+                advanceToReference(reference);
+            }
+            indexBuilder.processAlignment(reference, alignmentStart, alignmentEnd, bin, unmapped, chunkStart, chunkEnd);
+        } catch (final Exception e) {
+            throw new SAMException("Exception creating BAM index for record at " +
+                    BlockCompressedFilePointerUtil.asString(chunkStart), e);
+        }
+    }
+
     /**
      * After all the alignment records have been processed, finish is called.
      * Writes any final information and closes the output file.
@@ -249,6 +276,26 @@ public class BAMIndexer {
 
         }
 
+        /**
+         * Record the index information of a BAM record from its raw fields
+         */
+        void processAlignment(final int reference, final int alignmentStart, final int alignmentEnd, final int bin,
+                              final boolean unmapped, final long chunkStart, final long chunkEnd) {
+
+            indexStats.recordMetaData(alignmentStart, unmapped, chunkStart, chunkEnd);
+
+            if (alignmentStart == SAMRecord.NO_ALIGNMENT_START) {
+                return; // do nothing for records without coordinates, but count them
+            }
+
+            if (reference != currentReference) {
+                throw new SAMException("Unexpected reference " + reference +
+                        " when constructing index for " + currentReference);
+            }
+
+            binningIndexBuilder.processFeature(alignmentStart, alignmentEnd, bin, chunkStart, chunkEnd);
+        }
+
         /**
          * Creates the BAMIndexContent for this reference.
          * Requires all alignments of the reference have already been processed.
@@ -339,4 +386,23 @@ public class BAMIndexer {
     public static void createIndex(SamReader reader, File output, Log log) {
         createIndex(reader, output.toPath(), log);
     }
+
+    /**
+     * Generates a BAM index file from an input BAM file, reading only the fields needed for indexing from the raw
+     * records instead of decoding them, and inflating the file on a pool of threads.  The index is the same as the
+     * one written by {@link #createIndex(SamReader, Path)}.
+     *
+     * @param input   the BAM file
+     * @param output  Path for output index file
+     * @param threads number of threads inflating the file, or 0 to inflate on the calling thread
+     */
+    public static void createIndex(final Path input, final Path output, final int threads) {
+        try (final BAMIndexScanner scanner = new BAMIndexScanner(input, threads)) {
+            final BAMIndexer indexer = new BAMIndexer(output, scanner.getFileHeader());
+            scanner.scan((reference, alignmentStart, alignmentEnd, bin, flags, chunkStart, chunkEnd) ->
+                    indexer.processAlignment(reference, alignmentStart, alignmentEnd, bin,
+                            (flags & SAMFlag.READ_UNMAPPED.intValue()) != 0, chunkStart, chunkEnd));
+            indexer.finish();
+        }
+    }
 }
@@ -19,8 +19,18 @@ public class BAMQueryMultipleIntervalsIteratorFilter implements BAMIteratorFilte
 
     @Override
     public FilteringIteratorState compareToFilter(final SAMRecord record) {
+        return compareToFilter(record.getReferenceIndex(), record.getAlignmentStart(), queryAlignmentEnd(record));
+    }
+
+    /**
+     * Compare a record given by its position only, such as a {@link RawBAMRecord}, to the intervals.
+     *
+     * @param alignmentEnd end of the record, which is its start for an unmapped read placed with its mate
+     */
+    public FilteringIteratorState compareToFilter(final int referenceIndex, final int alignmentStart, final int alignmentEnd) {
         while (intervalIndex < intervals.length) {
-            final IntervalComparison comparison = compareIntervalToRecord(intervals[intervalIndex], record);
+            final IntervalComparison comparison = compareIntervalToRecord(intervals[intervalIndex], referenceIndex,
+                    alignmentStart, alignmentEnd);
             switch (comparison) {
                 // Interval is before SAMRecord.  Try next interval;
                 case BEFORE: ++intervalIndex; break;
@@ -38,21 +48,31 @@ public class BAMQueryMultipleIntervalsIteratorFilter implements BAMIteratorFilte
     }
 
     public static IntervalComparison compareIntervalToRecord(final QueryInterval interval, final SAMRecord record) {
-        // interval.end <= 0 implies the end of the reference sequence.
-        final int intervalEnd = (interval.end <= 0? Integer.MAX_VALUE: interval.end);
-        final int alignmentEnd;
+        return compareIntervalToRecord(interval, record.getReferenceIndex(), record.getAlignmentStart(), queryAlignmentEnd(record));
+    }
+
+    private static int queryAlignmentEnd(final SAMRecord record) {
         if (record.getReadUnmappedFlag() && record.getAlignmentStart() != SAMRecord.NO_ALIGNMENT_START) {
             // Unmapped read with coordinate of mate.
-            alignmentEnd = record.getAlignmentStart();
+            return record.getAlignmentStart();
         } else {
-            alignmentEnd = record.getAlignmentEnd();
+            return record.getAlignmentEnd();
         }
+    }
+
+    /**
+     * @param alignmentEnd end of the record, which is its start for an unmapped read placed with its mate
+     */
+    public static IntervalComparison compareIntervalToRecord(final QueryInterval interval, final int referenceIndex,
+                                                             final int alignmentStart, final int alignmentEnd) {
+        // interval.end <= 0 implies the end of the reference sequence.
+        final int intervalEnd = (interval.end <= 0? Integer.MAX_VALUE: interval.end);
 
-        if (interval.referenceIndex < record.getReferenceIndex()) return IntervalComparison.BEFORE;
-        else if (interval.referenceIndex > record.getReferenceIndex()) return IntervalComparison.AFTER;
-        else if (intervalEnd < record.getAlignmentStart()) return IntervalComparison.BEFORE;
+        if (interval.referenceIndex < referenceIndex) return IntervalComparison.BEFORE;
+        else if (interval.referenceIndex > referenceIndex) return IntervalComparison.AFTER;
+        else if (intervalEnd < alignmentStart) return IntervalComparison.BEFORE;
         else if (alignmentEnd < interval.start) return IntervalComparison.AFTER;
-        else if (CoordMath.encloses(interval.start, intervalEnd, record.getAlignmentStart(), alignmentEnd)) {
+        else if (CoordMath.encloses(interval.start, intervalEnd, alignmentStart, alignmentEnd)) {
             return IntervalComparison.CONTAINED;
         } else return IntervalComparison.OVERLAPPING;
     }
@@ -77,12 +77,26 @@ public class BinningIndexBuilder {
     }
 
     public void processFeature(final FeatureToBeIndexed feature) {
-
-        // process bins
-
         final Integer binNumber = feature.getIndexingBin();
         final int binNum = binNumber == null ? computeIndexingBin(feature) : binNumber;
+        final Chunk chunk = feature.getChunk();
+        processFeature(feature.getStart(), feature.getEnd(), binNum, chunk.getChunkStart(), chunk.getChunkEnd());
+    }
+
+    /**
+     * Index a feature from its coordinates and file offsets, without a {@link FeatureToBeIndexed}.
+     *
+     * @param featureStart 1-based start
+     * @param featureEnd   1-based inclusive end, or {@link GenomicIndexUtil#UNSET_GENOMIC_LOCATION} if the feature
+     *                     is treated as a single position
+     * @param binNum       indexing bin of the feature
+     * @param chunkStart   virtual file offset of the feature
+     * @param chunkEnd     virtual file offset just after the feature
+     */
+    public void processFeature(final int featureStart, final int featureEnd, final int binNum,
+                               final long chunkStart, final long chunkEnd) {
 
+        // process bins
 
         // is there a bin already represented for this index?  if not, add one
         final Bin bin;
@@ -96,13 +110,9 @@ public class BinningIndexBuilder {
 
         // process chunks
 
-        final Chunk newChunk = feature.getChunk();
-        final long chunkStart = newChunk.getChunkStart();
-        final long chunkEnd = newChunk.getChunkEnd();
-
         final List<Chunk> oldChunks = bin.getChunkList();
         if (!bin.containsChunks()) {
-            bin.addInitialChunk(newChunk);
+            bin.addInitialChunk(new Chunk(chunkStart, chunkEnd));
 
         } else {
             final Chunk lastChunk = bin.getLastChunk();
@@ -113,6 +123,7 @@ public class BinningIndexBuilder {
             if (BlockCompressedFilePointerUtil.areInSameOrAdjacentBlocks(lastChunk.getChunkEnd(), chunkStart)) {
                 lastChunk.setChunkEnd(chunkEnd);  // coalesced
             } else {
+                final Chunk newChunk = new Chunk(chunkStart, chunkEnd);
                 oldChunks.add(newChunk);
                 bin.setLastChunk(newChunk);
             }
@@ -121,13 +132,12 @@ public class BinningIndexBuilder {
         // process linear index
 
         // the smallest file offset that appears in the 16k window for this bin
-        final int featureEnd = feature.getEnd();
-        int startWindow = LinearIndex.convertToLinearIndexOffset(feature.getStart()); // the 16k window
+        int startWindow = LinearIndex.convertToLinearIndexOffset(featureStart); // the 16k window
         final int endWindow;
 
         if (featureEnd == GenomicIndexUtil.UNSET_GENOMIC_LOCATION) {   // assume feature uses one position
             // Next line for C (samtools index) compatibility. Differs only when on a window boundary
-            startWindow = LinearIndex.convertToLinearIndexOffset(feature.getStart() - 1);
+            startWindow = LinearIndex.convertToLinearIndexOffset(featureStart - 1);
             endWindow = startWindow;
         } else {
             endWindow = LinearIndex.convertToLinearIndexOffset(featureEnd);
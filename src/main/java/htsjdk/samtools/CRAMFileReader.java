@@ -17,6 +17,7 @@ package htsjdk.samtools;
 
 import htsjdk.samtools.SAMFileHeader.SortOrder;
 import htsjdk.samtools.SamReader.Type;
+import htsjdk.samtools.cram.CRAIEntry;
 import htsjdk.samtools.cram.CRAIIndex;
 import htsjdk.samtools.cram.ref.CRAMReferenceSource;
 import htsjdk.samtools.cram.ref.ReferenceSource;
@@ -28,6 +29,7 @@ import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.CloserUtil;
 import htsjdk.samtools.util.Log;
 import htsjdk.samtools.util.RuntimeEOFException;
+import htsjdk.samtools.util.RuntimeIOException;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -36,7 +38,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
 
 /**
  * {@link htsjdk.samtools.BAMFileReader BAMFileReader} analogue for CRAM files.
@@ -51,6 +56,7 @@ public class CRAMFileReader extends SamReader.ReaderImplementation implements Sa
     private InputStream inputStream;
     private CRAMIterator iterator;
     private BAMIndex mIndex;
+    private List<CRAIEntry> craiEntries;
     private File mIndexFile;
     private boolean mEnableIndexCaching;
     private boolean mEnableIndexMemoryMapping;
@@ -300,6 +306,20 @@ public class CRAMFileReader extends SamReader.ReaderImplementation implements Sa
         return mIndex;
     }
 
+    /**
+     * @return the entries of the CRAI index of this file, or null if the index is not a CRAI file
+     */
+    private List<CRAIEntry> getCRAIEntries() {
+        if (craiEntries == null && mIndexFile != null && mIndexFile.getName().endsWith(CRAIIndex.CRAI_INDEX_SUFFIX)) {
+            try (final InputStream indexStream = new FileInputStream(mIndexFile)) {
+                craiEntries = CRAMCRAIIndexer.readIndex(indexStream).getCRAIEntries();
+            } catch (final IOException e) {
+                throw new RuntimeIOException(e);
+            }
+        }
+        return craiEntries;
+    }
+
     @Override
     public boolean hasBrowseableIndex() {
         return false;
@@ -477,6 +497,26 @@ public class CRAMFileReader extends SamReader.ReaderImplementation implements Sa
         public CRAMIntervalIterator(final QueryInterval[] queries, final boolean contained) {
             super(queries, contained);
 
+            final List<CRAIEntry> craiEntries = getCRAIEntries();
+            if (craiEntries != null) {
+                // use the CRAI entries directly to decode only the slices overlapping the queries:
+                final SortedMap<Long, Set<Integer>> slices = CRAIIndex.getSlicesOverlapping(craiEntries, queries);
+                if (!slices.isEmpty()) {
+                    try {
+                        unfilteredIterator = new CRAMIterator(
+                                getSeekableStreamOrFailWithRTE(),
+                                referenceSource,
+                                slices,
+                                validationStringency
+                        );
+                    } catch (final IOException e) {
+                        throw new RuntimeEOFException(e);
+                    }
+                    getNextRecord(); // advance to the first record that matches the filter criteria
+                }
+                return;
+            }
+
             long[] coordinates = coordinatesFromQueryIntervals(getIndex(), queries);
             if (coordinates != null && coordinates.length != 0) {
                 try {
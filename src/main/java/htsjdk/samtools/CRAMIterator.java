@@ -20,9 +20,11 @@ import htsjdk.samtools.cram.build.ContainerParser;
 import htsjdk.samtools.cram.build.Cram2SamRecordFactory;
 import htsjdk.samtools.cram.build.CramContainerIterator;
 import htsjdk.samtools.cram.build.CramNormalizer;
+import htsjdk.samtools.cram.build.CramSliceContainerIterator;
 import htsjdk.samtools.cram.build.CramSpanContainerIterator;
 import htsjdk.samtools.cram.io.CountingInputStream;
 import htsjdk.samtools.cram.ref.CRAMReferenceSource;
+import htsjdk.samtools.cram.structure.AlignmentSpan;
 import htsjdk.samtools.cram.structure.Container;
 import htsjdk.samtools.cram.structure.ContainerIO;
 import htsjdk.samtools.cram.structure.CramCompressionRecord;
@@ -38,6 +40,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
 
 import htsjdk.samtools.cram.CRAMException;
 
@@ -49,6 +53,10 @@ public class CRAMIterator implements SAMRecordIterator {
     private SAMRecord nextRecord = null;
     private CramNormalizer normalizer;
     private byte[] refs;
+    /**
+     * Zero based position of the first base in {@link #refs} on its reference sequence
+     */
+    private int refsOffset = 0;
     private int prevSeqId = SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX;
     public Container container;
     private SamReader mReader;
@@ -112,6 +120,31 @@ public class CRAMIterator implements SAMRecordIterator {
         parser = new ContainerParser(cramHeader.getSamFileHeader());
     }
 
+    /**
+     * Iterate over the records of selected slices only.
+     *
+     * @param slices the offsets of the slices to decode keyed by the offsets of their containers, see
+     *               {@link htsjdk.samtools.cram.CRAIIndex#getSlicesOverlapping}
+     */
+    public CRAMIterator(final SeekableStream seekableStream, final CRAMReferenceSource referenceSource, final SortedMap<Long, Set<Integer>> slices, final ValidationStringency validationStringency)
+            throws IOException {
+        if (null == referenceSource) {
+            throw new CRAMException("A reference source is required for CRAM files");
+        }
+        this.countingInputStream = new CountingInputStream(seekableStream);
+        this.referenceSource = referenceSource;
+        this.validationStringency = validationStringency;
+        final CramSliceContainerIterator containerIterator = CramSliceContainerIterator.fromSlices(seekableStream, slices);
+        cramHeader = containerIterator.getCramHeader();
+        this.containerIterator = containerIterator;
+
+        firstContainerOffset = containerIterator.getFirstContainerOffset();
+        records = new ArrayList<SAMRecord>(10000);
+        normalizer = new CramNormalizer(cramHeader.getSamFileHeader(),
+                referenceSource);
+        parser = new ContainerParser(cramHeader.getSamFileHeader());
+    }
+
     @Deprecated
     public CRAMIterator(final SeekableStream seekableStream, final CRAMReferenceSource referenceSource, final long[] coordinates)
             throws IOException {
@@ -159,25 +192,36 @@ public class CRAMIterator implements SAMRecordIterator {
 
         if (container.sequenceId == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
             refs = new byte[]{};
+            refsOffset = 0;
             prevSeqId = SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX;
         } else if (container.sequenceId == Slice.MULTI_REFERENCE) {
             refs = null;
+            refsOffset = 0;
             prevSeqId = Slice.MULTI_REFERENCE;
-        } else if (prevSeqId < 0 || prevSeqId != container.sequenceId) {
-            final SAMSequenceRecord sequence = cramHeader.getSamFileHeader()
-                    .getSequence(container.sequenceId);
-            refs = referenceSource.getReferenceBases(sequence, true);
-            if (refs == null) {
-                throw new CRAMException(String.format("Contig %s not found in the reference file.", sequence.getSequenceName()));
+        } else {
+            // only materialise the reference span covered by the slices and records of this container:
+            final AlignmentSpan span = getReferenceSpan(container);
+            if (prevSeqId != container.sequenceId || refsOffset > span.getStart() - 1
+                    || refsOffset + refs.length < span.getStart() - 1 + span.getSpan()) {
+                final SAMSequenceRecord sequence = cramHeader.getSamFileHeader()
+                        .getSequence(container.sequenceId);
+                // a span covering most of the sequence is served by the whole sequence rather than a copy of it:
+                final boolean wholeSequence = span.getSpan() > sequence.getSequenceLength() / 2;
+                refs = wholeSequence ? referenceSource.getReferenceBases(sequence, true)
+                        : referenceSource.getReferenceBasesByRegion(sequence, span.getStart() - 1, span.getSpan());
+                if (refs == null) {
+                    throw new CRAMException(String.format("Contig %s not found in the reference file.", sequence.getSequenceName()));
+                }
+                refsOffset = wholeSequence ? 0 : span.getStart() - 1;
+                prevSeqId = container.sequenceId;
             }
-            prevSeqId = container.sequenceId;
         }
 
         for (int i = 0; i < container.slices.length; i++) {
             final Slice slice = container.slices[i];
             if (slice.sequenceId < 0)
                 continue;
-            if (!slice.validateRefMD5(refs)) {
+            if (!slice.validateRefMD5(refs, refsOffset)) {
                 final String msg = String.format(
                         "Reference sequence MD5 mismatch for slice: sequence id %d, start %d, span %d, expected MD5 %s",
                             slice.sequenceId,
@@ -188,7 +232,7 @@ public class CRAMIterator implements SAMRecordIterator {
             }
         }
 
-        normalizer.normalize(cramRecords, refs, 0,
+        normalizer.normalize(cramRecords, refs, refsOffset,
                 container.header.substitutionMatrix);
 
         final Cram2SamRecordFactory cramToSamRecordFactory = new Cram2SamRecordFactory(
@@ -196,11 +240,6 @@ public class CRAMIterator implements SAMRecordIterator {
 
         for (final CramCompressionRecord cramRecord : cramRecords) {
             final SAMRecord samRecord = cramToSamRecordFactory.create(cramRecord);
-            if (!cramRecord.isSegmentUnmapped()) {
-                final SAMSequenceRecord sequence = cramHeader.getSamFileHeader()
-                        .getSequence(cramRecord.sequenceId);
-                refs = referenceSource.getReferenceBases(sequence, true);
-            }
 
             samRecord.setValidationStringency(validationStringency);
 
@@ -224,6 +263,26 @@ public class CRAMIterator implements SAMRecordIterator {
         iterator = records.iterator();
     }
 
+    /**
+     * Get the reference span of a single reference container: the union of its slice spans and the reference bases
+     * needed by its records.
+     */
+    private AlignmentSpan getReferenceSpan(final Container container) {
+        AlignmentSpan span = CramNormalizer.getReferenceSpans(cramRecords).get(container.sequenceId);
+        for (final Slice slice : container.slices) {
+            if (slice.sequenceId != container.sequenceId || slice.alignmentStart < 1)
+                continue;
+            if (span == null)
+                span = new AlignmentSpan(slice.alignmentStart, slice.alignmentSpan);
+            else
+                span.add(slice.alignmentStart, slice.alignmentSpan, 0);
+        }
+        if (span == null)
+            return new AlignmentSpan(1, 1);
+        // slices of reads without bases still need their first reference base for the sanity checks:
+        return span.getSpan() > 0 ? span : new AlignmentSpan(span.getStart(), 1);
+    }
+
     /**
      * Skip cached records until given alignment start position.
      *
@@ -0,0 +1,339 @@
+package htsjdk.samtools;
+
+import htsjdk.samtools.util.BinaryCodec;
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.samtools.util.RuntimeIOException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds and writes a coordinate-sorted index (.csi) for a BAM file.
+ * <p>
+ * A BAI index has a fixed binning scheme of 6 levels over 16kb windows, and cannot index positions past 2^29 (512Mb).
+ * A CSI index has the same structure with a configurable window size (2^minShift) and number of levels (depth), chosen
+ * here so that the longest reference of the header fits, and stores the smallest file offset for each bin instead of a
+ * linear index.  As with {@link BAMIndexer}, processAlignment is called for each record in file order and finish()
+ * is called at the end.
+ */
+public class CSIIndexer {
+
+    /** Size of the smallest bins as a power of 2, the 16kb windows of a BAI index */
+    public static final int DEFAULT_MIN_SHIFT = 14;
+
+    static final byte[] CSI_MAGIC = {'C', 'S', 'I', 1};
+
+    private final BinaryCodec codec;
+    private final int numReferences;
+    private final int minShift;
+    private final int depth;
+
+    private int currentReference = 0;
+
+    // content of the current reference
+    private final Map<Integer, BinChunks> bins = new HashMap<>();
+    private long[] windows = new long[1024];
+    private int largestWindowSeen = -1;
+    private final BAMIndexMetaData indexStats = new BAMIndexMetaData();
+
+    /**
+     * Chunks of a bin, as pairs of start and end offsets
+     */
+    private static final class BinChunks {
+        long[] chunks = new long[4];
+        int size = 0;
+
+        void add(final long chunkStart, final long chunkEnd) {
+            // coalesce chunks that are in the same or adjacent file blocks, as BinningIndexBuilder does
+            if (size > 0 && BlockCompressedFilePointerUtil.areInSameOrAdjacentBlocks(chunks[size - 1], chunkStart)) {
+                chunks[size - 1] = chunkEnd;
+                return;
+            }
+            if (size == chunks.length) {
+                chunks = Arrays.copyOf(chunks, size * 2);
+            }
+            chunks[size++] = chunkStart;
+            chunks[size++] = chunkEnd;
+        }
+    }
+
+    /**
+     * @param output     CSI index file
+     * @param fileHeader header for the corresponding bam file
+     */
+    public CSIIndexer(final Path output, final SAMFileHeader fileHeader) {
+        this(newOutputStream(output), fileHeader, DEFAULT_MIN_SHIFT);
+    }
+
+    /**
+     * @param output     CSI index file
+     * @param fileHeader header for the corresponding bam file
+     */
+    public CSIIndexer(final File output, final SAMFileHeader fileHeader) {
+        this(output.toPath(), fileHeader);
+    }
+
+    /**
+     * Prepare to index a BAM.
+     *
+     * @param output     Index will be written here, BGZF-compressed.  output will be closed when finish() is called.
+     * @param fileHeader header for the corresponding bam file.
+     * @param minShift   size of the smallest bins, as a power of 2
+     */
+    public CSIIndexer(final OutputStream output, final SAMFileHeader fileHeader, final int minShift) {
+        if (fileHeader.getSortOrder() != SAMFileHeader.SortOrder.coordinate &&
+                fileHeader.getSortOrder() != SAMFileHeader.SortOrder.unsorted) {
+            throw new SAMException("Indexing requires a coordinate-sorted input BAM.");
+        }
+        if (minShift <= 0 || minShift > 30) {
+            throw new IllegalArgumentException("Invalid minimum shift for a CSI index: " + minShift);
+        }
+        this.minShift = minShift;
+        this.depth = depthFor(fileHeader.getSequenceDictionary(), minShift);
+        this.numReferences = fileHeader.getSequenceDictionary().size();
+        this.codec = new BinaryCodec(new BlockCompressedOutputStream(output, (File) null));
+        Arrays.fill(windows, -1);
+
+        codec.writeBytes(CSI_MAGIC);
+        codec.writeInt(minShift);
+        codec.writeInt(depth);
+        codec.writeInt(0); // no auxiliary data
+        codec.writeInt(numReferences);
+    }
+
+    private static OutputStream newOutputStream(final Path output) {
+        try {
+            return Files.newOutputStream(output);
+        } catch (final IOException e) {
+            throw new RuntimeIOException("Unable to create the index " + output, e);
+        }
+    }
+
+    /**
+     * @return the number of levels below the root bin needed for the longest reference, as samtools computes it
+     */
+    static int depthFor(final SAMSequenceDictionary dictionary, final int minShift) {
+        long maxLength = 0;
+        for (final SAMSequenceRecord sequence : dictionary.getSequences()) {
+            maxLength = Math.max(maxLength, sequence.getSequenceLength());
+        }
+        maxLength += 256;
+        int depth = 0;
+        for (long size = 1L << minShift; maxLength > size; size <<= 3) {
+            depth++;
+        }
+        return depth;
+    }
+
+    /**
+     * @return the number of levels below the root bin
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return the size of the smallest bins, as a power of 2
+     */
+    public int getMinShift() {
+        return minShift;
+    }
+
+    /**
+     * Smallest bin containing a region, in the binning scheme of a CSI index
+     *
+     * @param beg 0-based start
+     * @param end 0-based exclusive end
+     */
+    static int regionToBin(final long beg, long end, final int minShift, final int depth) {
+        int shift = minShift;
+        int first = firstBin(depth);
+        --end;
+        for (int level = depth; level > 0; --level, shift += 3, first -= 1 << (3 * level)) {
+            if (beg >> shift == end >> shift) return (int) (first + (beg >> shift));
+        }
+        return 0;
+    }
+
+    /**
+     * @return the first bin of the given level, where the root bin is level 0
+     */
+    private static int firstBin(final int level) {
+        return ((1 << (3 * level)) - 1) / 7;
+    }
+
+    /**
+     * Record any index information for a given BAM record.
+     * If this alignment starts a new reference, write out the old reference.
+     * Requires a non-null value for rec.getFileSource().
+     *
+     * @param rec The BAM record
+     */
+    public void processAlignment(final SAMRecord rec) {
+        final SAMFileSource source = rec.getFileSource();
+        if (rec.getAlignmentStart() == SAMRecord.NO_ALIGNMENT_START) {
+            processAlignment(rec.getReferenceIndex(), SAMRecord.NO_ALIGNMENT_START, 0, rec.getReadUnmappedFlag(), 0, 0);
+            return;
+        }
+        if (source == null) {
+            throw new SAMException("No source (virtual file offsets); needed for indexing on BAM Record " + rec);
+        }
+        final Chunk chunk = ((BAMFileSpan) source.getFilePointer()).getSingleChunk();
+        processAlignment(rec.getReferenceIndex(), rec.getAlignmentStart(), rec.getAlignmentEnd(),
+                rec.getReadUnmappedFlag(), chunk.getChunkStart(), chunk.getChunkEnd());
+    }
+
+    /**
+     * Record the index information of a BAM record read without decoding it.
+     *
+     * @param reference      reference index, or {@link SAMRecord#NO_ALIGNMENT_REFERENCE_INDEX}
+     * @param alignmentStart 1-based start, or {@link SAMRecord#NO_ALIGNMENT_START}
+     * @param alignmentEnd   1-based inclusive end, as given by {@link SAMRecord#getAlignmentEnd()}
+     * @param unmapped       whether the read unmapped flag of the record is set
+     * @param chunkStart     virtual file offset of the record
+     * @param chunkEnd       virtual file offset just after the record
+     */
+    void processAlignment(final int reference, final int alignmentStart, final int alignmentEnd,
+                          final boolean unmapped, final long chunkStart, final long chunkEnd) {
+        if (reference != SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX && reference != currentReference) {
+            // process any completed references
+            advanceToReference(reference);
+        }
+        indexStats.recordMetaData(alignmentStart, unmapped, chunkStart, chunkEnd);
+        if (alignmentStart == SAMRecord.NO_ALIGNMENT_START) {
+            return; // do nothing for records without coordinates, but count them
+        }
+        if (reference != currentReference) {
+            throw new SAMException("Unexpected reference " + reference + " when constructing index for " +
+                    currentReference + " for record at " + BlockCompressedFilePointerUtil.asString(chunkStart));
+        }
+
+        // 0-based, half-open, and at least one base long
+        final long beg = alignmentStart - 1;
+        final long end = Math.max((long) alignmentEnd, beg + 1);
+        if (end > 1L << (minShift + 3 * depth)) {
+            throw new SAMException("Record at " + BlockCompressedFilePointerUtil.asString(chunkStart) +
+                    " ends past the largest position of the index, " + (1L << (minShift + 3 * depth)));
+        }
+        bins.computeIfAbsent(regionToBin(beg, end, minShift, depth), b -> new BinChunks()).add(chunkStart, chunkEnd);
+
+        final int startWindow = (int) (beg >> minShift);
+        final int endWindow = (int) ((end - 1) >> minShift);
+        if (endWindow >= windows.length) {
+            final int oldLength = windows.length;
+            windows = Arrays.copyOf(windows, Math.max(endWindow + 1, oldLength * 2));
+            Arrays.fill(windows, oldLength, windows.length, -1);
+        }
+        for (int window = startWindow; window <= endWindow; window++) {
+            if (windows[window] == -1 || chunkStart < windows[window]) {
+                windows[window] = chunkStart;
+            }
+        }
+        largestWindowSeen = Math.max(largestWindowSeen, endWindow);
+    }
+
+    /**
+     * After all the alignment records have been processed, finish is called.
+     * Writes any final information and closes the output file.
+     */
+    public void finish() {
+        advanceToReference(numReferences);
+        codec.writeLong(indexStats.getNoCoordinateRecordCount());
+        codec.close();
+    }
+
+    /** write out any references between the currentReference and the nextReference */
+    private void advanceToReference(final int nextReference) {
+        while (currentReference < nextReference) {
+            writeReference();
+            currentReference++;
+            bins.clear();
+            Arrays.fill(windows, 0, largestWindowSeen + 1, -1);
+            largestWindowSeen = -1;
+            indexStats.newReference();
+        }
+    }
+
+    /**
+     * Write the bins of the current reference, each with the smallest offset of the records overlapping its first
+     * window, and the meta data in a pseudo-bin
+     */
+    private void writeReference() {
+        if (bins.isEmpty()) {
+            codec.writeInt(0);
+            return;
+        }
+        // fill in the windows without records with the previous offset, as samtools does
+        long previous = indexStats.getFirstOffset();
+        for (int window = 0; window <= largestWindowSeen; window++) {
+            if (windows[window] == -1) {
+                windows[window] = previous;
+            } else {
+                previous = windows[window];
+            }
+        }
+
+        final int[] binNumbers = new int[bins.size()];
+        int n = 0;
+        for (final int bin : bins.keySet()) {
+            binNumbers[n++] = bin;
+        }
+        Arrays.sort(binNumbers);
+
+        codec.writeInt(binNumbers.length + 1);
+        for (final int binNumber : binNumbers) {
+            final BinChunks chunks = bins.get(binNumber);
+            codec.writeUInt(binNumber);
+            codec.writeLong(firstWindowOffset(binNumber));
+            codec.writeInt(chunks.size / 2);
+            for (int i = 0; i < chunks.size; i++) {
+                codec.writeLong(chunks.chunks[i]);
+            }
+        }
+
+        codec.writeUInt(firstBin(depth + 1) + 1);
+        codec.writeLong(0);
+        codec.writeInt(2);
+        codec.writeLong(indexStats.getFirstOffset());
+        codec.writeLong(indexStats.getLastOffset());
+        codec.writeLong(indexStats.getAlignedRecordCount());
+        codec.writeLong(indexStats.getUnalignedRecordCount());
+    }
+
+    /**
+     * @return the linear index entry of the first window of the bin, or 0 if the bin starts after the last window
+     */
+    private long firstWindowOffset(final int bin) {
+        int level = 0;
+        for (int b = bin; b > 0; b = (b - 1) >> 3) {
+            level++;
+        }
+        final long window = (long) (bin - firstBin(level)) << (3 * (depth - level));
+        return window <= largestWindowSeen ? windows[(int) window] : 0;
+    }
+
+    /**
+     * Generates a CSI index file from an input BAM file, reading only the fields needed for indexing from the raw
+     * records, and inflating the file on a pool of threads.
+     *
+     * @param input   the BAM file
+     * @param output  Path for output index file
+     * @param threads number of threads inflating the file, or 0 to inflate on the calling thread
+     */
+    public static void createIndex(final Path input, final Path output, final int threads) {
+        try (final BAMIndexScanner scanner = new BAMIndexScanner(input, threads)) {
+            final CSIIndexer indexer = new CSIIndexer(output, scanner.getFileHeader());
+            scanner.scan((reference, alignmentStart, alignmentEnd, bin, flags, chunkStart, chunkEnd) ->
+                    indexer.processAlignment(reference, alignmentStart, alignmentEnd,
+                            (flags & SAMFlag.READ_UNMAPPED.intValue()) != 0, chunkStart, chunkEnd));
+            indexer.finish();
+        }
+    }
+}
@@ -0,0 +1,604 @@
+package htsjdk.samtools;
+
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.IOUtil;
+import htsjdk.samtools.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Holds info about the reads of pairs whose mate has not been seen yet, keyed by read name and by the reference
+ * sequence index of the mate, like {@link CoordinateSortedPairInfoMap}, in a compact form.
+ * <p>
+ * Records are kept encoded by the codec, in one byte array per reference sequence, and are found by a 64-bit hash
+ * of the read name in an open-addressing table of primitive arrays, with no object per record.  Since different
+ * names may have the same hash, the name of every record with the hash looked up is decoded and compared.
+ * <p>
+ * All the reference sequences are kept in RAM up to a byte budget.  Above it, the records of the largest sequences
+ * other than the one last removed from are appended to a temporary file per sequence, and read back when a record
+ * is removed from that sequence.  Reads are expected to be processed in order of reference sequence index, so that
+ * the records of a sequence are only read back once.  The arrays of a sequence shrink as its records are removed,
+ * and are freed when it has none left.
+ *
+ * @param <REC> The type of record being retrieved.
+ */
+public class CompactPairInfoMap<REC> implements Iterable<Map.Entry<String, REC>> {
+    private static final Log log = Log.getInstance(CompactPairInfoMap.class);
+
+    /**
+     * Default byte budget for the records and tables in RAM.
+     */
+    public static final long DEFAULT_MAX_BYTES_IN_RAM = 64L * 1024 * 1024;
+
+    private final CoordinateSortedPairInfoMap.Codec<String, REC> elementCodec;
+    private final long maxBytesInRam;
+    private final int maxTempFiles;
+    private final Map<Integer, SequenceMap> sequences = new HashMap<>();
+    /** Where the records of sequences are spilled, created on the first spill */
+    private File workDir = null;
+    private final EncodedRecord encoded = new EncodedRecord();
+
+    private int size = 0;
+    private long bytesInRam = 0;
+    private int tempFiles = 0;
+    private int lastRemovedSequence = Integer.MIN_VALUE;
+
+    // No other methods may be called when iteration is in progress
+    private boolean iterationInProgress = false;
+
+    private long peakBytesInRam = 0;
+    private long spills = 0;
+    private long spilledRecords = 0;
+    private long hashCollisions = 0;
+
+    /**
+     * The records of one reference sequence.  Each record is stored in data as its encoded length followed by its
+     * encoding, and a slot of the table holds the hash of its name and its offset in data.
+     */
+    private final class SequenceMap {
+        final int sequenceIndex;
+        /** 0 for an empty slot */
+        long[] hashes = new long[16];
+        /** -1 for a removed record, whose slot is not empty since others may have been put after it */
+        int[] offsets = new int[16];
+        int usedSlots = 0;
+        int live = 0;
+        byte[] data = new byte[256];
+        int dataLength = 0;
+        int garbage = 0;
+        /** The number of records in the spill file */
+        int spilled = 0;
+
+        SequenceMap(final int sequenceIndex) {
+            this.sequenceIndex = sequenceIndex;
+        }
+
+        long bytes() {
+            return data.length + 12L * hashes.length;
+        }
+
+        /**
+         * @return the slot of the record of the key, or -1
+         */
+        int find(final long hash, final String key) {
+            final int mask = hashes.length - 1;
+            for (int slot = (int) hash & mask; hashes[slot] != 0; slot = (slot + 1) & mask) {
+                if (hashes[slot] == hash && offsets[slot] >= 0) {
+                    if (decode(offsets[slot]).getKey().equals(key)) {
+                        return slot;
+                    }
+                    hashCollisions++;
+                }
+            }
+            return -1;
+        }
+
+        void add(final long hash, final byte[] record, final int offset, final int length) {
+            if (dataLength + 4 + length > data.length) {
+                compact();
+                if (dataLength + 4 + length > data.length) {
+                    data = Arrays.copyOf(data, Math.max(2 * data.length, dataLength + 4 + length));
+                }
+            }
+            final int recordOffset = dataLength;
+            data[dataLength++] = (byte) (length >>> 24);
+            data[dataLength++] = (byte) (length >>> 16);
+            data[dataLength++] = (byte) (length >>> 8);
+            data[dataLength++] = (byte) length;
+            System.arraycopy(record, offset, data, dataLength, length);
+            dataLength += length;
+
+            if (4 * (usedSlots + 1) > 3 * hashes.length) {
+                rehash(live + 1 > hashes.length / 2 ? 2 * hashes.length : hashes.length);
+            }
+            final int mask = hashes.length - 1;
+            int slot = (int) hash & mask;
+            while (hashes[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            hashes[slot] = hash;
+            offsets[slot] = recordOffset;
+            usedSlots++;
+            live++;
+        }
+
+        void remove(final int slot) {
+            garbage += 4 + length(offsets[slot]);
+            offsets[slot] = -1;
+            live--;
+        }
+
+        /**
+         * Release the table and the data of the records once most of them have been removed.
+         */
+        void shrink() {
+            if (hashes.length > 16 && 8 * live < hashes.length) {
+                int capacity = 16;
+                while (4 * live > capacity) {
+                    capacity *= 2;
+                }
+                rehash(capacity);
+            }
+            if (data.length > 256 && 4 * (dataLength - garbage) < data.length) {
+                moveRecords();
+                data = Arrays.copyOf(data, Math.max(256, 2 * dataLength));
+            }
+        }
+
+        /**
+         * Drop all the records in RAM.
+         */
+        void clear() {
+            hashes = new long[16];
+            offsets = new int[16];
+            usedSlots = 0;
+            live = 0;
+            data = new byte[256];
+            dataLength = 0;
+            garbage = 0;
+        }
+
+        int length(final int offset) {
+            return (data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16 | (data[offset + 2] & 0xFF) << 8 | (data[offset + 3] & 0xFF);
+        }
+
+        Map.Entry<String, REC> decode(final int offset) {
+            elementCodec.setInputStream(new ByteArrayInputStream(data, offset + 4, length(offset)));
+            return elementCodec.decode();
+        }
+
+        /**
+         * Rebuild the table without the removed records.
+         */
+        private void rehash(final int capacity) {
+            final long[] oldHashes = hashes;
+            final int[] oldOffsets = offsets;
+            hashes = new long[capacity];
+            offsets = new int[capacity];
+            final int mask = capacity - 1;
+            for (int i = 0; i < oldHashes.length; i++) {
+                if (oldHashes[i] != 0 && oldOffsets[i] >= 0) {
+                    int slot = (int) oldHashes[i] & mask;
+                    while (hashes[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    hashes[slot] = oldHashes[i];
+                    offsets[slot] = oldOffsets[i];
+                }
+            }
+            usedSlots = live;
+        }
+
+        /**
+         * Move the records down over the removed ones, if they take more than half of the data.
+         */
+        private void compact() {
+            if (2 * garbage >= dataLength) {
+                moveRecords();
+            }
+        }
+
+        private void moveRecords() {
+            // the records are in data in the order they were added, so sort the live slots by offset
+            final long[] slots = new long[live];
+            int n = 0;
+            for (int i = 0; i < hashes.length; i++) {
+                if (hashes[i] != 0 && offsets[i] >= 0) {
+                    slots[n++] = (long) offsets[i] << 32 | i;
+                }
+            }
+            Arrays.sort(slots);
+            int newLength = 0;
+            for (final long slotAndOffset : slots) {
+                final int slot = (int) slotAndOffset;
+                final int offset = offsets[slot];
+                final int recordLength = 4 + length(offset);
+                System.arraycopy(data, offset, data, newLength, recordLength);
+                offsets[slot] = newLength;
+                newLength += recordLength;
+            }
+            dataLength = newLength;
+            garbage = 0;
+        }
+    }
+
+    /**
+     * The encoding of a record, with direct access to its bytes.
+     */
+    private static final class EncodedRecord extends ByteArrayOutputStream {
+        byte[] bytes() {
+            return buf;
+        }
+    }
+
+    public CompactPairInfoMap(final CoordinateSortedPairInfoMap.Codec<String, REC> elementCodec) {
+        this(DEFAULT_MAX_BYTES_IN_RAM, elementCodec);
+    }
+
+    /**
+     * @param maxBytesInRam above this number of bytes in RAM, records are spilled to disk
+     * @param elementCodec  encodes the records, including their name
+     */
+    public CompactPairInfoMap(final long maxBytesInRam, final CoordinateSortedPairInfoMap.Codec<String, REC> elementCodec) {
+        this(maxBytesInRam, Integer.MAX_VALUE, elementCodec);
+    }
+
+    /**
+     * @param maxBytesInRam above this number of bytes in RAM, records are spilled to disk
+     * @param maxTempFiles  the most sequences spilled to disk at a time.  Once reached, only sequences which are
+     *                      already on disk are spilled again, and the records may take more than maxBytesInRam
+     * @param elementCodec  encodes the records, including their name
+     */
+    public CompactPairInfoMap(final long maxBytesInRam, final int maxTempFiles,
+                              final CoordinateSortedPairInfoMap.Codec<String, REC> elementCodec) {
+        if (maxBytesInRam < 0) {
+            throw new IllegalArgumentException("maxBytesInRam must not be negative: " + maxBytesInRam);
+        }
+        if (maxTempFiles < 0) {
+            throw new IllegalArgumentException("maxTempFiles must not be negative: " + maxTempFiles);
+        }
+        this.maxBytesInRam = maxBytesInRam;
+        this.maxTempFiles = maxTempFiles;
+        this.elementCodec = elementCodec;
+    }
+
+    /**
+     * @return a 64-bit hash of the name, never 0
+     */
+    static long hash(final String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * 0x100000001b3L;
+        }
+        // the finalizer of MurmurHash3, so that the low bits of the hash depend on all the characters
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+
+    /**
+     * Store the record with the given sequence index and key.  It is assumed that value did not previously exist
+     * in the map, and an exception is thrown (possibly at a later time) if that is not the case.
+     */
+    public void put(final int sequenceIndex, final String key, final REC record) {
+        if (iterationInProgress) throw new IllegalStateException("Cannot be called when iteration is in progress");
+        final long hash = hash(key);
+        SequenceMap sequence = sequences.get(sequenceIndex);
+        if (sequence == null) {
+            sequence = new SequenceMap(sequenceIndex);
+            sequences.put(sequenceIndex, sequence);
+            bytesInRam += sequence.bytes();
+        }
+        if (sequence.find(hash, key) >= 0) {
+            throw new IllegalArgumentException("Putting value into PairInfoMap that already existed. " +
+                    sequenceIndex + ": " + key);
+        }
+        encoded.reset();
+        elementCodec.setOutputStream(encoded);
+        elementCodec.encode(key, record);
+
+        final long before = sequence.bytes();
+        sequence.add(hash, encoded.bytes(), 0, encoded.size());
+        bytesInRam += sequence.bytes() - before;
+        size++;
+        enforceBudget();
+    }
+
+    /**
+     * @return The record corresponding to the given sequenceIndex and key, or null if it is not present.
+     */
+    public REC remove(final int sequenceIndex, final String key) {
+        if (iterationInProgress) throw new IllegalStateException("Cannot be called when iteration is in progress");
+        lastRemovedSequence = sequenceIndex;
+        final SequenceMap sequence = sequences.get(sequenceIndex);
+        if (sequence == null) {
+            return null;
+        }
+        if (sequence.spilled > 0) {
+            load(sequence);
+            enforceBudget();
+        }
+        final int slot = sequence.find(hash(key), key);
+        if (slot < 0) {
+            return null;
+        }
+        final REC record = sequence.decode(sequence.offsets[slot]).getValue();
+        final long before = sequence.bytes();
+        sequence.remove(slot);
+        size--;
+        if (sequence.live == 0) {
+            // nothing is spilled either, since it was loaded above
+            sequences.remove(sequenceIndex);
+            bytesInRam -= before;
+        } else {
+            sequence.shrink();
+            bytesInRam += sequence.bytes() - before;
+        }
+        return record;
+    }
+
+    /**
+     * Spill the largest sequences but the one being removed from until the records in RAM fit in the budget, or until
+     * no more temporary files may be created.
+     */
+    private void enforceBudget() {
+        peakBytesInRam = Math.max(peakBytesInRam, bytesInRam);
+        while (bytesInRam > maxBytesInRam) {
+            SequenceMap largest = null;
+            for (final SequenceMap sequence : sequences.values()) {
+                if (sequence.sequenceIndex != lastRemovedSequence && sequence.live > 0 &&
+                        (sequence.spilled > 0 || tempFiles < maxTempFiles) &&
+                        (largest == null || sequence.bytes() > largest.bytes())) {
+                    largest = sequence;
+                }
+            }
+            if (largest == null) {
+                return;
+            }
+            spill(largest);
+        }
+    }
+
+    private File makeFileForSequence(final int index) {
+        if (workDir == null) {
+            workDir = IOUtil.createTempDir("CPIM.", null);
+            workDir.deleteOnExit();
+        }
+        final File file = new File(workDir, index + ".tmp");
+        file.deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Append the records of the sequence in RAM to its file, with the hash of their name.
+     */
+    private void spill(final SequenceMap sequence) {
+        final File file = makeFileForSequence(sequence.sequenceIndex);
+        try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            for (int slot = 0; slot < sequence.hashes.length; slot++) {
+                final int offset = sequence.offsets[slot];
+                if (sequence.hashes[slot] != 0 && offset >= 0) {
+                    out.writeLong(sequence.hashes[slot]);
+                    out.write(sequence.data, offset, 4 + sequence.length(offset));
+                }
+            }
+        } catch (IOException e) {
+            throw new SAMException("Error spilling PairInfo to " + file, e);
+        }
+        if (sequence.spilled == 0) {
+            tempFiles++;
+        }
+        spills++;
+        spilledRecords += sequence.live;
+        sequence.spilled += sequence.live;
+
+        bytesInRam -= sequence.bytes();
+        sequence.clear();
+        bytesInRam += sequence.bytes();
+    }
+
+    /**
+     * Read the spilled records of the sequence back into RAM.
+     */
+    private void load(final SequenceMap sequence) {
+        final File file = makeFileForSequence(sequence.sequenceIndex);
+        final long before = sequence.bytes();
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            byte[] record = new byte[256];
+            for (int i = 0; i < sequence.spilled; i++) {
+                final long hash = in.readLong();
+                final int length = in.readInt();
+                if (length > record.length) {
+                    record = new byte[Math.max(length, 2 * record.length)];
+                }
+                in.readFully(record, 0, length);
+                elementCodec.setInputStream(new ByteArrayInputStream(record, 0, length));
+                final String key = elementCodec.decode().getKey();
+                if (sequence.find(hash, key) >= 0) {
+                    throw new SAMException("Value was put into PairInfoMap more than once.  " +
+                            sequence.sequenceIndex + ": " + key);
+                }
+                sequence.add(hash, record, 0, length);
+            }
+        } catch (IOException e) {
+            throw new SAMException("Error loading PairInfo from " + file, e);
+        }
+        log.debug("Loaded " + sequence.spilled + " spilled records of sequence " + sequence.sequenceIndex);
+        sequence.spilled = 0;
+        tempFiles--;
+        IOUtil.deleteFiles(file);
+        bytesInRam += sequence.bytes() - before;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return number of elements stored in RAM.  Always <= size()
+     */
+    public int sizeInRam() {
+        int total = 0;
+        for (final SequenceMap sequence : sequences.values()) {
+            total += sequence.live;
+        }
+        return total;
+    }
+
+    public long getMaxBytesInRam() {
+        return maxBytesInRam;
+    }
+
+    /**
+     * @return the bytes taken by the records and the tables in RAM
+     */
+    public long getBytesInRam() {
+        return bytesInRam;
+    }
+
+    public long getPeakBytesInRam() {
+        return peakBytesInRam;
+    }
+
+    /**
+     * @return the number of times the records of a sequence were spilled to disk
+     */
+    public long getSpills() {
+        return spills;
+    }
+
+    /**
+     * @return the total number of records spilled to disk
+     */
+    public long getSpilledRecords() {
+        return spilledRecords;
+    }
+
+    /**
+     * @return the number of records decoded because their name had the hash of another name looked up
+     */
+    public long getHashCollisions() {
+        return hashCollisions;
+    }
+
+    /**
+     * Creates an iterator over all elements in map, in arbitrary order.  Elements may not be added
+     * or removed from map when iteration is in progress, nor may a second iteration be started.
+     * Iterator must be closed in order to allow normal access to the map.
+     */
+    @Override
+    public CloseableIterator<Map.Entry<String, REC>> iterator() {
+        if (iterationInProgress) throw new IllegalStateException("Cannot be called when iteration is in progress");
+        iterationInProgress = true;
+        return new MapIterator();
+    }
+
+    /**
+     * Iterates over the records of each sequence, first those spilled then those in RAM.
+     */
+    private class MapIterator implements CloseableIterator<Map.Entry<String, REC>> {
+        private boolean closed = false;
+        private final Iterator<SequenceMap> sequenceIterator = new ArrayList<>(sequences.values()).iterator();
+        private SequenceMap sequence = null;
+        private DataInputStream spilled = null;
+        private int spilledLeft = 0;
+        private int slot = 0;
+        private Map.Entry<String, REC> next = null;
+
+        private MapIterator() {
+            advance();
+        }
+
+        private void advance() {
+            try {
+                while (true) {
+                    if (spilledLeft > 0) {
+                        spilledLeft--;
+                        spilled.readLong();
+                        final byte[] record = new byte[spilled.readInt()];
+                        spilled.readFully(record);
+                        elementCodec.setInputStream(new ByteArrayInputStream(record));
+                        next = elementCodec.decode();
+                        return;
+                    }
+                    if (spilled != null) {
+                        spilled.close();
+                        spilled = null;
+                    }
+                    if (sequence != null) {
+                        while (slot < sequence.hashes.length) {
+                            final int current = slot++;
+                            if (sequence.hashes[current] != 0 && sequence.offsets[current] >= 0) {
+                                next = sequence.decode(sequence.offsets[current]);
+                                return;
+                            }
+                        }
+                    }
+                    if (!sequenceIterator.hasNext()) {
+                        return;
+                    }
+                    sequence = sequenceIterator.next();
+                    slot = 0;
+                    if (sequence.spilled > 0) {
+                        spilled = new DataInputStream(new BufferedInputStream(new FileInputStream(makeFileForSequence(sequence.sequenceIndex))));
+                        spilledLeft = sequence.spilled;
+                    }
+                }
+            } catch (IOException e) {
+                throw new SAMException("Error reading spilled PairInfo", e);
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            iterationInProgress = false;
+            if (spilled != null) {
+                try {
+                    spilled.close();
+                } catch (IOException e) {
+                    throw new SAMException("Error closing spilled PairInfo", e);
+                }
+                spilled = null;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (closed) throw new IllegalStateException("Iterator has been closed");
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<String, REC> next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            final Map.Entry<String, REC> ret = next;
+            next = null;
+            advance();
+            return ret;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -78,6 +78,12 @@ public class Defaults {
      */
     public static final String EBI_REFERENCE_SERVICE_URL_MASK;
 
+    /**
+     * Directory of a local MD5 addressed reference store (see htsjdk.samtools.cram.ref.LocalMD5ReferenceStore),
+     * consulted for CRAM reference sequences before any download. If this is not set, the directory is null.
+     */
+    public static final File CRAM_REFERENCE_STORE;
+
     /**
      * Boolean describing whether downloading of SRA native libraries is allowed,
      * in case such native libraries are not found locally
@@ -90,6 +96,17 @@ public class Defaults {
      */
     public static final String DISABLE_SNAPPY_PROPERTY_NAME = "snappy.disable";
 
+    /**
+     * Should BGZF streams over files and URLs share the process-wide cache of inflated blocks? Default = false.
+     */
+    public static final boolean USE_BGZF_BLOCK_CACHE;
+
+    /**
+     * The name of the codec compressing temporary files, see {@link htsjdk.samtools.util.TempStreamFactory}.
+     * Default = snappy, which falls back to no compression if Snappy is not available.
+     */
+    public static final String TEMP_STREAM_CODEC;
+
     /**
      * Disable use of the Snappy compressor
      */
@@ -111,10 +128,13 @@ public class Defaults {
         REFERENCE_FASTA = getFileProperty("reference_fasta", null);
         USE_CRAM_REF_DOWNLOAD = getBooleanProperty("use_cram_ref_download", false);
         EBI_REFERENCE_SERVICE_URL_MASK = "http://www.ebi.ac.uk/ena/cram/md5/%s";
+        CRAM_REFERENCE_STORE = getFileProperty("cram_reference_store", null);
         CUSTOM_READER_FACTORY = getStringProperty("custom_reader", "");
         SAM_FLAG_FIELD_FORMAT = SamFlagField.valueOf(getStringProperty("sam_flag_field_format", SamFlagField.DECIMAL.name()));
         SRA_LIBRARIES_DOWNLOAD = getBooleanProperty("sra_libraries_download", false);
         DISABLE_SNAPPY_COMPRESSOR = getBooleanProperty(DISABLE_SNAPPY_PROPERTY_NAME, false);
+        USE_BGZF_BLOCK_CACHE = getBooleanProperty("use_bgzf_block_cache", false);
+        TEMP_STREAM_CODEC = getStringProperty("temp_stream_codec", "snappy");
     }
 
     /**
@@ -135,9 +155,12 @@ public class Defaults {
         result.put("REFERENCE_FASTA", REFERENCE_FASTA);
         result.put("USE_CRAM_REF_DOWNLOAD", USE_CRAM_REF_DOWNLOAD);
         result.put("EBI_REFERENCE_SERVICE_URL_MASK", EBI_REFERENCE_SERVICE_URL_MASK);
+        result.put("CRAM_REFERENCE_STORE", CRAM_REFERENCE_STORE);
         result.put("CUSTOM_READER_FACTORY", CUSTOM_READER_FACTORY);
         result.put("SAM_FLAG_FIELD_FORMAT", SAM_FLAG_FIELD_FORMAT);
         result.put("DISABLE_SNAPPY_COMPRESSOR", DISABLE_SNAPPY_COMPRESSOR);
+        result.put("USE_BGZF_BLOCK_CACHE", USE_BGZF_BLOCK_CACHE);
+        result.put("TEMP_STREAM_CODEC", TEMP_STREAM_CODEC);
         return Collections.unmodifiableSortedMap(result);
     }
 
@@ -0,0 +1,213 @@
+package htsjdk.samtools;
+
+import htsjdk.samtools.seekablestream.SeekablePathStream;
+import htsjdk.samtools.util.BinaryCodec;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.CloserUtil;
+import htsjdk.samtools.util.RuntimeEOFException;
+import htsjdk.samtools.util.RuntimeIOException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the records of a BAM file as {@link RawBAMRecord}s, without decoding them.
+ * <p>
+ * For example, to copy the reads of a region that are not duplicates:
+ * <pre>{@code
+ *     try (final RawBAMFileReader reader = new RawBAMFileReader(input);
+ *          final RawBAMFileWriter writer = new SAMFileWriterFactory().makeRawBAMWriter(reader.getFileHeader(), output);
+ *          final CloseableIterator<RawBAMRecord> records = reader.query(intervals, false)) {
+ *         while (records.hasNext()) {
+ *             final RawBAMRecord record = records.next();
+ *             if ((record.getFlags() & SAMFlag.DUPLICATE_READ.intValue()) == 0) {
+ *                 writer.addRecord(record);
+ *             }
+ *         }
+ *     }
+ * }</pre>
+ * As with {@link SamReader}, only one iterator may be open at a time.
+ */
+public class RawBAMFileReader implements Closeable {
+    private final Path path;
+    private final Path indexPath;
+    private final BlockCompressedInputStream stream;
+    private final BinaryCodec codec;
+    private final SAMFileHeader header;
+    private final long firstRecordPosition;
+    private BAMIndex index = null;
+    private RawRecordIterator currentIterator = null;
+
+    public RawBAMFileReader(final File bam) {
+        this(bam.toPath());
+    }
+
+    /**
+     * Open a BAM file, with its index if there is one next to it
+     */
+    public RawBAMFileReader(final Path bam) {
+        this(bam, SamFiles.findIndex(bam));
+    }
+
+    /**
+     * @param bam   the BAM file
+     * @param index its index, or null if queries are not needed
+     */
+    public RawBAMFileReader(final Path bam, final Path index) {
+        this.path = bam;
+        this.indexPath = index;
+        try {
+            stream = new BlockCompressedInputStream(new SeekablePathStream(bam));
+            codec = new BinaryCodec(stream);
+            header = BAMFileReader.readHeader(codec, ValidationStringency.DEFAULT_STRINGENCY, bam.toString());
+        } catch (final IOException e) {
+            throw new RuntimeIOException("Unable to open " + bam, e);
+        }
+        firstRecordPosition = stream.getFilePointer();
+    }
+
+    public SAMFileHeader getFileHeader() {
+        return header;
+    }
+
+    public boolean hasIndex() {
+        return indexPath != null;
+    }
+
+    private BAMIndex getIndex() {
+        if (!hasIndex()) {
+            throw new SAMException("No index is available for " + path);
+        }
+        if (index == null) {
+            index = new CachingBAMFileIndex(indexPath.toFile(), header.getSequenceDictionary());
+        }
+        return index;
+    }
+
+    /**
+     * @return all the records of the file, in file order
+     */
+    public CloseableIterator<RawBAMRecord> iterator() {
+        return new RawRecordIterator(new long[]{firstRecordPosition, Long.MAX_VALUE}, null);
+    }
+
+    /**
+     * Use the index to read the records overlapping or contained in the intervals.
+     *
+     * @param intervals the intervals, sorted and merged as by {@link QueryInterval#optimizeIntervals(QueryInterval[])}
+     * @param contained if true, return the records contained in an interval, otherwise the overlapping ones
+     */
+    public CloseableIterator<RawBAMRecord> query(final QueryInterval[] intervals, final boolean contained) {
+        final BAMFileSpan span = BAMFileReader.getFileSpan(intervals, getIndex());
+        return new RawRecordIterator(span == null ? new long[0] : span.toCoordinateArray(),
+                new BAMQueryMultipleIntervalsIteratorFilter(intervals, contained));
+    }
+
+    @Override
+    public void close() {
+        if (currentIterator != null) {
+            currentIterator.close();
+        }
+        if (index != null) {
+            index.close();
+        }
+        CloserUtil.close(stream);
+    }
+
+    /**
+     * Reads the records of chunks of the file, and keeps those that pass the filter, if any
+     */
+    private class RawRecordIterator implements CloseableIterator<RawBAMRecord> {
+        private final long[] filePointers;
+        private final BAMQueryMultipleIntervalsIteratorFilter filter;
+        private int filePointerIndex = 0;
+        private long filePointerLimit = -1;
+        private RawBAMRecord next;
+
+        RawRecordIterator(final long[] filePointers, final BAMQueryMultipleIntervalsIteratorFilter filter) {
+            if (currentIterator != null) {
+                throw new IllegalStateException("Iteration in progress");
+            }
+            currentIterator = this;
+            this.filePointers = filePointers;
+            this.filter = filter;
+            next = advance();
+        }
+
+        private RawBAMRecord readRecord() throws IOException {
+            // Advance to next file block if necessary
+            while (stream.getFilePointer() >= filePointerLimit) {
+                if (filePointerIndex >= filePointers.length) {
+                    return null;
+                }
+                stream.seek(filePointers[filePointerIndex++]);
+                filePointerLimit = filePointers[filePointerIndex++];
+            }
+            final int blockSize;
+            try {
+                blockSize = codec.readInt();
+            } catch (final RuntimeEOFException e) {
+                return null;
+            }
+            if (blockSize < BAMFileConstants.FIXED_BLOCK_SIZE) {
+                throw new SAMFormatException("Invalid record length: " + blockSize + " in " + path);
+            }
+            final byte[] data = new byte[blockSize];
+            codec.readBytes(data);
+            return new RawBAMRecord(header, data);
+        }
+
+        private RawBAMRecord advance() {
+            try {
+                while (true) {
+                    final RawBAMRecord record = readRecord();
+                    if (record == null || filter == null) {
+                        return record;
+                    }
+                    final int alignmentStart = record.getAlignmentStart();
+                    // an unmapped read placed with its mate is at its start
+                    final int alignmentEnd = record.getReadUnmappedFlag() && alignmentStart != SAMRecord.NO_ALIGNMENT_START ?
+                            alignmentStart : record.getAlignmentEnd();
+                    switch (filter.compareToFilter(record.getReferenceIndex(), alignmentStart, alignmentEnd)) {
+                        case MATCHES_FILTER: return record;
+                        case STOP_ITERATION: return null;
+                        case CONTINUE_ITERATION: break; // keep looping
+                        default: throw new SAMException("Unexpected return from compareToFilter");
+                    }
+                }
+            } catch (final IOException e) {
+                throw new RuntimeIOException("Unable to read " + path, e);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (currentIterator != this) {
+                throw new IllegalStateException("Iterator has been closed");
+            }
+            return next != null;
+        }
+
+        @Override
+        public RawBAMRecord next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final RawBAMRecord ret = next;
+            next = advance();
+            return ret;
+        }
+
+        @Override
+        public void close() {
+            if (currentIterator == this) {
+                currentIterator = null;
+            }
+            next = null;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package htsjdk.samtools;
+
+import java.io.Closeable;
+
+/**
+ * Writes {@link RawBAMRecord}s to a BAM file as they were read, without decoding and re-encoding them, for tools
+ * that only filter or subset records.  Create one with {@link SAMFileWriterFactory#makeRawBAMWriter}.
+ * <p>
+ * The records must be read from files with the same sequence dictionary as the header of this writer, since their
+ * reference indices are copied, and must be added in the order of the header.  The index is built as the records
+ * are written if the factory creates one.
+ */
+public class RawBAMFileWriter implements Closeable {
+    private final BAMFileWriter writer;
+
+    RawBAMFileWriter(final BAMFileWriter writer) {
+        this.writer = writer;
+    }
+
+    public SAMFileHeader getFileHeader() {
+        return writer.getFileHeader();
+    }
+
+    /**
+     * Append the bytes of a record to the file.
+     *
+     * @throws IllegalArgumentException if the record is from a file with another sequence dictionary, or is out of
+     * coordinate order in a coordinate-sorted file
+     */
+    public void addRecord(final RawBAMRecord record) {
+        writer.writeRawRecord(record);
+    }
+
+    /**
+     * Must be called or else file will likely be defective.
+     */
+    @Override
+    public void close() {
+        writer.close();
+    }
+}
@@ -0,0 +1,223 @@
+package htsjdk.samtools;
+
+import htsjdk.samtools.util.StringUtil;
+
+/**
+ * A BAM record kept in its binary form, as read from the file.
+ * <p>
+ * The fixed-size fields are read from the bytes when asked for, and tags are found by scanning the tag block, so
+ * that records which are only filtered or copied, for example by region, flags or read group, are never decoded
+ * into a {@link SAMRecord}.  Records are read by {@link RawBAMFileReader} and written unchanged by
+ * {@link RawBAMFileWriter}, and can be decoded with {@link #toSAMRecord()} when needed.
+ */
+public class RawBAMRecord {
+    // offsets of the fixed-size fields, after the block_size
+    private static final int REFERENCE_OFFSET = 0;
+    private static final int POSITION_OFFSET = 4;
+    private static final int READ_NAME_LENGTH_OFFSET = 8;
+    private static final int MAPPING_QUALITY_OFFSET = 9;
+    private static final int BIN_OFFSET = 10;
+    private static final int CIGAR_LENGTH_OFFSET = 12;
+    private static final int FLAGS_OFFSET = 14;
+    private static final int READ_LENGTH_OFFSET = 16;
+    private static final int MATE_REFERENCE_OFFSET = 20;
+    private static final int MATE_POSITION_OFFSET = 24;
+    private static final int INSERT_SIZE_OFFSET = 28;
+
+    private final SAMFileHeader header;
+    private final byte[] data;
+
+    /**
+     * @param header header of the file the record was read from
+     * @param data   the record, without its leading block_size
+     */
+    RawBAMRecord(final SAMFileHeader header, final byte[] data) {
+        if (data.length < BAMFileConstants.FIXED_BLOCK_SIZE) {
+            throw new SAMFormatException("Invalid record length: " + data.length);
+        }
+        this.header = header;
+        this.data = data;
+    }
+
+    /**
+     * @return the header of the file the record was read from, which defines its reference indices
+     */
+    public SAMFileHeader getHeader() {
+        return header;
+    }
+
+    /**
+     * @return the bytes of the record, without its leading block_size.  Do not modify.
+     */
+    byte[] getData() {
+        return data;
+    }
+
+    private int getInt(final int offset) {
+        return (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8 | (data[offset + 2] & 0xFF) << 16 | data[offset + 3] << 24;
+    }
+
+    private int getUShort(final int offset) {
+        return (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8;
+    }
+
+    public int getReferenceIndex() {
+        return getInt(REFERENCE_OFFSET);
+    }
+
+    /**
+     * @return 1-based start, or {@link SAMRecord#NO_ALIGNMENT_START}
+     */
+    public int getAlignmentStart() {
+        return getInt(POSITION_OFFSET) + 1;
+    }
+
+    public int getMappingQuality() {
+        return data[MAPPING_QUALITY_OFFSET] & 0xFF;
+    }
+
+    public int getIndexingBin() {
+        return getUShort(BIN_OFFSET);
+    }
+
+    public int getFlags() {
+        return getUShort(FLAGS_OFFSET);
+    }
+
+    public boolean getReadUnmappedFlag() {
+        return (getFlags() & SAMFlag.READ_UNMAPPED.intValue()) != 0;
+    }
+
+    public int getReadLength() {
+        return getInt(READ_LENGTH_OFFSET);
+    }
+
+    public int getMateReferenceIndex() {
+        return getInt(MATE_REFERENCE_OFFSET);
+    }
+
+    /**
+     * @return 1-based start of the mate, or {@link SAMRecord#NO_ALIGNMENT_START}
+     */
+    public int getMateAlignmentStart() {
+        return getInt(MATE_POSITION_OFFSET) + 1;
+    }
+
+    public int getInferredInsertSize() {
+        return getInt(INSERT_SIZE_OFFSET);
+    }
+
+    private int getReadNameLength() {
+        return data[READ_NAME_LENGTH_OFFSET] & 0xFF;
+    }
+
+    private int getCigarLength() {
+        return getUShort(CIGAR_LENGTH_OFFSET);
+    }
+
+    public String getReadName() {
+        // without the terminating null
+        return StringUtil.bytesToString(data, BAMFileConstants.FIXED_BLOCK_SIZE, getReadNameLength() - 1);
+    }
+
+    /**
+     * @return 1-based inclusive end of the alignment from the cigar, or {@link SAMRecord#NO_ALIGNMENT_START} if the
+     * read is unmapped, as {@link SAMRecord#getAlignmentEnd()}
+     */
+    public int getAlignmentEnd() {
+        if (getReadUnmappedFlag()) {
+            return SAMRecord.NO_ALIGNMENT_START;
+        }
+        final int cigarOffset = BAMFileConstants.FIXED_BLOCK_SIZE + getReadNameLength();
+        int referenceLength = 0;
+        for (int i = 0; i < getCigarLength(); i++) {
+            final int operation = getInt(cigarOffset + 4 * i);
+            if (CigarOperator.binaryToEnum(operation & 0xF).consumesReferenceBases()) {
+                referenceLength += operation >>> 4;
+            }
+        }
+        return getAlignmentStart() + referenceLength - 1;
+    }
+
+    /**
+     * Find a tag by scanning the tags of the record, and decode its value only
+     *
+     * @param tag two-character tag name
+     * @return the value of the tag, as {@link SAMRecord#getAttribute(String)} returns it, or null if the record does
+     * not have the tag
+     */
+    public Object getAttribute(final String tag) {
+        if (tag.length() != 2) {
+            throw new IllegalArgumentException("Tag name must be 2 characters: " + tag);
+        }
+        final int readLength = getReadLength();
+        int offset = BAMFileConstants.FIXED_BLOCK_SIZE + getReadNameLength() + 4 * getCigarLength() +
+                (readLength + 1) / 2 + readLength;
+        while (offset < data.length) {
+            final int size = 3 + valueSize(data[offset + 2], offset + 3);
+            if (data[offset] == tag.charAt(0) && data[offset + 1] == tag.charAt(1)) {
+                return BinaryTagCodec.readTags(data, offset, size, ValidationStringency.SILENT).value;
+            }
+            offset += size;
+        }
+        return null;
+    }
+
+    /**
+     * @return the read group of the record, or null if it does not have one
+     */
+    public String getReadGroup() {
+        return (String) getAttribute(SAMTag.RG.name());
+    }
+
+    /**
+     * @return the size of a tag value of the given type starting at offset
+     */
+    private int valueSize(final byte type, final int offset) {
+        switch (type) {
+            case 'A':
+            case 'c':
+            case 'C':
+                return 1;
+            case 's':
+            case 'S':
+                return 2;
+            case 'i':
+            case 'I':
+            case 'f':
+                return 4;
+            case 'Z':
+            case 'H':
+                int end = offset;
+                while (data[end] != 0) {
+                    end++;
+                }
+                return end - offset + 1;
+            case 'B':
+                return 5 + getInt(offset + 1) * valueSize(data[offset], offset);
+            default:
+                throw new SAMFormatException("Unrecognized tag type " + (char) type + " in record " + getReadName());
+        }
+    }
+
+    /**
+     * @return the record decoded into a {@link SAMRecord}, with the same header
+     */
+    public SAMRecord toSAMRecord() {
+        final byte[] restOfRecord = new byte[data.length - BAMFileConstants.FIXED_BLOCK_SIZE];
+        System.arraycopy(data, BAMFileConstants.FIXED_BLOCK_SIZE, restOfRecord, 0, restOfRecord.length);
+        final BAMRecord record = DefaultSAMRecordFactory.getInstance().createBAMRecord(header,
+                getReferenceIndex(), getAlignmentStart(), (short) getReadNameLength(), (short) getMappingQuality(),
+                getIndexingBin(), getCigarLength(), getFlags(), getReadLength(), getMateReferenceIndex(),
+                getMateAlignmentStart(), getInferredInsertSize(), restOfRecord);
+        if (header != null) {
+            record.setHeader(header);
+        }
+        return record;
+    }
+
+    @Override
+    public String toString() {
+        return getReadName() + " " + getReferenceIndex() + ":" + getAlignmentStart();
+    }
+}
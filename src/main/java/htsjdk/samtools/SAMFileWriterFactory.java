@@ -282,6 +282,35 @@ public class SAMFileWriterFactory implements Cloneable {
      */
     public SAMFileWriter makeBAMWriter(final SAMFileHeader header, final boolean presorted, final Path outputPath,
         final int compressionLevel) {
+        final BAMFileWriter ret = createBAMFileWriter(header, presorted, outputPath, compressionLevel);
+        if (this.useAsyncIo) return new AsyncSAMFileWriter(ret, this.asyncOutputBufferSize);
+        else return ret;
+    }
+
+    /**
+     * Create a writer of raw BAM records, which copies {@link RawBAMRecord}s read by a {@link RawBAMFileReader}
+     * without decoding and re-encoding them.  Uses default compression level, and creates an index and an MD5 file
+     * as makeBAMWriter does.  Records are never sorted, and must be added in the order of the header.
+     *
+     * @param header     entire header, with the same sequence dictionary as the files the records are read from.
+     * @param outputPath where to write the output.
+     */
+    public RawBAMFileWriter makeRawBAMWriter(final SAMFileHeader header, final Path outputPath) {
+        return new RawBAMFileWriter(createBAMFileWriter(header, true, outputPath, this.getCompressionLevel()));
+    }
+
+    /**
+     * Create a writer of raw BAM records.  Uses default compression level.
+     *
+     * @param header     entire header, with the same sequence dictionary as the files the records are read from.
+     * @param outputFile where to write the output.
+     */
+    public RawBAMFileWriter makeRawBAMWriter(final SAMFileHeader header, final File outputFile) {
+        return makeRawBAMWriter(header, outputFile.toPath());
+    }
+
+    private BAMFileWriter createBAMFileWriter(final SAMFileHeader header, final boolean presorted, final Path outputPath,
+                                              final int compressionLevel) {
         try {
             final boolean createMd5File = this.createMd5File && IOUtil.isRegularPath(outputPath);
             if (this.createMd5File && !createMd5File) {
@@ -295,9 +324,7 @@ public class SAMFileWriterFactory implements Cloneable {
                 log.warn("Cannot create index for BAM because output file is not a regular file: " + outputPath.toUri());
             }
             initializeBAMWriter(ret, header, presorted, createIndex);
-
-            if (this.useAsyncIo) return new AsyncSAMFileWriter(ret, this.asyncOutputBufferSize);
-            else return ret;
+            return ret;
         } catch (final IOException ioe) {
             throw new RuntimeIOException("Error opening file: " + outputPath.toUri(), ioe);
         }
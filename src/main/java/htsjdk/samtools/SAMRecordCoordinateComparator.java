@@ -23,6 +23,8 @@
  */
 package htsjdk.samtools;
 
+import htsjdk.samtools.util.SortingCollection;
+
 import java.io.Serializable;
 
 /**
@@ -40,7 +42,7 @@ import java.io.Serializable;
  * if A < B && B < C, then A < C
  *
  */
-public class SAMRecordCoordinateComparator implements SAMRecordComparator, Serializable {
+public class SAMRecordCoordinateComparator implements SAMRecordComparator, SortingCollection.KeyPrefix<SAMRecord>, Serializable {
     private static final long serialVersionUID = 1L;
 
     @Override
@@ -104,4 +106,17 @@ public class SAMRecordCoordinateComparator implements SAMRecordComparator, Seria
         }
         return samRecord1.getAlignmentStart() - samRecord2.getAlignmentStart();
     }
+
+    /**
+     * @return the reference index and alignment start of mapped records, which {@link #fileOrderCompare} sorts on, and
+     * the same prefix, after all the others, for every record without a reference index
+     */
+    @Override
+    public long getKeyPrefix(final SAMRecord samRecord) {
+        final int refIndex = samRecord.getReferenceIndex();
+        if (refIndex == -1) {
+            return Long.MAX_VALUE;
+        }
+        return (long) refIndex << 32 | (samRecord.getAlignmentStart() & 0xFFFFFFFFL);
+    }
 }
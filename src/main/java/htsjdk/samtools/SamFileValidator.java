@@ -53,8 +53,10 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.util.AbstractMap;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -62,6 +64,11 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Validates SAM files as follows:
@@ -76,6 +83,9 @@ import java.util.Set;
  * </ul>
  * </li>
  * </ul>
+ * The checks of each record that do not depend on the other records can run on worker threads, see
+ * {@link #setValidationThreads(int)}, while the sort order, the mates and the NM tags against the reference are still
+ * checked on the calling thread, in the order of the records, so that the report is the same.
  *
  * @author Doug Voet
  * @see SAMRecord#isValid()
@@ -105,6 +115,19 @@ public class SamFileValidator {
     private int qualityNotStoredErrorCount = 0;
     public static final int MAX_QUALITY_NOT_STORED_ERRORS = 100;
 
+    /**
+     * Number of records checked at a time by a worker thread.
+     */
+    public static final int VALIDATION_BATCH_SIZE = 1000;
+
+    private static final AtomicInteger threadsCreated = new AtomicInteger(0);
+    private int validationThreads = 0;
+
+    /**
+     * @param out          where the report is written
+     * @param maxTempFiles the most reference sequences whose unmatched mates are spilled to temporary files at a time,
+     *                     for coordinate-sorted files
+     */
     public SamFileValidator(final PrintWriter out, final int maxTempFiles) {
         this.out = out;
         this.maxTempFiles = maxTempFiles;
@@ -156,6 +179,24 @@ public class SamFileValidator {
         return skipMateValidation;
     }
 
+    /**
+     * Sets the number of threads checking the records, in batches of {@link #VALIDATION_BATCH_SIZE} records, besides
+     * the calling thread.  The records are still read, and checked against each other, on the calling thread.
+     * Set to 0, the default, to check the records on the calling thread only.
+     *
+     * @param validationThreads the number of threads checking records
+     */
+    public void setValidationThreads(final int validationThreads) {
+        if (validationThreads < 0) {
+            throw new IllegalArgumentException("Number of validation threads cannot be negative: " + validationThreads);
+        }
+        this.validationThreads = validationThreads;
+    }
+
+    public int getValidationThreads() {
+        return validationThreads;
+    }
+
     /**
      * Outputs validation summary report to out.
      *
@@ -305,53 +346,14 @@ public class SamFileValidator {
         final ProgressLogger progress = new ProgressLogger(log, 10000000, "Validated Read");
         final QualityEncodingDetector qualityDetector = new QualityEncodingDetector();
         try {
-            while (iter.hasNext()) {
-                final SAMRecord record = iter.next();
-
-                qualityDetector.add(record);
-
-                final long recordNumber = progress.getCount() + 1;
-                final Collection<SAMValidationError> errors = record.isValid();
-                if (errors != null) {
-                    for (final SAMValidationError error : errors) {
-                        error.setRecordNumber(recordNumber);
-                        addError(error);
-                    }
+            if (validationThreads == 0) {
+                while (iter.hasNext()) {
+                    final RecordChecks checks = new RecordChecks(iter.next(), progress.getCount() + 1);
+                    checkRecord(checks, header);
+                    validateRecord(checks, qualityDetector, progress);
                 }
-
-                validateMateFields(record, recordNumber);
-                final boolean hasValidSortOrder = validateSortOrder(record, recordNumber);
-                validateReadGroup(record, header);
-                final boolean cigarIsValid = validateCigar(record, recordNumber);
-                if (cigarIsValid) {
-                    try {
-                        validateNmTag(record, recordNumber);
-                    } catch (SAMException e) {
-                        if (hasValidSortOrder) {
-                            // If a CRAM file has an invalid sort order, the ReferenceFileWalker will throw a
-                            // SAMException due to an out of order request when retrieving reference bases during NM
-                            // tag validation; rethrow the exception only if the sort order is valid, otherwise
-                            // swallow the exception and carry on validating
-                            throw e;
-                        }
-                    }
-                }
-                validateSecondaryBaseCalls(record, recordNumber);
-                validateTags(record, recordNumber);
-                if (sequenceDictionaryEmptyAndNoWarningEmitted && !record.getReadUnmappedFlag()) {
-                    addError(new SAMValidationError(Type.MISSING_SEQUENCE_DICTIONARY, "Sequence dictionary is empty", null));
-                    sequenceDictionaryEmptyAndNoWarningEmitted = false;
-
-                }
-
-                if ((qualityNotStoredErrorCount++ < MAX_QUALITY_NOT_STORED_ERRORS) && record.getBaseQualityString().equals("*")){
-                    addError(new SAMValidationError(Type.QUALITY_NOT_STORED,
-                            "QUAL field is set to * (unspecified quality scores), this is allowed by the SAM" +
-                                    " specification but many tools expect reads to include qualities ",
-                            record.getReadName(), recordNumber));
-                }
-
-                progress.record(record);
+            } else {
+                validateRecordsInParallel(iter, header, qualityDetector, progress);
             }
 
             try {
@@ -377,13 +379,179 @@ public class SamFileValidator {
         }
     }
 
-    private void validateReadGroup(final SAMRecord record, final SAMFileHeader header) {
+    /**
+     * Check the records in batches on the worker threads, and report their errors in order on this thread, with at
+     * most two batches per thread being checked at a time.
+     */
+    private void validateRecordsInParallel(final SAMRecordIterator iter, final SAMFileHeader header,
+                                           final QualityEncodingDetector qualityDetector, final ProgressLogger progress) {
+        final int threadNumber = threadsCreated.incrementAndGet();
+        final AtomicInteger workerNumber = new AtomicInteger(0);
+        final ExecutorService checkers = Executors.newFixedThreadPool(validationThreads, runnable -> {
+            final Thread thread = new Thread(runnable, "SamFileValidator" + threadNumber + "-checker" + workerNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        final Deque<Future<CheckedBatch>> pending = new ArrayDeque<>();
+        try {
+            long recordNumber = 0;
+            List<RecordChecks> batch = new ArrayList<>(VALIDATION_BATCH_SIZE);
+            while (true) {
+                final SAMRecord record;
+                try {
+                    if (!iter.hasNext()) {
+                        break;
+                    }
+                    record = iter.next();
+                } catch (SAMFormatException | FileTruncatedException e) {
+                    // report the records read before the failure, as when checking them on this thread
+                    submitBatch(checkers, pending, batch, header);
+                    validateBatches(pending, 0, qualityDetector, progress);
+                    throw e;
+                }
+                batch.add(new RecordChecks(record, ++recordNumber));
+                if (batch.size() == VALIDATION_BATCH_SIZE) {
+                    submitBatch(checkers, pending, batch, header);
+                    batch = new ArrayList<>(VALIDATION_BATCH_SIZE);
+                    validateBatches(pending, 2 * validationThreads, qualityDetector, progress);
+                }
+            }
+            submitBatch(checkers, pending, batch, header);
+            validateBatches(pending, 0, qualityDetector, progress);
+        } finally {
+            checkers.shutdownNow();
+        }
+    }
+
+    private void submitBatch(final ExecutorService checkers, final Deque<Future<CheckedBatch>> pending,
+                             final List<RecordChecks> batch, final SAMFileHeader header) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        pending.add(checkers.submit(() -> {
+            for (int i = 0; i < batch.size(); i++) {
+                try {
+                    checkRecord(batch.get(i), header);
+                } catch (final RuntimeException e) {
+                    // the records after a failure are not checked, as when checking them on this thread
+                    return new CheckedBatch(batch.subList(0, i), e);
+                }
+            }
+            return new CheckedBatch(batch, null);
+        }));
+    }
+
+    /**
+     * Report the errors of the oldest batches until at most maxPending batches are left. If checking a record failed,
+     * the errors of the records before it are reported before its failure is thrown.
+     */
+    private void validateBatches(final Deque<Future<CheckedBatch>> pending, final int maxPending,
+                                 final QualityEncodingDetector qualityDetector, final ProgressLogger progress) {
+        while (pending.size() > maxPending) {
+            final CheckedBatch batch;
+            try {
+                batch = pending.remove().get();
+            } catch (final InterruptedException e) {
+                throw new RuntimeException("Interrupted waiting for checked records", e);
+            } catch (final ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof Error) throw (Error) cause;
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new SAMException("Unable to check records", cause);
+            }
+            for (final RecordChecks checks : batch.checked) {
+                validateRecord(checks, qualityDetector, progress);
+            }
+            if (batch.failure != null) {
+                throw batch.failure;
+            }
+        }
+    }
+
+    /**
+     * Run the checks of the record that do not depend on the other records, nor on the reference, which may be done
+     * on any thread as long as nothing else accesses the record meanwhile.
+     */
+    private void checkRecord(final RecordChecks checks, final SAMFileHeader header) {
+        final SAMRecord record = checks.record;
+        final long recordNumber = checks.recordNumber;
+        final Collection<SAMValidationError> errors = record.isValid();
+        if (errors != null) {
+            for (final SAMValidationError error : errors) {
+                error.setRecordNumber(recordNumber);
+                checks.add(error);
+            }
+        }
+        checks.validEnd = checks.size();
+        if (record.getReadPairedFlag() && !record.isSecondaryOrSupplementary()) {
+            validateMateCigar(record, recordNumber, checks);
+        }
+        checks.mateCigarEnd = checks.size();
+        validateReadGroup(record, header, checks);
+        checks.cigarIsValid = validateCigar(record, recordNumber, checks);
+        checks.cigarEnd = checks.size();
+        validateSecondaryBaseCalls(record, recordNumber, checks);
+        validateTags(record, recordNumber, checks);
+    }
+
+    /**
+     * Report the errors found by {@link #checkRecord}, along with those of the checks against the previous records
+     * and the reference, in the same order as if the record was checked at once.
+     */
+    private void validateRecord(final RecordChecks checks, final QualityEncodingDetector qualityDetector,
+                                final ProgressLogger progress) {
+        final SAMRecord record = checks.record;
+        final long recordNumber = checks.recordNumber;
+
+        qualityDetector.add(record);
+        addErrors(checks, 0, checks.validEnd);
+
+        validateMateFields(record, recordNumber, checks);
+        final boolean hasValidSortOrder = validateSortOrder(record, recordNumber);
+        addErrors(checks, checks.mateCigarEnd, checks.cigarEnd);
+        if (checks.cigarIsValid) {
+            try {
+                validateNmTag(record, recordNumber);
+            } catch (SAMException e) {
+                if (hasValidSortOrder) {
+                    // If a CRAM file has an invalid sort order, the ReferenceFileWalker will throw a
+                    // SAMException due to an out of order request when retrieving reference bases during NM
+                    // tag validation; rethrow the exception only if the sort order is valid, otherwise
+                    // swallow the exception and carry on validating
+                    throw e;
+                }
+            }
+        }
+        addErrors(checks, checks.cigarEnd, checks.size());
+        if (sequenceDictionaryEmptyAndNoWarningEmitted && !record.getReadUnmappedFlag()) {
+            addError(new SAMValidationError(Type.MISSING_SEQUENCE_DICTIONARY, "Sequence dictionary is empty", null));
+            sequenceDictionaryEmptyAndNoWarningEmitted = false;
+
+        }
+
+        if ((qualityNotStoredErrorCount++ < MAX_QUALITY_NOT_STORED_ERRORS) && record.getBaseQualityString().equals("*")){
+            addError(new SAMValidationError(Type.QUALITY_NOT_STORED,
+                    "QUAL field is set to * (unspecified quality scores), this is allowed by the SAM" +
+                            " specification but many tools expect reads to include qualities ",
+                    record.getReadName(), recordNumber));
+        }
+
+        progress.record(record);
+    }
+
+    private void addErrors(final RecordChecks checks, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            addError(checks.errors.get(i));
+        }
+    }
+
+    private void validateReadGroup(final SAMRecord record, final SAMFileHeader header, final RecordChecks checks) {
         final SAMReadGroupRecord rg = record.getReadGroup();
         if (rg == null) {
-            addError(new SAMValidationError(Type.RECORD_MISSING_READ_GROUP,
+            checks.add(new SAMValidationError(Type.RECORD_MISSING_READ_GROUP,
                     "A record is missing a read group", record.getReadName()));
         } else if (header.getReadGroup(rg.getId()) == null) {
-            addError(new SAMValidationError(Type.READ_GROUP_NOT_FOUND,
+            checks.add(new SAMValidationError(Type.READ_GROUP_NOT_FOUND,
                     "A record has a read group not found in the header: ",
                     record.getReadName() + ", " + rg.getReadGroupId()));
         }
@@ -392,21 +560,21 @@ public class SamFileValidator {
     /**
      * Report error if a tag value is a Long.
      */
-    private void validateTags(final SAMRecord record, final long recordNumber) {
+    private void validateTags(final SAMRecord record, final long recordNumber, final RecordChecks checks) {
         for (final SAMRecord.SAMTagAndValue tagAndValue : record.getAttributes()) {
             if (tagAndValue.value instanceof Long) {
-                addError(new SAMValidationError(Type.TAG_VALUE_TOO_LARGE,
+                checks.add(new SAMValidationError(Type.TAG_VALUE_TOO_LARGE,
                         "Numeric value too large for tag " + tagAndValue.tag,
                         record.getReadName(), recordNumber));
             }
         }
     }
 
-    private void validateSecondaryBaseCalls(final SAMRecord record, final long recordNumber) {
+    private void validateSecondaryBaseCalls(final SAMRecord record, final long recordNumber, final RecordChecks checks) {
         final String e2 = (String) record.getAttribute(SAMTag.E2.name());
         if (e2 != null) {
             if (e2.length() != record.getReadLength()) {
-                addError(new SAMValidationError(Type.MISMATCH_READ_LENGTH_AND_E2_LENGTH,
+                checks.add(new SAMValidationError(Type.MISMATCH_READ_LENGTH_AND_E2_LENGTH,
                         String.format("E2 tag length (%d) != read length (%d)", e2.length(), record.getReadLength()),
                         record.getReadName(), recordNumber));
             }
@@ -417,7 +585,7 @@ public class SamFileValidator {
                     continue;
                 }
                 if (SequenceUtil.basesEqual(bases[i], secondaryBases[i])) {
-                    addError(new SAMValidationError(Type.E2_BASE_EQUALS_PRIMARY_BASE,
+                    checks.add(new SAMValidationError(Type.E2_BASE_EQUALS_PRIMARY_BASE,
                             String.format("Secondary base call  (%c) == primary base call (%c)",
                                     (char) secondaryBases[i], (char) bases[i]),
                             record.getReadName(), recordNumber));
@@ -427,21 +595,22 @@ public class SamFileValidator {
         }
         final String u2 = (String) record.getAttribute(SAMTag.U2.name());
         if (u2 != null && u2.length() != record.getReadLength()) {
-            addError(new SAMValidationError(Type.MISMATCH_READ_LENGTH_AND_U2_LENGTH,
+            checks.add(new SAMValidationError(Type.MISMATCH_READ_LENGTH_AND_U2_LENGTH,
                     String.format("U2 tag length (%d) != read length (%d)", u2.length(), record.getReadLength()),
                     record.getReadName(), recordNumber));
         }
     }
 
-    private boolean validateCigar(final SAMRecord record, final long recordNumber) {
-        return record.getReadUnmappedFlag() || validateCigar(record, recordNumber, true);
+    private boolean validateCigar(final SAMRecord record, final long recordNumber, final RecordChecks checks) {
+        return record.getReadUnmappedFlag() || validateCigar(record, recordNumber, true, checks);
     }
 
-    private boolean validateMateCigar(final SAMRecord record, final long recordNumber) {
-        return validateCigar(record, recordNumber, false);
+    private boolean validateMateCigar(final SAMRecord record, final long recordNumber, final RecordChecks checks) {
+        return validateCigar(record, recordNumber, false, checks);
     }
 
-    private boolean validateCigar(final SAMRecord record, final long recordNumber, final boolean isReadCigar) {
+    private boolean validateCigar(final SAMRecord record, final long recordNumber, final boolean isReadCigar,
+                                  final RecordChecks checks) {
         final ValidationStringency savedStringency = record.getValidationStringency();
         record.setValidationStringency(ValidationStringency.LENIENT);
         final List<SAMValidationError> errors = isReadCigar ? record.validateCigar(recordNumber) : SAMUtils.validateMateCigar(record, recordNumber);
@@ -451,7 +620,7 @@ public class SamFileValidator {
         }
         boolean valid = true;
         for (final SAMValidationError error : errors) {
-            addError(error);
+            checks.add(error);
             valid = false;
         }
         return valid;
@@ -520,11 +689,11 @@ public class SamFileValidator {
         }
     }
 
-    private void validateMateFields(final SAMRecord record, final long recordNumber) {
+    private void validateMateFields(final SAMRecord record, final long recordNumber, final RecordChecks checks) {
         if (!record.getReadPairedFlag() || record.isSecondaryOrSupplementary()) {
             return;
         }
-        validateMateCigar(record, recordNumber);
+        addErrors(checks, checks.validEnd, checks.mateCigarEnd);
 
         if (skipMateValidation) {
             return;
@@ -689,6 +858,50 @@ public class SamFileValidator {
     public static class ValidationMetrics extends MetricBase {
     }
 
+    /**
+     * A record and the errors found by {@link #checkRecord}, with the end of the errors of each group of checks.
+     */
+    private static final class RecordChecks {
+        private final SAMRecord record;
+        private final long recordNumber;
+        private List<SAMValidationError> errors = null;
+        /** The end of the errors of SAMRecord.isValid(), of the mate cigar, and of the read group and cigar */
+        private int validEnd;
+        private int mateCigarEnd;
+        private int cigarEnd;
+        private boolean cigarIsValid;
+
+        RecordChecks(final SAMRecord record, final long recordNumber) {
+            this.record = record;
+            this.recordNumber = recordNumber;
+        }
+
+        void add(final SAMValidationError error) {
+            if (errors == null) {
+                errors = new ArrayList<>(2);
+            }
+            errors.add(error);
+        }
+
+        int size() {
+            return errors == null ? 0 : errors.size();
+        }
+    }
+
+    /**
+     * The records of a batch checked by a worker thread, up to the first record whose checks failed.
+     */
+    private static final class CheckedBatch {
+        private final List<RecordChecks> checked;
+        /** The failure checking the record after the checked ones, or null if the whole batch was checked */
+        private final RuntimeException failure;
+
+        CheckedBatch(final List<RecordChecks> checked, final RuntimeException failure) {
+            this.checked = checked;
+            this.failure = failure;
+        }
+    }
+
     /**
      * This class is used so we don't have to store the entire SAMRecord in memory while we wait
      * to find a record's mate and also to store the record number.
@@ -824,8 +1037,8 @@ public class SamFileValidator {
     }
 
     private class CoordinateSortedPairEndInfoMap implements PairEndInfoMap {
-        private final CoordinateSortedPairInfoMap<String, PairEndInfo> onDiskMap =
-                new CoordinateSortedPairInfoMap<>(maxTempFiles, new Codec());
+        private final CompactPairInfoMap<PairEndInfo> onDiskMap =
+                new CompactPairInfoMap<>(CompactPairInfoMap.DEFAULT_MAX_BYTES_IN_RAM, maxTempFiles, new Codec());
 
         @Override
         public void put(int mateReferenceIndex, String key, PairEndInfo value) {
@@ -5,9 +5,11 @@ import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.CRAMBAIIndexer;
 import htsjdk.samtools.CRAMCRAIIndexer;
+import htsjdk.samtools.QueryInterval;
 import htsjdk.samtools.cram.encoding.reader.DataReaderFactory;
 import htsjdk.samtools.cram.encoding.reader.RefSeqIdReader;
 import htsjdk.samtools.cram.io.DefaultBitInputStream;
+import htsjdk.samtools.cram.io.ExposedByteArrayInputStream;
 import htsjdk.samtools.cram.structure.*;
 import htsjdk.samtools.seekablestream.SeekableMemoryStream;
 import htsjdk.samtools.seekablestream.SeekableStream;
@@ -24,7 +26,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import java.util.List;
 
@@ -100,7 +106,7 @@ public class CRAIIndex {
         final DataReaderFactory dataReaderFactory = new DataReaderFactory();
         final Map<Integer, InputStream> inputMap = new HashMap<>();
         for (final Integer exId : slice.external.keySet()) {
-            inputMap.put(exId, new ByteArrayInputStream(slice.external.get(exId).getRawContent()));
+            inputMap.put(exId, new ExposedByteArrayInputStream(slice.external.get(exId).getRawContent()));
         }
 
         final RefSeqIdReader reader = new RefSeqIdReader(
@@ -207,6 +213,72 @@ public class CRAIIndex {
         return l;
     }
 
+    /**
+     * Find the slices that may hold records overlapping any of the intervals. Slices matched by several intervals,
+     * or by several entries of a multi-reference slice, are selected once.
+     *
+     * @param list      CRAI entries
+     * @param intervals the query intervals, an end of 0 or less means to the end of the reference sequence
+     * @return the offsets of the selected slices (as in {@link CRAIEntry#sliceOffset}) keyed by the offsets of their
+     * containers, in file order
+     */
+    public static SortedMap<Long, Set<Integer>> getSlicesOverlapping(final List<CRAIEntry> list, final QueryInterval[] intervals) {
+        final Map<Integer, List<CRAIEntry>> bySequence = new HashMap<>();
+        for (final CRAIEntry e : list) {
+            if (e.sequenceId >= 0) {
+                bySequence.computeIfAbsent(e.sequenceId, id -> new ArrayList<>()).add(e);
+            }
+        }
+
+        final Map<Integer, int[]> maxEnds = new HashMap<>();
+        for (final Map.Entry<Integer, List<CRAIEntry>> sequence : bySequence.entrySet()) {
+            final List<CRAIEntry> entries = sequence.getValue();
+            Collections.sort(entries, CRAIEntry.byStart);
+            // running maximum of the entry ends, so that the backward scan below can stop early:
+            final int[] ends = new int[entries.size()];
+            int maxEnd = 0;
+            for (int i = 0; i < ends.length; i++) {
+                maxEnd = Math.max(maxEnd, getEnd(entries.get(i)));
+                ends[i] = maxEnd;
+            }
+            maxEnds.put(sequence.getKey(), ends);
+        }
+
+        final SortedMap<Long, Set<Integer>> slices = new TreeMap<>();
+        for (final QueryInterval interval : intervals) {
+            final List<CRAIEntry> entries = bySequence.get(interval.referenceIndex);
+            if (entries == null) {
+                continue;
+            }
+            final int[] ends = maxEnds.get(interval.referenceIndex);
+            final int queryEnd = interval.end <= 0 ? Integer.MAX_VALUE : interval.end;
+
+            // find the last entry starting at or before the end of the interval:
+            int low = 0;
+            int high = entries.size() - 1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                if (entries.get(mid).alignmentStart <= queryEnd) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            for (int i = high; i >= 0 && ends[i] >= interval.start; i--) {
+                final CRAIEntry e = entries.get(i);
+                if (getEnd(e) >= interval.start) {
+                    slices.computeIfAbsent(e.containerStartOffset, offset -> new HashSet<>()).add(e.sliceOffset);
+                }
+            }
+        }
+        return slices;
+    }
+
+    // one past the last aligned base, to allow for slice spans written one base short by older versions
+    private static int getEnd(final CRAIEntry e) {
+        return e.alignmentStart + Math.max(e.alignmentSpan, 0);
+    }
+
     public static CRAIEntry getLeftmost(final List<CRAIEntry> list) {
         if (list == null || list.isEmpty()) {
             return null;
@@ -27,6 +27,7 @@ import htsjdk.samtools.cram.encoding.reader.DataReaderFactory;
 import htsjdk.samtools.cram.encoding.reader.DataReaderFactory.DataReaderWithStats;
 import htsjdk.samtools.cram.encoding.reader.RefSeqIdReader;
 import htsjdk.samtools.cram.io.DefaultBitInputStream;
+import htsjdk.samtools.cram.io.ExposedByteArrayInputStream;
 import htsjdk.samtools.cram.structure.CompressionHeader;
 import htsjdk.samtools.cram.structure.Container;
 import htsjdk.samtools.cram.structure.CramCompressionRecord;
@@ -113,7 +114,7 @@ public class ContainerParser {
                 final DataReaderFactory dataReaderFactory = new DataReaderFactory();
                 final Map<Integer, InputStream> inputMap = new HashMap<Integer, InputStream>();
                 for (final Integer exId : slice.external.keySet()) {
-                    inputMap.put(exId, new ByteArrayInputStream(slice.external.get(exId)
+                    inputMap.put(exId, new ExposedByteArrayInputStream(slice.external.get(exId)
                             .getRawContent()));
                 }
 
@@ -154,7 +155,7 @@ public class ContainerParser {
         final Map<Integer, InputStream> inputMap = new HashMap<Integer, InputStream>();
         for (final Integer exId : slice.external.keySet()) {
             log.debug("Adding external data: " + exId);
-            inputMap.put(exId, new ByteArrayInputStream(slice.external.get(exId)
+            inputMap.put(exId, new ExposedByteArrayInputStream(slice.external.get(exId)
                     .getRawContent()));
         }
 
@@ -19,6 +19,7 @@ package htsjdk.samtools.cram.build;
 
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceRecord;
 import htsjdk.samtools.cram.encoding.readfeatures.BaseQualityScore;
 import htsjdk.samtools.cram.encoding.readfeatures.Deletion;
 import htsjdk.samtools.cram.encoding.readfeatures.InsertBase;
@@ -29,6 +30,7 @@ import htsjdk.samtools.cram.encoding.readfeatures.RefSkip;
 import htsjdk.samtools.cram.encoding.readfeatures.SoftClip;
 import htsjdk.samtools.cram.encoding.readfeatures.Substitution;
 import htsjdk.samtools.cram.ref.CRAMReferenceSource;
+import htsjdk.samtools.cram.structure.AlignmentSpan;
 import htsjdk.samtools.cram.structure.CramCompressionRecord;
 import htsjdk.samtools.cram.structure.SubstitutionMatrix;
 import htsjdk.samtools.util.Log;
@@ -36,7 +38,9 @@ import htsjdk.samtools.util.SequenceUtil;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class CramNormalizer {
     private final SAMFileHeader header;
@@ -112,23 +116,40 @@ public class CramNormalizer {
         }
 
         // resolve bases:
+        // ref could be supplied (aka forced) already or needs looking up:
+        // ref.length=0 is a special case of seqId=-2 (multiref)
+        final boolean lookupReference = (ref == null || ref.length == 0) && referenceSource != null;
+        final Map<Integer, byte[]> regionBases = new HashMap<Integer, byte[]>();
+        final Map<Integer, AlignmentSpan> regionSpans = lookupReference ? getReferenceSpans(records) : null;
         for (final CramCompressionRecord record : records) {
             if (record.isSegmentUnmapped())
                 continue;
 
             byte[] refBases = ref;
-            {
-                // ref could be supplied (aka forced) already or needs looking up:
-                // ref.length=0 is a special case of seqId=-2 (multiref)
-                if ((ref == null || ref.length == 0) && referenceSource != null)
-                    refBases = referenceSource.getReferenceBases(
-                            header.getSequence(record.sequenceId), true);
+            int refOffset = refOffset_zeroBased;
+            if (lookupReference) {
+                // only fetch the span of each sequence covered by the records:
+                final AlignmentSpan span = regionSpans.get(record.sequenceId);
+                final SAMSequenceRecord sequence = header.getSequence(record.sequenceId);
+                // a span covering most of the sequence is served by the whole sequence rather than a copy of it:
+                if (span != null && span.getSpan() <= sequence.getSequenceLength() / 2) {
+                    refBases = regionBases.get(record.sequenceId);
+                    if (refBases == null) {
+                        refBases = referenceSource.getReferenceBasesByRegion(
+                                sequence, span.getStart() - 1, span.getSpan());
+                        regionBases.put(record.sequenceId, refBases);
+                    }
+                    refOffset = span.getStart() - 1;
+                } else {
+                    refBases = referenceSource.getReferenceBases(sequence, true);
+                    refOffset = 0;
+                }
             }
 
             if (record.isUnknownBases()) {
                 record.readBases = SAMRecord.NULL_SEQUENCE;
             } else
-                record.readBases = restoreReadBases(record, refBases, refOffset_zeroBased,
+                record.readBases = restoreReadBases(record, refBases, refOffset,
                         substitutionMatrix);
         }
 
@@ -137,6 +158,38 @@ public class CramNormalizer {
         restoreQualityScores(defaultQualityScore, records);
     }
 
+    /**
+     * Get the reference spans needed to restore the read bases of the given records, keyed by reference sequence id.
+     * The spans are an upper bound: every reference base used by a record lies within the span of its sequence.
+     *
+     * @param records the records to scan
+     * @return 1-based spans per reference sequence id, sequences without placed records are absent
+     */
+    public static Map<Integer, AlignmentSpan> getReferenceSpans(final List<CramCompressionRecord> records) {
+        final Map<Integer, AlignmentSpan> spans = new HashMap<Integer, AlignmentSpan>();
+        for (final CramCompressionRecord record : records) {
+            if (record.isSegmentUnmapped() || record.sequenceId < 0 || record.alignmentStart < 1)
+                continue;
+
+            int span = record.readLength;
+            if (record.readFeatures != null) {
+                for (final ReadFeature feature : record.readFeatures) {
+                    if (feature.getOperator() == Deletion.operator)
+                        span += ((Deletion) feature).getLength();
+                    else if (feature.getOperator() == RefSkip.operator)
+                        span += ((RefSkip) feature).getLength();
+                }
+            }
+
+            final AlignmentSpan existing = spans.get(record.sequenceId);
+            if (existing == null)
+                spans.put(record.sequenceId, new AlignmentSpan(record.alignmentStart, span));
+            else
+                existing.addSingle(record.alignmentStart, span);
+        }
+        return spans;
+    }
+
     private static void restoreMateInfo(final CramCompressionRecord record) {
         if (record.next == null) {
 
@@ -0,0 +1,66 @@
+package htsjdk.samtools.cram.build;
+
+import htsjdk.samtools.cram.structure.Container;
+import htsjdk.samtools.cram.structure.ContainerIO;
+import htsjdk.samtools.cram.structure.CramHeader;
+import htsjdk.samtools.seekablestream.SeekableStream;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+
+/**
+ * An iterator of CRAM containers read from a {@link SeekableStream}, holding only selected slices. The selection maps
+ * container offsets to the offsets of the slices to read within each container, for example as found with
+ * {@link htsjdk.samtools.cram.CRAIIndex#getSlicesOverlapping}. Containers are visited in file order and the blocks of
+ * slices that are not selected are never read.
+ */
+public class CramSliceContainerIterator implements Iterator<Container> {
+    private final CramHeader cramHeader;
+    private final SeekableStream seekableStream;
+    private final Iterator<Map.Entry<Long, Set<Integer>>> containers;
+    private final long firstContainerOffset;
+
+    private CramSliceContainerIterator(final SeekableStream seekableStream, final SortedMap<Long, Set<Integer>> slices) throws IOException {
+        this.seekableStream = seekableStream;
+        seekableStream.seek(0);
+        this.cramHeader = CramIO.readCramHeader(seekableStream);
+        firstContainerOffset = seekableStream.position();
+        containers = slices.entrySet().iterator();
+    }
+
+    public static CramSliceContainerIterator fromSlices(final SeekableStream seekableStream, final SortedMap<Long, Set<Integer>> slices) throws IOException {
+        return new CramSliceContainerIterator(seekableStream, slices);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return containers.hasNext();
+    }
+
+    @Override
+    public Container next() {
+        final Map.Entry<Long, Set<Integer>> entry = containers.next();
+        try {
+            if (seekableStream.position() != entry.getKey()) seekableStream.seek(entry.getKey());
+            return ContainerIO.readContainer(cramHeader.getVersion(), seekableStream, entry.getValue());
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void remove() {
+        throw new RuntimeException("Not allowed.");
+    }
+
+    public CramHeader getCramHeader() {
+        return cramHeader;
+    }
+
+    public long getFirstContainerOffset() {
+        return firstContainerOffset;
+    }
+}
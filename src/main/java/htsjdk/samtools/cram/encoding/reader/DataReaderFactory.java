@@ -26,6 +26,8 @@ import htsjdk.samtools.cram.encoding.DataSeriesType;
 import htsjdk.samtools.cram.encoding.Encoding;
 import htsjdk.samtools.cram.encoding.EncodingFactory;
 import htsjdk.samtools.cram.io.BitInputStream;
+import htsjdk.samtools.cram.io.ExposedByteArrayInputStream;
+import htsjdk.samtools.cram.io.ITF8;
 import htsjdk.samtools.cram.structure.CompressionHeader;
 import htsjdk.samtools.cram.structure.EncodingID;
 import htsjdk.samtools.cram.structure.EncodingKey;
@@ -36,14 +38,38 @@ import htsjdk.samtools.util.Log;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Wires data series readers into {@link AbstractReader} fields for a slice.
+ * <p>
+ * The annotated fields of each reader class are discovered once and the encodings of each compression header are
+ * parsed once and cached by header identity, so building readers for the slices of a container only binds codecs to
+ * the slice's blocks. Integer and byte series stored in external blocks are read directly from the block buffer
+ * when the block is provided as an {@link ExposedByteArrayInputStream}.
+ */
 public class DataReaderFactory {
     private static Log log = Log.getInstance(DataReaderFactory.class);
 
     private final static boolean collectStats = false;
 
+    /**
+     * Data series fields per reader class.
+     */
+    private static final Map<Class<?>, SeriesField[]> seriesFieldsByClass = new ConcurrentHashMap<Class<?>, SeriesField[]>();
+
+    /**
+     * Parsed encodings per compression header. Headers do not override equals/hashCode so this is an identity cache
+     * that goes away together with the container.
+     */
+    private static final Map<CompressionHeader, HeaderPlan> headerPlans = new WeakHashMap<CompressionHeader, HeaderPlan>();
+
     public AbstractReader buildReader(final AbstractReader reader,
                                       final BitInputStream bitInputStream, final Map<Integer, InputStream> inputMap,
                                       final CompressionHeader header, final int refId) throws IllegalArgumentException {
@@ -51,75 +77,110 @@ public class DataReaderFactory {
         reader.refId = refId;
         reader.APDelta = header.APDelta;
 
-        for (final Field field : reader.getClass().getFields()) {
-            if (field.isAnnotationPresent(DataSeries.class)) {
-                final DataSeries dataSeries = field.getAnnotation(DataSeries.class);
-                final EncodingKey key = dataSeries.key();
-                final DataSeriesType type = dataSeries.type();
-                if (header.encodingMap.get(key) != null) {
-                    try {
-                        field.set(reader,
-                                createReader(type, header.encodingMap.get(key), bitInputStream, inputMap));
-                    } catch (IllegalAccessException e) {
-                        throw new CRAMException(e);
-                    }
-                }
-            }
-
-            if (field.isAnnotationPresent(DataSeriesMap.class)) {
-                final DataSeriesMap dataSeriesMap = field.getAnnotation(DataSeriesMap.class);
-                final String name = dataSeriesMap.name();
-                if ("TAG".equals(name)) {
+        final SeriesField[] seriesFields = getSeriesFields(reader.getClass());
+        final HeaderPlan headerPlan = getHeaderPlan(header);
+        final SeriesPlan[] seriesPlans = headerPlan.getSeriesPlans(reader.getClass(), seriesFields);
+        try {
+            for (int i = 0; i < seriesFields.length; i++) {
+                final SeriesField seriesField = seriesFields[i];
+                if (seriesField.tagMap) {
                     final IntHashMap map = new IntHashMap();
-                    for (final Integer key : header.tMap.keySet()) {
-                        final EncodingParams params = header.tMap.get(key);
-                        final DataReader<byte[]> tagReader = createReader(
-                                DataSeriesType.BYTE_ARRAY, params, bitInputStream,
-                                inputMap);
-                        map.put(key, tagReader);
-                    }
-                    try {
-                        field.set(reader, map);
-                    } catch (IllegalAccessException e) {
-                        throw new CRAMException(e);
+                    for (final Map.Entry<Integer, SeriesPlan> entry : headerPlan.tagPlans.entrySet()) {
+                        map.put(entry.getKey(), createReader(entry.getValue(), bitInputStream, inputMap));
                     }
+                    seriesField.field.set(reader, map);
+                } else if (seriesPlans[i] != null) {
+                    seriesField.field.set(reader, createReader(seriesPlans[i], bitInputStream, inputMap));
                 }
             }
+        } catch (IllegalAccessException e) {
+            throw new CRAMException(e);
         }
 
         reader.tagIdDictionary = header.dictionary;
         return reader;
     }
 
-    private <T> DataReader<T> createReader(final DataSeriesType valueType,
-                                           final EncodingParams params, final BitInputStream bitInputStream,
+    private static SeriesField[] getSeriesFields(final Class<?> readerClass) {
+        SeriesField[] seriesFields = seriesFieldsByClass.get(readerClass);
+        if (seriesFields == null) {
+            final List<SeriesField> list = new ArrayList<SeriesField>();
+            for (final Field field : readerClass.getFields()) {
+                if (field.isAnnotationPresent(DataSeries.class)) {
+                    final DataSeries dataSeries = field.getAnnotation(DataSeries.class);
+                    list.add(new SeriesField(field, dataSeries.key(), dataSeries.type(), false));
+                }
+
+                if (field.isAnnotationPresent(DataSeriesMap.class)
+                        && "TAG".equals(field.getAnnotation(DataSeriesMap.class).name())) {
+                    list.add(new SeriesField(field, null, DataSeriesType.BYTE_ARRAY, true));
+                }
+            }
+            seriesFields = list.toArray(new SeriesField[list.size()]);
+            seriesFieldsByClass.put(readerClass, seriesFields);
+        }
+        return seriesFields;
+    }
+
+    private static HeaderPlan getHeaderPlan(final CompressionHeader header) {
+        synchronized (headerPlans) {
+            HeaderPlan plan = headerPlans.get(header);
+            if (plan == null) {
+                plan = new HeaderPlan(header);
+                headerPlans.put(header, plan);
+            }
+            return plan;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> DataReader<T> createReader(final SeriesPlan plan, final BitInputStream bitInputStream,
                                            final Map<Integer, InputStream> inputMap) {
-        if (params.id == EncodingID.NULL)
-            //noinspection ConstantConditions
-            return collectStats ? new DataReaderWithStats(
-                    buildNullReader(valueType)) : buildNullReader(valueType);
-
-        final EncodingFactory encodingFactory = new EncodingFactory();
-        final Encoding<T> encoding = encodingFactory.createEncoding(valueType, params.id);
-        if (encoding == null)
-            throw new RuntimeException("Encoding not found for value type "
-                    + valueType.name() + ", id=" + params.id);
-        encoding.fromByteArray(params.params);
+        final DataReader<T> reader;
+        if (plan.params.id == EncodingID.NULL) {
+            reader = buildNullReader(plan.type);
+        } else if (plan.externalContentId >= 0 && inputMap.get(plan.externalContentId) instanceof ExposedByteArrayInputStream) {
+            final ExposedByteArrayInputStream block = (ExposedByteArrayInputStream) inputMap.get(plan.externalContentId);
+            reader = (DataReader<T>) (plan.type == DataSeriesType.INT ? new ExternalIntReader(block) : new ExternalByteReader(block));
+        } else {
+            final BitCodec<T> codec = plan.sharedCodec != null ? (BitCodec<T>) plan.sharedCodec
+                    : ((Encoding<T>) plan.encoding).buildCodec(inputMap, null);
+            switch (plan.type) {
+                case INT:
+                    reader = (DataReader<T>) new CodecIntReader((BitCodec<Integer>) codec, bitInputStream);
+                    break;
+                case BYTE:
+                    reader = (DataReader<T>) new CodecByteReader((BitCodec<Byte>) codec, bitInputStream);
+                    break;
+                default:
+                    reader = new DefaultDataReader<T>(codec, bitInputStream);
+                    break;
+            }
+        }
 
         //noinspection ConstantConditions
-        return collectStats ? new DataReaderWithStats(new DefaultDataReader<T>(
-                encoding.buildCodec(inputMap, null), bitInputStream))
-                : new DefaultDataReader<T>(encoding.buildCodec(inputMap, null),
-                bitInputStream);
+        return collectStats ? (DataReader<T>) withStats(plan.type, reader) : reader;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static DataReader<?> withStats(final DataSeriesType valueType, final DataReader<?> reader) {
+        switch (valueType) {
+            case INT:
+                return new IntDataReaderWithStats((IntDataReader) reader);
+            case BYTE:
+                return new ByteDataReaderWithStats((ByteDataReader) reader);
+            default:
+                return new DataReaderWithStats(reader);
+        }
     }
 
+    @SuppressWarnings("unchecked")
     private static <T> DataReader<T> buildNullReader(final DataSeriesType valueType) {
         switch (valueType) {
             case BYTE:
-                return (DataReader<T>) new SingleValueReader<Byte>((byte) 0);
+                return (DataReader<T>) new SingleByteReader((byte) 0);
             case INT:
-                return (DataReader<T>) new SingleValueReader<Integer>(
-                        0);
+                return (DataReader<T>) new SingleIntReader(0);
             case LONG:
                 return (DataReader<T>) new SingleValueReader<Long>((long) 0);
             case BYTE_ARRAY:
@@ -130,6 +191,101 @@ public class DataReaderFactory {
         }
     }
 
+    private static final class SeriesField {
+        private final Field field;
+        private final EncodingKey key;
+        private final DataSeriesType type;
+        private final boolean tagMap;
+
+        private SeriesField(final Field field, final EncodingKey key, final DataSeriesType type, final boolean tagMap) {
+            this.field = field;
+            this.key = key;
+            this.type = type;
+            this.tagMap = tagMap;
+        }
+    }
+
+    /**
+     * Everything that can be derived from a compression header without looking at slice data. Series are keyed by
+     * data series and value type, since some series (for example quality scores) are read both as single values and
+     * as arrays.
+     */
+    private static final class HeaderPlan {
+        private final Map<EncodingKey, EncodingParams> encodingMap;
+        private final Map<EncodingKey, SeriesPlan[]> plans = new EnumMap<EncodingKey, SeriesPlan[]>(EncodingKey.class);
+        private final Map<Integer, SeriesPlan> tagPlans = new TreeMap<Integer, SeriesPlan>();
+        private final Map<Class<?>, SeriesPlan[]> seriesPlansByClass = new ConcurrentHashMap<Class<?>, SeriesPlan[]>();
+
+        private HeaderPlan(final CompressionHeader header) {
+            this.encodingMap = header.encodingMap;
+            for (final Map.Entry<Integer, EncodingParams> entry : header.tMap.entrySet()) {
+                tagPlans.put(entry.getKey(), new SeriesPlan(DataSeriesType.BYTE_ARRAY, entry.getValue()));
+            }
+        }
+
+        private SeriesPlan[] getSeriesPlans(final Class<?> readerClass, final SeriesField[] seriesFields) {
+            SeriesPlan[] seriesPlans = seriesPlansByClass.get(readerClass);
+            if (seriesPlans == null) {
+                seriesPlans = new SeriesPlan[seriesFields.length];
+                for (int i = 0; i < seriesFields.length; i++) {
+                    if (!seriesFields[i].tagMap) {
+                        seriesPlans[i] = getSeriesPlan(seriesFields[i].key, seriesFields[i].type);
+                    }
+                }
+                seriesPlansByClass.put(readerClass, seriesPlans);
+            }
+            return seriesPlans;
+        }
+
+        private synchronized SeriesPlan getSeriesPlan(final EncodingKey key, final DataSeriesType type) {
+            final EncodingParams params = encodingMap.get(key);
+            if (params == null)
+                return null;
+
+            SeriesPlan[] byType = plans.get(key);
+            if (byType == null) {
+                byType = new SeriesPlan[DataSeriesType.values().length];
+                plans.put(key, byType);
+            }
+            if (byType[type.ordinal()] == null)
+                byType[type.ordinal()] = new SeriesPlan(type, params);
+            return byType[type.ordinal()];
+        }
+    }
+
+    /**
+     * A data series encoding parsed from its parameters. Huffman codecs only depend on the code book and read from
+     * the core bit stream passed on each call, so they are built once and shared by all slices of the container.
+     */
+    private static final class SeriesPlan {
+        private final DataSeriesType type;
+        private final EncodingParams params;
+        private final Encoding<?> encoding;
+        private final BitCodec<?> sharedCodec;
+        private final int externalContentId;
+
+        private SeriesPlan(final DataSeriesType type, final EncodingParams params) {
+            this.type = type;
+            this.params = params;
+            if (params.id == EncodingID.NULL) {
+                encoding = null;
+                sharedCodec = null;
+                externalContentId = -1;
+                return;
+            }
+
+            encoding = new EncodingFactory().createEncoding(type, params.id);
+            if (encoding == null)
+                throw new RuntimeException("Encoding not found for value type "
+                        + type.name() + ", id=" + params.id);
+            encoding.fromByteArray(params.params);
+
+            sharedCodec = params.id == EncodingID.HUFFMAN ? encoding.buildCodec(null, null) : null;
+            externalContentId = params.id == EncodingID.EXTERNAL && (type == DataSeriesType.INT || type == DataSeriesType.BYTE)
+                    ? ITF8.readUnsignedITF8(params.params) : -1;
+        }
+    }
+
     private static class DefaultDataReader<T> implements DataReader<T> {
         private final BitCodec<T> codec;
         private final BitInputStream bitInputStream;
@@ -151,6 +307,82 @@ public class DataReaderFactory {
 
     }
 
+    private static class CodecIntReader extends DefaultDataReader<Integer> implements IntDataReader {
+
+        public CodecIntReader(final BitCodec<Integer> codec, final BitInputStream bitInputStream) {
+            super(codec, bitInputStream);
+        }
+
+        @Override
+        public int readInt() throws IOException {
+            return readData();
+        }
+    }
+
+    private static class CodecByteReader extends DefaultDataReader<Byte> implements ByteDataReader {
+
+        public CodecByteReader(final BitCodec<Byte> codec, final BitInputStream bitInputStream) {
+            super(codec, bitInputStream);
+        }
+
+        @Override
+        public byte readByte() throws IOException {
+            return readData();
+        }
+    }
+
+    /**
+     * Reads ITF8 values straight from an external block buffer.
+     */
+    private static class ExternalIntReader implements IntDataReader {
+        private final ExposedByteArrayInputStream block;
+
+        public ExternalIntReader(final ExposedByteArrayInputStream block) {
+            this.block = block;
+        }
+
+        @Override
+        public int readInt() throws IOException {
+            return block.readUnsignedITF8();
+        }
+
+        @Override
+        public Integer readData() throws IOException {
+            return readInt();
+        }
+
+        @Override
+        public Integer readDataArray(final int length) {
+            throw new RuntimeException("Not implemented.");
+        }
+    }
+
+    /**
+     * Reads bytes straight from an external block buffer.
+     */
+    private static class ExternalByteReader implements ByteDataReader {
+        private final ExposedByteArrayInputStream block;
+
+        public ExternalByteReader(final ExposedByteArrayInputStream block) {
+            this.block = block;
+        }
+
+        @Override
+        public byte readByte() {
+            return (byte) block.readUnsynchronized();
+        }
+
+        @Override
+        public Byte readData() {
+            return readByte();
+        }
+
+        @Override
+        public Byte readDataArray(final int length) {
+            throw new RuntimeException("Not implemented.");
+        }
+    }
+
     private static class SingleValueReader<T> implements DataReader<T> {
         private final T value;
 
@@ -169,6 +401,34 @@ public class DataReaderFactory {
         }
     }
 
+    private static class SingleIntReader extends SingleValueReader<Integer> implements IntDataReader {
+        private final int value;
+
+        public SingleIntReader(final int value) {
+            super(value);
+            this.value = value;
+        }
+
+        @Override
+        public int readInt() {
+            return value;
+        }
+    }
+
+    private static class SingleByteReader extends SingleValueReader<Byte> implements ByteDataReader {
+        private final byte value;
+
+        public SingleByteReader(final byte value) {
+            super(value);
+            this.value = value;
+        }
+
+        @Override
+        public byte readByte() {
+            return value;
+        }
+    }
+
     public static class DataReaderWithStats<T> implements DataReader<T> {
         public long nanos = 0;
         final DataReader<T> delegate;
@@ -194,6 +454,36 @@ public class DataReaderFactory {
         }
     }
 
+    private static class IntDataReaderWithStats extends DataReaderWithStats<Integer> implements IntDataReader {
+
+        public IntDataReaderWithStats(final IntDataReader delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public int readInt() throws IOException {
+            final long time = System.nanoTime();
+            final int value = ((IntDataReader) delegate).readInt();
+            nanos += System.nanoTime() - time;
+            return value;
+        }
+    }
+
+    private static class ByteDataReaderWithStats extends DataReaderWithStats<Byte> implements ByteDataReader {
+
+        public ByteDataReaderWithStats(final ByteDataReader delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public byte readByte() throws IOException {
+            final long time = System.nanoTime();
+            final byte value = ((ByteDataReader) delegate).readByte();
+            nanos += System.nanoTime() - time;
+            return value;
+        }
+    }
+
     public Map<String, DataReaderWithStats> getStats(final CramRecordReader reader)
             throws IllegalArgumentException, IllegalAccessException {
         final Map<String, DataReaderWithStats> map = new TreeMap<String, DataReaderFactory.DataReaderWithStats>();
@@ -31,10 +31,27 @@ import htsjdk.samtools.cram.structure.EncodingParams;
 
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class DataWriterFactory {
+    /**
+     * {@link Writer} fields annotated with {@link DataSeries} and {@link DataSeriesMap}, looked up once rather than
+     * for every slice.
+     */
+    private static final List<Field> DATA_SERIES_FIELDS = new ArrayList<Field>();
+    private static final List<Field> DATA_SERIES_MAP_FIELDS = new ArrayList<Field>();
+
+    static {
+        for (final Field f : Writer.class.getFields()) {
+            if (f.isAnnotationPresent(DataSeries.class))
+                DATA_SERIES_FIELDS.add(f);
+            if (f.isAnnotationPresent(DataSeriesMap.class))
+                DATA_SERIES_MAP_FIELDS.add(f);
+        }
+    }
 
     public Writer buildWriter(final BitOutputStream bitOutputStream,
                               final Map<Integer, ExposedByteArrayOutputStream> outputMap,
@@ -46,30 +63,28 @@ public class DataWriterFactory {
         writer.substitutionMatrix = h.substitutionMatrix;
         writer.AP_delta = h.APDelta;
 
-        for (final Field f : writer.getClass().getFields()) {
-            if (f.isAnnotationPresent(DataSeries.class)) {
-                final DataSeries ds = f.getAnnotation(DataSeries.class);
-                final EncodingKey key = ds.key();
-                final DataSeriesType type = ds.type();
+        for (final Field f : DATA_SERIES_FIELDS) {
+            final DataSeries ds = f.getAnnotation(DataSeries.class);
+            final EncodingKey key = ds.key();
+            final DataSeriesType type = ds.type();
 
-                f.set(writer,
-                        createWriter(type, h.encodingMap.get(key), bitOutputStream, outputMap));
-            }
+            f.set(writer,
+                    createWriter(type, h.encodingMap.get(key), bitOutputStream, outputMap));
+        }
 
-            if (f.isAnnotationPresent(DataSeriesMap.class)) {
-                final DataSeriesMap dsm = f.getAnnotation(DataSeriesMap.class);
-                final String name = dsm.name();
-                if ("TAG".equals(name)) {
-                    final Map<Integer, DataWriter<byte[]>> map = new HashMap<Integer, DataWriter<byte[]>>();
-                    for (final Integer key : h.tMap.keySet()) {
-                        final EncodingParams params = h.tMap.get(key);
-                        final DataWriter<byte[]> tagWriter = createWriter(
-                                DataSeriesType.BYTE_ARRAY, params, bitOutputStream,
-                                outputMap);
-                        map.put(key, tagWriter);
-                    }
-                    f.set(writer, map);
+        for (final Field f : DATA_SERIES_MAP_FIELDS) {
+            final DataSeriesMap dsm = f.getAnnotation(DataSeriesMap.class);
+            final String name = dsm.name();
+            if ("TAG".equals(name)) {
+                final Map<Integer, DataWriter<byte[]>> map = new HashMap<Integer, DataWriter<byte[]>>();
+                for (final Integer key : h.tMap.keySet()) {
+                    final EncodingParams params = h.tMap.get(key);
+                    final DataWriter<byte[]> tagWriter = createWriter(
+                            DataSeriesType.BYTE_ARRAY, params, bitOutputStream,
+                            outputMap);
+                    map.put(key, tagWriter);
                 }
+                f.set(writer, map);
             }
         }
 
@@ -0,0 +1,81 @@
+/**
+ * ****************************************************************************
+ * Copyright 2013 EMBL-EBI
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ****************************************************************************
+ */
+package htsjdk.samtools.cram.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * A {@link ByteArrayInputStream} that allows unsynchronized access to the underlying buffer. CRAM data series readers
+ * use this to decode bytes and ITF8 values straight from an external block without going through the synchronized
+ * {@link ByteArrayInputStream#read()} for every byte. The stream position is shared with the normal {@link java.io.InputStream}
+ * methods, so both access paths can be mixed on the same block.
+ */
+public class ExposedByteArrayInputStream extends ByteArrayInputStream {
+
+    public ExposedByteArrayInputStream(final byte[] buf) {
+        super(buf);
+    }
+
+    public byte[] getBuffer() {
+        return buf;
+    }
+
+    public int getPosition() {
+        return pos;
+    }
+
+    /**
+     * Read the next byte without synchronization.
+     *
+     * @return the next byte as an unsigned value or -1 if the end of the stream has been reached
+     */
+    public final int readUnsynchronized() {
+        return pos < count ? buf[pos++] & 0xFF : -1;
+    }
+
+    /**
+     * Read an unsigned ITF8 value, see {@link ITF8#readUnsignedITF8(java.io.InputStream)}.
+     *
+     * @return the value read
+     * @throws EOFException if the stream is exhausted
+     */
+    public final int readUnsignedITF8() throws IOException {
+        final int b1 = readUnsynchronized();
+        if (b1 == -1)
+            throw new EOFException();
+
+        if ((b1 & 128) == 0)
+            return b1;
+
+        if ((b1 & 64) == 0)
+            return ((b1 & 127) << 8) | readUnsynchronized();
+
+        if ((b1 & 32) == 0) {
+            final int b2 = readUnsynchronized();
+            final int b3 = readUnsynchronized();
+            return ((b1 & 63) << 16) | b2 << 8 | b3;
+        }
+
+        if ((b1 & 16) == 0)
+            return ((b1 & 31) << 24) | readUnsynchronized() << 16 | readUnsynchronized() << 8 | readUnsynchronized();
+
+        return ((b1 & 15) << 28) | readUnsynchronized() << 20 | readUnsynchronized() << 12 | readUnsynchronized() << 4 | (15 & readUnsynchronized());
+    }
+}
@@ -2,6 +2,8 @@ package htsjdk.samtools.cram.ref;
 
 import htsjdk.samtools.SAMSequenceRecord;
 
+import java.util.Arrays;
+
 /**
  * Interface used to supply a reference source when reading CRAM files.
  */
@@ -19,4 +21,24 @@ public interface CRAMReferenceSource {
      * bases representing the requested sequence, or null if the sequence cannot be found
      */
     byte[] getReferenceBases(final SAMSequenceRecord sequenceRecord, final boolean tryNameVariants);
+
+    /**
+     * Get the bases of a region of a reference sequence. Implementations should override this to avoid loading the
+     * whole sequence when only a part of it is needed, the default implementation copies the region out of
+     * {@link #getReferenceBases(SAMSequenceRecord, boolean)}.
+     *
+     * @param sequenceRecord the SAMSequenceRecord identifying the reference being requested
+     * @param zeroBasedStart the zero based start of the region
+     * @param requestedRegionLength the number of bases requested
+     * @return the upper cased, normalized bases of the region, which may be shorter than requested if the region
+     * extends past the end of the sequence, or null if the sequence cannot be found
+     */
+    default byte[] getReferenceBasesByRegion(final SAMSequenceRecord sequenceRecord, final int zeroBasedStart,
+                                             final int requestedRegionLength) {
+        final byte[] bases = getReferenceBases(sequenceRecord, true);
+        if (bases == null)
+            return null;
+        final int start = Math.min(zeroBasedStart, bases.length);
+        return Arrays.copyOfRange(bases, start, Math.min(bases.length, start + requestedRegionLength));
+    }
 }
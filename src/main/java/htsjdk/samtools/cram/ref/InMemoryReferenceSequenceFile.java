@@ -53,8 +53,8 @@ class InMemoryReferenceSequenceFile implements ReferenceSequenceFile {
     @Override
     public ReferenceSequence getSubsequenceAt(final String name, final long start, final long stop) {
         final int index = getSequenceDictionary().getSequenceIndex(name);
-        final byte[] bases = Arrays.copyOfRange(sequences.get(index), (int) start,
-                (int) stop + 1);
+        final byte[] bases = Arrays.copyOfRange(sequences.get(index), (int) start - 1,
+                (int) stop);
         return new ReferenceSequence(name, index, bases);
     }
 
@@ -0,0 +1,229 @@
+/**
+ * ****************************************************************************
+ * Copyright 2013 EMBL-EBI
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ****************************************************************************
+ */
+package htsjdk.samtools.cram.ref;
+
+import htsjdk.samtools.reference.ReferenceSequence;
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
+import htsjdk.samtools.util.CloserUtil;
+import htsjdk.samtools.util.Log;
+import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.samtools.util.SequenceUtil;
+import htsjdk.samtools.util.StringUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * A local, content addressed store of reference sequences keyed by the MD5 checksum of their bases.
+ * <p>
+ * Each sequence is kept as a file of upper case bases under {@code <root>/<md5[0..1]>/<md5[2..3]>/<md5>}, the same
+ * layout as the samtools REF_CACHE, so an existing cache directory can be shared. Sequences are memory-mapped when
+ * read, so all the processes decoding CRAM files against the same store share a single copy of each reference in the
+ * operating system page cache and regions can be read without loading the whole sequence onto the heap.
+ * <p>
+ * Files are written to a temporary file and then moved into place, so concurrent writers and readers never see a
+ * partially written sequence.
+ */
+public class LocalMD5ReferenceStore {
+    private static final Log log = Log.getInstance(LocalMD5ReferenceStore.class);
+    private static final Pattern MD5_PATTERN = Pattern.compile("[0-9a-f]{32}");
+
+    private final Path root;
+    private final ConcurrentHashMap<String, MappedByteBuffer> mappings = new ConcurrentHashMap<>();
+
+    /**
+     * @param root the directory of the store, created on the first write if it does not exist
+     */
+    public LocalMD5ReferenceStore(final Path root) {
+        if (root == null)
+            throw new IllegalArgumentException("Reference store directory must not be null.");
+        this.root = root;
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * @param md5 MD5 checksum of the sequence bases
+     * @return the path the sequence is (or would be) stored at
+     */
+    public Path getPath(final String md5) {
+        final String key = normalizeMD5(md5);
+        return root.resolve(key.substring(0, 2)).resolve(key.substring(2, 4)).resolve(key);
+    }
+
+    public boolean contains(final String md5) {
+        return Files.isRegularFile(getPath(md5));
+    }
+
+    /**
+     * @param md5 MD5 checksum of the sequence bases
+     * @return a read-only view of the memory-mapped sequence positioned at its first base, or null if the sequence is
+     * not in the store
+     */
+    public ByteBuffer map(final String md5) {
+        final String key = normalizeMD5(md5);
+        MappedByteBuffer buffer = mappings.get(key);
+        if (buffer == null) {
+            final Path path = getPath(key);
+            if (!Files.isRegularFile(path))
+                return null;
+            try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                if (channel.size() > Integer.MAX_VALUE)
+                    throw new IllegalStateException("Reference sequence is too large to be mapped: " + path);
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } catch (final IOException e) {
+                throw new RuntimeIOException("Failed to map reference sequence " + path, e);
+            }
+            final MappedByteBuffer existing = mappings.putIfAbsent(key, buffer);
+            if (existing != null)
+                buffer = existing;
+        }
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Copy a whole sequence onto the heap. Use {@link #map(String)} or {@link #getBases(String, int, int)} to read
+     * parts of a sequence without copying all of it.
+     *
+     * @param md5 MD5 checksum of the sequence bases
+     * @return the sequence bases or null if the sequence is not in the store
+     */
+    public byte[] getBases(final String md5) {
+        final ByteBuffer buffer = map(md5);
+        if (buffer == null)
+            return null;
+        final byte[] bases = new byte[buffer.remaining()];
+        buffer.get(bases);
+        return bases;
+    }
+
+    /**
+     * Read a region of a sequence, clipped to the end of the sequence, without touching the rest of it.
+     *
+     * @param md5            MD5 checksum of the sequence bases
+     * @param zeroBasedStart zero based position of the first base to read
+     * @param length         number of bases to read
+     * @return the bases of the region or null if the sequence is not in the store
+     */
+    public byte[] getBases(final String md5, final int zeroBasedStart, final int length) {
+        final ByteBuffer buffer = map(md5);
+        if (buffer == null)
+            return null;
+        final int start = Math.min(zeroBasedStart, buffer.limit());
+        final int end = (int) Math.min((long) zeroBasedStart + length, buffer.limit());
+        final byte[] bases = new byte[Math.max(0, end - start)];
+        buffer.position(start);
+        buffer.get(bases);
+        return bases;
+    }
+
+    /**
+     * Add a sequence to the store, unless a sequence with the same checksum is already there. The bases are
+     * upper-cased before the checksum is calculated, as for CRAM reference MD5s. The given array is not modified.
+     *
+     * @param sequenceBases the sequence bases
+     * @return the MD5 checksum of the stored sequence
+     */
+    public String add(final byte[] sequenceBases) {
+        byte[] bases = sequenceBases;
+        for (int i = 0; i < bases.length; i++) {
+            final byte upperCase = StringUtil.toUpperCase(bases[i]);
+            if (upperCase != bases[i]) {
+                // copy the caller's bases before the first change:
+                if (bases == sequenceBases)
+                    bases = Arrays.copyOf(sequenceBases, sequenceBases.length);
+                bases[i] = upperCase;
+            }
+        }
+        final String md5 = SequenceUtil.calculateMD5String(bases, 0, bases.length);
+        final Path path = getPath(md5);
+        if (Files.isRegularFile(path))
+            return md5;
+
+        try {
+            Files.createDirectories(path.getParent());
+            final Path temp = Files.createTempFile(path.getParent(), md5, ".tmp");
+            try {
+                Files.write(temp, bases);
+                try {
+                    Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+                } catch (final AtomicMoveNotSupportedException e) {
+                    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (final IOException e) {
+            throw new RuntimeIOException("Failed to write reference sequence " + path, e);
+        }
+        log.debug("Stored reference sequence " + md5 + " of " + bases.length + " bases");
+        return md5;
+    }
+
+    /**
+     * Add all the sequences of a reference file to the store.
+     *
+     * @param referenceFile the reference file, read sequentially
+     * @return the number of sequences read from the file
+     */
+    public int addAll(final ReferenceSequenceFile referenceFile) {
+        int count = 0;
+        ReferenceSequence sequence;
+        while ((sequence = referenceFile.nextSequence()) != null) {
+            final String md5 = add(sequence.getBases());
+            log.debug("Reference sequence " + sequence.getName() + " stored as " + md5);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Add all the sequences of a FASTA file to the store.
+     *
+     * @param fasta the FASTA file
+     * @return the number of sequences read from the file
+     */
+    public int addAll(final Path fasta) {
+        final ReferenceSequenceFile referenceFile = ReferenceSequenceFileFactory.getReferenceSequenceFile(fasta);
+        try {
+            return addAll(referenceFile);
+        } finally {
+            CloserUtil.close(referenceFile);
+        }
+    }
+
+    private static String normalizeMD5(final String md5) {
+        final String key = md5.toLowerCase();
+        if (!MD5_PATTERN.matcher(key).matches())
+            throw new IllegalArgumentException("Does not look like an md5 checksum: " + md5);
+        return key;
+    }
+}
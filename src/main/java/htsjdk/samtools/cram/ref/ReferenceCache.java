@@ -0,0 +1,281 @@
+/**
+ * ****************************************************************************
+ * Copyright 2013 EMBL-EBI
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ****************************************************************************
+ */
+package htsjdk.samtools.cram.ref;
+
+import htsjdk.samtools.util.Log;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * A thread-safe, memory-bounded cache of reference sequence bases.
+ * <p>
+ * Entries are evicted in least recently used order once the total number of cached bases exceeds the byte budget.
+ * Evicted entries, and entries larger than the whole budget, are still held through weak references until the garbage
+ * collector reclaims them, so they can be picked up again without reloading while memory allows.
+ * Concurrent requests for the same key share a single load, so a contig is only read once however many CRAM readers
+ * ask for it at the same time. A single instance may be shared between {@link ReferenceSource}s; keys are expected
+ * to be unique across the sources sharing the cache, for example MD5 checksums or file paths and sequence names.
+ * Sources whose sequences cannot be identified that way use a {@link #privateNamespace(Object) private namespace},
+ * which is dropped from the cache once the source is garbage collected.
+ */
+public class ReferenceCache {
+    private static final Log log = Log.getInstance(ReferenceCache.class);
+
+    /**
+     * Default byte budget: a quarter of the maximum heap, capped at 4GB.
+     */
+    public static final long DEFAULT_MAX_BYTES = Math.min(4L * 1024 * 1024 * 1024, Runtime.getRuntime().maxMemory() / 4);
+
+    private static final ReferenceCache defaultCache = new ReferenceCache();
+
+    private final long maxBytes;
+    private long cachedBytes = 0;
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, WeakReference<byte[]>> evicted = new HashMap<>();
+    private final ConcurrentHashMap<String, FutureTask<byte[]>> loading = new ConcurrentHashMap<>();
+
+    private static final AtomicInteger namespaceCounter = new AtomicInteger();
+    private final ReferenceQueue<Object> releasedOwners = new ReferenceQueue<>();
+    private final Map<Reference<Object>, String> namespaces = new HashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ReferenceCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param maxBytes the maximum number of bases to keep in the cache, 0 holds every sequence through a weak reference only
+     */
+    public ReferenceCache(final long maxBytes) {
+        if (maxBytes < 0)
+            throw new IllegalArgumentException("Cache size must not be negative: " + maxBytes);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the process-wide cache used by {@link ReferenceSource}s that are not given a cache explicitly, so that
+     * the total memory held by reference bases is bounded by a single budget
+     */
+    public static ReferenceCache getDefaultCache() {
+        return defaultCache;
+    }
+
+    /**
+     * @param key the key to look up
+     * @return the cached bases or null if the key is not in the cache
+     */
+    public byte[] get(final String key) {
+        byte[] bases;
+        synchronized (entries) {
+            removeReleasedNamespaces();
+            bases = entries.get(key);
+            if (bases == null) {
+                final WeakReference<byte[]> reference = evicted.remove(key);
+                bases = reference == null ? null : reference.get();
+                if (bases != null)
+                    put(key, bases);
+            }
+        }
+        if (bases != null)
+            hits.incrementAndGet();
+        return bases;
+    }
+
+    /**
+     * Get the bases for the key, loading and caching them if necessary. Only one load runs for a key at any time,
+     * other callers asking for the same key wait for its result.
+     *
+     * @param key    the key to look up
+     * @param loader loads the bases, may return null if they cannot be found
+     * @return the bases or null if the loader did not find them
+     */
+    public byte[] get(final String key, final Callable<byte[]> loader) {
+        final byte[] cached = get(key);
+        if (cached != null)
+            return cached;
+
+        final FutureTask<byte[]> task = new FutureTask<>(loader);
+        final FutureTask<byte[]> existing = loading.putIfAbsent(key, task);
+        if (existing == null) {
+            try {
+                // another thread may have finished loading the key just before we registered our task:
+                final byte[] loaded = get(key);
+                if (loaded != null)
+                    return loaded;
+
+                misses.incrementAndGet();
+                task.run();
+                final byte[] bases = waitFor(key, task);
+                if (bases != null)
+                    put(key, bases);
+                return bases;
+            } finally {
+                loading.remove(key);
+            }
+        }
+        hits.incrementAndGet();
+        return waitFor(key, existing);
+    }
+
+    private static byte[] waitFor(final String key, final FutureTask<byte[]> task) {
+        try {
+            return task.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while loading reference " + key, e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException("Failed to load reference " + key, e.getCause());
+        }
+    }
+
+    /**
+     * Add bases to the cache. Sequences larger than the whole budget are only held through a weak reference.
+     *
+     * @param key   the key for the bases
+     * @param bases the bases
+     */
+    public void put(final String key, final byte[] bases) {
+        synchronized (entries) {
+            removeReleasedNamespaces();
+            if (bases.length > maxBytes) {
+                final byte[] previous = entries.remove(key);
+                if (previous != null)
+                    cachedBytes -= previous.length;
+                evicted.put(key, new WeakReference<>(bases));
+                return;
+            }
+            evicted.remove(key);
+            final byte[] previous = entries.put(key, bases);
+            if (previous != null)
+                cachedBytes -= previous.length;
+            cachedBytes += bases.length;
+
+            final Iterator<Map.Entry<String, byte[]>> iterator = entries.entrySet().iterator();
+            while (cachedBytes > maxBytes && iterator.hasNext()) {
+                final Map.Entry<String, byte[]> eldest = iterator.next();
+                if (eldest.getKey().equals(key))
+                    continue;
+                log.debug("Evicting reference " + eldest.getKey() + " from cache");
+                cachedBytes -= eldest.getValue().length;
+                evicted.put(eldest.getKey(), new WeakReference<>(eldest.getValue()));
+                iterator.remove();
+                evictions.incrementAndGet();
+            }
+            evicted.values().removeIf(reference -> reference.get() == null);
+        }
+    }
+
+    /**
+     * Create a key prefix for sequences that only make sense to one owner, such as the sequences of a reference file
+     * without a path. The entries with keys starting with the prefix are removed once the owner is garbage collected,
+     * so that they do not take up the budget of the cache when they can no longer be asked for.
+     *
+     * @param owner the object the entries belong to
+     * @return the prefix for the keys of the owner's entries
+     */
+    public String privateNamespace(final Object owner) {
+        final String prefix = "private" + namespaceCounter.incrementAndGet() + ":";
+        synchronized (entries) {
+            namespaces.put(new WeakReference<>(owner, releasedOwners), prefix);
+        }
+        return prefix;
+    }
+
+    // must be called holding the lock on entries
+    private void removeReleasedNamespaces() {
+        Reference<?> owner;
+        while ((owner = releasedOwners.poll()) != null) {
+            final String prefix = namespaces.remove(owner);
+            if (prefix != null)
+                removeIf(key -> key.startsWith(prefix));
+        }
+    }
+
+    /**
+     * Remove keys from the cache
+     *
+     * @param keys the keys to remove
+     */
+    public void remove(final Collection<String> keys) {
+        synchronized (entries) {
+            removeIf(keys::contains);
+        }
+    }
+
+    // must be called holding the lock on entries
+    private void removeIf(final Predicate<String> condition) {
+        final Iterator<Map.Entry<String, byte[]>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<String, byte[]> entry = iterator.next();
+            if (condition.test(entry.getKey())) {
+                cachedBytes -= entry.getValue().length;
+                iterator.remove();
+            }
+        }
+        evicted.keySet().removeIf(condition);
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            evicted.clear();
+            cachedBytes = 0;
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getCachedBytes() {
+        synchronized (entries) {
+            return cachedBytes;
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+}
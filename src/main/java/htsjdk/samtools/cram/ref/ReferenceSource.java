@@ -19,10 +19,12 @@ package htsjdk.samtools.cram.ref;
 
 import htsjdk.samtools.Defaults;
 import htsjdk.samtools.SAMException;
+import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.SAMSequenceRecord;
 import htsjdk.samtools.SAMUtils;
 import htsjdk.samtools.cram.build.Utils;
 import htsjdk.samtools.cram.io.InputStreamUtils;
+import htsjdk.samtools.reference.IndexedFastaSequenceFile;
 import htsjdk.samtools.reference.ReferenceSequence;
 import htsjdk.samtools.reference.ReferenceSequenceFile;
 import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
@@ -33,19 +35,21 @@ import htsjdk.samtools.util.StringUtil;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.ref.WeakReference;
+import java.lang.ref.SoftReference;
 import java.net.URL;
 import java.nio.file.Path;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 /**
  * Used to represent a CRAM reference, the backing source for which can either be
- * a file or the EBI ENA reference service.
+ * a file, a {@link LocalMD5ReferenceStore} or the EBI ENA reference service.
  *
  * NOTE: In a future release, this class will be renamed and the functionality it
  * contains will be refactored and distributed into one or more separate reference
@@ -57,18 +61,76 @@ public class ReferenceSource implements CRAMReferenceSource {
     private final ReferenceSequenceFile rsFile;
     private int downloadTriesBeforeFailing = 2;
 
-    private final Map<String, WeakReference<byte[]>> cacheW = new HashMap<>();
+    /**
+     * Default number of bases in the windows regions are read and cached in.
+     */
+    public static final int DEFAULT_REGION_WINDOW_SIZE = 1024 * 1024;
+    private int regionWindowSize = DEFAULT_REGION_WINDOW_SIZE;
+
+    private final ReferenceCache cache;
+    private LocalMD5ReferenceStore referenceStore = Defaults.CRAM_REFERENCE_STORE == null ? null :
+            new LocalMD5ReferenceStore(Defaults.CRAM_REFERENCE_STORE.toPath());
+    /**
+     * Prefix for the cache keys of sequences found by name: the canonical path of the reference file, so that
+     * sources reading the same file share its sequences, or a namespace private to this source if the path is unknown.
+     */
+    private final String namePrefix;
+    /**
+     * The cache keys of the sequences loaded by this source, which are removed by {@link #clearCache()}.
+     */
+    private final Set<String> loadedKeys = ConcurrentHashMap.newKeySet();
+    /**
+     * The last whole sequence copied out of the reference store. Sequences from the store are not put in the cache,
+     * its memory mapping is already shared through the page cache, but writers ask for the same sequence once per
+     * container.
+     */
+    private volatile SoftReference<StoreSequence> lastStoreSequence = null;
+
+    private static final class StoreSequence {
+        private final String md5;
+        private final byte[] bases;
+
+        private StoreSequence(final String md5, final byte[] bases) {
+            this.md5 = md5;
+            this.bases = bases;
+        }
+    }
 
     public ReferenceSource(final File file) {
         this(file == null ? null : file.toPath());
     }
 
     public ReferenceSource(final Path path) {
-        this( path == null ? null : ReferenceSequenceFileFactory.getReferenceSequenceFile(path));
+        this(path == null ? null : ReferenceSequenceFileFactory.getReferenceSequenceFile(path),
+                ReferenceCache.getDefaultCache(), path == null ? null : pathNamespace(path));
     }
 
     public ReferenceSource(final ReferenceSequenceFile rsFile) {
+        this(rsFile, ReferenceCache.getDefaultCache());
+    }
+
+    /**
+     * @param rsFile the reference file, may be null if bases should only be fetched by MD5
+     * @param cache  the cache to hold reference bases, may be shared with other sources
+     */
+    public ReferenceSource(final ReferenceSequenceFile rsFile, final ReferenceCache cache) {
+        this(rsFile, cache, null);
+    }
+
+    private ReferenceSource(final ReferenceSequenceFile rsFile, final ReferenceCache cache, final String namePrefix) {
         this.rsFile = rsFile;
+        this.cache = cache;
+        this.namePrefix = namePrefix != null ? namePrefix : cache.privateNamespace(this);
+    }
+
+    private static String pathNamespace(final Path path) {
+        Path canonicalPath;
+        try {
+            canonicalPath = path.toRealPath();
+        } catch (final IOException e) {
+            canonicalPath = path.toAbsolutePath().normalize();
+        }
+        return "file:" + canonicalPath.toUri() + ":";
     }
 
     /**
@@ -86,6 +148,7 @@ public class ReferenceSource implements CRAMReferenceSource {
      *<p><ul>
      * <li>Defaults.REFERENCE_FASTA - the value of the system property "reference_fasta". If set,
      * must refer to a valid reference file.</li>
+     * <li>Defaults.CRAM_REFERENCE_STORE - the local MD5 reference store if it is set</li>
      * <li>ENA Reference Service if it is enabled</li>
      * </ul>
      */
@@ -99,47 +162,90 @@ public class ReferenceSource implements CRAMReferenceSource {
                         "The file specified by the reference_fasta property does not exist: " + Defaults.REFERENCE_FASTA.getName());
             }
         }
-        else if (Defaults.USE_CRAM_REF_DOWNLOAD) {
+        else if (Defaults.USE_CRAM_REF_DOWNLOAD || null != Defaults.CRAM_REFERENCE_STORE) {
             return new ReferenceSource((ReferenceSequenceFile)null);
         }
         else {
             throw new IllegalStateException(
-                    "A valid CRAM reference was not supplied and one cannot be acquired via the property settings reference_fasta or use_cram_ref_download");
+                    "A valid CRAM reference was not supplied and one cannot be acquired via the property settings reference_fasta, cram_reference_store or use_cram_ref_download");
         }
     }
 
+    /**
+     * Remove the sequences loaded by this source from the reference cache. Sequences other sources loaded into a
+     * shared cache are left alone.
+     */
     public void clearCache() {
-        cacheW.clear();
+        final List<String> keys = new ArrayList<>(loadedKeys);
+        loadedKeys.removeAll(keys);
+        cache.remove(keys);
+        lastStoreSequence = null;
     }
 
-    private byte[] findInCache(final String name) {
-        final WeakReference<byte[]> weakReference = cacheW.get(name);
-        if (weakReference != null) {
-            final byte[] bytes = weakReference.get();
-            if (bytes != null)
-                return bytes;
-        }
-        return null;
+    public ReferenceCache getCache() {
+        return cache;
+    }
+
+    public LocalMD5ReferenceStore getReferenceStore() {
+        return referenceStore;
+    }
+
+    /**
+     * Set the local store consulted for sequences by MD5 before they are downloaded. Downloaded sequences are added
+     * to the store. By default the store in {@link Defaults#CRAM_REFERENCE_STORE} is used, if set.
+     *
+     * @param referenceStore the store or null to disable it
+     */
+    public void setReferenceStore(final LocalMD5ReferenceStore referenceStore) {
+        this.referenceStore = referenceStore;
+    }
+
+    private static String md5Key(final String md5) {
+        return "md5:" + md5.toLowerCase();
+    }
+
+    private String nameKey(final String name) {
+        return namePrefix + name;
+    }
+
+    private byte[] getFromStore(final LocalMD5ReferenceStore store, final String md5) {
+        final SoftReference<StoreSequence> reference = lastStoreSequence;
+        final StoreSequence last = reference == null ? null : reference.get();
+        if (last != null && last.md5.equalsIgnoreCase(md5))
+            return last.bases;
+
+        final byte[] bases = store.getBases(md5);
+        if (bases != null)
+            lastStoreSequence = new SoftReference<>(new StoreSequence(md5, bases));
+        return bases;
+    }
+
+    // get bases from the cache, recording the key for clearCache()
+    private byte[] getCached(final String key, final Callable<byte[]> loader) {
+        loadedKeys.add(key);
+        return cache.get(key, loader);
     }
 
-    // Upper case (in-place), and add to the cache
-    private byte[] addToCache(final String sequenceName, final byte[] bases) {
+    // Upper case (in-place)
+    private static byte[] upperCase(final byte[] bases) {
         // Normalize to upper case only. We can't use the cram normalization utility Utils.normalizeBases, since
         // we don't want to normalize ambiguity codes, we can't use SamUtils.normalizeBases, since we don't want
         // to normalize no-call ('.') bases.
-        for (int i = 0; i < bases.length; i++) {
-            bases[i] = StringUtil.toUpperCase(bases[i]);
+        if (bases != null) {
+            for (int i = 0; i < bases.length; i++) {
+                bases[i] = StringUtil.toUpperCase(bases[i]);
+            }
         }
-        cacheW.put(sequenceName, new WeakReference<>(bases));
         return bases;
     }
 
     @Override
-    public synchronized byte[] getReferenceBases(final SAMSequenceRecord record,
-                                                 final boolean tryNameVariants) {
+    public byte[] getReferenceBases(final SAMSequenceRecord record,
+                                    final boolean tryNameVariants) {
+        final String name = record.getSequenceName();
+        final String nameKey = nameKey(name);
         { // check cache by sequence name:
-            final String name = record.getSequenceName();
-            final byte[] bases = findInCache(name);
+            final byte[] bases = cache.get(nameKey);
             if (bases != null) {
                 return bases;
             }
@@ -148,13 +254,7 @@ public class ReferenceSource implements CRAMReferenceSource {
         final String md5 = record.getAttribute(SAMSequenceRecord.MD5_TAG);
         { // check cache by md5:
             if (md5 != null) {
-                byte[] bases = findInCache(md5);
-                if (bases != null)
-                    return bases;
-                bases = findInCache(md5.toLowerCase());
-                if (bases != null)
-                    return bases;
-                bases = findInCache(md5.toUpperCase());
+                final byte[] bases = cache.get(md5Key(md5));
                 if (bases != null)
                     return bases;
             }
@@ -162,24 +262,29 @@ public class ReferenceSource implements CRAMReferenceSource {
 
         byte[] bases;
 
+        { // try the local reference store by md5:
+            final LocalMD5ReferenceStore store = referenceStore;
+            if (md5 != null && store != null) {
+                bases = getFromStore(store, md5);
+                if (bases != null)
+                    return bases;
+            }
+        }
+
         { // try to fetch sequence by name:
-            bases = findBasesByName(record.getSequenceName(), tryNameVariants);
+            bases = getCached(nameKey, () -> upperCase(findBasesByName(name, tryNameVariants)));
             if (bases != null) {
-                return addToCache(record.getSequenceName(), bases);
+                return bases;
             }
         }
 
         {
             if (Defaults.USE_CRAM_REF_DOWNLOAD) { // try to fetch sequence by md5:
                 if (md5 != null) {
-                    try {
-                        bases = findBasesByMD5(md5.toLowerCase());
-                    } catch (final Exception e) {
-                        throw new RuntimeException(e);
-                    }
+                    bases = getCached(md5Key(md5), () -> downloadBases(md5.toLowerCase()));
                 }
                 if (bases != null) {
-                    return addToCache(md5, bases);
+                    return bases;
                 }
             }
         }
@@ -188,13 +293,110 @@ public class ReferenceSource implements CRAMReferenceSource {
         return null;
     }
 
+    /**
+     * Get the bases of a region of a reference sequence. If the whole sequence is already cached the region is copied
+     * from it, otherwise the region is read from an indexed reference file in windows of fixed size, which are cached
+     * so that the slices of a contig share their reads and the reference file is only locked on a cache miss.
+     * Decoding a small region of a large contig therefore does not load the whole contig. Sources that can only
+     * provide whole sequences (non-indexed files or MD5 downloads) fall back to
+     * {@link #getReferenceBases(SAMSequenceRecord, boolean)}.
+     */
+    @Override
+    public byte[] getReferenceBasesByRegion(final SAMSequenceRecord record, final int zeroBasedStart,
+                                            final int requestedRegionLength) {
+        byte[] bases = cache.get(nameKey(record.getSequenceName()));
+        final String md5 = record.getAttribute(SAMSequenceRecord.MD5_TAG);
+        if (bases == null && md5 != null)
+            bases = cache.get(md5Key(md5));
+
+        final LocalMD5ReferenceStore store = referenceStore;
+        if (bases == null && md5 != null && store != null) {
+            // read the region straight from the memory-mapped sequence:
+            final byte[] region = store.getBases(md5, zeroBasedStart, requestedRegionLength);
+            if (region != null)
+                return region;
+        }
+
+        if (bases == null) {
+            final SAMSequenceRecord fileRecord = findSequenceRecord(record.getSequenceName());
+            if (fileRecord != null) {
+                return getRegionFromWindows(fileRecord, zeroBasedStart, requestedRegionLength);
+            }
+            bases = getReferenceBases(record, true);
+            if (bases == null)
+                return null;
+        }
+
+        final int start = Math.min(zeroBasedStart, bases.length);
+        return Arrays.copyOfRange(bases, start, Math.min(bases.length, start + requestedRegionLength));
+    }
+
+    private byte[] getRegionFromWindows(final SAMSequenceRecord fileRecord, final int zeroBasedStart,
+                                        final int requestedRegionLength) {
+        final String name = fileRecord.getSequenceName();
+        final long length = fileRecord.getSequenceLength();
+        final long start = Math.min(zeroBasedStart, length);
+        final long end = Math.min((long) zeroBasedStart + requestedRegionLength, length);
+        if (start >= end)
+            return new byte[0];
+
+        final int windowSize = regionWindowSize;
+        final byte[] region = new byte[(int) (end - start)];
+        for (long windowStart = start - start % windowSize; windowStart < end; windowStart += windowSize) {
+            final long from = windowStart;
+            final long to = Math.min(windowStart + windowSize, length);
+            // sequence names cannot contain tabs, so window keys do not clash with the keys of whole sequences
+            final byte[] window = getCached(nameKey(name) + "\t" + windowSize + "\t" + windowStart, () -> {
+                synchronized (rsFile) {
+                    return upperCase(rsFile.getSubsequenceAt(name, from + 1, to).getBases());
+                }
+            });
+            final long copyStart = Math.max(start, windowStart);
+            final long copyEnd = Math.min(end, to);
+            System.arraycopy(window, (int) (copyStart - windowStart), region, (int) (copyStart - start), (int) (copyEnd - copyStart));
+        }
+        return region;
+    }
+
+    /**
+     * Find a sequence, or one of its name variants, in the dictionary or index of an indexed reference file.
+     *
+     * @return a record with the name and length of the sequence in the reference file or null if there is no such
+     * sequence or the file cannot be queried by region
+     */
+    private SAMSequenceRecord findSequenceRecord(final String name) {
+        if (rsFile == null || !rsFile.isIndexed())
+            return null;
+
+        final List<String> names = new ArrayList<>();
+        names.add(name);
+        names.addAll(getVariants(name));
+
+        final SAMSequenceDictionary dictionary = rsFile.getSequenceDictionary();
+        if (dictionary != null) {
+            for (final String candidate : names) {
+                final SAMSequenceRecord fileRecord = dictionary.getSequence(candidate);
+                if (fileRecord != null)
+                    return fileRecord;
+            }
+        } else if (rsFile instanceof IndexedFastaSequenceFile) {
+            final IndexedFastaSequenceFile fastaFile = (IndexedFastaSequenceFile) rsFile;
+            for (final String candidate : names) {
+                final long length = fastaFile.getSequenceLength(candidate);
+                if (length >= 0)
+                    return new SAMSequenceRecord(candidate, (int) length);
+            }
+        }
+        return null;
+    }
+
     byte[] findBasesByName(final String name, final boolean tryVariants) {
         if (rsFile == null || !rsFile.isIndexed())
             return null;
 
         ReferenceSequence sequence = null;
         try {
-            sequence = rsFile.getSequence(name);
+            sequence = getSequence(name);
         } catch (final SAMException e) {
             // the only way to test if rsFile contains the sequence is to try and catch exception.
         }
@@ -204,7 +406,7 @@ public class ReferenceSource implements CRAMReferenceSource {
         if (tryVariants) {
             for (final String variant : getVariants(name)) {
                 try {
-                    sequence = rsFile.getSequence(variant);
+                    sequence = getSequence(variant);
                 } catch (final SAMException e) {
                     log.warn("Sequence not found: " + variant);
                 }
@@ -215,6 +417,21 @@ public class ReferenceSource implements CRAMReferenceSource {
         return null;
     }
 
+    // reference files are not thread safe, only the cache is
+    private ReferenceSequence getSequence(final String name) {
+        synchronized (rsFile) {
+            return rsFile.getSequence(name);
+        }
+    }
+
+    private byte[] downloadBases(final String md5) throws IOException {
+        final byte[] bases = upperCase(findBasesByMD5(md5));
+        final LocalMD5ReferenceStore store = referenceStore;
+        if (bases != null && store != null)
+            store.add(bases);
+        return bases;
+    }
+
     byte[] findBasesByMD5(final String md5) throws
             IOException {
         final String url = String.format(Defaults.EBI_REFERENCE_SERVICE_URL_MASK, md5);
@@ -279,4 +496,17 @@ public class ReferenceSource implements CRAMReferenceSource {
     public void setDownloadTriesBeforeFailing(final int downloadTriesBeforeFailing) {
         this.downloadTriesBeforeFailing = downloadTriesBeforeFailing;
     }
+
+    public int getRegionWindowSize() {
+        return regionWindowSize;
+    }
+
+    /**
+     * @param regionWindowSize the number of bases in the windows regions are read from the reference file and cached in
+     */
+    public void setRegionWindowSize(final int regionWindowSize) {
+        if (regionWindowSize <= 0)
+            throw new IllegalArgumentException("Region window size must be positive: " + regionWindowSize);
+        this.regionWindowSize = regionWindowSize;
+    }
 }
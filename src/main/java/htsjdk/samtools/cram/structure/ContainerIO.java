@@ -4,6 +4,7 @@ import htsjdk.samtools.cram.build.CramIO;
 import htsjdk.samtools.cram.common.CramVersionPolicies;
 import htsjdk.samtools.cram.common.Version;
 import htsjdk.samtools.cram.io.ExposedByteArrayOutputStream;
+import htsjdk.samtools.seekablestream.SeekableStream;
 import htsjdk.samtools.util.Log;
 import org.apache.commons.compress.utils.CountingOutputStream;
 
@@ -13,6 +14,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Methods to read and write CRAM containers.
@@ -70,6 +72,51 @@ public class ContainerIO {
         return container;
     }
 
+    /**
+     * Reads a container starting at the current position of a {@link SeekableStream}, but only the slices at the
+     * given offsets. The blocks of the other slices are skipped over without being read, and the stream is left at
+     * the start of the next container.
+     *
+     * @param version      CRAM version to expect
+     * @param seekableStream the stream to read from
+     * @param sliceOffsets offsets of the slices to read, as in {@link Container#landmarks}
+     * @return a new container object holding the selected slices only, with their original indexes and offsets
+     * @throws IOException as per java IO contract
+     */
+    public static Container readContainer(final Version version, final SeekableStream seekableStream,
+                                          final Set<Integer> sliceOffsets) throws IOException {
+        final long containerOffset = seekableStream.position();
+        final Container container = readContainerHeader(version.major, seekableStream);
+        container.offset = containerOffset;
+        if (container.isEOF()) return container;
+
+        final long dataOffset = seekableStream.position();
+        final Block block = Block.readFromInputStream(version.major, seekableStream);
+        if (block.getContentType() != BlockContentType.COMPRESSION_HEADER)
+            throw new RuntimeException("Content type does not match: " + block.getContentType().name());
+        container.header = new CompressionHeader();
+        container.header.read(block.getRawContent());
+
+        final List<Slice> slices = new ArrayList<Slice>();
+        for (int i = 0; i < container.landmarks.length; i++) {
+            if (!sliceOffsets.contains(container.landmarks[i]))
+                continue;
+            seekableStream.seek(dataOffset + container.landmarks[i]);
+            final Slice slice = new Slice();
+            SliceIO.read(version.major, slice, seekableStream);
+            slice.index = i;
+            slice.offset = container.landmarks[i];
+            slice.size = (i + 1 < container.landmarks.length ? container.landmarks[i + 1] : container.containerByteSize) - slice.offset;
+            slice.containerOffset = containerOffset;
+            slices.add(slice);
+        }
+        container.slices = slices.toArray(new Slice[slices.size()]);
+        seekableStream.seek(dataOffset + container.containerByteSize);
+
+        log.debug("READ CONTAINER: " + container.toString());
+        return container;
+    }
+
     @SuppressWarnings("SameParameterValue")
     private static Container readContainer(final int major, final InputStream inputStream, final int fromSlice, int howManySlices) throws IOException {
 
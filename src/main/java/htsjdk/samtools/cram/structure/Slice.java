@@ -68,34 +68,50 @@ public class Slice {
     public SAMBinaryTagAndValue sliceTags;
 
     private void alignmentBordersSanityCheck(final byte[] ref) {
+        alignmentBordersSanityCheck(ref, 0);
+    }
+
+    private void alignmentBordersSanityCheck(final byte[] ref, final int refOffsetZeroBased) {
         if (sequenceId == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) return ;
         if (alignmentStart > 0 && sequenceId >= 0 && ref == null) throw new IllegalArgumentException ("Mapped slice reference is null.");
 
-        if (alignmentStart > ref.length) {
+        final int refEnd = refOffsetZeroBased + ref.length;
+        if (alignmentStart > refEnd) {
             log.error(String.format("Slice mapped outside of reference: seqID=%d, start=%d, counter=%d.", sequenceId, alignmentStart,
                     globalRecordCounter));
             throw new RuntimeException("Slice mapped outside of the reference.");
         }
 
-        if (alignmentStart - 1 + alignmentSpan > ref.length) {
+        if (alignmentStart - 1 + alignmentSpan > refEnd) {
             log.warn(String.format("Slice partially mapped outside of reference: seqID=%d, start=%d, span=%d, counter=%d.",
                     sequenceId, alignmentStart, alignmentSpan, globalRecordCounter));
         }
     }
 
     public boolean validateRefMD5(final byte[] ref) {
+        return validateRefMD5(ref, 0);
+    }
+
+    /**
+     * Validate the slice reference MD5 against a region of the reference sequence.
+     *
+     * @param ref                reference bases starting at refOffsetZeroBased, must cover the slice span
+     * @param refOffsetZeroBased zero based position of the first base of ref on the reference sequence
+     * @return true if the MD5 matches
+     */
+    public boolean validateRefMD5(final byte[] ref, final int refOffsetZeroBased) {
         if(sequenceId == Slice.MULTI_REFERENCE)
             throw new SAMException("Cannot verify a slice with multiple references on a single reference.");
 
         if (sequenceId == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) return true;
 
-        alignmentBordersSanityCheck(ref);
+        alignmentBordersSanityCheck(ref, refOffsetZeroBased);
 
-        if (!validateRefMD5(ref, alignmentStart, alignmentSpan, refMD5)) {
+        if (!validateRefMD5(ref, refOffsetZeroBased, alignmentStart, alignmentSpan, refMD5)) {
             final int shoulderLength = 10;
-            final String excerpt = getBrief(alignmentStart, alignmentSpan, ref, shoulderLength);
+            final String excerpt = getBrief(alignmentStart - refOffsetZeroBased, alignmentSpan, ref, shoulderLength);
 
-            if (validateRefMD5(ref, alignmentStart, alignmentSpan - 1, refMD5)) {
+            if (validateRefMD5(ref, refOffsetZeroBased, alignmentStart, alignmentSpan - 1, refMD5)) {
                 log.warn(String.format("Reference MD5 matches partially for slice %d:%d-%d, %s", sequenceId, alignmentStart,
                         alignmentStart + alignmentSpan - 1, excerpt));
                 return true;
@@ -109,9 +125,10 @@ public class Slice {
         return true;
     }
 
-    private static boolean validateRefMD5(final byte[] ref, final int alignmentStart, final int alignmentSpan, final byte[] expectedMD5) {
-        final int span = Math.min(alignmentSpan, ref.length - alignmentStart + 1);
-        final String md5 = SequenceUtil.calculateMD5String(ref, alignmentStart - 1, span);
+    private static boolean validateRefMD5(final byte[] ref, final int refOffsetZeroBased, final int alignmentStart,
+                                          final int alignmentSpan, final byte[] expectedMD5) {
+        final int span = Math.min(alignmentSpan, refOffsetZeroBased + ref.length - alignmentStart + 1);
+        final String md5 = SequenceUtil.calculateMD5String(ref, alignmentStart - 1 - refOffsetZeroBased, span);
         return md5.equals(String.format("%032x", new BigInteger(1, expectedMD5)));
     }
 
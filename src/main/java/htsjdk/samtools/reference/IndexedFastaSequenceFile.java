@@ -192,6 +192,17 @@ public class IndexedFastaSequenceFile extends AbstractFastaSequenceFile implemen
         return sequenceDictionary;
     }
 
+    /**
+     * Looks up the length of a contig in the fasta index, which is available even if the fasta has no sequence dictionary.
+     * @param contig contig whose length should be returned.
+     * @return the number of bases in the contig or -1 if the contig is not in the index.
+     */
+    public long getSequenceLength( String contig ) {
+        if( !index.hasIndexEntry(contig) )
+            return -1;
+        return index.getIndexEntry(contig).getSize();
+    }
+
     /**
      * Retrieves the complete sequence described by this contig.
      * @param contig contig whose data should be returned.
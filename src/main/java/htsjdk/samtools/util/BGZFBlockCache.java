@@ -0,0 +1,214 @@
+package htsjdk.samtools.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe, memory-bounded cache of inflated BGZF blocks, keyed by the source of the compressed stream and the
+ * offset of the block in it.
+ * <p>
+ * A {@link BlockCompressedInputStream} given a cache looks every block up in it before reading and inflating the
+ * block, so that repeated or overlapping random access queries, from the same stream or from other streams over the
+ * same source, only inflate each block once while it stays in the cache. Entries are evicted in least recently used
+ * order once the total size of the inflated blocks exceeds the byte budget.
+ * <p>
+ * Sources are identified by {@link htsjdk.samtools.seekablestream.SeekableStream#getSource()}, which is expected to be
+ * unique to the content of the stream, for example a file path or URL.
+ *
+ * @see BlockCompressedInputStream#setBlockCache(BGZFBlockCache)
+ */
+public class BGZFBlockCache {
+    private static final Log log = Log.getInstance(BGZFBlockCache.class);
+
+    /**
+     * Default byte budget, about a thousand full blocks.
+     */
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final BGZFBlockCache defaultCache = new BGZFBlockCache();
+
+    private final long maxBytes;
+    private long cachedBytes = 0;
+    private final LinkedHashMap<Key, CachedBlock> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * An inflated block, which must not be modified since it is shared by every stream reading it.
+     */
+    public static final class CachedBlock {
+        private final byte[] block;
+        private final int compressedSize;
+
+        CachedBlock(final byte[] block, final int compressedSize) {
+            this.block = block;
+            this.compressedSize = compressedSize;
+        }
+
+        /**
+         * @return the inflated content of the block
+         */
+        public byte[] getBlock() {
+            return block;
+        }
+
+        /**
+         * @return the size of the block in the compressed stream
+         */
+        public int getCompressedSize() {
+            return compressedSize;
+        }
+    }
+
+    private static final class Key {
+        private final String source;
+        private final long blockAddress;
+
+        Key(final String source, final long blockAddress) {
+            this.source = source;
+            this.blockAddress = blockAddress;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key key = (Key) o;
+            return blockAddress == key.blockAddress && source.equals(key.source);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * source.hashCode() + Long.hashCode(blockAddress);
+        }
+    }
+
+    public BGZFBlockCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param maxBytes the maximum number of inflated bytes to keep in the cache, 0 disables caching
+     */
+    public BGZFBlockCache(final long maxBytes) {
+        if (maxBytes < 0)
+            throw new IllegalArgumentException("Cache size must not be negative: " + maxBytes);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the process-wide cache, used by the {@link BlockCompressedInputStream}s over seekable sources when
+     * {@link htsjdk.samtools.Defaults#USE_BGZF_BLOCK_CACHE} is set
+     */
+    public static BGZFBlockCache getDefaultCache() {
+        return defaultCache;
+    }
+
+    /**
+     * @param source       the source of the compressed stream
+     * @param blockAddress the offset of the block in the compressed stream
+     * @return the cached block or null if it is not in the cache
+     */
+    public CachedBlock get(final String source, final long blockAddress) {
+        final CachedBlock block;
+        synchronized (entries) {
+            block = entries.get(new Key(source, blockAddress));
+        }
+        if (block != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return block;
+    }
+
+    /**
+     * Add an inflated block to the cache. The block must not be modified afterwards.
+     *
+     * @param source         the source of the compressed stream
+     * @param blockAddress   the offset of the block in the compressed stream
+     * @param block          the inflated content of the block
+     * @param compressedSize the size of the block in the compressed stream
+     */
+    public void put(final String source, final long blockAddress, final byte[] block, final int compressedSize) {
+        if (block.length > maxBytes)
+            return;
+
+        final Key key = new Key(source, blockAddress);
+        synchronized (entries) {
+            final CachedBlock previous = entries.put(key, new CachedBlock(block, compressedSize));
+            if (previous != null)
+                cachedBytes -= previous.block.length;
+            cachedBytes += block.length;
+
+            final Iterator<Map.Entry<Key, CachedBlock>> iterator = entries.entrySet().iterator();
+            while (cachedBytes > maxBytes && iterator.hasNext()) {
+                final Map.Entry<Key, CachedBlock> eldest = iterator.next();
+                if (eldest.getKey().equals(key))
+                    continue;
+                cachedBytes -= eldest.getValue().block.length;
+                iterator.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Remove all the blocks of a source, for example after it has been rewritten.
+     */
+    public void invalidate(final String source) {
+        synchronized (entries) {
+            final Iterator<Map.Entry<Key, CachedBlock>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                final Map.Entry<Key, CachedBlock> entry = iterator.next();
+                if (entry.getKey().source.equals(source)) {
+                    cachedBytes -= entry.getValue().block.length;
+                    iterator.remove();
+                }
+            }
+        }
+        log.debug("Invalidated cached blocks of " + source);
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            cachedBytes = 0;
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getCachedBytes() {
+        synchronized (entries) {
+            return cachedBytes;
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return the fraction of lookups that found the block in the cache, 0 if there has been no lookup
+     */
+    public double getHitRate() {
+        final long h = hits.get();
+        final long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+}
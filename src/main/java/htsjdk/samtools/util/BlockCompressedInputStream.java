@@ -24,6 +24,7 @@
 package htsjdk.samtools.util;
 
 
+import htsjdk.samtools.Defaults;
 import htsjdk.samtools.FileTruncatedException;
 import htsjdk.samtools.SAMException;
 import htsjdk.samtools.seekablestream.SeekableBufferedStream;
@@ -69,6 +70,14 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
     private int mCurrentOffset = 0;
     private long mStreamOffset = 0;
     private final BlockGunzipper blockGunzipper;
+    private BGZFBlockCache mBlockCache = Defaults.USE_BGZF_BLOCK_CACHE ? BGZFBlockCache.getDefaultCache() : null;
+    /**
+     * the position of mFile has not been moved to mStreamOffset yet, which is only done when a block has to be read.
+     * Like the position of mFile, it is only used by the thread reading blocks.
+     */
+    private boolean mFileSeekPending = false;
+    /** the length of mFile, read once, or -2 if it has not been read yet */
+    private volatile long mFileLength = -2;
 
     /**
      * Note that seek() is not supported if this ctor is used.
@@ -184,6 +193,18 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
         this.blockGunzipper.setCheckCrcs(check);
     }
 
+    /**
+     * Look up the blocks of this stream in a cache of inflated blocks, and add the blocks it inflates to it, so that
+     * the blocks shared by repeated or overlapping queries are only inflated once. Only streams over a
+     * {@link SeekableStream}, a file or a URL, whose source identifies their content, use the cache.
+     *
+     * @param cache the cache to use, or null to disable caching. Streams over seekable sources use
+     *              {@link BGZFBlockCache#getDefaultCache()} by default if {@link Defaults#USE_BGZF_BLOCK_CACHE} is set.
+     */
+    public void setBlockCache(final BGZFBlockCache cache) {
+        this.mBlockCache = cache;
+    }
+
     /**
      * @return the number of bytes that can be read (or skipped over) from this input stream without blocking by the
      * next caller of a method for this input stream. The next caller might be the same thread or another thread.
@@ -375,8 +396,13 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
             available = mCurrentBlock.mBlock.length;
         } else {
             prepareForSeek();
-            mFile.seek(compressedOffset);
             mStreamOffset = compressedOffset;
+            if (mBlockCache == null) {
+                mFile.seek(compressedOffset);
+            } else {
+                // the block may be cached, in which case the file does not need to be read
+                mFileSeekPending = true;
+            }
             mCurrentBlock = nextBlock(getBufferForReuse(mCurrentBlock));
             mCurrentOffset = 0;
             available = available();
@@ -393,13 +419,25 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
     protected void prepareForSeek() {
     }
 
-    private boolean eof() throws IOException {
-        if (mFile.eof()) {
-            return true;
+    /**
+     * Whether the current block is the last one, worked out from its address rather than the position of mFile, which
+     * may be in use by a read-ahead thread.
+     */
+    private boolean eof() {
+        final long length = fileLength();
+        if (length < 0) {
+            return false;
         }
+        final long remaining = length - (mCurrentBlock.mBlockAddress + mCurrentBlock.mBlockCompressedSize);
         // If the last remaining block is the size of the EMPTY_GZIP_BLOCK, this is the same as being at EOF.
-        return (mFile.length() - (mCurrentBlock.mBlockAddress
-                + mCurrentBlock.mBlockCompressedSize) == BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK.length);
+        return remaining <= 0 || remaining == BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK.length;
+    }
+
+    private long fileLength() {
+        if (mFileLength == -2) {
+            mFileLength = mFile.length();
+        }
+        return mFileLength;
     }
 
     /**
@@ -489,7 +527,7 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
      * @return null decompressing buffer to reuse, null if no buffer is available
      */
     private byte[] getBufferForReuse(DecompressedBlock block) {
-        if (block == null) return null;
+        if (block == null || block.mShared) return null;
         return block.mBlock;
     }
     
@@ -506,6 +544,17 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
             mFileBuffer = new byte[BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE];
         }
         long blockAddress = mStreamOffset;
+        final BGZFBlockCache cache = mBlockCache;
+        final String source = cache == null || mFile == null ? null : mFile.getSource();
+        // there is no block to look up at the end of the file
+        if (source != null && blockAddress != fileLength()) {
+            final BGZFBlockCache.CachedBlock cached = cache.get(source, blockAddress);
+            if (cached != null) {
+                mStreamOffset += cached.getCompressedSize();
+                mFileSeekPending = true;
+                return new DecompressedBlock(blockAddress, cached.getBlock(), cached.getCompressedSize(), true);
+            }
+        }
         try {
             final int headerByteCount = readBytes(mFileBuffer, 0, BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH);
             mStreamOffset += headerByteCount;
@@ -530,6 +579,10 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
                 		new FileTruncatedException(PREMATURE_END_MSG + mFile.getSource()));
             }
             final byte[] decompressed = inflateBlock(mFileBuffer, blockLength, bufferAvailableForReuse);
+            if (source != null) {
+                cache.put(source, blockAddress, decompressed, blockLength);
+                return new DecompressedBlock(blockAddress, decompressed, blockLength, true);
+            }
             return new DecompressedBlock(blockAddress, decompressed, blockLength);
         } catch (IOException e) {
             return new DecompressedBlock(blockAddress, 0, e);
@@ -553,6 +606,7 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
 
     private int readBytes(final byte[] buffer, final int offset, final int length) throws IOException {
         if (mFile != null) {
+            seekPendingFilePosition();
             return readBytes(mFile, buffer, offset, length);
         } else if (mStream != null) {
             return readBytes(mStream, buffer, offset, length);
@@ -561,6 +615,13 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
         }
     }
 
+    private void seekPendingFilePosition() throws IOException {
+        if (mFileSeekPending) {
+            mFile.seek(mStreamOffset);
+            mFileSeekPending = false;
+        }
+    }
+
     private static int readBytes(final SeekableStream file, final byte[] buffer, final int offset, final int length) throws IOException {
         int bytesRead = 0;
         while (bytesRead < length) {
@@ -727,12 +788,21 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
          * Exception thrown (if any) when attempting to decompress block
          */
         private final Exception mException;
+        /**
+         * The decompressed block is held by a {@link BGZFBlockCache}, so its buffer must not be reused
+         */
+        private final boolean mShared;
 
         public DecompressedBlock(long blockAddress, byte[] block, int compressedSize) {
+            this(blockAddress, block, compressedSize, false);
+        }
+
+        private DecompressedBlock(long blockAddress, byte[] block, int compressedSize, boolean shared) {
             mBlock = block;
             mBlockAddress = blockAddress;
             mBlockCompressedSize = compressedSize;
             mException = null;
+            mShared = shared;
         }
 
         public DecompressedBlock(long blockAddress, int compressedSize, Exception exception) {
@@ -740,6 +810,7 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
             mBlockAddress = blockAddress;
             mBlockCompressedSize = compressedSize;
             mException = exception;
+            mShared = false;
         }
     }
 }
@@ -136,6 +136,13 @@ public class DiskBackedQueue<E> implements Queue<E> {
         return (!this.canAdd);
     }
 
+    /**
+     * @return the factory of the streams of the temporary file, to choose its codec or read its metrics
+     */
+    public TempStreamFactory getTempStreamFactory() {
+        return this.tempStreamFactory;
+    }
+
     /**
      * Add the record to the tail of the queue, spilling to disk if necessary
      * Must check that (canAdd() == true) before calling this method
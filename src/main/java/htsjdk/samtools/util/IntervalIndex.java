@@ -0,0 +1,366 @@
+package htsjdk.samtools.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+
+/**
+ * An immutable index of intervals, with a value attached to each, for answering many overlap queries.
+ * <p>
+ * The intervals of each contig are kept in primitive arrays sorted by start, which are read as an implicit balanced
+ * binary tree augmented with the maximum end of each subtree, so that a query takes O(log n + k) time for k overlaps
+ * without a node object per interval as in {@link IntervalTree}.  Queries sorted by contig and start may instead go
+ * through a {@link Sweep}, which walks the intervals once for all the queries.
+ * <p>
+ * Intervals are closed, and two intervals overlap if they share at least one position.  Intervals that end before
+ * they start cover no position and are not indexed.  Overlaps are always returned sorted by start, and in the order
+ * in which they were added for equal starts.
+ */
+public final class IntervalIndex<T> {
+    private final Map<String, Contig> contigs;
+    private final int size;
+
+    /**
+     * The intervals of one contig, sorted by start.  The middle interval of every range [lo, hi) of the arrays is the
+     * root of the subtree of that range, whose maximum end is in maxEnds.
+     */
+    private static final class Contig {
+        final int[] starts;
+        final int[] ends;
+        final int[] maxEnds;
+        final Object[] values;
+
+        Contig(final int[] starts, final int[] ends, final Object[] values) {
+            this.starts = starts;
+            this.ends = ends;
+            this.values = values;
+            this.maxEnds = new int[starts.length];
+            computeMaxEnds(0, starts.length);
+        }
+
+        private int computeMaxEnds(final int lo, final int hi) {
+            if (lo >= hi) {
+                return Integer.MIN_VALUE;
+            }
+            final int mid = (lo + hi) >>> 1;
+            final int maxEnd = Math.max(ends[mid], Math.max(computeMaxEnds(lo, mid), computeMaxEnds(mid + 1, hi)));
+            maxEnds[mid] = maxEnd;
+            return maxEnd;
+        }
+
+        /**
+         * Apply the action to the indexes of the intervals overlapping [start, end] in [lo, hi), in order.
+         * @return false if the action returned false, which stops the search
+         */
+        boolean visit(final int lo, final int hi, final int start, final int end, final IntPredicate action) {
+            if (lo >= hi) {
+                return true;
+            }
+            final int mid = (lo + hi) >>> 1;
+            if (maxEnds[mid] < start) {
+                return true;
+            }
+            if (!visit(lo, mid, start, end, action)) {
+                return false;
+            }
+            if (starts[mid] > end) {
+                return true;
+            }
+            if (ends[mid] >= start && !action.test(mid)) {
+                return false;
+            }
+            return visit(mid + 1, hi, start, end, action);
+        }
+    }
+
+    private IntervalIndex(final Map<String, Contig> contigs) {
+        this.contigs = contigs;
+        int size = 0;
+        for (final Contig contig : contigs.values()) {
+            size += contig.starts.length;
+        }
+        this.size = size;
+    }
+
+    /**
+     * @return an index of the given intervals, each being its own value
+     */
+    public static <T extends Locatable> IntervalIndex<T> create(final Collection<T> intervals) {
+        final Builder<T> builder = new Builder<>();
+        for (final T interval : intervals) {
+            builder.add(interval, interval);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return an index of the intervals of the list, each being its own value
+     */
+    public static IntervalIndex<Interval> create(final IntervalList intervals) {
+        return create(intervals.getIntervals());
+    }
+
+    /**
+     * Accumulates the intervals of an index, in any order.
+     */
+    public static final class Builder<T> {
+        private final Map<String, ContigBuilder> contigs = new HashMap<>();
+
+        private static final class ContigBuilder {
+            int size = 0;
+            int[] starts = new int[16];
+            int[] ends = new int[16];
+            Object[] values = new Object[16];
+
+            void add(final int start, final int end, final Object value) {
+                if (size == starts.length) {
+                    final int newLength = size * 2;
+                    starts = Arrays.copyOf(starts, newLength);
+                    ends = Arrays.copyOf(ends, newLength);
+                    values = Arrays.copyOf(values, newLength);
+                }
+                starts[size] = start;
+                ends[size] = end;
+                values[size] = value;
+                size++;
+            }
+
+            Contig build() {
+                // sort by start, then by insertion order, with the index in the low bits of the key
+                final long[] keys = new long[size];
+                for (int i = 0; i < size; i++) {
+                    keys[i] = (long) starts[i] << 32 | i;
+                }
+                Arrays.sort(keys);
+                final int[] sortedStarts = new int[size];
+                final int[] sortedEnds = new int[size];
+                final Object[] sortedValues = new Object[size];
+                for (int i = 0; i < size; i++) {
+                    final int index = (int) keys[i];
+                    sortedStarts[i] = starts[index];
+                    sortedEnds[i] = ends[index];
+                    sortedValues[i] = values[index];
+                }
+                return new Contig(sortedStarts, sortedEnds, sortedValues);
+            }
+        }
+
+        /**
+         * Add an interval, closed at both ends.
+         */
+        public Builder<T> add(final String contig, final int start, final int end, final T value) {
+            if (contig == null) {
+                throw new IllegalArgumentException("null contig");
+            }
+            if (start <= end) {
+                contigs.computeIfAbsent(contig, c -> new ContigBuilder()).add(start, end, value);
+            }
+            return this;
+        }
+
+        public Builder<T> add(final Locatable interval, final T value) {
+            if (interval == null) {
+                throw new IllegalArgumentException("null interval");
+            }
+            return add(interval.getContig(), interval.getStart(), interval.getEnd(), value);
+        }
+
+        public IntervalIndex<T> build() {
+            final Map<String, Contig> built = new HashMap<>(contigs.size() * 2);
+            for (final Map.Entry<String, ContigBuilder> entry : contigs.entrySet()) {
+                built.put(entry.getKey(), entry.getValue().build());
+            }
+            return new IntervalIndex<>(built);
+        }
+    }
+
+    /**
+     * @return the number of intervals indexed
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Apply the action to the value of every interval overlapping [start, end], in order of start.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachOverlap(final String contig, final int start, final int end, final Consumer<? super T> action) {
+        final Contig c = contigs.get(contig);
+        if (c == null || start > end) {
+            return;
+        }
+        c.visit(0, c.starts.length, start, end, i -> {
+            action.accept((T) c.values[i]);
+            return true;
+        });
+    }
+
+    /**
+     * @return the values of the intervals overlapping the given one, in order of start
+     */
+    public List<T> getOverlaps(final Locatable locatable) {
+        if (locatable == null) {
+            throw new IllegalArgumentException("null locatable");
+        }
+        final List<T> overlaps = new ArrayList<>();
+        forEachOverlap(locatable.getContig(), locatable.getStart(), locatable.getEnd(), overlaps::add);
+        return overlaps;
+    }
+
+    /**
+     * @return true iff any interval overlaps [start, end]
+     */
+    public boolean overlapsAny(final String contig, final int start, final int end) {
+        final Contig c = contigs.get(contig);
+        if (c == null || start > end) {
+            return false;
+        }
+        return !c.visit(0, c.starts.length, start, end, i -> false);
+    }
+
+    /**
+     * @return true iff any interval overlaps the given one
+     */
+    public boolean overlapsAny(final Locatable locatable) {
+        if (locatable == null) {
+            throw new IllegalArgumentException("null locatable");
+        }
+        return overlapsAny(locatable.getContig(), locatable.getStart(), locatable.getEnd());
+    }
+
+    /**
+     * @return a new sweep over this index, for queries sorted by start within each contig
+     */
+    public Sweep sweep() {
+        return new Sweep();
+    }
+
+    /**
+     * Answers queries sorted by start within each contig, in O(n + m) time overall for n intervals and m queries,
+     * plus the number of intervals overlapping several queries.  It keeps the intervals that may overlap the next
+     * queries, and moves through the intervals of a contig as the queries do.  Queries may move on to another contig
+     * at any time, which starts over on that contig.
+     * <p>
+     * A sweep is not thread-safe, but any number of sweeps may be used on the same index concurrently.
+     */
+    public final class Sweep {
+        private String contigName = null;
+        private Contig contig = null;
+        private int lastStart = Integer.MIN_VALUE;
+        /** The index of the first interval not considered yet */
+        private int next = 0;
+        /** The indexes of the intervals considered that end at or after the last query start, in order */
+        private int[] active = new int[16];
+        private int activeCount = 0;
+
+        private Sweep() {
+        }
+
+        /**
+         * Apply the action to the value of every interval overlapping [start, end], in order of start.
+         * @throws IllegalArgumentException if the query starts before the previous one on the same contig
+         */
+        @SuppressWarnings("unchecked")
+        public void forEachOverlap(final String contig, final int start, final int end, final Consumer<? super T> action) {
+            if (!advance(contig, start, end)) {
+                return;
+            }
+            final Contig c = this.contig;
+            for (int i = 0; i < activeCount; i++) {
+                final int index = active[i];
+                if (c.starts[index] <= end) {
+                    action.accept((T) c.values[index]);
+                }
+            }
+        }
+
+        /**
+         * @return the values of the intervals overlapping the given one, in order of start
+         * @throws IllegalArgumentException if the query starts before the previous one on the same contig
+         */
+        public List<T> getOverlaps(final Locatable locatable) {
+            if (locatable == null) {
+                throw new IllegalArgumentException("null locatable");
+            }
+            final List<T> overlaps = new ArrayList<>();
+            forEachOverlap(locatable.getContig(), locatable.getStart(), locatable.getEnd(), overlaps::add);
+            return overlaps;
+        }
+
+        /**
+         * @return true iff any interval overlaps [start, end]
+         * @throws IllegalArgumentException if the query starts before the previous one on the same contig
+         */
+        public boolean overlapsAny(final String contig, final int start, final int end) {
+            if (!advance(contig, start, end)) {
+                return false;
+            }
+            for (int i = 0; i < activeCount; i++) {
+                if (this.contig.starts[active[i]] <= end) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return true iff any interval overlaps the given one
+         * @throws IllegalArgumentException if the query starts before the previous one on the same contig
+         */
+        public boolean overlapsAny(final Locatable locatable) {
+            if (locatable == null) {
+                throw new IllegalArgumentException("null locatable");
+            }
+            return overlapsAny(locatable.getContig(), locatable.getStart(), locatable.getEnd());
+        }
+
+        /**
+         * Drop the active intervals ending before the query, and activate the intervals starting up to its end.
+         * @return false if there can be no overlap
+         */
+        private boolean advance(final String contig, final int start, final int end) {
+            if (!contig.equals(contigName)) {
+                contigName = contig;
+                this.contig = contigs.get(contig);
+                lastStart = Integer.MIN_VALUE;
+                next = 0;
+                activeCount = 0;
+            }
+            if (start < lastStart) {
+                throw new IllegalArgumentException("Query " + contig + ":" + start + "-" + end +
+                        " starts before the previous query, at " + lastStart);
+            }
+            lastStart = start;
+            final Contig c = this.contig;
+            if (c == null || start > end) {
+                return false;
+            }
+
+            int kept = 0;
+            for (int i = 0; i < activeCount; i++) {
+                if (c.ends[active[i]] >= start) {
+                    active[kept++] = active[i];
+                }
+            }
+            activeCount = kept;
+
+            // intervals ending before this query cannot overlap the next ones, which start at or after it
+            while (next < c.starts.length && c.starts[next] <= end) {
+                if (c.ends[next] >= start) {
+                    if (activeCount == active.length) {
+                        active = Arrays.copyOf(active, activeCount * 2);
+                    }
+                    active[activeCount++] = next;
+                }
+                next++;
+            }
+            return activeCount > 0;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package htsjdk.samtools.util;
+
+import htsjdk.samtools.SAMException;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SamReader;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Returns the records of a coordinate-sorted stream that overlap any of a set of intervals, by walking the records
+ * and the sorted intervals together, in O(n + m) time for n records and m intervals rather than with a lookup per
+ * record.
+ * <p>
+ * Given a {@link Query} on an indexed source, the iterator reads the records from the first interval on, and jumps
+ * ahead with a new query whenever the next interval is on another contig, or starts more than jumpDistance bases
+ * after the next record, so that the records in large gaps between intervals are not read at all.  Records are only
+ * ever returned once, in the order of the source.
+ * <p>
+ * For example, for a tabix-indexed VCF:
+ * <pre>{@code
+ *     new OverlappingRecordIterator<>((contig, start) -> {
+ *         try {
+ *             return featureReader.query(contig, start, Integer.MAX_VALUE);
+ *         } catch (IOException e) {
+ *             throw new RuntimeIOException(e);
+ *         }
+ *     }, intervals, dictionary, OverlappingRecordIterator.DEFAULT_JUMP_DISTANCE);
+ * }</pre>
+ * Records on contigs which are not in the sequence dictionary, such as unmapped reads, are never returned.
+ */
+public class OverlappingRecordIterator<T extends Locatable> implements CloseableIterator<T> {
+
+    /**
+     * Default gap, in bases, from a record to the next interval over which the iterator queries the index rather than
+     * reading on.
+     */
+    public static final int DEFAULT_JUMP_DISTANCE = 64 * 1024;
+
+    /**
+     * A query on an indexed source of coordinate-sorted records.
+     */
+    public interface Query<T> {
+        /**
+         * @return the records overlapping the contig from the given position to its end, in coordinate order
+         */
+        CloseableIterator<T> query(String contig, int start);
+    }
+
+    private final SAMSequenceDictionary dictionary;
+    private final Query<T> query;
+    private final int jumpDistance;
+
+    /** The merged intervals, sorted by contig index then start */
+    private final int[] contigs;
+    private final int[] starts;
+    private final int[] ends;
+    private final int intervalCount;
+    /** The first interval that may overlap the current record or any after it */
+    private int interval = 0;
+
+    private PeekableIterator<T> records = null;
+    /** The contig of the last query */
+    private int queriedContig = -1;
+
+    /**
+     * Records before this position have been seen already, before the last jump, as have the first skipCount records
+     * at it, which were returned and overlap the interval of the new query
+     */
+    private int skipContig = -1;
+    private int skipStart = Integer.MIN_VALUE;
+    private int skipCount = 0;
+
+    /** The position of the last record returned, and the number of records returned at it */
+    private int returnedContig = -1;
+    private int returnedStart = Integer.MIN_VALUE;
+    private int returnedCount = 0;
+
+    /** The position of the last record, to check the order */
+    private int lastContig = -1;
+    private int lastStart = Integer.MIN_VALUE;
+
+    private T next = null;
+
+    /**
+     * Merge-join the records with the intervals, reading all the records up to the end of the last interval.
+     *
+     * @param records    coordinate-sorted records
+     * @param intervals  intervals in any order, which may overlap
+     * @param dictionary defines the order of contigs
+     */
+    public OverlappingRecordIterator(final CloseableIterator<T> records, final List<? extends Locatable> intervals,
+                                     final SAMSequenceDictionary dictionary) {
+        this(null, intervals, dictionary, Integer.MAX_VALUE);
+        this.records = new PeekableIterator<>(records);
+    }
+
+    /**
+     * Merge-join the records of an indexed source with the intervals, querying the source at the first interval and
+     * whenever the next interval is far enough from the next record.
+     *
+     * @param query        queries the source
+     * @param intervals    intervals in any order, which may overlap
+     * @param dictionary   defines the order of contigs
+     * @param jumpDistance gap from a record to the next interval above which the source is queried again
+     */
+    public OverlappingRecordIterator(final Query<T> query, final List<? extends Locatable> intervals,
+                                     final SAMSequenceDictionary dictionary, final int jumpDistance) {
+        if (intervals == null) {
+            throw new IllegalArgumentException("null intervals");
+        }
+        if (dictionary == null) {
+            throw new IllegalArgumentException("A sequence dictionary is needed to order the contigs");
+        }
+        if (jumpDistance < 0) {
+            throw new IllegalArgumentException("jumpDistance must not be negative: " + jumpDistance);
+        }
+        this.dictionary = dictionary;
+        this.query = query;
+        this.jumpDistance = jumpDistance;
+
+        // sort the intervals with the contig index in the upper bits and the start in the lower ones
+        final long[] keys = new long[intervals.size()];
+        int n = 0;
+        for (final Locatable locatable : intervals) {
+            final int contig = dictionary.getSequenceIndex(locatable.getContig());
+            if (contig < 0) {
+                throw new IllegalArgumentException("Contig of interval " + locatable + " is not in the sequence dictionary");
+            }
+            if (locatable.getStart() > locatable.getEnd()) {
+                continue;
+            }
+            keys[n++] = (long) contig << 32 | (locatable.getStart() & 0xFFFFFFFFL);
+        }
+        final long[] sortedKeys = Arrays.copyOf(keys, n);
+        Arrays.sort(sortedKeys);
+
+        // the ends, in the same order as the starts, to merge overlapping and adjacent intervals
+        final long[] endKeys = new long[n];
+        n = 0;
+        for (final Locatable locatable : intervals) {
+            if (locatable.getStart() <= locatable.getEnd()) {
+                endKeys[n++] = (long) dictionary.getSequenceIndex(locatable.getContig()) << 32 | (locatable.getEnd() & 0xFFFFFFFFL);
+            }
+        }
+        // an interval starting at the i-th smallest start ends before the (i+1)-th interval that does not overlap it,
+        // so merging the sorted starts with the sorted ends gives the same unions as merging the intervals themselves
+        Arrays.sort(endKeys);
+
+        this.contigs = new int[n];
+        this.starts = new int[n];
+        this.ends = new int[n];
+        int merged = 0;
+        for (int i = 0; i < n; i++) {
+            final int contig = (int) (sortedKeys[i] >>> 32);
+            final int start = (int) sortedKeys[i];
+            final int end = (int) endKeys[i];
+            if (merged > 0 && contigs[merged - 1] == contig && start <= ends[merged - 1] + 1L) {
+                ends[merged - 1] = Math.max(ends[merged - 1], end);
+            } else {
+                contigs[merged] = contig;
+                starts[merged] = start;
+                ends[merged] = end;
+                merged++;
+            }
+        }
+        this.intervalCount = merged;
+    }
+
+    /**
+     * Merge-join the records of a coordinate-sorted SAM, BAM or CRAM with the intervals, using the index if there is
+     * one.
+     */
+    public static OverlappingRecordIterator<SAMRecord> overlapping(final SamReader reader, final List<? extends Locatable> intervals) {
+        return overlapping(reader, intervals, DEFAULT_JUMP_DISTANCE);
+    }
+
+    /**
+     * Merge-join the records of a coordinate-sorted SAM, BAM or CRAM with the intervals, using the index if there is
+     * one.
+     *
+     * @param jumpDistance gap from a record to the next interval above which the index is queried again
+     */
+    public static OverlappingRecordIterator<SAMRecord> overlapping(final SamReader reader, final List<? extends Locatable> intervals,
+                                                                   final int jumpDistance) {
+        final SAMFileHeader header = reader.getFileHeader();
+        if (header.getSortOrder() != SAMFileHeader.SortOrder.coordinate) {
+            throw new SAMException("Records must be coordinate sorted to be joined with intervals, not " + header.getSortOrder());
+        }
+        if (reader.hasIndex()) {
+            return new OverlappingRecordIterator<>((contig, start) -> reader.queryOverlapping(contig, start, 0),
+                    intervals, header.getSequenceDictionary(), jumpDistance);
+        }
+        return new OverlappingRecordIterator<>(reader.iterator(), intervals, header.getSequenceDictionary());
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = advance();
+        }
+        return next != null;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final T ret = next;
+        next = null;
+        return ret;
+    }
+
+    /**
+     * @return the next record overlapping an interval, or null if there is none
+     */
+    private T advance() {
+        while (interval < intervalCount) {
+            if (records == null) {
+                openQuery();
+                continue;
+            }
+            if (!records.hasNext()) {
+                if (query == null) {
+                    return null;
+                }
+                // the last query went to the end of its contig
+                while (interval < intervalCount && contigs[interval] <= queriedContig) {
+                    interval++;
+                }
+                if (interval < intervalCount) {
+                    openQuery();
+                }
+                continue;
+            }
+
+            final T record = records.peek();
+            final int contig = record.getContig() == null ? -1 : dictionary.getSequenceIndex(record.getContig());
+            final int start = record.getStart();
+            if (contig < 0 || contig < skipContig || contig == skipContig && start < skipStart) {
+                records.next();
+                continue;
+            }
+            if (skipCount > 0 && contig == skipContig && start == skipStart) {
+                skipCount--;
+                records.next();
+                continue;
+            }
+            if (contig < lastContig || contig == lastContig && start < lastStart) {
+                throw new SAMException("Records are not coordinate sorted: " + record + " is after " +
+                        dictionary.getSequence(lastContig).getSequenceName() + ":" + lastStart);
+            }
+            lastContig = contig;
+            lastStart = start;
+
+            while (interval < intervalCount && (contigs[interval] < contig || contigs[interval] == contig && ends[interval] < start)) {
+                interval++;
+            }
+            if (interval == intervalCount) {
+                break;
+            }
+            if (contigs[interval] == contig && starts[interval] <= record.getEnd()) {
+                if (contig == returnedContig && start == returnedStart) {
+                    returnedCount++;
+                } else {
+                    returnedContig = contig;
+                    returnedStart = start;
+                    returnedCount = 1;
+                }
+                return records.next();
+            }
+            if (query != null && (contigs[interval] != contig || (long) starts[interval] - start > jumpDistance)) {
+                // the record has not been returned, so skip the records before it, and the ones at its position which
+                // were returned: they overlap the same interval as the new query, and come first there in file order
+                skipContig = contig;
+                skipStart = start;
+                skipCount = contig == returnedContig && start == returnedStart ? returnedCount : 0;
+                openQuery();
+                continue;
+            }
+            records.next();
+        }
+        return null;
+    }
+
+    /**
+     * Query the source from the start of the current interval.
+     */
+    private void openQuery() {
+        if (records != null) {
+            records.close();
+        }
+        queriedContig = contigs[interval];
+        records = new PeekableIterator<>(query.query(dictionary.getSequence(queriedContig).getSequenceName(), starts[interval]));
+    }
+
+    @Override
+    public void close() {
+        next = null;
+        interval = intervalCount;
+        if (records != null) {
+            records.close();
+            records = null;
+        }
+    }
+}
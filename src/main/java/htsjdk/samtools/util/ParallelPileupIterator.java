@@ -0,0 +1,525 @@
+package htsjdk.samtools.util;
+
+import htsjdk.samtools.AlignmentBlock;
+import htsjdk.samtools.CigarElement;
+import htsjdk.samtools.CigarOperator;
+import htsjdk.samtools.SAMException;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.filter.AggregateFilter;
+import htsjdk.samtools.filter.DuplicateReadFilter;
+import htsjdk.samtools.filter.SamRecordFilter;
+import htsjdk.samtools.filter.SecondaryOrSupplementaryFilter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Computes the pileup of an indexed, coordinate-sorted SAM, BAM or CRAM on several threads, and returns it as a
+ * sequence of {@link Shard}s in coordinate order.
+ * <p>
+ * The genome, or the given intervals, is cut into shards of at most shardSize bases, and every shard is computed on
+ * its own by querying the index for the records overlapping it.  Unlike {@link SamLocusIterator}, which keeps a
+ * {@link SamLocusIterator.LocusInfo} with a {@link SamLocusIterator.RecordAndOffset} for every covered base of every
+ * read, a shard only keeps counts in primitive arrays: the depth, the count of each base, the depth on the negative
+ * strand, the sum of the base qualities and the number of deletions at each position, and a histogram of the base
+ * qualities over the whole shard.  The records and offsets at each position can be kept as well with
+ * {@link #setKeepRecords(boolean)}, at the cost of the same allocations as {@link SamLocusIterator}.
+ * <p>
+ * Records are filtered and bases are counted as {@link SamLocusIterator} does with the same settings, except that
+ * there is no limit on the number of reads per position, and each aligned base is counted in the shard of its own
+ * position, so that the shards add up to a single pileup of the whole input.  Every position of the shards is
+ * reported, whether covered or not.
+ * <p>
+ * At most twice as many shards as threads are computed ahead of the one being returned.  Each thread opens a reader
+ * of its own from the supplier, which are all closed with this iterator once the shards being computed are done.
+ */
+public class ParallelPileupIterator implements CloseableIterator<ParallelPileupIterator.Shard> {
+    private static final Log log = Log.getInstance(ParallelPileupIterator.class);
+
+    /**
+     * Default number of reference positions per shard, about 4MB of counts.
+     */
+    public static final int DEFAULT_SHARD_SIZE = 100000;
+
+    /**
+     * The bases counted at each position, in the order of {@link Shard#getBaseCounts(int)}.  Any base other than
+     * A, C, G or T, in either case, is counted as N.
+     */
+    public static final byte[] BASES = {'A', 'C', 'G', 'T', 'N'};
+
+    private static final AtomicInteger threadsCreated = new AtomicInteger(0);
+
+    private final Supplier<SamReader> readers;
+    private final SAMSequenceDictionary dictionary;
+    private final int threads;
+    /** The readers not in use by a shard task, which are all of them once the tasks are done */
+    private final ConcurrentLinkedQueue<SamReader> idleReaders = new ConcurrentLinkedQueue<>();
+
+    /** The shards, sorted by contig index then start */
+    private final int[] shardContigs;
+    private final int[] shardStarts;
+    private final int[] shardEnds;
+    private int nextShard = 0;
+
+    private ExecutorService workers = null;
+    private final Deque<Future<Shard>> pending = new ArrayDeque<>();
+
+    private List<SamRecordFilter> samFilters = Arrays.asList(new SecondaryOrSupplementaryFilter(), new DuplicateReadFilter());
+    private int qualityScoreCutoff = Integer.MIN_VALUE;
+    private int mappingQualityScoreCutoff = Integer.MIN_VALUE;
+    private boolean includeNonPfReads = true;
+    private boolean keepRecords = false;
+    private boolean closed = false;
+
+    /**
+     * The counts of the pileup over a range of positions of a contig.
+     */
+    public static final class Shard implements Locatable {
+        private final SAMSequenceRecord sequence;
+        private final int start;
+        private final int end;
+        private int recordCount = 0;
+
+        private final int[] depths;
+        /** BASES.length counts per position */
+        private final int[] baseCounts;
+        private final int[] negativeStrandDepths;
+        private final int[] qualitySums;
+        private final int[] deletions;
+        private final long[] qualityHistogram = new long[256];
+        private final List<List<SamLocusIterator.RecordAndOffset>> records;
+
+        Shard(final SAMSequenceRecord sequence, final int start, final int end, final boolean keepRecords) {
+            this.sequence = sequence;
+            this.start = start;
+            this.end = end;
+            final int length = end - start + 1;
+            this.depths = new int[length];
+            this.baseCounts = new int[length * BASES.length];
+            this.negativeStrandDepths = new int[length];
+            this.qualitySums = new int[length];
+            this.deletions = new int[length];
+            this.records = keepRecords ? new ArrayList<>(Collections.nCopies(length, null)) : null;
+        }
+
+        /**
+         * Count the aligned bases and the deletions of the record within this shard.
+         */
+        void add(final SAMRecord rec, final int minQuality) {
+            recordCount++;
+            final boolean dontCheckQualities = minQuality == 0;
+            final byte[] baseQualities = rec.getBaseQualities();
+            final byte[] bases = rec.getReadBases();
+            final boolean negativeStrand = rec.getReadNegativeStrandFlag();
+
+            for (final AlignmentBlock alignmentBlock : rec.getAlignmentBlocks()) {
+                final int refStart = alignmentBlock.getReferenceStart();
+                // only the part of the block within this shard
+                final int first = Math.max(0, start - refStart);
+                final int last = Math.min(alignmentBlock.getLength(), end - refStart + 1);
+                for (int i = first; i < last; i++) {
+                    // 0-based offset into the read of the current base
+                    final int readOffset = alignmentBlock.getReadStart() + i - 1;
+                    final boolean hasQuality = baseQualities.length != 0;
+                    if (!dontCheckQualities && hasQuality && baseQualities[readOffset] < minQuality) {
+                        continue;
+                    }
+                    final int index = refStart + i - start;
+                    depths[index]++;
+                    baseCounts[index * BASES.length + baseIndex(bases.length == 0 ? (byte) 'N' : bases[readOffset])]++;
+                    if (negativeStrand) {
+                        negativeStrandDepths[index]++;
+                    }
+                    if (hasQuality) {
+                        qualitySums[index] += baseQualities[readOffset];
+                        qualityHistogram[baseQualities[readOffset] & 0xFF]++;
+                    }
+                    if (records != null) {
+                        List<SamLocusIterator.RecordAndOffset> positionRecords = records.get(index);
+                        if (positionRecords == null) {
+                            positionRecords = new ArrayList<>();
+                            records.set(index, positionRecords);
+                        }
+                        positionRecords.add(new SamLocusIterator.RecordAndOffset(rec, readOffset));
+                    }
+                }
+            }
+
+            // the quality threshold does not affect deletions
+            int refPosition = rec.getAlignmentStart();
+            for (final CigarElement element : rec.getCigar().getCigarElements()) {
+                final CigarOperator operator = element.getOperator();
+                if (operator == CigarOperator.D) {
+                    final int from = Math.max(refPosition, start);
+                    final int to = Math.min(refPosition + element.getLength() - 1, end);
+                    for (int position = from; position <= to; position++) {
+                        deletions[position - start]++;
+                    }
+                }
+                if (operator.consumesReferenceBases()) {
+                    refPosition += element.getLength();
+                }
+            }
+        }
+
+        private int checkPosition(final int position) {
+            if (position < start || position > end) {
+                throw new IllegalArgumentException("Position " + position + " is not in " + this);
+            }
+            return position - start;
+        }
+
+        @Override
+        public String getContig() {
+            return sequence.getSequenceName();
+        }
+
+        public SAMSequenceRecord getSequenceRecord() {
+            return sequence;
+        }
+
+        @Override
+        public int getStart() {
+            return start;
+        }
+
+        @Override
+        public int getEnd() {
+            return end;
+        }
+
+        /**
+         * @return the number of records that passed the filters and overlap this shard
+         */
+        public int getRecordCount() {
+            return recordCount;
+        }
+
+        /**
+         * @return the number of aligned bases at the 1-based reference position
+         */
+        public int getDepth(final int position) {
+            return depths[checkPosition(position)];
+        }
+
+        /**
+         * @return the number of aligned bases at the position that are the given base, as counted in {@link #BASES}
+         */
+        public int getBaseCount(final int position, final byte base) {
+            return baseCounts[checkPosition(position) * BASES.length + baseIndex(base)];
+        }
+
+        /**
+         * @return the number of each of the {@link #BASES} at the position
+         */
+        public int[] getBaseCounts(final int position) {
+            final int from = checkPosition(position) * BASES.length;
+            return Arrays.copyOfRange(baseCounts, from, from + BASES.length);
+        }
+
+        /**
+         * @return the number of aligned bases at the position from reads on the negative strand
+         */
+        public int getNegativeStrandDepth(final int position) {
+            return negativeStrandDepths[checkPosition(position)];
+        }
+
+        /**
+         * @return the sum of the qualities of the aligned bases at the position
+         */
+        public int getBaseQualitySum(final int position) {
+            return qualitySums[checkPosition(position)];
+        }
+
+        /**
+         * @return the number of reads with a deletion at the position
+         */
+        public int getDeletionCount(final int position) {
+            return deletions[checkPosition(position)];
+        }
+
+        /**
+         * @return the number of aligned bases of each quality over the whole shard, indexed by the unsigned quality
+         */
+        public long[] getQualityHistogram() {
+            return qualityHistogram.clone();
+        }
+
+        /**
+         * @return the records and offsets of the aligned bases at the position, empty unless they are kept
+         * @see ParallelPileupIterator#setKeepRecords(boolean)
+         */
+        public List<SamLocusIterator.RecordAndOffset> getRecordAndOffsets(final int position) {
+            final int index = checkPosition(position);
+            if (records == null || records.get(index) == null) {
+                return Collections.emptyList();
+            }
+            return Collections.unmodifiableList(records.get(index));
+        }
+
+        @Override
+        public String toString() {
+            return getContig() + ":" + start + "-" + end;
+        }
+    }
+
+    /**
+     * Pileup of every contig of the sequence dictionary, in shards of {@link #DEFAULT_SHARD_SIZE} bases.
+     *
+     * @param readers opens a new reader of the same indexed input every time it is called
+     * @param threads number of shards computed concurrently
+     */
+    public ParallelPileupIterator(final Supplier<SamReader> readers, final int threads) {
+        this(readers, null, threads, DEFAULT_SHARD_SIZE);
+    }
+
+    /**
+     * @param readers   opens a new reader of the same indexed input every time it is called
+     * @param intervals the positions to report, or null for every contig of the sequence dictionary
+     * @param threads   number of shards computed concurrently
+     * @param shardSize maximum number of positions per shard
+     */
+    public ParallelPileupIterator(final Supplier<SamReader> readers, final IntervalList intervals, final int threads,
+                                  final int shardSize) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed: " + threads);
+        }
+        if (shardSize < 1) {
+            throw new IllegalArgumentException("shardSize must be positive: " + shardSize);
+        }
+        this.readers = readers;
+        this.threads = threads;
+
+        final SamReader first = readers.get();
+        idleReaders.add(first);
+        final SAMFileHeader header = first.getFileHeader();
+        if (header.getSortOrder() != SAMFileHeader.SortOrder.coordinate) {
+            close();
+            throw new SAMException("Records must be coordinate sorted for a pileup, not " + header.getSortOrder());
+        }
+        if (!first.hasIndex()) {
+            close();
+            throw new SAMException("An index is needed to compute a pileup in parallel");
+        }
+        this.dictionary = header.getSequenceDictionary();
+
+        final List<int[]> shards = new ArrayList<>();
+        if (intervals == null) {
+            for (final SAMSequenceRecord sequence : dictionary.getSequences()) {
+                addShards(shards, sequence.getSequenceIndex(), 1, sequence.getSequenceLength(), shardSize);
+            }
+        } else {
+            SequenceUtil.assertSequenceDictionariesEqual(intervals.getHeader().getSequenceDictionary(), dictionary);
+            for (final Interval interval : intervals.uniqued().getIntervals()) {
+                addShards(shards, dictionary.getSequenceIndex(interval.getContig()), interval.getStart(), interval.getEnd(), shardSize);
+            }
+        }
+        this.shardContigs = new int[shards.size()];
+        this.shardStarts = new int[shards.size()];
+        this.shardEnds = new int[shards.size()];
+        for (int i = 0; i < shards.size(); i++) {
+            shardContigs[i] = shards.get(i)[0];
+            shardStarts[i] = shards.get(i)[1];
+            shardEnds[i] = shards.get(i)[2];
+        }
+    }
+
+    private static void addShards(final List<int[]> shards, final int contig, final int start, final int end, final int shardSize) {
+        for (long shardStart = start; shardStart <= end; shardStart += shardSize) {
+            shards.add(new int[]{contig, (int) shardStart, (int) Math.min(end, shardStart + shardSize - 1)});
+        }
+    }
+
+    /**
+     * @return the index of the base in {@link #BASES}
+     */
+    public static int baseIndex(final byte base) {
+        switch (base) {
+            case 'A':
+            case 'a':
+                return 0;
+            case 'C':
+            case 'c':
+                return 1;
+            case 'G':
+            case 'g':
+                return 2;
+            case 'T':
+            case 't':
+                return 3;
+            default:
+                return 4;
+        }
+    }
+
+    private void checkNotStarted() {
+        if (workers != null) {
+            throw new IllegalStateException("The pileup settings cannot be changed after the iteration started");
+        }
+    }
+
+    /**
+     * @param samFilters filters applied to the records of every shard, concurrently, which must therefore be
+     *                   thread-safe; null for no filter
+     */
+    public void setSamFilters(final List<SamRecordFilter> samFilters) {
+        checkNotStarted();
+        this.samFilters = samFilters == null ? Collections.emptyList() : new ArrayList<>(samFilters);
+    }
+
+    public int getQualityScoreCutoff() {
+        return qualityScoreCutoff;
+    }
+
+    public void setQualityScoreCutoff(final int qualityScoreCutoff) {
+        checkNotStarted();
+        this.qualityScoreCutoff = qualityScoreCutoff;
+    }
+
+    public int getMappingQualityScoreCutoff() {
+        return mappingQualityScoreCutoff;
+    }
+
+    public void setMappingQualityScoreCutoff(final int mappingQualityScoreCutoff) {
+        checkNotStarted();
+        this.mappingQualityScoreCutoff = mappingQualityScoreCutoff;
+    }
+
+    public boolean isIncludeNonPfReads() {
+        return includeNonPfReads;
+    }
+
+    public void setIncludeNonPfReads(final boolean includeNonPfReads) {
+        checkNotStarted();
+        this.includeNonPfReads = includeNonPfReads;
+    }
+
+    public boolean isKeepRecords() {
+        return keepRecords;
+    }
+
+    /**
+     * @param keepRecords whether to keep the records and offsets at every position, as {@link SamLocusIterator} does
+     */
+    public void setKeepRecords(final boolean keepRecords) {
+        checkNotStarted();
+        this.keepRecords = keepRecords;
+    }
+
+    private void start() {
+        if (workers != null || closed) {
+            return;
+        }
+        final int threadNumber = threadsCreated.incrementAndGet();
+        final AtomicInteger workerNumber = new AtomicInteger(0);
+        workers = Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable, "ParallelPileupIterator" + threadNumber + "-shard" + workerNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.debug("Computing the pileup of " + shardStarts.length + " shards on " + threads + " threads");
+        submitShards();
+    }
+
+    private void submitShards() {
+        while (pending.size() < 2 * threads && nextShard < shardStarts.length) {
+            final int shard = nextShard++;
+            pending.add(workers.submit(() -> computeShard(shard)));
+        }
+    }
+
+    private Shard computeShard(final int index) {
+        final SAMSequenceRecord sequence = dictionary.getSequence(shardContigs[index]);
+        final Shard shard = new Shard(sequence, shardStarts[index], shardEnds[index], keepRecords);
+        final AggregateFilter filter = new AggregateFilter(samFilters);
+
+        SamReader reader = idleReaders.poll();
+        if (reader == null) {
+            reader = readers.get();
+        }
+        try (final SAMRecordIterator records = reader.queryOverlapping(sequence.getSequenceName(), shard.start, shard.end)) {
+            while (records.hasNext()) {
+                final SAMRecord rec = records.next();
+                if (rec.getReadUnmappedFlag()
+                        || rec.getMappingQuality() < mappingQualityScoreCutoff
+                        || (!includeNonPfReads && rec.getReadFailsVendorQualityCheckFlag())
+                        || filter.filterOut(rec)) {
+                    continue;
+                }
+                shard.add(rec, qualityScoreCutoff);
+            }
+        } finally {
+            idleReaders.add(reader);
+        }
+        return shard;
+    }
+
+    @Override
+    public boolean hasNext() {
+        start();
+        return !pending.isEmpty();
+    }
+
+    @Override
+    public Shard next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final Shard shard;
+        try {
+            shard = pending.remove().get();
+        } catch (final InterruptedException e) {
+            throw new RuntimeException("Interrupted waiting for a pileup shard", e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof Error) throw (Error) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new SAMException("Unable to compute a pileup shard", cause);
+        }
+        submitShards();
+        return shard;
+    }
+
+    @Override
+    public void close() {
+        for (final Future<Shard> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+        closed = true;
+        try {
+            if (workers != null) {
+                workers.shutdownNow();
+                // the readers can only be closed once the shards being computed with them are done
+                workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting for the pileup threads to stop", e);
+        } finally {
+            // readers still in use by a shard if the wait was interrupted are not idle, and are not closed under it
+            SamReader reader;
+            while ((reader = idleReaders.poll()) != null) {
+                CloserUtil.close(reader);
+            }
+        }
+    }
+}
@@ -25,6 +25,8 @@ package htsjdk.samtools.util;
 
 import htsjdk.samtools.Defaults;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -32,6 +34,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -43,6 +46,12 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * Collection to which many records can be added.  After all records are added, the collection can be
@@ -52,13 +61,28 @@ import java.util.TreeSet;
  * equal as determined by the codec used to write them to disk and read them back.
  *
  * When iterating over the collection, the number of file handles required is numRecordsInCollection/maxRecordsInRam.
- * If this becomes a limiting factor, a file handle cache could be added.
+ * If there are more files than {@link #setMaxFilesToMerge(int)} allows, groups of files are first merged into
+ * larger files, as many times as needed to bring the number of files under the limit.
+ *
+ * Optionally, see {@link #setSpillInBackground(boolean)}, full buffers of records can be sorted and written to disk
+ * by a background thread while the caller fills a second buffer.
+ *
+ * Optionally, see {@link #setMaxBytesInRam(long, KeyPrefix)}, records can be encoded by the codec into off-heap
+ * buffers as soon as they are added, rather than held in memory as objects, and spilled when the encoded records
+ * reach a number of bytes rather than a number of records.
  *
  * If Snappy DLL is available and snappy.disable system property is not set to true, then Snappy is used
  * to compress temporary files.
  */
 public class SortingCollection<T> implements Iterable<T> {
 
+    /**
+     * Default maximum number of files merged at once, which keeps iteration under the usual limit of 1024 open files.
+     */
+    public static final int DEFAULT_MAX_FILES_TO_MERGE = 1000;
+
+    private static final AtomicInteger threadsCreated = new AtomicInteger(0);
+
     /**
      * Client must implement this class, which defines the way in which records are written to and
      * read from file.
@@ -96,6 +120,23 @@ public class SortingCollection<T> implements Iterable<T> {
         Codec<T> clone();
     }
 
+    /**
+     * Can be implemented to speed up sorting records buffered off-heap, see {@link #setMaxBytesInRam(long, KeyPrefix)}.
+     */
+    public interface KeyPrefix<T> {
+        /**
+         * @return a prefix of the sort key of the record, such that a record with a smaller prefix, as compared by
+         * {@link Long#compare(long, long)}, sorts before a record with a larger one.  Records with equal prefixes are
+         * decoded and compared with the comparator of the collection.
+         */
+        long getKeyPrefix(T record);
+    }
+
+    /**
+     * Default size of the off-heap buffers holding encoded records.
+     */
+    public static final int OFF_HEAP_CHUNK_SIZE = 8 * 1024 * 1024;
+
     /** Directories where files of sorted records go. */
     private final Path[] tmpDirs;
 
@@ -129,7 +170,42 @@ public class SortingCollection<T> implements Iterable<T> {
 
     private boolean destructiveIteration = true;
 
-    private TempStreamFactory tempStreamFactory = new TempStreamFactory();
+    private final TempStreamFactory tempStreamFactory = new TempStreamFactory();
+
+    private int maxFilesToMerge = DEFAULT_MAX_FILES_TO_MERGE;
+
+    /**
+     * Sorts and writes full buffers when spilling in the background, null otherwise.
+     */
+    private ExecutorService spillExecutor = null;
+
+    /**
+     * The buffer being spilled by the background thread, if any, which is reused once the spill is done.
+     */
+    private T[] spareRecords = null;
+
+    /**
+     * The background spill in progress, which returns the file written.
+     */
+    private Future<Path> pendingSpill = null;
+
+    /**
+     * The records encoded off-heap, when the collection is limited by bytes rather than records, null otherwise.
+     */
+    private OffHeapBuffer offHeapRecords = null;
+
+    /**
+     * The off-heap buffer being spilled by the background thread, if any, which is reused once the spill is done.
+     */
+    private OffHeapBuffer spareOffHeapRecords = null;
+
+    private long maxBytesInRam = 0;
+    private KeyPrefix<? super T> keyPrefix = null;
+
+    /**
+     * Each record added is encoded in here first, when buffering off-heap.
+     */
+    private final EncodedRecordStream encodedRecord = new EncodedRecordStream();
 
     /**
      * Prepare to accumulate records to be sorted
@@ -163,12 +239,34 @@ public class SortingCollection<T> implements Iterable<T> {
         if (iterationStarted) {
             throw new IllegalStateException("Cannot add after calling iterator()");
         }
+        if (offHeapRecords != null) {
+            addEncoded(rec);
+            return;
+        }
         if (numRecordsInRam == maxRecordsInRam) {
             spillToDisk();
         }
         ramRecords[numRecordsInRam++] = rec;
     }
 
+    private void addEncoded(final T rec) {
+        encodedRecord.reset();
+        codec.encode(rec);
+        final long prefix = keyPrefix == null ? 0 : keyPrefix.getKeyPrefix(rec);
+        if (!offHeapRecords.add(encodedRecord.getBuffer(), encodedRecord.size(), prefix)) {
+            spillToDisk();
+            // an empty buffer takes any record, even one larger than maxBytesInRam
+            offHeapRecords.add(encodedRecord.getBuffer(), encodedRecord.size(), prefix);
+        }
+    }
+
+    /**
+     * @return the number of records added but not spilled yet
+     */
+    private int recordsInRam() {
+        return offHeapRecords != null ? offHeapRecords.size : numRecordsInRam;
+    }
+
     /**
      * This method can be called after caller is done adding to collection, in order to possibly free
      * up memory.  If iterator() is called immediately after caller is done adding, this is not necessary,
@@ -184,16 +282,22 @@ public class SortingCollection<T> implements Iterable<T> {
 
         doneAdding = true;
 
-        if (this.files.isEmpty()) {
-            return;
+        waitForSpill();
+        if (!this.files.isEmpty() && recordsInRam() > 0) {
+            spillToDisk();
+            waitForSpill();
         }
+        stopSpillExecutor();
 
-        if (this.numRecordsInRam > 0) {
-            spillToDisk();
+        if (this.files.isEmpty()) {
+            return;
         }
 
         // Facilitate GC
         this.ramRecords = null;
+        this.spareRecords = null;
+        this.offHeapRecords = null;
+        this.spareOffHeapRecords = null;
     }
 
     /**
@@ -212,22 +316,255 @@ public class SortingCollection<T> implements Iterable<T> {
         this.destructiveIteration = destructiveIteration;
     }
 
+    /**
+     * @return the factory of the streams of temporary files, to choose their codec, possibly between spills, or to
+     * read their metrics
+     */
+    public TempStreamFactory getTempStreamFactory() {
+        return tempStreamFactory;
+    }
+
+    /**
+     * @return True if full buffers are sorted and written to disk by a background thread.
+     */
+    public boolean isSpillInBackground() {
+        return spillExecutor != null;
+    }
+
+    /**
+     * Tell this collection to sort and write full buffers of records to disk on a background thread, so that the
+     * caller can go on adding records to a second buffer meanwhile.  Buffers are sorted with
+     * {@link Arrays#parallelSort(Object[], int, int, Comparator)}.  This doubles the number of records held in memory,
+     * up to twice maxRecordsInRam, and the codec must not be used by the caller while records are being added.
+     * This is false by default.
+     */
+    public void setSpillInBackground(final boolean spillInBackground) {
+        if (doneAdding) {
+            throw new IllegalStateException("Cannot change spilling after calling doneAdding()");
+        }
+        if (spillInBackground && spillExecutor == null) {
+            final int threadNumber = threadsCreated.incrementAndGet();
+            spillExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "SortingCollection" + threadNumber + "-spill");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else if (!spillInBackground && spillExecutor != null) {
+            waitForSpill();
+            stopSpillExecutor();
+        }
+    }
+
+    /**
+     * @return The maximum number of files merged at once.
+     */
+    public int getMaxFilesToMerge() {
+        return maxFilesToMerge;
+    }
+
+    /**
+     * Set the maximum number of files merged at once, which is the number of file handles needed for iterating.
+     * When more files than this have been spilled, groups of files are merged into larger files before iterating.
+     */
+    public void setMaxFilesToMerge(final int maxFilesToMerge) {
+        if (maxFilesToMerge < 2) {
+            throw new IllegalArgumentException("maxFilesToMerge must be >= 2");
+        }
+        this.maxFilesToMerge = maxFilesToMerge;
+    }
+
+    /**
+     * @return The maximum number of bytes of encoded records held in memory, or 0 if the collection holds up to
+     * maxRecordsInRam records as objects.
+     */
+    public long getMaxBytesInRam() {
+        return maxBytesInRam;
+    }
+
+    /**
+     * Tell this collection to encode records with the codec into off-heap buffers as soon as they are added, and to
+     * spill them to disk once they take more than maxBytesInRam bytes, whatever their number.  This bounds the memory
+     * used by the collection, which holds no record objects, and the encoded records are written to disk as they are.
+     * maxRecordsInRam is ignored.
+     *
+     * Buffered records are sorted by their key prefix, and records with equal prefixes are decoded to be compared with
+     * the comparator, so that without a key prefix all the records are decoded for sorting.  Each record must be
+     * written in full to the output stream of the codec by {@link Codec#encode(Object)}, and independently of the
+     * records encoded before it.
+     *
+     * The off-heap buffers are allocated OFF_HEAP_CHUNK_SIZE bytes at a time, and count against the JVM limit on
+     * direct memory.  This must be called before any record is added.
+     *
+     * @param maxBytesInRam how many bytes of encoded records to accumulate before spilling to disk
+     * @param keyPrefix the key prefix of records, may be null
+     */
+    public void setMaxBytesInRam(final long maxBytesInRam, final KeyPrefix<? super T> keyPrefix) {
+        if (maxBytesInRam <= 0) {
+            throw new IllegalArgumentException("maxBytesInRam must be > 0");
+        }
+        if (doneAdding || recordsInRam() > 0 || pendingSpill != null || !files.isEmpty()) {
+            throw new IllegalStateException("Cannot change the memory limit after records have been added");
+        }
+        this.maxBytesInRam = maxBytesInRam;
+        this.keyPrefix = keyPrefix;
+        this.ramRecords = null;
+        this.offHeapRecords = new OffHeapBuffer();
+        this.codec.setOutputStream(encodedRecord);
+    }
+
     /**
      * Sort the records in memory, write them to a file, and clear the buffer of records in memory.
+     * When spilling in the background, the file is only added to the list of files by {@link #waitForSpill()}.
      */
     private void spillToDisk() {
-        try {
+        if (offHeapRecords != null) {
+            spillOffHeapRecords();
+            return;
+        }
+        if (spillExecutor == null) {
             Arrays.sort(this.ramRecords, 0, this.numRecordsInRam, this.comparator);
+            this.files.add(writeRecords(this.ramRecords, this.numRecordsInRam));
+        } else {
+            // the previous spill must be done, so that its buffer can be reused and its file is listed in order
+            waitForSpill();
+            final T[] records = this.ramRecords;
+            final int numRecords = this.numRecordsInRam;
+            this.pendingSpill = spillExecutor.submit(() -> {
+                Arrays.parallelSort(records, 0, numRecords, this.comparator);
+                return writeRecords(records, numRecords);
+            });
+            this.ramRecords = this.spareRecords != null ? this.spareRecords : newRecordArray(records);
+            this.spareRecords = records;
+        }
+        this.numRecordsInRam = 0;
+    }
+
+    // an array of the component type of records is an array of T
+    @SuppressWarnings("unchecked")
+    private T[] newRecordArray(final T[] records) {
+        return (T[]) Array.newInstance(records.getClass().getComponentType(), this.maxRecordsInRam);
+    }
+
+    private void spillOffHeapRecords() {
+        if (spillExecutor == null) {
+            offHeapRecords.sort();
+            this.files.add(writeTempFile(offHeapRecords::writeTo));
+            offHeapRecords.clear();
+        } else {
+            waitForSpill();
+            final OffHeapBuffer buffer = this.offHeapRecords;
+            this.pendingSpill = spillExecutor.submit(() -> {
+                buffer.sort();
+                final Path f = writeTempFile(buffer::writeTo);
+                buffer.clear();
+                return f;
+            });
+            this.offHeapRecords = this.spareOffHeapRecords != null ? this.spareOffHeapRecords : new OffHeapBuffer();
+            this.spareOffHeapRecords = buffer;
+        }
+    }
+
+    /**
+     * Write sorted records to a new temporary file, and clear them from the array.
+     * @return the file written
+     */
+    private Path writeRecords(final T[] records, final int numRecords) {
+        return writeRecords(new Iterator<T>() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < numRecords;
+            }
+
+            @Override
+            public T next() {
+                final T ret = records[i];
+                // Facilitate GC
+                records[i++] = null;
+                return ret;
+            }
+        });
+    }
+
+    /**
+     * Wait for the background spill in progress, if any, and add its file to the list of files.
+     */
+    private void waitForSpill() {
+        if (this.pendingSpill == null) {
+            return;
+        }
+        try {
+            this.files.add(this.pendingSpill.get());
+        } catch (final InterruptedException e) {
+            throw new RuntimeException("Interrupted waiting for records to be spilled to disk", e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof Error) throw (Error) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new RuntimeIOException("Failed to spill records to disk", cause);
+        } finally {
+            this.pendingSpill = null;
+        }
+    }
+
+    private void stopSpillExecutor() {
+        if (spillExecutor != null) {
+            spillExecutor.shutdown();
+            spillExecutor = null;
+        }
+    }
+
+    /**
+     * Merge groups of files into single files until there are no more than maxFilesToMerge of them.  Consecutive
+     * files are merged together, so that records comparing equal keep the order in which they were added.
+     */
+    private void mergeFiles() {
+        while (this.files.size() > this.maxFilesToMerge) {
+            final List<Path> merged = new ArrayList<>();
+            for (int i = 0; i < this.files.size(); i += this.maxFilesToMerge) {
+                final List<Path> group = this.files.subList(i, Math.min(i + this.maxFilesToMerge, this.files.size()));
+                if (group.size() == 1) {
+                    merged.add(group.get(0));
+                    continue;
+                }
+                final Path f;
+                try (final MergingIterator iterator = new MergingIterator(group)) {
+                    f = writeRecords(iterator);
+                }
+                merged.add(f);
+                IOUtil.deletePaths(group);
+            }
+            this.files.clear();
+            this.files.addAll(merged);
+        }
+    }
+
+    /**
+     * Write sorted records to a new temporary file.
+     * @return the file written
+     */
+    private Path writeRecords(final Iterator<T> records) {
+        return writeTempFile(os -> {
+            this.codec.setOutputStream(os);
+            while (records.hasNext()) {
+                this.codec.encode(records.next());
+            }
+        });
+    }
+
+    /**
+     * Create a new temporary file and write to it.
+     * @param writer writes the content of the file to the given stream, throwing RuntimeIOException on failure
+     * @return the file written
+     */
+    private Path writeTempFile(final Consumer<OutputStream> writer) {
+        try {
             final Path f = newTempFile();
             OutputStream os = null;
             try {
                 os = tempStreamFactory.wrapTempOutputStream(Files.newOutputStream(f), Defaults.BUFFER_SIZE);
-                this.codec.setOutputStream(os);
-                for (int i = 0; i < this.numRecordsInRam; ++i) {
-                    this.codec.encode(ramRecords[i]);
-                    // Facilitate GC
-                    this.ramRecords[i] = null;
-                }
+                writer.accept(os);
 
                 os.flush();
             } catch (RuntimeIOException ex) {
@@ -238,10 +575,7 @@ public class SortingCollection<T> implements Iterable<T> {
                     os.close();
                 }
             }
-
-            this.numRecordsInRam = 0;
-            this.files.add(f);
-
+            return f;
         }
         catch (IOException e) {
             throw new RuntimeIOException(e);
@@ -269,9 +603,10 @@ public class SortingCollection<T> implements Iterable<T> {
 
         this.iterationStarted = true;
         if (this.files.isEmpty()) {
-            return new InMemoryIterator();
+            return this.offHeapRecords != null ? this.offHeapRecords.iterator() : new InMemoryIterator();
         } else {
-            return new MergingIterator();
+            mergeFiles();
+            return new MergingIterator(this.files);
         }
     }
 
@@ -282,6 +617,16 @@ public class SortingCollection<T> implements Iterable<T> {
         this.iterationStarted = true;
         this.cleanedUp = true;
 
+        if (this.pendingSpill != null) {
+            try {
+                waitForSpill();
+            } catch (final RuntimeException e) {
+                // the spill failed, so there is no file to delete
+            }
+        }
+        stopSpillExecutor();
+        this.offHeapRecords = null;
+        this.spareOffHeapRecords = null;
         IOUtil.deletePaths(this.files);
     }
 
@@ -429,6 +774,236 @@ public class SortingCollection<T> implements Iterable<T> {
         }
     }
 
+    /**
+     * Records encoded by the codec, in off-heap chunks, with an index of their key prefixes and their locations.
+     * A buffer is only used by one thread at a time.
+     */
+    class OffHeapBuffer {
+        private final List<ByteBuffer> chunks = new ArrayList<>();
+        /** Duplicates of the chunks, for reading without disturbing the write positions */
+        private final List<ByteBuffer> readers = new ArrayList<>();
+        private int currentChunk = -1;
+        private long bytes = 0;
+        private int size = 0;
+
+        private long[] prefixes = new long[1024];
+        /** The index of the chunk of each record in the upper 32 bits, and its offset in the chunk in the lower ones */
+        private long[] locations = new long[1024];
+        private int[] lengths = new int[1024];
+        /** The indexes of the records in sort order, once sorted */
+        private int[] order = null;
+
+        /** For decoding the records to compare or iterate them */
+        private final Codec<T> decoder = codec.clone();
+        private byte[] scratch = new byte[1024];
+
+        /**
+         * @return false if the record does not fit in the byte budget, unless the buffer is empty
+         */
+        boolean add(final byte[] record, final int length, final long prefix) {
+            if (size > 0 && bytes + length > maxBytesInRam) {
+                return false;
+            }
+            if (currentChunk < 0 || chunks.get(currentChunk).remaining() < length) {
+                nextChunk(length);
+            }
+            if (size == prefixes.length) {
+                final int newLength = prefixes.length * 2;
+                prefixes = Arrays.copyOf(prefixes, newLength);
+                locations = Arrays.copyOf(locations, newLength);
+                lengths = Arrays.copyOf(lengths, newLength);
+            }
+            final ByteBuffer chunk = chunks.get(currentChunk);
+            prefixes[size] = prefix;
+            locations[size] = (long) currentChunk << 32 | chunk.position();
+            lengths[size] = length;
+            chunk.put(record, 0, length);
+            bytes += length;
+            size++;
+            order = null;
+            return true;
+        }
+
+        /**
+         * Move on to the next chunk, which is allocated unless a large enough one is left from before clear().
+         */
+        private void nextChunk(final int length) {
+            currentChunk++;
+            if (currentChunk < chunks.size() && chunks.get(currentChunk).capacity() >= length) {
+                return;
+            }
+            final int capacity = Math.max(length, (int) Math.min(OFF_HEAP_CHUNK_SIZE, maxBytesInRam));
+            final ByteBuffer chunk = ByteBuffer.allocateDirect(capacity);
+            if (currentChunk < chunks.size()) {
+                chunks.set(currentChunk, chunk);
+                readers.set(currentChunk, chunk.duplicate());
+            } else {
+                chunks.add(chunk);
+                readers.add(chunk.duplicate());
+            }
+        }
+
+        /**
+         * Copy a record into the scratch buffer.
+         * @return the length of the record
+         */
+        private int read(final int index) {
+            final int length = lengths[index];
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            final ByteBuffer reader = readers.get((int) (locations[index] >>> 32));
+            reader.position((int) locations[index]);
+            reader.get(scratch, 0, length);
+            return length;
+        }
+
+        private T decode(final int index) {
+            final int length = read(index);
+            decoder.setInputStream(new ByteArrayInputStream(scratch, 0, length));
+            return decoder.decode();
+        }
+
+        /**
+         * Sort the records by key prefix, then sort each run of records with the same prefix with the comparator.
+         * Both sorts are stable, so that records comparing equal keep the order in which they were added.
+         */
+        void sort() {
+            if (order != null) {
+                return;
+            }
+            final int[] sorted = new int[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = i;
+            }
+            sortByPrefix(sorted, new int[size], 0, size);
+
+            for (int start = 0; start < size; ) {
+                int end = start + 1;
+                while (end < size && prefixes[sorted[end]] == prefixes[sorted[start]]) {
+                    end++;
+                }
+                if (end - start > 1) {
+                    sortByComparator(sorted, start, end);
+                }
+                start = end;
+            }
+            order = sorted;
+        }
+
+        private void sortByPrefix(final int[] a, final int[] tmp, final int from, final int to) {
+            if (to - from <= 16) {
+                for (int i = from + 1; i < to; i++) {
+                    final int index = a[i];
+                    int j = i;
+                    for (; j > from && prefixes[a[j - 1]] > prefixes[index]; j--) {
+                        a[j] = a[j - 1];
+                    }
+                    a[j] = index;
+                }
+                return;
+            }
+            final int mid = (from + to) >>> 1;
+            sortByPrefix(a, tmp, from, mid);
+            sortByPrefix(a, tmp, mid, to);
+            if (prefixes[a[mid - 1]] <= prefixes[a[mid]]) {
+                return;
+            }
+            System.arraycopy(a, from, tmp, from, to - from);
+            int i = from;
+            int j = mid;
+            for (int k = from; k < to; k++) {
+                if (j >= to || (i < mid && prefixes[tmp[i]] <= prefixes[tmp[j]])) {
+                    a[k] = tmp[i++];
+                } else {
+                    a[k] = tmp[j++];
+                }
+            }
+        }
+
+        private void sortByComparator(final int[] a, final int from, final int to) {
+            final List<T> records = new ArrayList<>(to - from);
+            final Integer[] run = new Integer[to - from];
+            for (int i = from; i < to; i++) {
+                records.add(decode(a[i]));
+                run[i - from] = i - from;
+            }
+            Arrays.sort(run, (lhs, rhs) -> comparator.compare(records.get(lhs), records.get(rhs)));
+            final int[] indexes = Arrays.copyOfRange(a, from, to);
+            for (int i = 0; i < run.length; i++) {
+                a[from + i] = indexes[run[i]];
+            }
+        }
+
+        /**
+         * Write the sorted records, as they were encoded.
+         */
+        void writeTo(final OutputStream os) {
+            try {
+                for (int i = 0; i < size; i++) {
+                    os.write(scratch, 0, read(order[i]));
+                }
+            } catch (IOException e) {
+                throw new RuntimeIOException(e);
+            }
+        }
+
+        /**
+         * Remove all the records, keeping the chunks to reuse them.
+         */
+        void clear() {
+            for (final ByteBuffer chunk : chunks) {
+                chunk.clear();
+            }
+            currentChunk = -1;
+            bytes = 0;
+            size = 0;
+            order = null;
+        }
+
+        /**
+         * @return an iterator decoding the sorted records
+         */
+        CloseableIterator<T> iterator() {
+            sort();
+            return new CloseableIterator<T>() {
+                private int iterationIndex = 0;
+
+                @Override
+                public void close() {
+                    // nothing to do
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return iterationIndex < size;
+                }
+
+                @Override
+                public T next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return decode(order[iterationIndex++]);
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+
+    /**
+     * Gives access to the encoded record without copying it.
+     */
+    private static class EncodedRecordStream extends ByteArrayOutputStream {
+        byte[] getBuffer() {
+            return buf;
+        }
+    }
+
     /**
      * For iteration when spilling to disk has occurred.
      * Each file is has records in sort order within the file.
@@ -447,10 +1022,10 @@ public class SortingCollection<T> implements Iterable<T> {
     class MergingIterator implements CloseableIterator<T> {
         private final TreeSet<PeekFileRecordIterator> queue;
 
-        MergingIterator() {
+        MergingIterator(final List<Path> files) {
             this.queue = new TreeSet<PeekFileRecordIterator>(new PeekFileRecordIteratorComparator());
             int n = 0;
-            for (final Path f : SortingCollection.this.files) {
+            for (final Path f : files) {
                 final FileRecordIterator it = new FileRecordIterator(f);
                 if (it.hasNext()) {
                     this.queue.add(new PeekFileRecordIterator(it, n++));
@@ -0,0 +1,31 @@
+package htsjdk.samtools.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Compresses the temporary files written through a {@link TempStreamFactory}, for example the files spilled by
+ * {@link SortingCollection} and {@link DiskBackedQueue}.
+ * <p>
+ * The built-in codecs are listed in {@link TempStreamFactory}.  Other implementations are found with
+ * {@link java.util.ServiceLoader}, by listing them in META-INF/services/htsjdk.samtools.util.TempStreamCodec, and
+ * must have a public no-argument constructor.
+ */
+public interface TempStreamCodec {
+    /**
+     * @return the name of the codec, unique and at most 255 ASCII characters long, which is recorded at the start of
+     * every temporary file so that the file is read back with the codec it was written with
+     */
+    String getName();
+
+    /**
+     * @return a stream compressing the data written to it into the given stream
+     */
+    OutputStream wrapOutputStream(OutputStream outputStream) throws IOException;
+
+    /**
+     * @return a stream decompressing the data read from the given stream
+     */
+    InputStream wrapInputStream(InputStream inputStream) throws IOException;
+}
@@ -23,17 +23,35 @@
  */
 package htsjdk.samtools.util;
 
+import htsjdk.samtools.Defaults;
 import htsjdk.samtools.SAMException;
+import org.xerial.snappy.SnappyFramedInputStream;
+import org.xerial.snappy.SnappyFramedOutputStream;
 
 import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /**
- * Factory class for wrapping input and output streams for temporary files.  If available, Snappy is used to
- * compress output files.  Therefore, if a temporary output file is written with an output stream obtained
- * from this class, it must be read by an input stream created by this class, otherwise a file written with
- * compression will not be read with decompression.
+ * Factory class for wrapping input and output streams for temporary files.  Output files are compressed with a
+ * {@link TempStreamCodec}, by default Snappy if it is available, see {@link Defaults#TEMP_STREAM_CODEC}.  The name of
+ * the codec is written at the start of each file, so that the codec may be changed between files, but a temporary
+ * output file written with an output stream obtained from this class must be read by an input stream created by
+ * this class.
+ *
+ * The factory keeps count of the files written through it, of the bytes written to them before and after
+ * compression, and of the time spent writing the compressed bytes to the underlying streams.
  */
 public class TempStreamFactory {
     private static SnappyLoader snappyLoader = null;
@@ -44,40 +62,367 @@ public class TempStreamFactory {
     }
 
     /**
-     * Wrap the given InputStream in a SnappyInputStream if available.
-     * @return If Snappy is available, a SnappyInputStream wrapping inputStream.
-     * If not, and bufferSize > 0, a BufferedInputStream.
-     * Otherwise inputStream is returned.
+     * Writes the data as it is.
+     */
+    public static final TempStreamCodec NO_COMPRESSION = new TempStreamCodec() {
+        @Override
+        public String getName() {
+            return "none";
+        }
+
+        @Override
+        public OutputStream wrapOutputStream(final OutputStream outputStream) {
+            return outputStream;
+        }
+
+        @Override
+        public InputStream wrapInputStream(final InputStream inputStream) {
+            return inputStream;
+        }
+    };
+
+    /**
+     * Snappy streams, in small blocks, which needs the Snappy native library.
+     */
+    public static final TempStreamCodec SNAPPY = new TempStreamCodec() {
+        @Override
+        public String getName() {
+            return "snappy";
+        }
+
+        @Override
+        public OutputStream wrapOutputStream(final OutputStream outputStream) {
+            return getSnappyLoader().wrapOutputStream(outputStream);
+        }
+
+        @Override
+        public InputStream wrapInputStream(final InputStream inputStream) {
+            return getSnappyLoader().wrapInputStream(inputStream);
+        }
+    };
+
+    /**
+     * The Snappy framing format, with checksums and larger blocks, which needs the Snappy native library.
+     */
+    public static final TempStreamCodec SNAPPY_FRAMED = new TempStreamCodec() {
+        @Override
+        public String getName() {
+            return "snappy-framed";
+        }
+
+        @Override
+        public OutputStream wrapOutputStream(final OutputStream outputStream) throws IOException {
+            return new SnappyFramedOutputStream(outputStream);
+        }
+
+        @Override
+        public InputStream wrapInputStream(final InputStream inputStream) throws IOException {
+            return new SnappyFramedInputStream(inputStream);
+        }
+    };
+
+    private static final Map<String, TempStreamCodec> builtInCodecs = new LinkedHashMap<>();
+    private static Map<String, TempStreamCodec> serviceCodecs = null;
+
+    static {
+        builtInCodecs.put(NO_COMPRESSION.getName(), NO_COMPRESSION);
+        builtInCodecs.put(SNAPPY.getName(), SNAPPY);
+        builtInCodecs.put(SNAPPY_FRAMED.getName(), SNAPPY_FRAMED);
+        for (int level = Deflater.NO_COMPRESSION; level <= Deflater.BEST_COMPRESSION; level++) {
+            final DeflateCodec codec = new DeflateCodec(level);
+            builtInCodecs.put(codec.getName(), codec);
+        }
+    }
+
+    /**
+     * @param level from 0 for no compression, through 1 for the fastest, to 9 for the best compression
+     * @return a codec compressing with {@link Deflater} at the given level, named "deflate-" followed by the level,
+     * which needs no native library
+     */
+    public static TempStreamCodec deflate(final int level) {
+        final TempStreamCodec codec = builtInCodecs.get(DeflateCodec.NAME_PREFIX + level);
+        if (codec == null) {
+            throw new IllegalArgumentException("Invalid deflate level: " + level);
+        }
+        return codec;
+    }
+
+    /**
+     * @return the built-in codec or the codec found by {@link ServiceLoader} with the given name
+     * @throws IllegalArgumentException if there is no such codec
+     */
+    public static TempStreamCodec getCodec(final String name) {
+        final TempStreamCodec codec = builtInCodecs.get(name);
+        if (codec != null) {
+            return codec;
+        }
+        final TempStreamCodec serviceCodec = getServiceCodecs().get(name);
+        if (serviceCodec == null) {
+            throw new IllegalArgumentException("Unknown temporary stream codec: " + name);
+        }
+        return serviceCodec;
+    }
+
+    private static synchronized Map<String, TempStreamCodec> getServiceCodecs() {
+        if (serviceCodecs == null) {
+            serviceCodecs = new LinkedHashMap<>();
+            for (final TempStreamCodec codec : ServiceLoader.load(TempStreamCodec.class)) {
+                serviceCodecs.putIfAbsent(codec.getName(), codec);
+            }
+        }
+        return serviceCodecs;
+    }
+
+    /**
+     * @return the codec named by {@link Defaults#TEMP_STREAM_CODEC}, or no compression if that codec is Snappy and
+     * Snappy is not available
+     */
+    public static TempStreamCodec getDefaultCodec() {
+        final TempStreamCodec codec = getCodec(Defaults.TEMP_STREAM_CODEC);
+        if ((codec == SNAPPY || codec == SNAPPY_FRAMED) && !getSnappyLoader().isSnappyAvailable()) {
+            return NO_COMPRESSION;
+        }
+        return codec;
+    }
+
+    private volatile TempStreamCodec codec;
+
+    private final AtomicLong filesWritten = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong compressedBytesWritten = new AtomicLong();
+    private final AtomicLong writeNanos = new AtomicLong();
+
+    public TempStreamFactory() {
+        this(getDefaultCodec());
+    }
+
+    /**
+     * @param codec compresses the output files
+     */
+    public TempStreamFactory(final TempStreamCodec codec) {
+        setCodec(codec);
+    }
+
+    public TempStreamCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Change the codec compressing the output files created from now on.  Files already written are still read with
+     * the codec they were written with.
+     */
+    public void setCodec(final TempStreamCodec codec) {
+        if (codec == null) {
+            throw new IllegalArgumentException("Codec must not be null");
+        }
+        final int nameLength = codec.getName().getBytes(StandardCharsets.US_ASCII).length;
+        if (nameLength == 0 || nameLength > 255) {
+            throw new IllegalArgumentException("Invalid codec name: " + codec.getName());
+        }
+        this.codec = codec;
+    }
+
+    /**
+     * Wrap the given InputStream in a stream decompressing it with the codec it was written with.
+     * @return A stream decompressing inputStream, which is buffered first if bufferSize > 0.
      */
     public InputStream wrapTempInputStream(final InputStream inputStream, final int bufferSize) {
-        InputStream is = IOUtil.maybeBufferInputStream(inputStream, bufferSize);
-        if (getSnappyLoader().isSnappyAvailable()) {
-            try {
-                return getSnappyLoader().wrapInputStream(is);
-            } catch (Exception e) {
-                throw new SAMException("Error creating SnappyInputStream", e);
+        final InputStream is = IOUtil.maybeBufferInputStream(inputStream, bufferSize);
+        final String name;
+        try {
+            final int nameLength = is.read();
+            if (nameLength <= 0) {
+                throw new SAMException("Temporary file does not start with the name of its codec");
+            }
+            final byte[] nameBytes = new byte[nameLength];
+            int read = 0;
+            while (read < nameLength) {
+                final int n = is.read(nameBytes, read, nameLength - read);
+                if (n < 0) {
+                    throw new SAMException("Temporary file does not start with the name of its codec");
+                }
+                read += n;
             }
-        } else {
-            return is;
+            name = new String(nameBytes, StandardCharsets.US_ASCII);
+        } catch (IOException e) {
+            throw new RuntimeIOException(e);
+        }
+        final TempStreamCodec inputCodec = getCodec(name);
+        try {
+            return inputCodec.wrapInputStream(is);
+        } catch (Exception e) {
+            throw new SAMException("Error creating " + name + " input stream", e);
         }
     }
 
     /**
-     * Wrap the given OutputStream in a SnappyOutputStream if available.
-     * @return If Snappy is available, a SnappyOutputStream wrapping outputStream.
-     * If not, and bufferSize > 0, a BufferedOutputStream.
-     * Otherwise outputStream is returned.
+     * Wrap the given OutputStream in a stream compressing it with the current codec.
+     * @return A stream compressing into outputStream, through a buffer if bufferSize > 0.
      */
     public OutputStream wrapTempOutputStream(final OutputStream outputStream, final int bufferSize) {
-        OutputStream os = outputStream;
+        final CountingOutputStream compressed = new CountingOutputStream(outputStream, true);
+        OutputStream os = compressed;
         if (bufferSize > 0) os = new BufferedOutputStream(os, bufferSize);
-        if (getSnappyLoader().isSnappyAvailable()) {
-            try {
-                os = getSnappyLoader().wrapOutputStream(os);
-            } catch (Exception e) {
-                throw new SAMException("Error creating SnappyOutputStream", e);
-            }
+        final TempStreamCodec outputCodec = this.codec;
+        try {
+            final byte[] name = outputCodec.getName().getBytes(StandardCharsets.US_ASCII);
+            os.write(name.length);
+            os.write(name);
+            os = outputCodec.wrapOutputStream(os);
+        } catch (Exception e) {
+            throw new SAMException("Error creating " + outputCodec.getName() + " output stream", e);
+        }
+        return new MetricsOutputStream(os, compressed);
+    }
+
+    /**
+     * @return the number of temporary files written and closed
+     */
+    public long getFilesWritten() {
+        return filesWritten.get();
+    }
+
+    /**
+     * @return the number of bytes written to the closed temporary files, before compression
+     */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * @return the size of the closed temporary files
+     */
+    public long getCompressedBytesWritten() {
+        return compressedBytesWritten.get();
+    }
+
+    /**
+     * @return the number of bytes written per byte stored, 0 if nothing has been written
+     */
+    public double getCompressionRatio() {
+        final long compressedBytes = compressedBytesWritten.get();
+        return compressedBytes == 0 ? 0 : (double) bytesWritten.get() / compressedBytes;
+    }
+
+    /**
+     * @return the rate at which the compressed bytes were written to the underlying streams, in MB per second, not
+     * counting the time taken to compress them, 0 if nothing has been written
+     */
+    public double getWriteMegabytesPerSecond() {
+        final long nanos = writeNanos.get();
+        return nanos == 0 ? 0 : compressedBytesWritten.get() * 1e9 / nanos / (1024 * 1024);
+    }
+
+    /**
+     * Counts the bytes written to it, and optionally times the writes.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private final boolean timed;
+        private long count = 0;
+        private long nanos = 0;
+
+        CountingOutputStream(final OutputStream out, final boolean timed) {
+            super(out);
+            this.timed = timed;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            final long start = timed ? System.nanoTime() : 0;
+            out.write(b);
+            count++;
+            if (timed) nanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            final long start = timed ? System.nanoTime() : 0;
+            out.write(b, off, len);
+            count += len;
+            if (timed) nanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            final long start = timed ? System.nanoTime() : 0;
+            out.flush();
+            if (timed) nanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public void close() throws IOException {
+            final long start = timed ? System.nanoTime() : 0;
+            out.close();
+            if (timed) nanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Counts the bytes written to a temporary file, and adds them to the metrics of the factory once it is closed.
+     */
+    private final class MetricsOutputStream extends CountingOutputStream {
+        private final CountingOutputStream compressed;
+        private boolean closed = false;
+
+        MetricsOutputStream(final OutputStream out, final CountingOutputStream compressed) {
+            super(out, false);
+            this.compressed = compressed;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            super.close();
+            filesWritten.incrementAndGet();
+            bytesWritten.addAndGet(super.count);
+            compressedBytesWritten.addAndGet(compressed.count);
+            writeNanos.addAndGet(compressed.nanos);
+        }
+    }
+
+    private static class DeflateCodec implements TempStreamCodec {
+        private static final String NAME_PREFIX = "deflate-";
+        private static final int BUFFER_SIZE = 64 * 1024;
+        private final int level;
+
+        DeflateCodec(final int level) {
+            this.level = level;
+        }
+
+        @Override
+        public String getName() {
+            return NAME_PREFIX + level;
+        }
+
+        @Override
+        public OutputStream wrapOutputStream(final OutputStream outputStream) {
+            final Deflater deflater = new Deflater(level);
+            return new DeflaterOutputStream(outputStream, deflater, BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        deflater.end();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public InputStream wrapInputStream(final InputStream inputStream) {
+            final Inflater inflater = new Inflater();
+            return new InflaterInputStream(inputStream, inflater, BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inflater.end();
+                    }
+                }
+            };
         }
-        return os;
     }
 }
@@ -23,7 +23,11 @@
  */
 package htsjdk.tribble;
 
+import htsjdk.samtools.seekablestream.ISeekableStreamFactory;
+import htsjdk.samtools.seekablestream.SeekableStreamFactory;
 import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.CloserUtil;
+import htsjdk.samtools.util.Locatable;
 import htsjdk.samtools.util.RuntimeIOException;
 import htsjdk.tribble.readers.*;
 import htsjdk.tribble.util.ParsingUtils;
@@ -31,9 +35,19 @@ import htsjdk.tribble.util.ParsingUtils;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
 /**
@@ -42,6 +56,8 @@ import java.util.function.Function;
  */
 public class TabixFeatureReader<T extends Feature, SOURCE> extends AbstractFeatureReader<T, SOURCE> {
 
+    private static final AtomicInteger threadsCreated = new AtomicInteger(0);
+
     TabixReader tabixReader;
     List<String> sequenceNames;
 
@@ -138,6 +154,181 @@ public class TabixFeatureReader<T extends Feature, SOURCE> extends AbstractFeatu
         return new FeatureIterator<T>(lineReader, start - 1, end);
     }
 
+    /**
+     * Return the features overlapping each of many intervals. This is equivalent to calling
+     * {@link #query(String, int, int)} for each interval, but the intervals whose chunks share a BGZF block are queried
+     * together, in a single pass over their merged chunks, so that each block is inflated and each line is decoded only
+     * once however many intervals it overlaps.
+     *
+     * @param intervals the intervals to query
+     * @return for each interval, in the same order, the features overlapping it
+     */
+    public List<List<T>> query(final List<? extends Locatable> intervals) throws IOException {
+        return query(intervals, 1);
+    }
+
+    /**
+     * Return the features overlapping each of many intervals, as {@link #query(List)} does, reading independent batches
+     * of intervals concurrently. Each thread reads the data file through its own stream, while the lines are decoded
+     * into features on the calling thread since the codec is not thread-safe.
+     *
+     * @param intervals the intervals to query
+     * @param threads   number of threads reading the data file; 0 or 1 reads it on the calling thread
+     * @return for each interval, in the same order, the features overlapping it
+     */
+    public List<List<T>> query(final List<? extends Locatable> intervals, final int threads) throws IOException {
+        if (threads < 0) throw new IllegalArgumentException("Invalid number of threads: " + threads);
+        final List<List<T>> features = new ArrayList<>(intervals.size());
+        for (int i = 0; i < intervals.size(); i++) {
+            features.add(new ArrayList<>());
+        }
+        final List<QueryBatch> batches = makeQueryBatches(intervals);
+        if (threads <= 1 || batches.size() <= 1) {
+            for (final QueryBatch batch : batches) {
+                decodeBatch(batch, tabixReader.query(batch.tid, batch.begs, batch.ends, null), intervals, features);
+            }
+            return features;
+        }
+
+        final int threadNumber = threadsCreated.incrementAndGet();
+        final AtomicInteger workerNumber = new AtomicInteger(0);
+        final ExecutorService readers = Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable, "TabixFeatureReader" + threadNumber + "-reader" + workerNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // a stream per thread, opened when first needed
+        final Queue<BlockCompressedInputStream> idleStreams = new ConcurrentLinkedQueue<>();
+        final List<BlockCompressedInputStream> streams = Collections.synchronizedList(new ArrayList<>());
+        try {
+            final Deque<Future<List<TabixReader.RegionLine>>> pending = new ArrayDeque<>();
+            final Iterator<QueryBatch> toSubmit = batches.iterator();
+            for (final QueryBatch batch : batches) {
+                while (toSubmit.hasNext() && pending.size() < 2 * threads) {
+                    final QueryBatch next = toSubmit.next();
+                    pending.add(readers.submit(() -> {
+                        BlockCompressedInputStream stream = idleStreams.poll();
+                        if (stream == null) {
+                            final ISeekableStreamFactory ssf = SeekableStreamFactory.getInstance();
+                            stream = new BlockCompressedInputStream(ssf.getBufferedStream(ssf.getStreamFor(path, wrapper)));
+                            streams.add(stream);
+                        }
+                        try {
+                            return tabixReader.query(next.tid, next.begs, next.ends, stream);
+                        } finally {
+                            idleStreams.add(stream);
+                        }
+                    }));
+                }
+                final List<TabixReader.RegionLine> lines;
+                try {
+                    lines = pending.remove().get();
+                } catch (final InterruptedException e) {
+                    throw new RuntimeException("Interrupted waiting for tabix query results", e);
+                } catch (final ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof Error) throw (Error) cause;
+                    if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                    if (cause instanceof IOException) throw (IOException) cause;
+                    throw new RuntimeIOException("Error querying " + path, cause);
+                }
+                decodeBatch(batch, lines, intervals, features);
+            }
+            return features;
+        } finally {
+            readers.shutdownNow();
+            synchronized (streams) {
+                for (final BlockCompressedInputStream stream : streams) {
+                    CloserUtil.close(stream);
+                }
+            }
+        }
+    }
+
+    /**
+     * Intervals of the same sequence whose chunks share BGZF blocks, so that they are best read together
+     */
+    private static class QueryBatch {
+        final int tid;
+        final int[] begs;
+        final int[] ends;
+        /** index of each interval in the query */
+        final int[] indices;
+
+        QueryBatch(final int tid, final List<Integer> indices, final List<? extends Locatable> intervals) {
+            this.tid = tid;
+            this.begs = new int[indices.size()];
+            this.ends = new int[indices.size()];
+            this.indices = new int[indices.size()];
+            for (int i = 0; i < indices.size(); i++) {
+                final Locatable interval = intervals.get(indices.get(i));
+                this.begs[i] = interval.getStart() - 1;
+                this.ends[i] = interval.getEnd();
+                this.indices[i] = indices.get(i);
+            }
+        }
+    }
+
+    /**
+     * Group the intervals into batches that do not share any BGZF block, ordered by file offset. The intervals on
+     * unknown sequences, or without any chunk in the index, are left out since nothing overlaps them.
+     */
+    private List<QueryBatch> makeQueryBatches(final List<? extends Locatable> intervals) {
+        final List<Integer> queried = new ArrayList<>(intervals.size());
+        final int[] tids = new int[intervals.size()];
+        final long[][] spans = new long[intervals.size()][];
+        for (int i = 0; i < intervals.size(); i++) {
+            final Locatable interval = intervals.get(i);
+            tids[i] = tabixReader.chr2tid(interval.getContig());
+            if (tids[i] < 0) continue;
+            spans[i] = tabixReader.getChunkSpan(tids[i], interval.getStart() - 1, interval.getEnd());
+            if (spans[i] != null) queried.add(i);
+        }
+        queried.sort((a, b) -> tids[a] != tids[b] ? Integer.compare(tids[a], tids[b]) : Long.compareUnsigned(spans[a][0], spans[b][0]));
+
+        final List<QueryBatch> batches = new ArrayList<>();
+        final List<Integer> batch = new ArrayList<>();
+        long lastBlock = 0;
+        for (final int i : queried) {
+            if (!batch.isEmpty() && (tids[i] != tids[batch.get(0)] || spans[i][0] >>> 16 > lastBlock)) {
+                batches.add(new QueryBatch(tids[batch.get(0)], batch, intervals));
+                batch.clear();
+            }
+            lastBlock = batch.isEmpty() ? spans[i][1] >>> 16 : Math.max(lastBlock, spans[i][1] >>> 16);
+            batch.add(i);
+        }
+        if (!batch.isEmpty()) batches.add(new QueryBatch(tids[batch.get(0)], batch, intervals));
+        return batches;
+    }
+
+    /**
+     * Decode the lines read for a batch, adding each feature to the intervals it overlaps
+     */
+    private void decodeBatch(final QueryBatch batch, final List<TabixReader.RegionLine> lines,
+                             final List<? extends Locatable> intervals, final List<List<T>> features) {
+        for (final TabixReader.RegionLine line : lines) {
+            final T feature;
+            try {
+                feature = codec.getFeatureType().cast(((AsciiFeatureCodec<?>) codec).decode(line.getLine()));
+            } catch (TribbleException e) {
+                e.setSource(path);
+                throw e;
+            } catch (NumberFormatException e) {
+                String error = "Error parsing line: " + line.getLine();
+                throw new TribbleException.MalformedFeatureFile(error, path, e);
+            }
+            if (feature == null) continue;
+            for (final int region : line.getRegions()) {
+                final int index = batch.indices[region];
+                final Locatable interval = intervals.get(index);
+                // the same filtering as the FeatureIterator of a single query
+                if (feature.getStart() <= interval.getEnd() && feature.getEnd() > interval.getStart() - 1) {
+                    features.get(index).add(feature);
+                }
+            }
+        }
+    }
+
     @Override
     public CloseableTribbleIterator<T> iterator() throws IOException {
         final InputStream is = new BlockCompressedInputStream(ParsingUtils.openInputStream(path, wrapper));
@@ -56,6 +56,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.zip.GZIPInputStream;
 
 /**
@@ -354,38 +355,85 @@ public class IndexFactory {
         return createTabixIndex(inputFile, codec, codec.getTabixFormat(), sequenceDictionary);
     }
 
-    private static Index createIndex(final File inputFile, final FeatureIterator iterator, final IndexCreator creator) {
-        Feature lastFeature = null;
-        Feature currentFeature;
-        final Map<String, Feature> visitedChromos = new HashMap<String, Feature>(40);
-        while (iterator.hasNext()) {
-            final long position = iterator.getPosition();
-            currentFeature = iterator.next();
-
-            checkSorted(inputFile, lastFeature, currentFeature);
-            //should only visit chromosomes once
-            final String curChr = currentFeature.getContig();
-            final String lastChr = lastFeature != null ? lastFeature.getContig() : null;
-            if(!curChr.equals(lastChr)){
-                if(visitedChromos.containsKey(curChr)){
-                    String msg = "Input file must have contiguous chromosomes.";
-                    msg += " Saw feature " + featToString(visitedChromos.get(curChr));
-                    msg += " followed later by " + featToString(lastFeature);
-                    msg += " and then " + featToString(currentFeature);
-                    throw new TribbleException.MalformedFeatureFile(msg, inputFile.getAbsolutePath());
-                }else{
-                    visitedChromos.put(curChr, currentFeature);
+    /**
+     * Create an index of a file, decoding the file on several threads if it is block compressed. The index is the same
+     * as the one created by a single thread.
+     *
+     * @param inputFile    The file to be indexed.
+     * @param codecFactory creates the codecs used to decode the file, one per thread
+     * @param creator      the index creator to add the features to
+     * @param threads      number of decoding threads; block compressed files with line-based records are split at
+     *                     block boundaries and decoded in parallel if it is greater than 1, other files are decoded
+     *                     on the calling thread
+     */
+    public static <FEATURE_TYPE extends Feature, SOURCE_TYPE> Index createIndex(final File inputFile,
+                                                                                final Supplier<? extends FeatureCodec<FEATURE_TYPE, SOURCE_TYPE>> codecFactory,
+                                                                                final IndexCreator creator,
+                                                                                final int threads) {
+        final FeatureCodec<FEATURE_TYPE, SOURCE_TYPE> codec = codecFactory.get();
+        if (threads <= 1 || !(codec instanceof AsciiFeatureCodec) || !AbstractFeatureReader.hasBlockCompressedExtension(inputFile)) {
+            return createIndex(inputFile, new FeatureIterator<FEATURE_TYPE, SOURCE_TYPE>(inputFile, codec), creator);
+        }
+        CloserUtil.close(FeatureIterator.initIndexableBlockCompressedStream(inputFile)); // check that the file is block compressed
+        return createIndex(inputFile, new ParallelFeatureIterator<FEATURE_TYPE, SOURCE_TYPE>(inputFile, codecFactory, threads), creator);
+    }
+
+    /**
+     * Create a tabix index of a file, decoding the file on several threads if it is block compressed.
+     *
+     * @param inputFile    The file to be indexed.
+     * @param codecFactory creates the codecs used to decode the file, one per thread
+     * @param tabixFormat  Header fields for TabixIndex to be produced.
+     * @param sequenceDictionary May be null, but if present may reduce memory footprint for index creation.  Features
+     *                           in inputFile must be in the order defined by sequenceDictionary, if it is present.
+     * @param threads      number of decoding threads
+     * @see #createIndex(File, Supplier, IndexCreator, int)
+     */
+    public static <FEATURE_TYPE extends Feature, SOURCE_TYPE> TabixIndex createTabixIndex(final File inputFile,
+                                                                                          final Supplier<? extends FeatureCodec<FEATURE_TYPE, SOURCE_TYPE>> codecFactory,
+                                                                                          final TabixFormat tabixFormat,
+                                                                                          final SAMSequenceDictionary sequenceDictionary,
+                                                                                          final int threads) {
+        return (TabixIndex) createIndex(inputFile, codecFactory, new TabixIndexCreator(sequenceDictionary, tabixFormat), threads);
+    }
+
+    static Index createIndex(final File inputFile, final PositionalFeatureIterator iterator, final IndexCreator creator) {
+        // close the iterator even if the file is malformed, it may be holding decoding threads
+        final long finalPosition;
+        try {
+            Feature lastFeature = null;
+            Feature currentFeature;
+            final Map<String, Feature> visitedChromos = new HashMap<String, Feature>(40);
+            while (iterator.hasNext()) {
+                final long position = iterator.getPosition();
+                currentFeature = iterator.next();
+
+                checkSorted(inputFile, lastFeature, currentFeature);
+                //should only visit chromosomes once
+                final String curChr = currentFeature.getContig();
+                final String lastChr = lastFeature != null ? lastFeature.getContig() : null;
+                if(!curChr.equals(lastChr)){
+                    if(visitedChromos.containsKey(curChr)){
+                        String msg = "Input file must have contiguous chromosomes.";
+                        msg += " Saw feature " + featToString(visitedChromos.get(curChr));
+                        msg += " followed later by " + featToString(lastFeature);
+                        msg += " and then " + featToString(currentFeature);
+                        throw new TribbleException.MalformedFeatureFile(msg, inputFile.getAbsolutePath());
+                    }else{
+                        visitedChromos.put(curChr, currentFeature);
+                    }
                 }
-            }
 
-            creator.addFeature(currentFeature, position);
+                creator.addFeature(currentFeature, position);
 
-            lastFeature = currentFeature;
-        }
+                lastFeature = currentFeature;
+            }
 
-        // Get the end position of the last feature before closing the iterator
-        long finalPosition = iterator.getPosition();
-        iterator.close();
+            // Get the end position of the last feature before closing the iterator
+            finalPosition = iterator.getPosition();
+        } finally {
+            iterator.close();
+        }
         return creator.finalizeIndex(finalPosition);
     }
 
@@ -402,10 +450,20 @@ public class IndexFactory {
     }
 
 
+    /**
+     * Iterator over the features of a file and their positions
+     */
+    interface PositionalFeatureIterator extends CloseableTribbleIterator<Feature> {
+        /**
+         * @return the file position of the next feature, or the end position of the last one if there is none left
+         */
+        long getPosition();
+    }
+
     /**
      * Iterator for reading features from a file, given a {@code FeatureCodec}.
      */
-    static class FeatureIterator<FEATURE_TYPE extends Feature, SOURCE> implements CloseableTribbleIterator<Feature> {
+    static class FeatureIterator<FEATURE_TYPE extends Feature, SOURCE> implements PositionalFeatureIterator {
         // the stream we use to get features
         private final SOURCE source;
         // the next feature
@@ -497,6 +555,7 @@ public class IndexFactory {
         /**
          * @return the file position from the underlying reader
          */
+        @Override
         public long getPosition() {
             return (hasNext()) ? cachedPosition : ((LocationAware) source).getPosition();
         }
@@ -0,0 +1,354 @@
+package htsjdk.tribble.index;
+
+import htsjdk.samtools.seekablestream.SeekableStream;
+import htsjdk.samtools.seekablestream.SeekableStreamFactory;
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
+import htsjdk.samtools.util.CloserUtil;
+import htsjdk.samtools.util.LocationAware;
+import htsjdk.samtools.util.Log;
+import htsjdk.tribble.Feature;
+import htsjdk.tribble.FeatureCodec;
+import htsjdk.tribble.TribbleException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Iterator over the features of a BGZF-compressed, line-based feature file and their positions, for indexing, that
+ * decodes the file on a pool of worker threads.
+ * <p>
+ * The file is split at BGZF block boundaries into ranges of {@link #BLOCKS_PER_RANGE} blocks by default. Each worker decodes the
+ * features whose line starts in its range with {@link FeatureCodec#decodeLoc}, on its own stream and its own codec,
+ * and the features are then returned in file order with the same virtual file positions as a sequential pass, so that
+ * the index creators see exactly the same input.
+ */
+class ParallelFeatureIterator<FEATURE_TYPE extends Feature, SOURCE> implements IndexFactory.PositionalFeatureIterator {
+    private static final Log log = Log.getInstance(ParallelFeatureIterator.class);
+
+    /**
+     * Number of BGZF blocks decoded by a worker at a time, about 4MB of uncompressed data
+     */
+    static final int BLOCKS_PER_RANGE = 64;
+
+    private static final AtomicInteger threadsCreated = new AtomicInteger(0);
+
+    private final File inputFile;
+    private final Supplier<? extends FeatureCodec<FEATURE_TYPE, SOURCE>> codecs;
+    private final ExecutorService workers;
+    private final BlockingQueue<Worker> idleWorkers;
+    private final List<Worker> allWorkers = new ArrayList<>();
+    private final int threads;
+    private final int blocksPerRange;
+
+    // compressed offsets and uncompressed sizes of the blocks of the file
+    private long[] blockAddresses = new long[1024];
+    private int[] blockSizes = new int[1024];
+    private int nBlocks = 0;
+    private long fileLength;
+
+    private final Deque<Future<Range>> pending = new ArrayDeque<>();
+    private int nextRangeBlock;
+    private final long firstFeaturePosition;
+
+    private Range current = null;
+    private int currentIndex = 0;
+
+    /**
+     * The features decoded from a range of blocks
+     */
+    private static final class Range {
+        final List<Feature> features = new ArrayList<>();
+        long[] positions = new long[256];
+        // position after the last feature of the range
+        long endPosition;
+
+        void add(final Feature feature, final long position) {
+            if (features.size() == positions.length) positions = Arrays.copyOf(positions, positions.length * 2);
+            positions[features.size()] = position;
+            features.add(feature);
+        }
+    }
+
+    /**
+     * A codec that has read the header of the file, and the stream it reads with
+     */
+    private final class Worker {
+        final FeatureCodec<FEATURE_TYPE, SOURCE> codec;
+        final BlockCompressedInputStream stream;
+        // position of the first line after the header
+        final long headerEnd;
+
+        Worker() throws IOException {
+            codec = codecs.get();
+            stream = open();
+            final SOURCE source = makeIndexableSource(codec, stream);
+            codec.readHeader(source);
+            headerEnd = ((LocationAware) source).getPosition();
+        }
+    }
+
+    // the codec API types indexable sources as LocationAware only, but they are the codec's sources as well
+    @SuppressWarnings("unchecked")
+    private SOURCE makeIndexableSource(final FeatureCodec<FEATURE_TYPE, SOURCE> codec, final InputStream stream) {
+        return (SOURCE) codec.makeIndexableSourceFromStream(stream);
+    }
+
+    /**
+     * @param inputFile a BGZF-compressed file, with one feature per line
+     * @param codecs    creates the codecs used to decode the file, one per thread
+     * @param threads   number of decoding threads
+     */
+    ParallelFeatureIterator(final File inputFile, final Supplier<? extends FeatureCodec<FEATURE_TYPE, SOURCE>> codecs, final int threads) {
+        this(inputFile, codecs, threads, BLOCKS_PER_RANGE);
+    }
+
+    /**
+     * @param blocksPerRange number of blocks decoded by a worker at a time
+     */
+    ParallelFeatureIterator(final File inputFile, final Supplier<? extends FeatureCodec<FEATURE_TYPE, SOURCE>> codecs, final int threads,
+                            final int blocksPerRange) {
+        if (threads <= 0) throw new IllegalArgumentException("Must use at least 1 decoding thread.");
+        if (blocksPerRange <= 0) throw new IllegalArgumentException("Must decode at least 1 block at a time.");
+        this.inputFile = inputFile;
+        this.codecs = codecs;
+        this.threads = threads;
+        this.blocksPerRange = blocksPerRange;
+        this.idleWorkers = new ArrayBlockingQueue<>(threads);
+        try {
+            final Worker worker = new Worker();
+            firstFeaturePosition = worker.headerEnd;
+            allWorkers.add(worker);
+            idleWorkers.add(worker);
+            scanBlocks();
+        } catch (final IOException e) {
+            close();
+            throw new TribbleException.MalformedFeatureFile("Unable to read the block compressed file", inputFile.getAbsolutePath(), e);
+        }
+        nextRangeBlock = findBlock(BlockCompressedFilePointerUtil.getBlockAddress(firstFeaturePosition));
+
+        final int threadNumber = threadsCreated.incrementAndGet();
+        final AtomicInteger workerNumber = new AtomicInteger(0);
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable, "ParallelFeatureIterator" + threadNumber + "-decoder" + workerNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.debug("Indexing " + nBlocks + " blocks of " + inputFile + " on " + threads + " threads");
+        submitRanges();
+        advance();
+    }
+
+    private BlockCompressedInputStream open() throws IOException {
+        return new BlockCompressedInputStream(SeekableStreamFactory.getInstance().getStreamFor(inputFile.getAbsolutePath()));
+    }
+
+    /**
+     * Read the compressed offset and the uncompressed size of every block, from the block headers and footers only
+     */
+    private void scanBlocks() throws IOException {
+        final byte[] buffer = new byte[BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH];
+        try (final SeekableStream file = SeekableStreamFactory.getInstance().getStreamFor(inputFile.getAbsolutePath())) {
+            fileLength = file.length();
+            long address = 0;
+            while (address < fileLength) {
+                file.seek(address);
+                if (readFully(file, buffer, BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH)) {
+                    throw new IOException("Truncated block header at offset " + address);
+                }
+                final int blockLength = unpackInt16(buffer, BlockCompressedStreamConstants.BLOCK_LENGTH_OFFSET) + 1;
+                if (blockLength < BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH || address + blockLength > fileLength) {
+                    throw new IOException("Unexpected compressed block length " + blockLength + " at offset " + address);
+                }
+                file.seek(address + blockLength - 4);
+                if (readFully(file, buffer, 4)) {
+                    throw new IOException("Truncated block at offset " + address);
+                }
+                if (nBlocks == blockAddresses.length) {
+                    blockAddresses = Arrays.copyOf(blockAddresses, nBlocks * 2);
+                    blockSizes = Arrays.copyOf(blockSizes, nBlocks * 2);
+                }
+                blockAddresses[nBlocks] = address;
+                blockSizes[nBlocks] = unpackInt16(buffer, 0) | (unpackInt16(buffer, 2) << 16);
+                nBlocks++;
+                address += blockLength;
+            }
+        }
+    }
+
+    /** @return true if the buffer could not be filled */
+    private static boolean readFully(final SeekableStream file, final byte[] buffer, final int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            final int count = file.read(buffer, read, length - read);
+            if (count <= 0) return true;
+            read += count;
+        }
+        return false;
+    }
+
+    private static long makeFilePointer(final long blockAddress, final int blockOffset) {
+        return blockAddress << 16 | blockOffset;
+    }
+
+    private static int unpackInt16(final byte[] buffer, final int offset) {
+        return (buffer[offset] & 0xFF) | ((buffer[offset + 1] & 0xFF) << 8);
+    }
+
+    private int findBlock(final long address) {
+        final int i = Arrays.binarySearch(blockAddresses, 0, nBlocks, address);
+        return i >= 0 ? i : nBlocks;
+    }
+
+    private void submitRanges() {
+        while (nextRangeBlock < nBlocks && pending.size() < 2 * threads) {
+            final int first = nextRangeBlock;
+            final int end = Math.min(nBlocks, first + blocksPerRange);
+            nextRangeBlock = end;
+            pending.add(workers.submit(() -> decodeRange(first, end)));
+        }
+    }
+
+    /**
+     * Decode the features whose line starts in the blocks [first, end)
+     */
+    private Range decodeRange(final int first, final int end) throws IOException, InterruptedException {
+        Worker worker = idleWorkers.poll();
+        if (worker == null) {
+            worker = new Worker();
+            synchronized (allWorkers) {
+                allWorkers.add(worker);
+            }
+        }
+        try {
+            final Range range = new Range();
+            final long start = findLineStart(worker.stream, first);
+            final long endAddress = end < nBlocks ? blockAddresses[end] : Long.MAX_VALUE;
+            if (start < 0 || BlockCompressedFilePointerUtil.getBlockAddress(start) >= endAddress) {
+                range.endPosition = start;
+                return range;
+            }
+            worker.stream.seek(start);
+            final SOURCE source = makeIndexableSource(worker.codec, worker.stream);
+            final LocationAware location = (LocationAware) source;
+            while (true) {
+                final long position = location.getPosition();
+                if (BlockCompressedFilePointerUtil.getBlockAddress(position) >= endAddress || worker.codec.isDone(source)) {
+                    range.endPosition = position;
+                    return range;
+                }
+                Feature feature = null;
+                while (feature == null && !worker.codec.isDone(source)) {
+                    feature = worker.codec.decodeLoc(source);
+                }
+                if (feature != null) range.add(feature, position);
+            }
+        } finally {
+            idleWorkers.put(worker);
+        }
+    }
+
+    /**
+     * @return the virtual file pointer of the first line starting in or after the given block, or -1 if there is none
+     */
+    private long findLineStart(final BlockCompressedInputStream stream, final int block) throws IOException {
+        if (blockAddresses[block] == BlockCompressedFilePointerUtil.getBlockAddress(firstFeaturePosition)) {
+            return firstFeaturePosition;
+        }
+        // the block starts a line if the last byte before it ends one
+        int previous = block - 1;
+        while (previous >= 0 && blockSizes[previous] == 0) previous--;
+        if (previous >= 0) {
+            stream.seek(makeFilePointer(blockAddresses[previous], blockSizes[previous] - 1));
+            if (stream.read() == '\n') {
+                return makeFilePointer(blockAddresses[block], 0);
+            }
+        }
+        stream.seek(makeFilePointer(blockAddresses[block], 0));
+        int c;
+        while ((c = stream.read()) != -1) {
+            if (c == '\n') return stream.getFilePointer();
+        }
+        return -1;
+    }
+
+    /**
+     * Move to the next range with features, if any
+     */
+    private void advance() {
+        while ((current == null || currentIndex == current.features.size()) && !pending.isEmpty()) {
+            final Range next;
+            try {
+                next = pending.remove().get();
+            } catch (final InterruptedException e) {
+                throw new RuntimeException("Interrupted waiting for decoded features", e);
+            } catch (final ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof Error) throw (Error) cause;
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new TribbleException.MalformedFeatureFile("Unable to read a line from the file", inputFile.getAbsolutePath(), (Exception) cause);
+            }
+            submitRanges();
+            // a range without any line start only tells where the previous one ended
+            if (next.features.isEmpty() && current != null) continue;
+            current = next;
+            currentIndex = 0;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return current != null && currentIndex < current.features.size();
+    }
+
+    @Override
+    public Feature next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        final Feature feature = current.features.get(currentIndex++);
+        advance();
+        return feature;
+    }
+
+    @Override
+    public long getPosition() {
+        if (hasNext()) return current.positions[currentIndex];
+        return current == null || current.endPosition < 0 ? firstFeaturePosition : current.endPosition;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("We cannot remove");
+    }
+
+    @Override
+    public Iterator<Feature> iterator() {
+        return this;
+    }
+
+    @Override
+    public void close() {
+        if (workers != null) workers.shutdownNow();
+        synchronized (allWorkers) {
+            for (final Worker worker : allWorkers) {
+                CloserUtil.close(worker.stream);
+            }
+        }
+    }
+}
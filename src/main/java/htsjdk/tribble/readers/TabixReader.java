@@ -35,9 +35,11 @@ import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Function;
@@ -454,12 +456,21 @@ public class TabixReader {
      * @return an iterator over the lines within the specified interval
      */
     public Iterator query(final int tid, final int beg, final int end) {
+        final TPair64[] ret = getChunks(tid, beg, end);
+        if (ret == null) return EOF_ITERATOR;
+        return new TabixReader.IteratorImpl(tid, beg, end, ret);
+    }
+
+    /**
+     * @return the merged chunks overlapping the interval, sorted by their virtual file offsets, or null if there are none
+     */
+    private TPair64[] getChunks(final int tid, final int beg, final int end) {
         TPair64[] off, chunks;
         long min_off;
-        if(tid< 0 || tid>=this.mIndex.length) return EOF_ITERATOR;
+        if(tid< 0 || tid>=this.mIndex.length) return null;
         TIndex idx = mIndex[tid];
         int[] bins = new int[MAX_BIN];
-        int i, l, n_off, n_bins = reg2bins(beg, end, bins);
+        int i, n_off, n_bins = reg2bins(beg, end, bins);
         if (idx.l.length > 0)
             min_off = (beg >> TAD_LIDX_SHIFT >= idx.l.length) ? idx.l[idx.l.length - 1] : idx.l[beg >> TAD_LIDX_SHIFT];
         else min_off = 0;
@@ -467,13 +478,24 @@ public class TabixReader {
             if ((chunks = idx.b.get(bins[i])) != null)
                 n_off += chunks.length;
         }
-        if (n_off == 0) return EOF_ITERATOR;
+        if (n_off == 0) return null;
         off = new TPair64[n_off];
         for (i = n_off = 0; i < n_bins; ++i)
             if ((chunks = idx.b.get(bins[i])) != null)
                 for (int j = 0; j < chunks.length; ++j)
                     if (less64(min_off, chunks[j].v))
                         off[n_off++] = new TPair64(chunks[j]);
+        return mergeChunks(off, n_off);
+    }
+
+    /**
+     * Sort the first n_off chunks and merge the contained, overlapping and adjacent ones. The chunks are modified.
+     *
+     * @return the merged chunks, or null if there are none
+     */
+    private static TPair64[] mergeChunks(final TPair64[] off, int n_off) {
+        int i, l;
+        if (n_off == 0) return null;
         Arrays.sort(off, 0, n_off);
         // resolve completely contained adjacent blocks
         for (i = 1, l = 0; i < n_off; ++i) {
@@ -500,11 +522,101 @@ public class TabixReader {
         // return
         TPair64[] ret = new TPair64[n_off];
         for (i = 0; i < n_off; ++i) {
-            if (off[i] != null) ret[i] = new TPair64(off[i].u, off[i].v); // in C, this is inefficient
+            ret[i] = new TPair64(off[i].u, off[i].v); // in C, this is inefficient
         }
-        if (ret.length == 0 || (ret.length == 1 && ret[0] == null))
-            return EOF_ITERATOR;
-        return new TabixReader.IteratorImpl(tid, beg, end, ret);
+        return ret;
+    }
+
+    /**
+     * Return the span of the data file that has to be read to query an interval, so that queries whose spans do not
+     * share a BGZF block can be run independently.
+     *
+     * @param tid Sequence id
+     * @param beg beginning of interval, genomic coords
+     * @param end end of interval, genomic coords
+     * @return the virtual file offsets of the start of the first chunk and of the end of the last chunk, or null if
+     * there is nothing to read
+     */
+    public long[] getChunkSpan(final int tid, final int beg, final int end) {
+        final TPair64[] chunks = getChunks(tid, beg, end);
+        if (chunks == null) return null;
+        return new long[]{chunks[0].u, chunks[chunks.length - 1].v};
+    }
+
+    /**
+     * A line returned by {@link #query(int, int[], int[], BlockCompressedInputStream)}, with the regions it overlaps.
+     */
+    public static final class RegionLine {
+        private final String line;
+        private final int[] regions;
+
+        private RegionLine(final String line, final int[] regions) {
+            this.line = line;
+            this.regions = regions;
+        }
+
+        public String getLine() {
+            return line;
+        }
+
+        /** @return the indices, in the query arrays, of the regions overlapping the line, in increasing start order */
+        public int[] getRegions() {
+            return regions;
+        }
+    }
+
+    /**
+     * Return the lines overlapping any of several intervals of the same sequence, reading the data file once. The
+     * chunks of all intervals are merged, so that each BGZF block is inflated and each line is read only once, however
+     * many intervals it overlaps.
+     *
+     * @param tid    Sequence id
+     * @param begs   beginnings of the intervals, genomic coords
+     * @param ends   ends of the intervals, genomic coords
+     * @param stream stream over the data file to read from, or null to use the stream of this reader. Queries may run
+     *               concurrently as long as each one reads from its own stream.
+     * @return the lines overlapping any of the intervals, in file order
+     */
+    public List<RegionLine> query(final int tid, final int[] begs, final int[] ends, final BlockCompressedInputStream stream) throws IOException {
+        if (begs.length != ends.length) throw new IllegalArgumentException("There must be as many interval ends as beginnings");
+        final List<RegionLine> lines = new ArrayList<>();
+        if (tid < 0 || tid >= this.mIndex.length) return lines;
+
+        // the intervals, sorted by beginning, and their merged chunks
+        final int n = begs.length;
+        final Integer[] order = new Integer[n];
+        final List<TPair64> all = new ArrayList<>();
+        int maxEnd = 0;
+        for (int i = 0; i < n; ++i) {
+            order[i] = i;
+            maxEnd = Math.max(maxEnd, ends[i]);
+            final TPair64[] chunks = getChunks(tid, begs[i], ends[i]);
+            if (chunks != null) all.addAll(Arrays.asList(chunks));
+        }
+        final TPair64[] off = mergeChunks(all.toArray(new TPair64[all.size()]), all.size());
+        if (off == null) return lines;
+        Arrays.sort(order, (a, b) -> Integer.compare(begs[a], begs[b]));
+
+        final BlockCompressedInputStream fp = stream == null ? mFp : stream;
+        final int[] overlapping = new int[n];
+        int first = 0; // the intervals before this one end before the current line
+        for (int i = 0; i < off.length; ++i) {
+            if (i == 0 || off[i - 1].v != off[i].u) fp.seek(off[i].u);
+            while (less64(fp.getFilePointer(), off[i].v)) {
+                final String s = readLine(fp, DEFAULT_BUFFER_SIZE);
+                if (s == null) return lines; // end of file
+                if (s.isEmpty() || s.charAt(0) == mMeta) continue;
+                final TIntv intv = getIntv(s);
+                if (intv.tid != tid || intv.beg >= maxEnd) return lines; // no need to proceed
+                while (first < n && ends[order[first]] <= intv.beg) ++first;
+                int n_overlapping = 0;
+                for (int j = first; j < n && begs[order[j]] < intv.end; ++j) {
+                    if (ends[order[j]] > intv.beg) overlapping[n_overlapping++] = order[j];
+                }
+                if (n_overlapping > 0) lines.add(new RegionLine(s, Arrays.copyOf(overlapping, n_overlapping)));
+            }
+        }
+        return lines;
     }
 
     /**
@@ -33,7 +33,9 @@ import htsjdk.tribble.TribbleException;
 import htsjdk.tribble.readers.*;
 import htsjdk.variant.utils.GeneralUtils;
 import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.AlleleInterner;
 import htsjdk.variant.variantcontext.GenotypeBuilder;
+import htsjdk.variant.variantcontext.ColumnarGenotypesContext;
 import htsjdk.variant.variantcontext.LazyGenotypesContext;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.VariantContextBuilder;
@@ -98,6 +100,11 @@ public final class BCF2Codec extends BinaryFeatureCodec<VariantContext> {
      */
     private GenotypeBuilder[] builders = null;
 
+    /**
+     * Decode the genotypes into primitive columns rather than lazily into Genotype objects
+     */
+    private boolean columnarGenotypes = false;
+
     // for error handling
     private int recordNo = 0;
     private int pos = 0;
@@ -204,6 +211,21 @@ public final class BCF2Codec extends BinaryFeatureCodec<VariantContext> {
         return new FeatureCodecHeader(header, inputStream.getPosition());
     }
 
+    /**
+     * Decode the genotypes of records into a {@link ColumnarGenotypesContext} instead of lazily decoded
+     * Genotype objects.  The genotypes are then decoded along with the rest of the record, but take a fraction of
+     * the memory, which pays off for records with a large number of samples.
+     *
+     * @param columnarGenotypes true to decode the genotypes into primitive columns
+     */
+    public void setColumnarGenotypes(final boolean columnarGenotypes) {
+        this.columnarGenotypes = columnarGenotypes;
+    }
+
+    public boolean isColumnarGenotypes() {
+        return columnarGenotypes;
+    }
+
     @Override
     public boolean canDecode( final String path ) {
         try (InputStream fis = Files.newInputStream(IOUtil.getPath(path)) ){
@@ -323,25 +345,18 @@ public final class BCF2Codec extends BinaryFeatureCodec<VariantContext> {
      * @return the alleles
      */
     private List<Allele> decodeAlleles( final VariantContextBuilder builder, final int pos, final int nAlleles ) throws IOException {
-        // TODO -- probably need inline decoder for efficiency here (no sense in going bytes -> string -> vector -> bytes
+        // the alleles are interned straight from the record bytes
         List<Allele> alleles = new ArrayList<Allele>(nAlleles);
-        String ref = null;
 
         for ( int i = 0; i < nAlleles; i++ ) {
-            final String alleleBases = (String)decoder.decodeTypedValue();
-
-            final boolean isRef = i == 0;
-            final Allele allele = Allele.create(alleleBases, isRef);
-            if ( isRef ) ref = alleleBases;
+            final Allele allele = decoder.decodeTypedAllele(i == 0, AlleleInterner.getDefault());
+            if ( allele == null ) error("Missing allele " + i);
 
             alleles.add(allele);
         }
-        assert ref != null;
 
         builder.alleles(alleles);
 
-        assert !ref.isEmpty();
-
         return alleles;
     }
 
@@ -408,10 +423,15 @@ public final class BCF2Codec extends BinaryFeatureCodec<VariantContext> {
     private void createLazyGenotypesDecoder( final SitesInfoForDecoding siteInfo,
                                              final VariantContextBuilder builder ) {
         if (siteInfo.nSamples > 0) {
-            final LazyGenotypesContext.LazyParser lazyParser =
+            final BCF2LazyGenotypesDecoder lazyParser =
                     new BCF2LazyGenotypesDecoder(this, siteInfo.alleles, siteInfo.nSamples, siteInfo.nFormatFields, builders);
 
             final LazyData lazyData = new LazyData(header, siteInfo.nFormatFields, decoder.getRecordBytes());
+            if ( columnarGenotypes ) {
+                builder.genotypesNoValidation(lazyParser.decodeColumnar(lazyData));
+                return;
+            }
+
             final LazyGenotypesContext lazy = new LazyGenotypesContext(lazyParser, lazyData, header.getNGenotypeSamples());
 
             // did we resort the sample names?  If so, we need to load the genotype data
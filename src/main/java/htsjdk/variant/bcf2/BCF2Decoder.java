@@ -27,10 +27,14 @@ package htsjdk.variant.bcf2;
 
 import htsjdk.tribble.TribbleException;
 import htsjdk.variant.utils.GeneralUtils;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.AlleleInterner;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
 
@@ -152,6 +156,28 @@ public final class BCF2Decoder {
         }
     }
 
+    /**
+     * Decode a typed string as an allele, looked up in the interner straight from the record bytes rather than
+     * through an intermediate String
+     *
+     * @param isRef is the allele the reference allele?
+     * @return the allele, or null if the string is missing
+     */
+    public final Allele decodeTypedAllele(final boolean isRef, final AlleleInterner interner) throws IOException {
+        final byte typeDescriptor = readTypeDescriptor();
+        final int size = decodeNumberOfElements(typeDescriptor);
+        if ( size == 0 || BCF2Utils.decodeType(typeDescriptor) != BCF2Type.CHAR ) {
+            final Object value = decodeTypedValue(typeDescriptor, size);
+            return value == null ? null : interner.intern((String) value, isRef);
+        }
+
+        final int start = recordBytes.length - recordStream.available();
+        int end = start;
+        while ( end < start + size && recordBytes[end] != 0 ) end++;
+        recordStream.skip(size);
+        return end == start ? null : interner.intern(recordBytes, start, end, isRef);
+    }
+
     public final Object decodeSingleValue(final BCF2Type type) throws IOException {
         // TODO -- decodeTypedValue should integrate this routine
         final int value = decodeInt(type);
@@ -281,6 +307,58 @@ public final class BCF2Decoder {
         return decodeIntArray(size, type, null);
     }
 
+    /**
+     * Bulk reader for the vectors of a genotype field, one for each sample, laid out one after the other
+     *
+     * The values are read straight from the record bytes in a single pass rather than one at a time from the stream,
+     * into a matrix with one row of size values per sample.  Integer values are sign extended, FLOAT values are
+     * returned as their raw IEEE bits (see {@link Float#intBitsToFloat(int)}), and MISSING values of any type are
+     * replaced with missingValue.
+     *
+     * @param size      the number of values per sample
+     * @param nRows     the number of samples
+     * @param type      the type of the values, an integer type or FLOAT
+     * @param maybeDest if not null and large enough, the values are stored in this array rather than a new one
+     * @return the values, sample by sample
+     */
+    public final int[] decodeIntMatrix(final int size, final int nRows, final BCF2Type type, final int missingValue, final int[] maybeDest) {
+        final int n = size * nRows;
+        final int[] values = maybeDest != null && maybeDest.length >= n ? maybeDest : new int[n];
+        final int nBytes = n * type.getSizeInBytes();
+        final int start = recordBytes.length - recordStream.available();
+        if ( nBytes > recordBytes.length - start )
+            throw new TribbleException("Genotype field of " + nBytes + " bytes runs past the end of the BCF2 record");
+
+        final ByteBuffer buffer = ByteBuffer.wrap(recordBytes, start, nBytes).order(ByteOrder.LITTLE_ENDIAN);
+        final int missing = type.getMissingBytes();
+        switch ( type ) {
+            case INT8:
+                for ( int i = 0; i < n; i++ ) {
+                    final int v = buffer.get();
+                    values[i] = v == missing ? missingValue : v;
+                }
+                break;
+            case INT16:
+                for ( int i = 0; i < n; i++ ) {
+                    final int v = buffer.getShort();
+                    values[i] = v == missing ? missingValue : v;
+                }
+                break;
+            case INT32:
+            case FLOAT:
+                for ( int i = 0; i < n; i++ ) {
+                    final int v = buffer.getInt();
+                    values[i] = v == missing ? missingValue : v;
+                }
+                break;
+            default:
+                throw new TribbleException("BCF2 codec can't decode a matrix of type " + type);
+        }
+
+        recordStream.skip(nBytes);
+        return values;
+    }
+
     private double rawFloatToFloat(final int rawFloat) {
         return (double)Float.intBitsToFloat(rawFloat);
     }
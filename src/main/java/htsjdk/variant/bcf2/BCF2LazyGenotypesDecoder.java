@@ -27,9 +27,12 @@ package htsjdk.variant.bcf2;
 
 import htsjdk.tribble.TribbleException;
 import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.ColumnarGenotypesContext;
 import htsjdk.variant.variantcontext.Genotype;
 import htsjdk.variant.variantcontext.GenotypeBuilder;
 import htsjdk.variant.variantcontext.LazyGenotypesContext;
+import htsjdk.variant.vcf.VCFConstants;
+import htsjdk.variant.vcf.VCFHeader;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -51,6 +54,11 @@ public class BCF2LazyGenotypesDecoder implements LazyGenotypesContext.LazyParser
     private final int nFields;
     private final GenotypeBuilder[] builders;
 
+    /**
+     * The value missing values are decoded to by the bulk decoding of columns
+     */
+    private static final int MISSING = Integer.MIN_VALUE;
+
     BCF2LazyGenotypesDecoder(final BCF2Codec codec, final List<Allele> alleles, final int nSamples,
                              final int nFields, final GenotypeBuilder[] builders) {
         this.codec = codec;
@@ -62,6 +70,125 @@ public class BCF2LazyGenotypesDecoder implements LazyGenotypesContext.LazyParser
 
     @Override
     public LazyGenotypesContext.LazyData parse(final Object data) {
+        decodeFields(data);
+
+        final ArrayList<Genotype> genotypes = new ArrayList<Genotype>(nSamples);
+        for ( final GenotypeBuilder gb : builders )
+            genotypes.add(gb.make());
+
+        return new LazyGenotypesContext.LazyData(genotypes, codec.getHeader().getSampleNamesInOrder(), codec.getHeader().getSampleNameToOffset());
+    }
+
+    /**
+     * Decode the genotypes data into primitive columns rather than Genotype objects
+     *
+     * The vectors of numeric fields are read for all samples in one pass straight into int matrices, without going
+     * through GenotypeBuilders or boxing any value.  Only string fields are still decoded sample by sample.
+     *
+     * @param data the encoded genotypes data
+     * @return the genotypes of all samples
+     */
+    public ColumnarGenotypesContext decodeColumnar(final Object data) {
+        final VCFHeader header = codec.getHeader();
+        final ColumnarGenotypesContext.Builder columns = new ColumnarGenotypesContext.Builder(header.getGenotypeSamples(),
+                header.getSampleNameToOffset(), header.getSampleNamesInOrder(), siteAlleles);
+        try {
+            // load our byte[] data into the decoder
+            final BCF2Decoder decoder = new BCF2Decoder(((BCF2Codec.LazyData)data).bytes);
+
+            for ( int i = 0; i < nFields; i++ ) {
+                // get the field name
+                final int offset = (Integer) decoder.decodeTypedValue();
+                final String field = codec.getDictionaryString(offset);
+
+                // the type of each element
+                final byte typeDescriptor = decoder.readTypeDescriptor();
+                final int numElements = decoder.decodeNumberOfElements(typeDescriptor);
+                final BCF2Type type = BCF2Utils.decodeType(typeDescriptor);
+
+                if ( numElements == 0 ) {
+                    // all values are missing and there is nothing to read
+                } else if ( type == BCF2Type.CHAR || field.equals(VCFConstants.GENOTYPE_FILTER_KEY) ) {
+                    decodeStrings(field, decoder, typeDescriptor, numElements, columns);
+                } else {
+                    // float values are kept as raw bits, where the missing value cannot be confused with a real one
+                    final int missing = type == BCF2Type.FLOAT ? BCF2Type.FLOAT.getMissingBytes() : MISSING;
+                    final int[] values = decoder.decodeIntMatrix(numElements, nSamples, type, missing, null);
+                    if ( field.equals(VCFConstants.GENOTYPE_KEY) ) {
+                        decodeGenotypes(values, numElements, columns);
+                    } else if ( field.equals(VCFConstants.DEPTH_KEY) ) {
+                        columns.DP(firstValues(values, numElements, missing));
+                    } else if ( field.equals(VCFConstants.GENOTYPE_QUALITY_KEY) ) {
+                        columns.GQ(firstValues(values, numElements, missing));
+                    } else if ( field.equals(VCFConstants.GENOTYPE_ALLELE_DEPTHS) ) {
+                        columns.AD(values, numElements, missing);
+                    } else if ( field.equals(VCFConstants.GENOTYPE_PL_KEY) ) {
+                        columns.PL(values, numElements, missing);
+                    } else if ( type == BCF2Type.FLOAT ) {
+                        columns.floatAttribute(field, values, numElements, missing);
+                    } else {
+                        columns.intAttribute(field, values, numElements, missing);
+                    }
+                }
+            }
+        } catch ( IOException e ) {
+            throw new TribbleException("Unexpected IOException parsing already read genotypes data block", e);
+        }
+        return columns.make();
+    }
+
+    /**
+     * Convert the BCF2 encoded alleles, the allele index plus one shifted left by one with the phase in the lowest
+     * bit, into allele codes in place
+     */
+    private void decodeGenotypes(final int[] values, final int width, final ColumnarGenotypesContext.Builder columns) {
+        final int[] ploidy = new int[nSamples];
+        final boolean[] phased = new boolean[nSamples];
+        for ( int sample = 0; sample < nSamples; sample++ ) {
+            final int start = sample * width;
+            phased[sample] = values[start] != MISSING && (values[start] & 0x01) == 1;
+            int n = 0;
+            // note that the auto-pruning of fields handles different ploidy per sample at a site
+            while ( n < width && values[start + n] != MISSING ) {
+                values[start + n] = values[start + n] >> 1;
+                n++;
+            }
+            ploidy[sample] = n;
+        }
+        columns.genotypes(values, width, ploidy, phased);
+    }
+
+    /**
+     * @return the first value of each sample, -1 if it is missing
+     */
+    private int[] firstValues(final int[] values, final int width, final int missing) {
+        final int[] first = new int[nSamples];
+        for ( int sample = 0; sample < nSamples; sample++ ) {
+            final int value = values[sample * width];
+            first[sample] = value == missing ? -1 : value;
+        }
+        return first;
+    }
+
+    private void decodeStrings(final String field, final BCF2Decoder decoder, final byte typeDescriptor,
+                               final int numElements, final ColumnarGenotypesContext.Builder columns) throws IOException {
+        final boolean isFilter = field.equals(VCFConstants.GENOTYPE_FILTER_KEY);
+        for ( int sample = 0; sample < nSamples; sample++ ) {
+            Object value = decoder.decodeTypedValue(typeDescriptor, numElements);
+            if ( isFilter ) {
+                columns.filter(sample, (String) value);
+            } else if ( value != null ) {
+                if ( value instanceof List && ((List) value).size() == 1 )
+                    value = ((List) value).get(0);
+                columns.attribute(sample, field, value);
+            }
+        }
+    }
+
+    /**
+     * Decode the fields of all samples into the builders
+     */
+    private void decodeFields(final Object data) {
         try {
 
             // load our byte[] data into the decoder
@@ -86,12 +213,6 @@ public class BCF2LazyGenotypesDecoder implements LazyGenotypesContext.LazyParser
                             + " inconsistent with the value observed in the decoded value");
                 }
             }
-
-            final ArrayList<Genotype> genotypes = new ArrayList<Genotype>(nSamples);
-            for ( final GenotypeBuilder gb : builders )
-                genotypes.add(gb.make());
-
-            return new LazyGenotypesContext.LazyData(genotypes, codec.getHeader().getSampleNamesInOrder(), codec.getHeader().getSampleNameToOffset());
         } catch ( IOException e ) {
             throw new TribbleException("Unexpected IOException parsing already read genotypes data block", e);
         }
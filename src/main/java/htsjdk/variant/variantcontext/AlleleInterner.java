@@ -0,0 +1,264 @@
+package htsjdk.variant.variantcontext;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe, bounded cache of {@link Allele}s and strings, so that the alleles and the repeated strings of
+ * variant records (contigs, filters) are shared rather than created for every record.
+ * <p>
+ * Lookups can be made directly on a range of bytes, for example of a VCF line or a BCF2 record, without creating an
+ * intermediate String. Only ASCII content is cached, anything else is created anew on each call.
+ * <p>
+ * The cache has a fixed number of slots and each key may only live in one of two of them, so its size is bounded and
+ * lookups never lock: a key that collides with two others replaces one of them. Since alleles and strings are
+ * immutable, callers only ever see a value equal to the one they asked for, possibly a new instance.
+ * <p>
+ * A single instance, {@link #getDefault()}, is shared by the VCF and BCF2 codecs and by
+ * {@link VariantContextBuilder#alleles(java.util.List)}.
+ */
+public final class AlleleInterner {
+    /**
+     * Default number of slots for alleles, and for strings.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private static final AlleleInterner defaultInterner = new AlleleInterner(DEFAULT_CAPACITY);
+
+    private final int capacity;
+    private final AtomicReferenceArray<Entry<Allele>> alleles;
+    private final AtomicReferenceArray<Entry<String>> strings;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * An interned value and the ASCII bytes it was looked up by
+     */
+    private static final class Entry<T> {
+        final byte[] key;
+        final int hash;
+        final boolean isRef;
+        final T value;
+
+        Entry(final byte[] key, final int hash, final boolean isRef, final T value) {
+            this.key = key;
+            this.hash = hash;
+            this.isRef = isRef;
+            this.value = value;
+        }
+
+        boolean matches(final byte[] bytes, final int start, final int end, final int hash, final boolean isRef) {
+            if (this.hash != hash || this.isRef != isRef || key.length != end - start) return false;
+            for (int i = 0; i < key.length; i++) {
+                if (key[i] != bytes[start + i]) return false;
+            }
+            return true;
+        }
+
+        boolean matches(final String s, final int hash, final boolean isRef) {
+            if (this.hash != hash || this.isRef != isRef || key.length != s.length()) return false;
+            for (int i = 0; i < key.length; i++) {
+                if (key[i] != s.charAt(i)) return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @param capacity the number of slots for alleles, and for strings, rounded up to a power of two; 0 disables
+     *                 caching
+     */
+    public AlleleInterner(final int capacity) {
+        if (capacity < 0 || capacity > 1 << 30)
+            throw new IllegalArgumentException("Invalid interner capacity: " + capacity);
+        this.capacity = capacity == 0 ? 0 : Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        this.alleles = new AtomicReferenceArray<>(this.capacity);
+        this.strings = new AtomicReferenceArray<>(this.capacity);
+    }
+
+    /**
+     * @return the process-wide interner used by the variant codecs
+     */
+    public static AlleleInterner getDefault() {
+        return defaultInterner;
+    }
+
+    /**
+     * Get the allele with the given bases, as {@link Allele#create(byte[], boolean)} would create it.
+     *
+     * @param bases the buffer holding the bases
+     * @param start offset of the first base
+     * @param end   offset one past the last base
+     * @param isRef should the allele be the reference allele?
+     * @throws IllegalArgumentException if the bases are not a valid allele
+     */
+    public Allele intern(final byte[] bases, final int start, final int end, final boolean isRef) {
+        if (end - start == 1) return Allele.create(bases[start], isRef); // single bases are constants already
+        final int hash = hash(bases, start, end);
+        if (hash == NOT_ASCII || capacity == 0) return Allele.create(Arrays.copyOfRange(bases, start, end), isRef);
+
+        final int slot = slot(hash, isRef);
+        Entry<Allele> entry = alleles.get(slot);
+        if (entry == null || !entry.matches(bases, start, end, hash, isRef)) {
+            entry = alleles.get(slot ^ 1);
+            if (entry == null || !entry.matches(bases, start, end, hash, isRef)) {
+                misses.increment();
+                final byte[] key = Arrays.copyOfRange(bases, start, end);
+                // note that alleles upper case the array they are created from, so keep a copy as the key
+                final Allele allele = Allele.create(key.clone(), isRef);
+                store(alleles, slot, new Entry<>(key, hash, isRef, allele));
+                return allele;
+            }
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    /**
+     * Get the allele with the given bases, as {@link Allele#create(String, boolean)} would create it.
+     *
+     * @throws IllegalArgumentException if the bases are not a valid allele
+     */
+    public Allele intern(final String bases, final boolean isRef) {
+        if (bases.length() == 1) return Allele.create((byte) bases.charAt(0), isRef); // single bases are constants already
+        final int hash = hash(bases);
+        if (hash == NOT_ASCII || capacity == 0) return Allele.create(bases, isRef);
+
+        final int slot = slot(hash, isRef);
+        Entry<Allele> entry = alleles.get(slot);
+        if (entry == null || !entry.matches(bases, hash, isRef)) {
+            entry = alleles.get(slot ^ 1);
+            if (entry == null || !entry.matches(bases, hash, isRef)) {
+                misses.increment();
+                final byte[] key = bases.getBytes(StandardCharsets.US_ASCII);
+                final Allele allele = Allele.create(key.clone(), isRef);
+                store(alleles, slot, new Entry<>(key, hash, isRef, allele));
+                return allele;
+            }
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    /**
+     * Get a string of the bytes, decoded as UTF-8.
+     *
+     * @param bytes the buffer holding the string
+     * @param start offset of the first byte
+     * @param end   offset one past the last byte
+     */
+    public String internString(final byte[] bytes, final int start, final int end) {
+        final int hash = hash(bytes, start, end);
+        if (hash == NOT_ASCII || capacity == 0) return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+
+        final int slot = slot(hash, false);
+        Entry<String> entry = strings.get(slot);
+        if (entry == null || !entry.matches(bytes, start, end, hash, false)) {
+            entry = strings.get(slot ^ 1);
+            if (entry == null || !entry.matches(bytes, start, end, hash, false)) {
+                misses.increment();
+                final byte[] key = Arrays.copyOfRange(bytes, start, end);
+                final String s = new String(key, StandardCharsets.US_ASCII);
+                store(strings, slot, new Entry<>(key, hash, false, s));
+                return s;
+            }
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    /**
+     * @return a string equal to the given one, the interned instance if there is one
+     */
+    public String internString(final String s) {
+        final int hash = hash(s);
+        if (hash == NOT_ASCII || capacity == 0) return s;
+
+        final int slot = slot(hash, false);
+        Entry<String> entry = strings.get(slot);
+        if (entry == null || !entry.matches(s, hash, false)) {
+            entry = strings.get(slot ^ 1);
+            if (entry == null || !entry.matches(s, hash, false)) {
+                misses.increment();
+                store(strings, slot, new Entry<>(s.getBytes(StandardCharsets.US_ASCII), hash, false, s));
+                return s;
+            }
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    /**
+     * Store an entry in the first free slot of its pair, or else replace the one in its own slot
+     */
+    private static <T> void store(final AtomicReferenceArray<Entry<T>> table, final int slot, final Entry<T> entry) {
+        if (!table.compareAndSet(slot, null, entry) && !table.compareAndSet(slot ^ 1, null, entry))
+            table.set(slot, entry);
+    }
+
+    /**
+     * Marks content that is not ASCII, which is not cached. No ASCII string of less than 2^31 bytes hashes to it.
+     */
+    private static final int NOT_ASCII = -1;
+
+    private static int hash(final byte[] bytes, final int start, final int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            final byte b = bytes[i];
+            if (b < 0) return NOT_ASCII;
+            h = 31 * h + b;
+        }
+        return h & Integer.MAX_VALUE;
+    }
+
+    private static int hash(final String s) {
+        int h = 0;
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c > 0x7F) return NOT_ASCII;
+            h = 31 * h + c;
+        }
+        return h & Integer.MAX_VALUE;
+    }
+
+    private int slot(final int hash, final boolean isRef) {
+        final int h = hash ^ (hash >>> 16) ^ (isRef ? 0x5bd1e995 : 0);
+        return h & (capacity - 1);
+    }
+
+    public void clear() {
+        for (int i = 0; i < capacity; i++) {
+            alleles.set(i, null);
+            strings.set(i, null);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the fraction of lookups that found an interned value, 0 if there has been no lookup
+     */
+    public double getHitRate() {
+        final long h = hits.sum();
+        final long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public void resetStatistics() {
+        hits.reset();
+        misses.reset();
+    }
+}
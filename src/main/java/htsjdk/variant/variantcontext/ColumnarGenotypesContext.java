@@ -0,0 +1,864 @@
+package htsjdk.variant.variantcontext;
+
+import htsjdk.variant.vcf.VCFConstants;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable GenotypesContext holding the genotypes of all samples in primitive columns instead of one
+ * {@link Genotype} object per sample.
+ *
+ * The called alleles are stored as packed allele codes (the index of the allele in the site alleles plus one, 0
+ * for a no-call) in a single int matrix with one row per sample, GQ and DP as one int per sample and AD and PL as int
+ * matrices.  Other numeric FORMAT fields can be stored as int or float matrices too, while filters and the remaining
+ * FORMAT fields are only stored for the samples that have them.  Decoding a line with a large number of samples
+ * therefore allocates a handful of arrays rather than several objects per sample.
+ *
+ * {@link Genotype} objects are views on the columns, created when a sample is first accessed.  The bulk accessors,
+ * such as {@link #getAlleleCounts()} and {@link #getGenotypeType(int)}, read the columns directly and never create
+ * them.  As the context is immutable, use {@link GenotypesContext#copy(GenotypesContext)} to get a modifiable
+ * context.
+ *
+ * Instances are created with a {@link Builder}, which takes either the genotypes of the samples in order or whole
+ * columns at once.
+ */
+public class ColumnarGenotypesContext extends GenotypesContext {
+    public static final long serialVersionUID = 1L;
+
+    private static final int NO_CALL_CODE = 0;
+
+    /** sample names in the order of the genotypes */
+    private final List<String> sampleNames;
+    /** the alleles referred to by the allele codes, the site alleles followed by any other allele seen in a genotype */
+    private final List<Allele> alleles;
+    private final int nSiteAlleles;
+
+    /** number of columns in the allele code matrix, the maximum ploidy */
+    private final int gtWidth;
+    private final int[] alleleCodes;
+    private final int[] ploidy;
+    private final boolean[] phased;
+    private final int[] GQ;
+    private final int[] DP;
+    private final IntMatrix AD;
+    private final IntMatrix PL;
+    private final String[] filters;
+    /** the other FORMAT fields of each sample, null for a sample without any */
+    private final List<Map<String, Object>> extendedAttributes;
+    /** other FORMAT fields stored as numeric columns, in the order they were added */
+    private final Map<String, NumericColumn> numericAttributes;
+
+    /** Genotype views, created on first access */
+    private final Genotype[] views;
+
+    private ColumnarGenotypesContext(final Builder builder) {
+        super(null, builder.sampleNameToOffset, builder.sampleNamesInOrder);
+        this.sampleNames = builder.sampleNames;
+        this.alleles = builder.alleles;
+        this.nSiteAlleles = builder.nSiteAlleles;
+        this.gtWidth = builder.gtWidth;
+        this.alleleCodes = builder.alleleCodes;
+        this.ploidy = builder.ploidy;
+        this.phased = builder.phased;
+        this.GQ = builder.GQ;
+        this.DP = builder.DP;
+        this.AD = builder.AD;
+        this.PL = builder.PL;
+        this.filters = builder.filters;
+        this.extendedAttributes = builder.extendedAttributes;
+        this.numericAttributes = builder.numericAttributes;
+        this.views = new Genotype[sampleNames.size()];
+        immutable();
+    }
+
+    // ---------------------------------------------------------------------------
+    //
+    // bulk accessors
+    //
+    // ---------------------------------------------------------------------------
+
+    /**
+     * @return the site alleles the genotypes were built against
+     */
+    public List<Allele> getSiteAlleles() {
+        return alleles.subList(0, nSiteAlleles);
+    }
+
+    /**
+     * @return the number of alleles of the genotype of the sample, counting no-calls, 0 if it has no genotype
+     */
+    public int getPloidy(final int sample) {
+        return ploidy[sample];
+    }
+
+    /**
+     * @param sample     the offset of the sample
+     * @param chromosome the allele of the genotype, less than its ploidy
+     * @return the index of the called allele in the site alleles, or -1 for a no-call
+     */
+    public int getAlleleIndex(final int sample, final int chromosome) {
+        if ( chromosome >= ploidy[sample] )
+            throw new IndexOutOfBoundsException("Allele " + chromosome + " requested for sample with ploidy " + ploidy[sample]);
+        return alleleCodes[sample * gtWidth + chromosome] - 1;
+    }
+
+    public boolean isPhased(final int sample) {
+        return phased[sample];
+    }
+
+    /**
+     * @return the GQ of the sample, or -1 if it is missing
+     */
+    public int getGQ(final int sample) {
+        return GQ[sample];
+    }
+
+    /**
+     * @return the DP of the sample, or -1 if it is missing
+     */
+    public int getDP(final int sample) {
+        return DP[sample];
+    }
+
+    /**
+     * @return a copy of the AD of the sample, or null if it is missing
+     */
+    public int[] getAD(final int sample) {
+        return AD == null ? null : AD.get(sample);
+    }
+
+    /**
+     * @return a copy of the PL of the sample, or null if it is missing
+     */
+    public int[] getPL(final int sample) {
+        return PL == null ? null : PL.get(sample);
+    }
+
+    /**
+     * Get the type of the genotype of a sample, as {@link Genotype#getType()} would without creating the Genotype.
+     */
+    public GenotypeType getGenotypeType(final int sample) {
+        final int n = ploidy[sample];
+        if ( n == 0 )
+            return GenotypeType.UNAVAILABLE;
+
+        boolean sawNoCall = false, sawMultipleAlleles = false;
+        int observed = NO_CALL_CODE;
+        final int offset = sample * gtWidth;
+        for ( int i = 0; i < n; i++ ) {
+            final int code = alleleCodes[offset + i];
+            if ( code == NO_CALL_CODE )
+                sawNoCall = true;
+            else if ( observed == NO_CALL_CODE )
+                observed = code;
+            else if ( code != observed )
+                sawMultipleAlleles = true;
+        }
+
+        if ( sawNoCall )
+            return observed == NO_CALL_CODE ? GenotypeType.NO_CALL : GenotypeType.MIXED;
+        return sawMultipleAlleles ? GenotypeType.HET : alleles.get(observed - 1).isReference() ? GenotypeType.HOM_REF : GenotypeType.HOM_VAR;
+    }
+
+    /**
+     * @return the number of samples of each {@link GenotypeType}, indexed by the ordinal of the type
+     */
+    public int[] getGenotypeTypeCounts() {
+        final int[] counts = new int[GenotypeType.values().length];
+        for ( int i = 0; i < sampleNames.size(); i++ )
+            counts[getGenotypeType(i).ordinal()]++;
+        return counts;
+    }
+
+    /**
+     * Count the called alleles over all samples.
+     *
+     * @return the number of called chromosomes carrying each allele, indexed as the site alleles
+     */
+    public int[] getAlleleCounts() {
+        final int[] counts = new int[alleles.size() + 1];
+        for ( int sample = 0; sample < sampleNames.size(); sample++ ) {
+            final int offset = sample * gtWidth;
+            for ( int i = 0; i < ploidy[sample]; i++ )
+                counts[alleleCodes[offset + i]]++;
+        }
+        return Arrays.copyOfRange(counts, 1, 1 + nSiteAlleles);
+    }
+
+    /**
+     * @return the number of called chromosomes carrying the allele, as {@link VariantContext#getCalledChrCount(Allele)}
+     */
+    public int getCalledChrCount(final Allele allele) {
+        final int code = allele.isNoCall() ? NO_CALL_CODE : alleles.indexOf(allele) + 1;
+        if ( code == NO_CALL_CODE && ! allele.isNoCall() )
+            return 0;
+        int n = 0;
+        for ( int sample = 0; sample < sampleNames.size(); sample++ ) {
+            final int offset = sample * gtWidth;
+            for ( int i = 0; i < ploidy[sample]; i++ )
+                if ( alleleCodes[offset + i] == code ) n++;
+        }
+        return n;
+    }
+
+    /**
+     * @return the number of called chromosomes over all samples, as {@link VariantContext#getCalledChrCount()}
+     */
+    public int getCalledChrCount() {
+        int n = 0;
+        for ( int sample = 0; sample < sampleNames.size(); sample++ ) {
+            final int offset = sample * gtWidth;
+            for ( int i = 0; i < ploidy[sample]; i++ )
+                if ( alleleCodes[offset + i] != NO_CALL_CODE ) n++;
+        }
+        return n;
+    }
+
+    /**
+     * @return the frequency of each site allele among the called chromosomes, all 0 if no chromosome is called
+     */
+    public double[] getAlleleFrequencies() {
+        final int[] counts = getAlleleCounts();
+        final int called = getCalledChrCount();
+        final double[] frequencies = new double[counts.length];
+        if ( called > 0 ) {
+            for ( int i = 0; i < counts.length; i++ )
+                frequencies[i] = counts[i] / (double) called;
+        }
+        return frequencies;
+    }
+
+    /**
+     * @return the fraction of samples with a called genotype, as {@link Genotype#isCalled()}, 0 if there are no samples
+     */
+    public double getCallRate() {
+        if ( sampleNames.isEmpty() )
+            return 0;
+        final int[] counts = getGenotypeTypeCounts();
+        final int notCalled = counts[GenotypeType.NO_CALL.ordinal()] + counts[GenotypeType.UNAVAILABLE.ordinal()];
+        return (sampleNames.size() - notCalled) / (double) sampleNames.size();
+    }
+
+    /**
+     * Count the samples without a value for a FORMAT field.  A GT is missing if none of its alleles is called.
+     *
+     * @param key the FORMAT key
+     * @return the number of samples without a value
+     */
+    public int getMissingCount(final String key) {
+        int missing = 0;
+        for ( int sample = 0; sample < sampleNames.size(); sample++ ) {
+            final boolean hasValue;
+            switch ( key ) {
+                case VCFConstants.GENOTYPE_KEY:
+                    final GenotypeType type = getGenotypeType(sample);
+                    hasValue = type != GenotypeType.NO_CALL && type != GenotypeType.UNAVAILABLE;
+                    break;
+                case VCFConstants.GENOTYPE_QUALITY_KEY:
+                    hasValue = GQ[sample] != -1;
+                    break;
+                case VCFConstants.DEPTH_KEY:
+                    hasValue = DP[sample] != -1;
+                    break;
+                case VCFConstants.GENOTYPE_ALLELE_DEPTHS:
+                    hasValue = AD != null && AD.has(sample);
+                    break;
+                case VCFConstants.GENOTYPE_PL_KEY:
+                    hasValue = PL != null && PL.has(sample);
+                    break;
+                case VCFConstants.GENOTYPE_FILTER_KEY:
+                    hasValue = filters != null && filters[sample] != null;
+                    break;
+                default:
+                    final NumericColumn column = numericAttributes == null ? null : numericAttributes.get(key);
+                    hasValue = column != null ? column.has(sample)
+                            : extendedAttributes != null && extendedAttributes.get(sample) != null && extendedAttributes.get(sample).containsKey(key);
+            }
+            if ( ! hasValue ) missing++;
+        }
+        return missing;
+    }
+
+    // ---------------------------------------------------------------------------
+    //
+    // GenotypesContext methods served from the columns
+    //
+    // ---------------------------------------------------------------------------
+
+    /**
+     * Creates the list of all the Genotype views, for the operations that need one
+     */
+    @Override
+    protected ArrayList<Genotype> getGenotypes() {
+        if ( notToBeDirectlyAccessedGenotypes == null ) {
+            final ArrayList<Genotype> genotypes = new ArrayList<Genotype>(sampleNames.size());
+            for ( int i = 0; i < sampleNames.size(); i++ )
+                genotypes.add(get(i));
+            notToBeDirectlyAccessedGenotypes = genotypes;
+        }
+        return notToBeDirectlyAccessedGenotypes;
+    }
+
+    @Override
+    protected void ensureSampleNameMap() {
+        if ( sampleNameToOffset == null ) {
+            final Map<String, Integer> map = new HashMap<String, Integer>(sampleNames.size());
+            for ( int i = 0; i < sampleNames.size(); i++ )
+                map.put(sampleNames.get(i), i);
+            sampleNameToOffset = map;
+        }
+    }
+
+    @Override
+    protected void ensureSampleOrdering() {
+        if ( sampleNamesInOrder == null ) {
+            final List<String> names = new ArrayList<String>(sampleNames);
+            Collections.sort(names);
+            sampleNamesInOrder = names;
+        }
+    }
+
+    @Override
+    public int size() {
+        return sampleNames.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return sampleNames.isEmpty();
+    }
+
+    @Override
+    public Genotype get(final int i) {
+        if ( views[i] == null )
+            views[i] = new ColumnarGenotype(i);
+        return views[i];
+    }
+
+    @Override
+    public Genotype get(final String sampleName) {
+        ensureSampleNameMap();
+        final Integer offset = sampleNameToOffset.get(sampleName);
+        return offset == null ? null : get(offset);
+    }
+
+    @Override
+    public Iterator<Genotype> iterator() {
+        return new Iterator<Genotype>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < sampleNames.size();
+            }
+
+            @Override
+            public Genotype next() {
+                if ( ! hasNext() ) throw new NoSuchElementException();
+                return get(next++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public int getMaxPloidy(final int defaultPloidy) {
+        if ( defaultPloidy < 0 ) throw new IllegalArgumentException("defaultPloidy must be greater than or equal to 0");
+        int max = 0;
+        for ( final int p : ploidy )
+            max = Math.max(p, max);
+        return max == 0 ? defaultPloidy : max;
+    }
+
+    /**
+     * A Genotype reading the values of one sample from the columns
+     */
+    private final class ColumnarGenotype extends Genotype {
+        public static final long serialVersionUID = 1L;
+
+        private final int sample;
+        private List<Allele> genotypeAlleles = null;
+        private Map<String, Object> genotypeAttributes = null;
+
+        private ColumnarGenotype(final int sample) {
+            super(sampleNames.get(sample), filters == null ? null : filters[sample]);
+            this.sample = sample;
+        }
+
+        @Override
+        public List<Allele> getAlleles() {
+            if ( genotypeAlleles == null ) {
+                final int n = ploidy[sample];
+                if ( n == 0 ) {
+                    genotypeAlleles = Collections.emptyList();
+                } else {
+                    final Allele[] gt = new Allele[n];
+                    for ( int i = 0; i < n; i++ )
+                        gt[i] = getAllele(i);
+                    genotypeAlleles = Collections.unmodifiableList(Arrays.asList(gt));
+                }
+            }
+            return genotypeAlleles;
+        }
+
+        @Override
+        public Allele getAllele(final int i) {
+            final int code = alleleCodes[sample * gtWidth + i];
+            return code == NO_CALL_CODE ? Allele.NO_CALL : alleles.get(code - 1);
+        }
+
+        @Override
+        public int getPloidy() {
+            return ploidy[sample];
+        }
+
+        @Override
+        protected GenotypeType determineType() {
+            return getGenotypeType(sample);
+        }
+
+        @Override
+        public boolean isPhased() {
+            return phased[sample];
+        }
+
+        @Override
+        public int getDP() {
+            return DP[sample];
+        }
+
+        @Override
+        public int[] getAD() {
+            return AD == null ? null : AD.get(sample);
+        }
+
+        @Override
+        public boolean hasAD() {
+            return AD != null && AD.has(sample);
+        }
+
+        @Override
+        public int getGQ() {
+            return GQ[sample];
+        }
+
+        @Override
+        public int[] getPL() {
+            return PL == null ? null : PL.get(sample);
+        }
+
+        @Override
+        public boolean hasPL() {
+            return PL != null && PL.has(sample);
+        }
+
+        @Override
+        public Map<String, Object> getExtendedAttributes() {
+            if ( genotypeAttributes == null ) {
+                final Map<String, Object> attributes = extendedAttributes == null ? null : extendedAttributes.get(sample);
+                if ( numericAttributes == null ) {
+                    genotypeAttributes = attributes == null ? Collections.<String, Object>emptyMap() : attributes;
+                } else {
+                    final Map<String, Object> merged = attributes == null ? new HashMap<String, Object>() : new HashMap<String, Object>(attributes);
+                    for ( final Map.Entry<String, NumericColumn> column : numericAttributes.entrySet() ) {
+                        final Object value = column.getValue().getValue(sample);
+                        if ( value != null ) merged.put(column.getKey(), value);
+                    }
+                    genotypeAttributes = merged;
+                }
+            }
+            return genotypeAttributes;
+        }
+    }
+
+    /**
+     * Variable length int arrays, one per sample, stored in a single matrix as wide as the longest one
+     */
+    private static final class IntMatrix implements Serializable {
+        public static final long serialVersionUID = 1L;
+
+        private final int nRows;
+        private int width;
+        private int[] values;
+        /** length of each row, -1 for a missing value */
+        private final int[] lengths;
+
+        private IntMatrix(final int nRows, final int width) {
+            this.nRows = nRows;
+            this.width = width;
+            this.values = new int[nRows * width];
+            this.lengths = new int[nRows];
+            Arrays.fill(lengths, -1);
+        }
+
+        /**
+         * Wrap the values of a full matrix.  Each row ends at its first missing value, a row starting with a missing
+         * value is missing.
+         */
+        private IntMatrix(final int nRows, final int width, final int[] values, final int missingValue) {
+            this.nRows = nRows;
+            this.width = width;
+            this.values = values;
+            this.lengths = new int[nRows];
+            for ( int row = 0; row < nRows; row++ ) {
+                int length = 0;
+                while ( length < width && values[row * width + length] != missingValue )
+                    length++;
+                lengths[row] = length == 0 ? -1 : length;
+            }
+        }
+
+        private void set(final int row, final int[] rowValues) {
+            if ( rowValues.length > width ) {
+                // widen the matrix to hold the longest row
+                final int newWidth = rowValues.length;
+                final int[] widened = new int[nRows * newWidth];
+                for ( int i = 0; i < nRows; i++ )
+                    if ( lengths[i] > 0 )
+                        System.arraycopy(values, i * width, widened, i * newWidth, lengths[i]);
+                values = widened;
+                width = newWidth;
+            }
+            System.arraycopy(rowValues, 0, values, row * width, rowValues.length);
+            lengths[row] = rowValues.length;
+        }
+
+        private boolean has(final int row) {
+            return lengths[row] != -1;
+        }
+
+        private int[] get(final int row) {
+            return lengths[row] == -1 ? null : Arrays.copyOfRange(values, row * width, row * width + lengths[row]);
+        }
+    }
+
+    /**
+     * The values of a numeric FORMAT field, a row of integers or raw float bits per sample
+     */
+    private static final class NumericColumn implements Serializable {
+        public static final long serialVersionUID = 1L;
+
+        private final int width;
+        private final int[] values;
+        private final boolean isFloat;
+        private final int missingValue;
+
+        private NumericColumn(final int width, final int[] values, final boolean isFloat, final int missingValue) {
+            this.width = width;
+            this.values = values;
+            this.isFloat = isFloat;
+            this.missingValue = missingValue;
+        }
+
+        private boolean has(final int row) {
+            for ( int i = row * width; i < (row + 1) * width; i++ )
+                if ( values[i] != missingValue ) return true;
+            return false;
+        }
+
+        private Object box(final int value) {
+            return isFloat ? (Object) (double) Float.intBitsToFloat(value) : (Object) value;
+        }
+
+        /**
+         * @return the value of a sample as a generic attribute: null if all values are missing, a single Integer or
+         * Double if there is one value and a List of them otherwise
+         */
+        private Object getValue(final int row) {
+            final List<Object> list = new ArrayList<Object>(width);
+            for ( int i = row * width; i < (row + 1) * width; i++ )
+                if ( values[i] != missingValue ) list.add(box(values[i]));
+            return list.isEmpty() ? null : list.size() == 1 ? list.get(0) : list;
+        }
+    }
+
+    /**
+     * Builds a ColumnarGenotypesContext from the genotypes of the samples, added in order.
+     */
+    public static final class Builder {
+        private final List<String> sampleNames;
+        private final Map<String, Integer> sampleNameToOffset;
+        private final List<String> sampleNamesInOrder;
+        private final List<Allele> alleles;
+        private final int nSiteAlleles;
+        private final int nSamples;
+
+        private int nAdded = 0;
+        private int gtWidth = 2;
+        private int[] alleleCodes;
+        private final int[] ploidy;
+        private final boolean[] phased;
+        private final int[] GQ;
+        private final int[] DP;
+        private IntMatrix AD = null;
+        private IntMatrix PL = null;
+        private String[] filters = null;
+        private List<Map<String, Object>> extendedAttributes = null;
+        private Map<String, NumericColumn> numericAttributes = null;
+
+        /**
+         * @param sampleNames the names of the samples, in the order their genotypes will be added
+         * @param siteAlleles the alleles of the site
+         */
+        public Builder(final List<String> sampleNames, final List<Allele> siteAlleles) {
+            this(sampleNames, null, null, siteAlleles);
+        }
+
+        /**
+         * @param sampleNames        the names of the samples, in the order their genotypes will be added
+         * @param sampleNameToOffset the offset of each sample in sampleNames, or null to compute it when needed
+         * @param sampleNamesInOrder the sample names sorted in alphabetical order, or null to compute them when needed
+         * @param siteAlleles        the alleles of the site
+         */
+        public Builder(final List<String> sampleNames,
+                       final Map<String, Integer> sampleNameToOffset,
+                       final List<String> sampleNamesInOrder,
+                       final List<Allele> siteAlleles) {
+            this.sampleNames = sampleNames;
+            this.sampleNameToOffset = sampleNameToOffset;
+            this.sampleNamesInOrder = sampleNamesInOrder;
+            this.alleles = new ArrayList<Allele>(siteAlleles);
+            this.nSiteAlleles = siteAlleles.size();
+            this.nSamples = sampleNames.size();
+            this.alleleCodes = new int[nSamples * gtWidth];
+            this.ploidy = new int[nSamples];
+            this.phased = new boolean[nSamples];
+            this.GQ = new int[nSamples];
+            this.DP = new int[nSamples];
+            Arrays.fill(GQ, -1);
+            Arrays.fill(DP, -1);
+        }
+
+        /**
+         * Add the genotype of the next sample from the values set in a builder.  The builder is not modified and can
+         * be reset and reused for the next sample.
+         */
+        public Builder add(final GenotypeBuilder gb) {
+            gb.addTo(this);
+            return this;
+        }
+
+        /**
+         * Add the genotype of the next sample
+         */
+        public Builder add(final Genotype g) {
+            return add(g.getAlleles(), g.isPhased(), g.getGQ(), g.getDP(), g.getAD(), g.getPL(), g.getFilters(), g.getExtendedAttributes());
+        }
+
+        Builder add(final List<Allele> gtAlleles, final boolean isPhased, final int gq, final int dp,
+                    final int[] ad, final int[] pl, final String filter, final Map<String, Object> attributes) {
+            if ( nAdded == nSamples )
+                throw new IllegalStateException("All " + nSamples + " genotypes have already been added");
+            final int sample = nAdded++;
+
+            final int n = gtAlleles.size();
+            if ( n > gtWidth )
+                widenAlleleCodes(n);
+            final int offset = sample * gtWidth;
+            for ( int i = 0; i < n; i++ )
+                alleleCodes[offset + i] = alleleCode(gtAlleles.get(i));
+            ploidy[sample] = n;
+            phased[sample] = isPhased;
+            GQ[sample] = gq;
+            DP[sample] = dp;
+
+            if ( ad != null ) {
+                if ( AD == null ) AD = new IntMatrix(nSamples, ad.length);
+                AD.set(sample, ad);
+            }
+            if ( pl != null ) {
+                if ( PL == null ) PL = new IntMatrix(nSamples, pl.length);
+                PL.set(sample, pl);
+            }
+            if ( filter != null ) {
+                if ( filters == null ) filters = new String[nSamples];
+                filters[sample] = filter;
+            }
+            if ( attributes != null && ! attributes.isEmpty() ) {
+                if ( extendedAttributes == null ) extendedAttributes = newAttributeList(nSamples);
+                extendedAttributes.set(sample, attributes);
+            }
+            return this;
+        }
+
+        private int alleleCode(final Allele allele) {
+            if ( allele.isNoCall() )
+                return NO_CALL_CODE;
+            // the genotype alleles are normally the site allele objects themselves
+            for ( int i = 0; i < alleles.size(); i++ )
+                if ( alleles.get(i) == allele ) return i + 1;
+            final int i = alleles.indexOf(allele);
+            if ( i != -1 ) return i + 1;
+            alleles.add(allele);
+            return alleles.size();
+        }
+
+        private void widenAlleleCodes(final int newWidth) {
+            final int[] widened = new int[nSamples * newWidth];
+            for ( int i = 0; i < nAdded; i++ )
+                System.arraycopy(alleleCodes, i * gtWidth, widened, i * newWidth, ploidy[i]);
+            alleleCodes = widened;
+            gtWidth = newWidth;
+        }
+
+        // -----------------------------------------------------------------
+        //
+        // Setting whole columns at once, instead of adding the samples in turn.
+        // The arrays are used as they are, not copied.
+        //
+        // -----------------------------------------------------------------
+
+        /**
+         * Set the genotypes of all the samples
+         *
+         * @param codes  allele codes, one row of width codes per sample: the index of the allele in the site alleles
+         *               plus one, or 0 for a no-call.  Only the first ploidy codes of each row are used.
+         * @param width  the number of codes per sample
+         * @param ploidy the number of alleles of each sample
+         * @param phased whether the genotype of each sample is phased
+         */
+        public Builder genotypes(final int[] codes, final int width, final int[] ploidy, final boolean[] phased) {
+            checkColumn(ploidy);
+            checkColumn(phased.length);
+            if ( codes.length < nSamples * width )
+                throw new IllegalArgumentException("Expected " + nSamples * width + " allele codes but got " + codes.length);
+            for ( int sample = 0; sample < nSamples; sample++ ) {
+                if ( ploidy[sample] > width )
+                    throw new IllegalArgumentException("Ploidy " + ploidy[sample] + " is larger than the width of the genotype matrix " + width);
+                for ( int i = sample * width; i < sample * width + ploidy[sample]; i++ )
+                    if ( codes[i] < 0 || codes[i] > alleles.size() )
+                        throw new IllegalArgumentException("Allele code " + codes[i] + " does not refer to one of the " + alleles.size() + " site alleles");
+            }
+            this.alleleCodes = codes;
+            this.gtWidth = width;
+            System.arraycopy(ploidy, 0, this.ploidy, 0, nSamples);
+            System.arraycopy(phased, 0, this.phased, 0, nSamples);
+            return this;
+        }
+
+        /**
+         * @param values the GQ of each sample, -1 if it is missing
+         */
+        public Builder GQ(final int[] values) {
+            checkColumn(values);
+            System.arraycopy(values, 0, GQ, 0, nSamples);
+            return this;
+        }
+
+        /**
+         * @param values the DP of each sample, -1 if it is missing
+         */
+        public Builder DP(final int[] values) {
+            checkColumn(values);
+            System.arraycopy(values, 0, DP, 0, nSamples);
+            return this;
+        }
+
+        /**
+         * @param values       the AD values, one row of width values per sample.  Each row ends at its first missing value.
+         * @param missingValue the value marking missing values
+         */
+        public Builder AD(final int[] values, final int width, final int missingValue) {
+            checkColumn(values.length / Math.max(width, 1));
+            AD = new IntMatrix(nSamples, width, values, missingValue);
+            return this;
+        }
+
+        /**
+         * @param values       the PL values, one row of width values per sample.  Each row ends at its first missing value.
+         * @param missingValue the value marking missing values
+         */
+        public Builder PL(final int[] values, final int width, final int missingValue) {
+            checkColumn(values.length / Math.max(width, 1));
+            PL = new IntMatrix(nSamples, width, values, missingValue);
+            return this;
+        }
+
+        /**
+         * Set a FORMAT field holding integer values
+         *
+         * @param values       one row of width values per sample
+         * @param missingValue the value marking missing values, which are left out of the values of a sample
+         */
+        public Builder intAttribute(final String key, final int[] values, final int width, final int missingValue) {
+            return numericAttribute(key, new NumericColumn(width, values, false, missingValue), values.length, width);
+        }
+
+        /**
+         * Set a FORMAT field holding float values
+         *
+         * @param floatBits    one row of width values per sample, as the bits of the floats (see {@link Float#floatToRawIntBits(float)})
+         * @param missingBits  the bits marking missing values, which are left out of the values of a sample
+         */
+        public Builder floatAttribute(final String key, final int[] floatBits, final int width, final int missingBits) {
+            return numericAttribute(key, new NumericColumn(width, floatBits, true, missingBits), floatBits.length, width);
+        }
+
+        private Builder numericAttribute(final String key, final NumericColumn column, final int nValues, final int width) {
+            checkColumn(nValues / Math.max(width, 1));
+            if ( numericAttributes == null ) numericAttributes = new LinkedHashMap<String, NumericColumn>();
+            numericAttributes.put(key, column);
+            return this;
+        }
+
+        /**
+         * Set the filters of a sample
+         */
+        public Builder filter(final int sample, final String filter) {
+            if ( filters == null ) filters = new String[nSamples];
+            filters[sample] = VCFConstants.PASSES_FILTERS_v4.equals(filter) ? null : filter;
+            return this;
+        }
+
+        /**
+         * Set a FORMAT field of a sample
+         */
+        public Builder attribute(final int sample, final String key, final Object value) {
+            if ( extendedAttributes == null ) extendedAttributes = newAttributeList(nSamples);
+            Map<String, Object> attributes = extendedAttributes.get(sample);
+            if ( attributes == null ) {
+                attributes = new HashMap<String, Object>();
+                extendedAttributes.set(sample, attributes);
+            }
+            attributes.put(key, value);
+            return this;
+        }
+
+        private static List<Map<String, Object>> newAttributeList(final int nSamples) {
+            return new ArrayList<Map<String, Object>>(Collections.<Map<String, Object>>nCopies(nSamples, null));
+        }
+
+        private void checkColumn(final int[] values) {
+            checkColumn(values.length);
+        }
+
+        private void checkColumn(final int nValues) {
+            if ( nAdded != 0 )
+                throw new IllegalStateException("Cannot set whole columns after adding genotypes sample by sample");
+            if ( nValues < nSamples )
+                throw new IllegalArgumentException("Expected values for " + nSamples + " samples but got " + nValues);
+        }
+
+        /**
+         * @return the context holding the genotypes of all the samples
+         */
+        public ColumnarGenotypesContext make() {
+            if ( nAdded != 0 && nAdded != nSamples )
+                throw new IllegalStateException("Only " + nAdded + " of " + nSamples + " genotypes have been added");
+            return new ColumnarGenotypesContext(this);
+        }
+    }
+}
@@ -202,6 +202,18 @@ public final class GenotypeBuilder {
         return new FastGenotype(sampleName, alleles, isPhased, GQ, DP, AD, PL, filters, ea);
     }
 
+    /**
+     * Add the values set in this builder as the genotype of the next sample of a columnar
+     * genotypes context, instead of creating a Genotype object.
+     *
+     * The values are copied into the columns, so this builder can be reset and reused afterwards.
+     *
+     * @param columns the builder of the columnar context
+     */
+    void addTo(final ColumnarGenotypesContext.Builder columns) {
+        columns.add(alleles, isPhased, GQ, DP, AD, PL, filters, extendedAttributes);
+    }
+
     /**
      * Create a new Genotype object using the values set in this builder, and perform a
      * shallow copy of reference types to allow safer re-use of this builder
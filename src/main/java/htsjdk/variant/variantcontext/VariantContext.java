@@ -1030,6 +1030,9 @@ public class VariantContext implements Feature, Serializable {
      * @return chromosome count
      */
     public int getCalledChrCount(Set<String> sampleIds) {
+        if ( sampleIds.isEmpty() && genotypes instanceof ColumnarGenotypesContext )
+            return ((ColumnarGenotypesContext) genotypes).getCalledChrCount();
+
         int n = 0;
         GenotypesContext genotypes = sampleIds.isEmpty() ? getGenotypes() : getGenotypes(sampleIds);
 
@@ -1059,6 +1062,9 @@ public class VariantContext implements Feature, Serializable {
      * @return chromosome count
      */
     public int getCalledChrCount(Allele a, Set<String> sampleIds) {
+        if ( sampleIds.isEmpty() && genotypes instanceof ColumnarGenotypesContext )
+            return ((ColumnarGenotypesContext) genotypes).getCalledChrCount(a);
+
         int n = 0;
         GenotypesContext genotypes = sampleIds.isEmpty() ? getGenotypes() : getGenotypes(sampleIds);
 
@@ -1092,7 +1098,9 @@ public class VariantContext implements Feature, Serializable {
     }
 
     private void calculateGenotypeCounts() {
-        if ( genotypeCounts == null ) {
+        if ( genotypeCounts == null && genotypes instanceof ColumnarGenotypesContext ) {
+            genotypeCounts = ((ColumnarGenotypesContext) genotypes).getGenotypeTypeCounts();
+        } else if ( genotypeCounts == null ) {
             genotypeCounts = new int[GenotypeType.values().length];
 
             for ( final Genotype g : getGenotypes() ) {
@@ -163,7 +163,7 @@ public class VariantContextBuilder {
         final List<Allele> alleles = new ArrayList<Allele>(alleleStrings.size());
 
         for ( int i = 0; i < alleleStrings.size(); i++ ) {
-            alleles.add(Allele.create(alleleStrings.get(i), i == 0));
+            alleles.add(AlleleInterner.getDefault().intern(alleleStrings.get(i), i == 0));
         }
 
         return alleles(alleles);
@@ -26,6 +26,7 @@
 package htsjdk.variant.variantcontext.writer;
 
 import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.util.Log;
 import htsjdk.samtools.util.RuntimeIOException;
 import htsjdk.tribble.index.IndexCreator;
 import htsjdk.variant.bcf2.BCF2Codec;
@@ -49,13 +50,22 @@ import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * VariantContextWriter that emits BCF2 binary encoding
@@ -97,6 +107,14 @@ import java.util.Map;
  * doesn't do anything but make it possible to conveniently write out valid low-level
  * BCF2 constructs.
  *
+ * -- Records can be encoded on a pool of worker threads (see the encodingThreads
+ * constructor argument).  Each worker has its own {@link RecordEncoder}, i.e. its
+ * own BCF2Encoder and field writers, as those hold per record state.  Records are
+ * handed to the workers in batches and the encoded blocks are written, and indexed,
+ * on the calling thread in the order the records were added.  Genotypes that still
+ * need decoding from a lazy reader are decoded on the calling thread, as the lazy
+ * parsers share the state of the codec that read them.
+ *
  * @author Mark DePristo
  * @since 06/12
  */
@@ -104,8 +122,16 @@ class BCF2Writer extends IndexingVariantContextWriter {
     public static final int MAJOR_VERSION = 2;
     public static final int MINOR_VERSION = 1;
 
+    /**
+     * Number of records handed to an encoding thread as one task
+     */
+    public static final int ENCODING_BATCH_SIZE = 1000;
+
     final private static boolean ALLOW_MISSING_CONTIG_LINES = false;
 
+    private static final Log log = Log.getInstance(BCF2Writer.class);
+    private static final AtomicInteger threadsCreated = new AtomicInteger(0);
+
     private final OutputStream outputStream;      // Note: do not flush until completely done writing, to avoid issues with eventual BGZF support
     private VCFHeader header;
     private final Map<String, Integer> contigDictionary = new HashMap<String, Integer>();
@@ -113,8 +139,16 @@ class BCF2Writer extends IndexingVariantContextWriter {
     private final boolean doNotWriteGenotypes;
     private String[] sampleNames = null;
 
-    private final BCF2Encoder encoder = new BCF2Encoder(); // initialized after the header arrives
-    final BCF2FieldWriterManager fieldManager = new BCF2FieldWriterManager();
+    private RecordEncoder recordEncoder; // initialized after the header arrives
+
+    /**
+     * the state used to encode records on worker threads, if any
+     */
+    private final int encodingThreads;
+    private BlockingQueue<RecordEncoder> idleEncoders;
+    private ExecutorService encoders = null;
+    private List<PendingRecord> batch = null;
+    private final Deque<Future<List<EncodedRecord>>> encodedBatches = new ArrayDeque<Future<List<EncodedRecord>>>();
 
     /**
      * cached results for whether we can write out raw genotypes data.
@@ -128,17 +162,41 @@ class BCF2Writer extends IndexingVariantContextWriter {
 
     public BCF2Writer(final File location, final OutputStream output, final SAMSequenceDictionary refDict,
                       final boolean enableOnTheFlyIndexing, final boolean doNotWriteGenotypes) {
+        this(location, output, refDict, enableOnTheFlyIndexing, doNotWriteGenotypes, 0);
+    }
+
+    /**
+     * @param encodingThreads number of threads encoding records, 0 to encode them on the calling thread
+     */
+    public BCF2Writer(final File location, final OutputStream output, final SAMSequenceDictionary refDict,
+                      final boolean enableOnTheFlyIndexing, final boolean doNotWriteGenotypes, final int encodingThreads) {
         super(writerName(location, output), location, output, refDict, enableOnTheFlyIndexing);
         this.outputStream = getOutputStream();
         this.doNotWriteGenotypes = doNotWriteGenotypes;
+        this.encodingThreads = checkEncodingThreads(encodingThreads);
     }
 
     public BCF2Writer(final File location, final OutputStream output, final SAMSequenceDictionary refDict,
                       final IndexCreator indexCreator,
                       final boolean enableOnTheFlyIndexing, final boolean doNotWriteGenotypes) {
+        this(location, output, refDict, indexCreator, enableOnTheFlyIndexing, doNotWriteGenotypes, 0);
+    }
+
+    /**
+     * @param encodingThreads number of threads encoding records, 0 to encode them on the calling thread
+     */
+    public BCF2Writer(final File location, final OutputStream output, final SAMSequenceDictionary refDict,
+                      final IndexCreator indexCreator,
+                      final boolean enableOnTheFlyIndexing, final boolean doNotWriteGenotypes, final int encodingThreads) {
         super(writerName(location, output), location, output, refDict, enableOnTheFlyIndexing, indexCreator);
         this.outputStream = getOutputStream();
         this.doNotWriteGenotypes = doNotWriteGenotypes;
+        this.encodingThreads = checkEncodingThreads(encodingThreads);
+    }
+
+    private static int checkEncodingThreads(final int encodingThreads) {
+        if ( encodingThreads < 0 ) throw new IllegalArgumentException("Number of encoding threads cannot be negative: " + encodingThreads);
+        return encodingThreads;
     }
 
     // --------------------------------------------------------------------------------
@@ -173,32 +231,41 @@ class BCF2Writer extends IndexingVariantContextWriter {
     public void add( VariantContext vc ) {
         if ( doNotWriteGenotypes )
             vc = new VariantContextBuilder(vc).noGenotypes().make();
-        vc = vc.fullyDecode(header, false);
-
-        super.add(vc); // allow on the fly indexing
-
-        try {
-            final byte[] infoBlock = buildSitesData(vc);
-            final byte[] genotypesBlock = buildSamplesData(vc);
+        final BCF2Codec.LazyData lazyData = getLazyData(vc);  // has critical side effects
+        outputHasBeenWritten = true;
 
-            // write the two blocks to disk
-            writeBlock(infoBlock, genotypesBlock);
-            outputHasBeenWritten = true;
-        }
-        catch ( IOException e ) {
-            throw new RuntimeIOException("Error writing record to BCF2 file: " + vc.toString(), e);
+        if ( encodingThreads == 0 ) {
+            writeRecord(recordEncoder.encode(vc, lazyData));
+        } else {
+            if ( batch == null ) batch = new ArrayList<PendingRecord>(ENCODING_BATCH_SIZE);
+            batch.add(new PendingRecord(vc, lazyData));
+            if ( batch.size() == ENCODING_BATCH_SIZE ) {
+                submitBatch();
+            }
+            writeEncodedBatches(false);
         }
     }
 
     @Override
     public void close() {
         try {
+            if ( encodingThreads > 0 ) {
+                try {
+                    submitBatch();
+                    writeEncodedBatches(true);
+                } finally {
+                    encodedBatches.clear();
+                    if ( encoders != null ) encoders.shutdownNow();
+                }
+            }
             outputStream.flush();
         }
         catch ( IOException e ) {
-            throw new RuntimeIOException("Failed to flush BCF2 file");
+            throw new RuntimeIOException("Failed to flush BCF2 file", e);
+        }
+        finally {
+            super.close();
         }
-        super.close();
     }
 
     @Override
@@ -230,60 +297,124 @@ class BCF2Writer extends IndexingVariantContextWriter {
 
         sampleNames = this.header.getGenotypeSamples().toArray(new String[this.header.getNGenotypeSamples()]);
         // setup the field encodings
-        fieldManager.setup(this.header, encoder, stringDictionaryMap);
-
+        if ( encodingThreads == 0 ) {
+            recordEncoder = new RecordEncoder();
+        } else {
+            idleEncoders = new ArrayBlockingQueue<RecordEncoder>(encodingThreads);
+            for ( int i = 0; i < encodingThreads; i++ )
+                idleEncoders.add(new RecordEncoder());
+        }
     }
 
     // --------------------------------------------------------------------------------
     //
-    // implicit block
-    //
-    // The first four records of BCF are inline untype encoded data of:
-    //
-    // 4 byte integer chrom offset
-    // 4 byte integer start
-    // 4 byte integer ref length
-    // 4 byte float qual
+    // Parallel encoding
     //
     // --------------------------------------------------------------------------------
-    private byte[] buildSitesData( VariantContext vc ) throws IOException {
-        final int contigIndex = contigDictionary.get(vc.getContig());
-        if ( contigIndex == -1 )
-            throw new IllegalStateException(String.format("Contig %s not found in sequence dictionary from reference", vc.getContig()));
-
-        // note use of encodeRawValue to not insert the typing byte
-        encoder.encodeRawValue(contigIndex, BCF2Type.INT32);
-
-        // pos.  GATK is 1 based, BCF2 is 0 based
-        encoder.encodeRawValue(vc.getStart() - 1, BCF2Type.INT32);
-
-        // ref length.  GATK is closed, but BCF2 is open so the ref length is GATK end - GATK start + 1
-        // for example, a SNP is in GATK at 1:10-10, which has ref length 10 - 10 + 1 = 1
-        encoder.encodeRawValue(vc.getEnd() - vc.getStart() + 1, BCF2Type.INT32);
-
-        // qual
-        if ( vc.hasLog10PError() )
-            encoder.encodeRawFloat((float) vc.getPhredScaledQual());
-        else
-            encoder.encodeRawMissingValue(BCF2Type.FLOAT);
-
-        // info fields
-        final int nAlleles = vc.getNAlleles();
-        final int nInfo = vc.getAttributes().size();
-        final int nGenotypeFormatFields = getNGenotypeFormatFields(vc);
-        final int nSamples = header.getNGenotypeSamples();
-
-        encoder.encodeRawInt((nAlleles << 16) | (nInfo & 0x0000FFFF), BCF2Type.INT32);
-        encoder.encodeRawInt((nGenotypeFormatFields << 24) | (nSamples & 0x00FFFFF), BCF2Type.INT32);
-
-        buildID(vc);
-        buildAlleles(vc);
-        buildFilter(vc);
-        buildInfo(vc);
-
-        return encoder.getRecordBytes();
+
+    /**
+     * A record waiting to be encoded, with its raw genotypes data if that can be written as is
+     */
+    private static final class PendingRecord {
+        final VariantContext vc;
+        final BCF2Codec.LazyData lazyData;
+
+        PendingRecord(final VariantContext vc, final BCF2Codec.LazyData lazyData) {
+            this.vc = vc;
+            this.lazyData = lazyData;
+        }
     }
 
+    /**
+     * The fully decoded record and its sites and genotypes blocks
+     */
+    private static final class EncodedRecord {
+        final VariantContext vc;
+        final byte[] infoBlock;
+        final byte[] genotypesBlock;
+
+        EncodedRecord(final VariantContext vc, final byte[] infoBlock, final byte[] genotypesBlock) {
+            this.vc = vc;
+            this.infoBlock = infoBlock;
+            this.genotypesBlock = genotypesBlock;
+        }
+    }
+
+    /**
+     * Queue the encoding of the current batch of records on the worker threads
+     */
+    private void submitBatch() {
+        if ( batch == null || batch.isEmpty() ) return;
+        if ( encoders == null ) {
+            final int threadNumber = threadsCreated.incrementAndGet();
+            final AtomicInteger workerNumber = new AtomicInteger(0);
+            encoders = Executors.newFixedThreadPool(encodingThreads, runnable -> {
+                final Thread thread = new Thread(runnable, "BCF2Writer" + threadNumber + "-encoder" + workerNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            log.debug("Started " + encodingThreads + " encoding threads for " + getStreamName());
+        }
+        final List<PendingRecord> records = batch;
+        batch = null;
+        encodedBatches.add(encoders.submit(() -> encodeBatch(records)));
+    }
+
+    /**
+     * Encodes a batch of records (worker thread method)
+     */
+    private List<EncodedRecord> encodeBatch(final List<PendingRecord> records) throws InterruptedException {
+        final RecordEncoder encoder = idleEncoders.take();
+        try {
+            final List<EncodedRecord> encoded = new ArrayList<EncodedRecord>(records.size());
+            for ( final PendingRecord record : records )
+                encoded.add(encoder.encode(record.vc, record.lazyData));
+            return encoded;
+        } finally {
+            idleEncoders.put(encoder);
+        }
+    }
+
+    /**
+     * Write the encoded batches, in the order the records were added
+     *
+     * @param all if true wait for and write all the queued batches, otherwise only those already encoded and,
+     *            waiting for them if needed, as many as necessary to keep at most two batches per thread in memory
+     */
+    private void writeEncodedBatches(final boolean all) {
+        while ( ! encodedBatches.isEmpty() ) {
+            if ( ! all && ! encodedBatches.peek().isDone() && encodedBatches.size() <= 2 * encodingThreads ) return;
+            final Future<List<EncodedRecord>> next = encodedBatches.remove();
+            final List<EncodedRecord> records;
+            try {
+                records = next.get();
+            } catch ( InterruptedException e ) {
+                throw new RuntimeException("Interrupted waiting for encoded BCF2 records", e);
+            } catch ( ExecutionException e ) {
+                final Throwable cause = e.getCause();
+                if ( cause instanceof Error ) throw (Error) cause;
+                if ( cause instanceof RuntimeException ) throw (RuntimeException) cause;
+                throw new RuntimeIOException("Error encoding BCF2 records", cause);
+            }
+            for ( final EncodedRecord record : records )
+                writeRecord(record);
+        }
+    }
+
+    /**
+     * Index and write an encoded record to the output stream
+     */
+    private void writeRecord(final EncodedRecord record) {
+        super.add(record.vc); // allow on the fly indexing
+
+        try {
+            // write the two blocks to disk
+            writeBlock(record.infoBlock, record.genotypesBlock);
+        }
+        catch ( IOException e ) {
+            throw new RuntimeIOException("Error writing record to BCF2 file: " + record.vc.toString(), e);
+        }
+    }
 
     /**
      * Can we safely write on the raw (undecoded) genotypes of an input VC?
@@ -321,77 +452,169 @@ class BCF2Writer extends IndexingVariantContextWriter {
     }
 
     /**
-     * Try to get the nGenotypeFields as efficiently as possible.
-     *
-     * If this is a lazy BCF2 object just grab the field count from there,
-     * otherwise do the whole counting by types test in the actual data
-     *
-     * @param vc
-     * @return
+     * The state needed to encode records: the low-level encoder and the field writers.
+     * Each instance is used by one thread at a time.
      */
-    private int getNGenotypeFormatFields(final VariantContext vc) {
-        final BCF2Codec.LazyData lazyData = getLazyData(vc);
-        return lazyData != null ? lazyData.nGenotypeFields : vc.calcVCFGenotypeKeys(header).size();
-    }
+    private final class RecordEncoder {
+        private final BCF2Encoder encoder = new BCF2Encoder();
+        private final BCF2FieldWriterManager fieldManager = new BCF2FieldWriterManager();
 
-    private void buildID( VariantContext vc ) throws IOException {
-        encoder.encodeTypedString(vc.getID());
-    }
+        RecordEncoder() {
+            fieldManager.setup(header, encoder, stringDictionaryMap);
+        }
+
+        /**
+         * @param lazyData the raw genotypes data of the record if they can be written as is, otherwise null
+         */
+        EncodedRecord encode(VariantContext vc, final BCF2Codec.LazyData lazyData) {
+            vc = vc.fullyDecode(header, false);
+            try {
+                final byte[] infoBlock = buildSitesData(vc, lazyData);
+                final byte[] genotypesBlock = buildSamplesData(vc, lazyData);
+                return new EncodedRecord(vc, infoBlock, genotypesBlock);
+            }
+            catch ( IOException e ) {
+                throw new RuntimeIOException("Error writing record to BCF2 file: " + vc.toString(), e);
+            }
+        }
 
-    private void buildAlleles( VariantContext vc ) throws IOException {
-        for ( Allele allele : vc.getAlleles() ) {
-            final byte[] s = allele.getDisplayBases();
-            if ( s == null )
-                throw new IllegalStateException("BUG: BCF2Writer encountered null padded allele" + allele);
-            encoder.encodeTypedString(s);
+        // --------------------------------------------------------------------------------
+        //
+        // implicit block
+        //
+        // The first four records of BCF are inline untype encoded data of:
+        //
+        // 4 byte integer chrom offset
+        // 4 byte integer start
+        // 4 byte integer ref length
+        // 4 byte float qual
+        //
+        // --------------------------------------------------------------------------------
+        private byte[] buildSitesData( VariantContext vc, final BCF2Codec.LazyData lazyData ) throws IOException {
+            final int contigIndex = contigDictionary.get(vc.getContig());
+            if ( contigIndex == -1 )
+                throw new IllegalStateException(String.format("Contig %s not found in sequence dictionary from reference", vc.getContig()));
+
+            // note use of encodeRawValue to not insert the typing byte
+            encoder.encodeRawValue(contigIndex, BCF2Type.INT32);
+
+            // pos.  GATK is 1 based, BCF2 is 0 based
+            encoder.encodeRawValue(vc.getStart() - 1, BCF2Type.INT32);
+
+            // ref length.  GATK is closed, but BCF2 is open so the ref length is GATK end - GATK start + 1
+            // for example, a SNP is in GATK at 1:10-10, which has ref length 10 - 10 + 1 = 1
+            encoder.encodeRawValue(vc.getEnd() - vc.getStart() + 1, BCF2Type.INT32);
+
+            // qual
+            if ( vc.hasLog10PError() )
+                encoder.encodeRawFloat((float) vc.getPhredScaledQual());
+            else
+                encoder.encodeRawMissingValue(BCF2Type.FLOAT);
+
+            // info fields
+            final int nAlleles = vc.getNAlleles();
+            final int nInfo = vc.getAttributes().size();
+            final int nGenotypeFormatFields = getNGenotypeFormatFields(vc, lazyData);
+            final int nSamples = header.getNGenotypeSamples();
+
+            encoder.encodeRawInt((nAlleles << 16) | (nInfo & 0x0000FFFF), BCF2Type.INT32);
+            encoder.encodeRawInt((nGenotypeFormatFields << 24) | (nSamples & 0x00FFFFF), BCF2Type.INT32);
+
+            buildID(vc);
+            buildAlleles(vc);
+            buildFilter(vc);
+            buildInfo(vc);
+
+            return encoder.getRecordBytes();
         }
-    }
 
-    private void buildFilter( VariantContext vc ) throws IOException {
-        if ( vc.isFiltered() ) {
-            encodeStringsByRef(vc.getFilters());
-        } else if ( vc.filtersWereApplied() ) {
-            encodeStringsByRef(Collections.singleton(VCFConstants.PASSES_FILTERS_v4));
-        } else {
-            encoder.encodeTypedMissing(BCF2Type.INT8);
+        /**
+         * Try to get the nGenotypeFields as efficiently as possible.
+         *
+         * If this is a lazy BCF2 object just grab the field count from there,
+         * otherwise do the whole counting by types test in the actual data
+         *
+         * @param vc
+         * @return
+         */
+        private int getNGenotypeFormatFields(final VariantContext vc, final BCF2Codec.LazyData lazyData) {
+            return lazyData != null ? lazyData.nGenotypeFields : vc.calcVCFGenotypeKeys(header).size();
         }
-    }
 
-    private void buildInfo( VariantContext vc ) throws IOException {
-        for ( Map.Entry<String, Object> infoFieldEntry : vc.getAttributes().entrySet() ) {
-            final String field = infoFieldEntry.getKey();
-            final BCF2FieldWriter.SiteWriter writer = fieldManager.getSiteFieldWriter(field);
-            if ( writer == null ) errorUnexpectedFieldToWrite(vc, field, "INFO");
-            writer.start(encoder, vc);
-            writer.site(encoder, vc);
-            writer.done(encoder, vc);
+        private void buildID( VariantContext vc ) throws IOException {
+            encoder.encodeTypedString(vc.getID());
         }
-    }
 
-    private byte[] buildSamplesData(final VariantContext vc) throws IOException {
-        final BCF2Codec.LazyData lazyData = getLazyData(vc);  // has critical side effects
-        if ( lazyData != null ) {
-            // we never decoded any data from this BCF file, so just pass it back
-            return lazyData.bytes;
+        private void buildAlleles( VariantContext vc ) throws IOException {
+            for ( Allele allele : vc.getAlleles() ) {
+                final byte[] s = allele.getDisplayBases();
+                if ( s == null )
+                    throw new IllegalStateException("BUG: BCF2Writer encountered null padded allele" + allele);
+                encoder.encodeTypedString(s);
+            }
+        }
+
+        private void buildFilter( VariantContext vc ) throws IOException {
+            if ( vc.isFiltered() ) {
+                encodeStringsByRef(vc.getFilters());
+            } else if ( vc.filtersWereApplied() ) {
+                encodeStringsByRef(Collections.singleton(VCFConstants.PASSES_FILTERS_v4));
+            } else {
+                encoder.encodeTypedMissing(BCF2Type.INT8);
+            }
+        }
+
+        private void buildInfo( VariantContext vc ) throws IOException {
+            for ( Map.Entry<String, Object> infoFieldEntry : vc.getAttributes().entrySet() ) {
+                final String field = infoFieldEntry.getKey();
+                final BCF2FieldWriter.SiteWriter writer = fieldManager.getSiteFieldWriter(field);
+                if ( writer == null ) errorUnexpectedFieldToWrite(vc, field, "INFO");
+                writer.start(encoder, vc);
+                writer.site(encoder, vc);
+                writer.done(encoder, vc);
+            }
         }
 
-        // we have to do work to convert the VC into a BCF2 byte stream
-        final List<String> genotypeFields = vc.calcVCFGenotypeKeys(header);
-        for ( final String field : genotypeFields ) {
-            final BCF2FieldWriter.GenotypesWriter writer = fieldManager.getGenotypeFieldWriter(field);
-            if ( writer == null ) errorUnexpectedFieldToWrite(vc, field, "FORMAT");
+        private byte[] buildSamplesData(final VariantContext vc, final BCF2Codec.LazyData lazyData) throws IOException {
+            if ( lazyData != null ) {
+                // we never decoded any data from this BCF file, so just pass it back
+                return lazyData.bytes;
+            }
+
+            // we have to do work to convert the VC into a BCF2 byte stream
+            final List<String> genotypeFields = vc.calcVCFGenotypeKeys(header);
+            for ( final String field : genotypeFields ) {
+                final BCF2FieldWriter.GenotypesWriter writer = fieldManager.getGenotypeFieldWriter(field);
+                if ( writer == null ) errorUnexpectedFieldToWrite(vc, field, "FORMAT");
+
+                assert writer != null;
+
+                writer.start(encoder, vc);
+                for ( final String name : sampleNames ) {
+                    Genotype g = vc.getGenotype(name);
+                    if ( g == null ) g = GenotypeBuilder.createMissing(name, writer.nValuesPerGenotype);
+                    writer.addGenotype(encoder, vc, g);
+                }
+                writer.done(encoder, vc);
+            }
+            return encoder.getRecordBytes();
+        }
 
-            assert writer != null;
+        private BCF2Type encodeStringsByRef(final Collection<String> strings) throws IOException {
+            final List<Integer> offsets = new ArrayList<Integer>(strings.size());
 
-            writer.start(encoder, vc);
-            for ( final String name : sampleNames ) {
-                Genotype g = vc.getGenotype(name);
-                if ( g == null ) g = GenotypeBuilder.createMissing(name, writer.nValuesPerGenotype);
-                writer.addGenotype(encoder, vc, g);
+            // iterate over strings until we find one that needs 16 bits, and break
+            for ( final String string : strings ) {
+                final Integer got = stringDictionaryMap.get(string);
+                if ( got == null ) throw new IllegalStateException("Format error: could not find string " + string + " in header as required by BCF");
+                final int offset = got;
+                offsets.add(offset);
             }
-            writer.done(encoder, vc);
+
+            final BCF2Type type = BCF2Utils.determineIntegerType(offsets);
+            encoder.encodeTyped(offsets, type);
+            return type;
         }
-        return encoder.getRecordBytes();
     }
 
     /**
@@ -427,22 +650,6 @@ class BCF2Writer extends IndexingVariantContextWriter {
         outputStream.write(genotypesBlock);
     }
 
-    private BCF2Type encodeStringsByRef(final Collection<String> strings) throws IOException {
-        final List<Integer> offsets = new ArrayList<Integer>(strings.size());
-
-        // iterate over strings until we find one that needs 16 bits, and break
-        for ( final String string : strings ) {
-            final Integer got = stringDictionaryMap.get(string);
-            if ( got == null ) throw new IllegalStateException("Format error: could not find string " + string + " in header as required by BCF");
-            final int offset = got;
-            offsets.add(offset);
-        }
-
-        final BCF2Type type = BCF2Utils.determineIntegerType(offsets);
-        encoder.encodeTyped(offsets, type);
-        return type;
-    }
-
     /**
      * Create the contigDictionary from the contigLines extracted from the VCF header
      *
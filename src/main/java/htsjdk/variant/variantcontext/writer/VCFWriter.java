@@ -107,18 +107,6 @@ class VCFWriter extends IndexingVariantContextWriter {
     //
     // --------------------------------------------------------------------------------
 
-    /*
-     * Write String s to the internal buffered writer.
-     *
-     * writeAndResetBuffer() must be called to actually write the data to the true output stream.
-     *
-     * @param s the string to write
-     * @throws IOException
-     */
-    private void write(final String s) throws IOException {
-        writer.write(s);
-    }
-
     /*
      * Actually write the line buffer contents to the destination output stream. After calling this function
      * the line buffer is reset so the contents of the buffer can be reused
@@ -220,11 +208,9 @@ class VCFWriter extends IndexingVariantContextWriter {
         try {
             super.add(context);
 
-            if (this.doNotWriteGenotypes) write(this.vcfEncoder.encode(new VariantContextBuilder(context).noGenotypes().make()));
-            else write(this.vcfEncoder.encode(context));
-            write("\n");
-
-            writeAndResetBuffer();
+            // the encoder writes each line to the output stream in one go, as the line buffer does for the header
+            if (this.doNotWriteGenotypes) this.vcfEncoder.write(new VariantContextBuilder(context).noGenotypes().make(), getOutputStream());
+            else this.vcfEncoder.write(context, getOutputStream());
             outputHasBeenWritten = true;
         } catch (IOException e) {
             throw new RuntimeIOException("Unable to write the VCF object to " + getStreamName(), e);
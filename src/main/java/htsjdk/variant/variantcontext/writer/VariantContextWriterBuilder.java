@@ -124,6 +124,7 @@ public class VariantContextWriterBuilder {
     private IndexCreator idxCreator = null;
     private int bufferSize = Defaults.BUFFER_SIZE;
     private boolean createMD5 = Defaults.CREATE_MD5;
+    private int encodingThreads = 0;
     protected EnumSet<Options> options = DEFAULT_OPTIONS.clone();
 
     /**
@@ -248,6 +249,22 @@ public class VariantContextWriterBuilder {
         return this;
     }
 
+    /**
+     * Set the number of threads encoding records for BCF output by the next <code>VariantContextWriter</code> created
+     * by this builder.  Records are still written in the order they are added.
+     * Set to 0, the default, to encode records on the calling thread.
+     * Does not affect VCF output.
+     *
+     * @param encodingThreads the number of encoding threads
+     * @return this <code>VariantContextWriterBuilder</code>
+     */
+    public VariantContextWriterBuilder setEncodingThreads(final int encodingThreads) {
+        if (encodingThreads < 0)
+            throw new IllegalArgumentException("Number of encoding threads cannot be negative: " + encodingThreads);
+        this.encodingThreads = encodingThreads;
+        return this;
+    }
+
     /**
      * Set a buffer size for the file output stream passed to the next <code>VariantContextWriter</code> created by this builder.
      * Set to 0 for no buffering.
@@ -526,12 +543,14 @@ public class VariantContextWriterBuilder {
         if (idxCreator == null) {
             return new BCF2Writer(writerFile, writerStream, refDict,
                     options.contains(Options.INDEX_ON_THE_FLY),
-                    options.contains(Options.DO_NOT_WRITE_GENOTYPES));
+                    options.contains(Options.DO_NOT_WRITE_GENOTYPES),
+                    encodingThreads);
         }
         else {
             return new BCF2Writer(writerFile, writerStream, refDict, idxCreator,
                     options.contains(Options.INDEX_ON_THE_FLY),
-                    options.contains(Options.DO_NOT_WRITE_GENOTYPES));
+                    options.contains(Options.DO_NOT_WRITE_GENOTYPES),
+                    encodingThreads);
         }
     }
 }
@@ -35,6 +35,8 @@ import htsjdk.tribble.index.tabix.TabixFormat;
 import htsjdk.tribble.util.ParsingUtils;
 import htsjdk.variant.utils.GeneralUtils;
 import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.AlleleInterner;
+import htsjdk.variant.variantcontext.ColumnarGenotypesContext;
 import htsjdk.variant.variantcontext.Genotype;
 import htsjdk.variant.variantcontext.GenotypeBuilder;
 import htsjdk.variant.variantcontext.GenotypeLikelihoods;
@@ -46,6 +48,7 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -90,8 +93,24 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
 
     protected int lineNo = 0;
 
+    /**
+     * @deprecated no longer used, strings are interned by {@link AlleleInterner#getDefault()}
+     */
+    @Deprecated
     protected Map<String, String> stringCache = new HashMap<String, String>();
 
+    // decode genotypes into primitive columns rather than lazily into Genotype objects
+    private boolean columnarGenotypes = false;
+    private VCFColumnarGenotypesDecoder columnarDecoder = null;
+
+    // tokenizer for lines decoded from byte buffers, and the chromosome of the last such line
+    private VCFRecordTokenizer tokenizer = null;
+    private String lastChromosome = null;
+
+    // the genotype columns of a line with only the FORMAT keys of a projection, and which keys are kept
+    private byte[] projectedGenotypes = null;
+    private boolean[] keptFormatKeys = null;
+
     protected boolean warnedAboutNoEqualsForNonFlag = false;
 
     /**
@@ -119,17 +138,23 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
         final List<Allele> alleles;
         final String contig;
         final int start;
+        final VCFProjection projection;
 
         LazyVCFGenotypesParser(final List<Allele> alleles, final String contig, final int start) {
+            this(alleles, contig, start, VCFProjection.ALL);
+        }
+
+        LazyVCFGenotypesParser(final List<Allele> alleles, final String contig, final int start, final VCFProjection projection) {
             this.alleles = alleles;
             this.contig = contig;
             this.start = start;
+            this.projection = projection;
         }
 
         @Override
         public LazyGenotypesContext.LazyData parse(final Object data) {
             //System.out.printf("Loading genotypes... %s:%d%n", contig, start);
-            return createGenotypeMap((String) data, alleles, contig, start);
+            return createGenotypeMap((String) data, alleles, contig, start, projection);
         }
     }
 
@@ -262,6 +287,246 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
         return decodeLine(line, true);
     }
 
+    /**
+     * Decode a line held in a byte buffer into a VariantContext, materialising only the parts of the record in the
+     * projection. The line is tokenized in place: columns, INFO entries and FORMAT keys outside of the projection are
+     * skipped without creating strings for them, and genotypes are decoded lazily as by {@link #decode(String)}.
+     *
+     * @param buffer     the buffer holding the line
+     * @param start      offset of the first byte of the line
+     * @param end        offset one past the last byte of the line, not including the line terminator
+     * @param projection the parts of the record to decode
+     * @return a VariantContext, or null for a header line
+     */
+    public VariantContext decode(final byte[] buffer, final int start, final int end, final VCFProjection projection) {
+        // the same line reader is not used for parsing the header and parsing lines, if we see a #, we've seen a header line
+        if (end > start && buffer[start] == VCFHeader.HEADER_INDICATOR.charAt(0)) return null;
+
+        // our header cannot be null, we need the genotype sample names and counts
+        if (header == null) throw new TribbleException("VCF Header cannot be null when decoding a record");
+
+        if (tokenizer == null)
+            tokenizer = new VCFRecordTokenizer(NUM_STANDARD_FIELDS + 1);
+
+        final int nParts = tokenizer.tokenize(buffer, start, end, Math.min(header.getColumnCount(), NUM_STANDARD_FIELDS + 1));
+        if (( !header.hasGenotypingData() && nParts != NUM_STANDARD_FIELDS) ||
+                (header.hasGenotypingData() && nParts != (NUM_STANDARD_FIELDS + 1)) )
+            throw new TribbleException("Line " + lineNo + ": there aren't enough columns for line " + tokenizer.getString(start, end) + " (we expected " + (NUM_STANDARD_FIELDS + 1) +
+                    " tokens, and saw " + nParts + " )");
+
+        return parseVCFLine(tokenizer, projection);
+    }
+
+    /**
+     * parse out the VCF line from the columns of a tokenized line
+     */
+    private VariantContext parseVCFLine(final VCFRecordTokenizer tokens, final VCFProjection projection) {
+        VariantContextBuilder builder = new VariantContextBuilder();
+        builder.source(getName());
+
+        lineNo++;
+
+        // parse out the required fields
+        final String chr = getCachedChromosome(tokens);
+        builder.chr(chr);
+        int pos = -1;
+        try {
+            pos = tokens.parseInt(1);
+        } catch (NumberFormatException e) {
+            generateException(tokens.getString(1) + " is not a valid start position in the VCF format");
+        }
+        builder.start(pos);
+
+        if ( tokens.getLength(2) == 0 )
+            generateException("The VCF specification requires a valid ID field");
+        else if ( tokens.columnEquals(2, VCFConstants.EMPTY_ID_FIELD) )
+            builder.noID();
+        else
+            builder.id(tokens.getString(2));
+
+        final String ref = getCachedString(tokens, 3).toUpperCase();
+        final String alts = getCachedString(tokens, 4);
+        builder.log10PError(tokens.columnEquals(5, VCFConstants.MISSING_VALUE_v4) ? VariantContext.NO_LOG10_PERROR : parseQual(tokens.getString(5)));
+
+        final List<String> filters;
+        if ( tokens.columnEquals(6, VCFConstants.PASSES_FILTERS_v4) )
+            filters = parseFilters(VCFConstants.PASSES_FILTERS_v4);
+        else if ( tokens.columnEquals(6, VCFConstants.UNFILTERED) )
+            filters = parseFilters(VCFConstants.UNFILTERED);
+        else
+            filters = parseFilters(getCachedString(tokens, 6));
+        if ( filters != null ) builder.filters(new HashSet<String>(filters));
+
+        final Map<String, Object> attrs = projection.includesAllInfoKeys() ?
+                parseInfo(tokens.getString(7)) : parseInfo(tokens, projection);
+        builder.attributes(attrs);
+
+        final int infoEnd = findInfoEnd(tokens);
+        if ( infoEnd != Integer.MIN_VALUE ) {
+            builder.stop(infoEnd);
+        } else {
+            builder.stop(pos + ref.length() - 1);
+        }
+
+        // get our alleles, filters, and setup an attribute map
+        final List<Allele> alleles = parseAlleles(ref, alts, lineNo);
+        builder.alleles(alleles);
+
+        // do we have genotyping data
+        if (tokens.getColumnCount() > NUM_STANDARD_FIELDS && projection.includesGenotypes() && columnarGenotypes) {
+            builder.genotypesNoValidation(getColumnarDecoder().decode(tokens.getBuffer(), tokens.getStart(NUM_STANDARD_FIELDS),
+                    tokens.getEnd(NUM_STANDARD_FIELDS), alleles, chr, pos, projection));
+        } else if (tokens.getColumnCount() > NUM_STANDARD_FIELDS && projection.includesGenotypes()) {
+            final LazyGenotypesContext.LazyParser lazyParser = new LazyVCFGenotypesParser(alleles, chr, pos, projection);
+            final int nGenotypes = header.getNGenotypeSamples();
+            LazyGenotypesContext lazy = new LazyGenotypesContext(lazyParser, getGenotypeData(tokens, projection), nGenotypes);
+
+            // did we resort the sample names?  If so, we need to load the genotype data
+            if ( !header.samplesWereAlreadySorted() )
+                lazy.decode();
+
+            builder.genotypesNoValidation(lazy);
+        }
+
+        VariantContext vc = null;
+        try {
+            vc = builder.make();
+        } catch (Exception e) {
+            generateException(e.getMessage());
+        }
+
+        return vc;
+    }
+
+    /**
+     * Get the genotype columns of a tokenized line, FORMAT included, with only the FORMAT keys in the projection.  The
+     * other keys are dropped while scanning the bytes, so that only the values of the projected keys are turned into
+     * strings, here and when the genotypes are decoded.
+     */
+    private String getGenotypeData(final VCFRecordTokenizer tokens, final VCFProjection projection) {
+        final int start = tokens.getStart(NUM_STANDARD_FIELDS);
+        final int end = tokens.getEnd(NUM_STANDARD_FIELDS);
+        if ( projection.getFormatKeys() == null )
+            return tokens.getString(start, end);
+
+        final byte[] buffer = tokens.getBuffer();
+        int formatEnd = tokens.indexOf((byte) VCFConstants.FIELD_SEPARATOR_CHAR, start, end);
+        if ( formatEnd == -1 ) formatEnd = end;
+        if ( keptFormatKeys == null ) keptFormatKeys = new boolean[16];
+        int nKeys = 0;
+        boolean keepAny = false;
+        for ( int i = start, keyStart = start; i <= formatEnd; i++ ) {
+            if ( i == formatEnd || buffer[i] == VCFConstants.GENOTYPE_FIELD_SEPARATOR_CHAR ) {
+                final boolean keep = projection.includesFormatKey(buffer, keyStart, i);
+                // leave a misplaced GT to be reported when the genotypes are decoded
+                if ( keep && nKeys > 0 && tokens.regionEquals(keyStart, i, VCFConstants.GENOTYPE_KEY) )
+                    return tokens.getString(start, end);
+                if ( nKeys == keptFormatKeys.length ) keptFormatKeys = Arrays.copyOf(keptFormatKeys, 2 * nKeys);
+                keptFormatKeys[nKeys++] = keep;
+                keepAny |= keep;
+                keyStart = i + 1;
+            }
+        }
+        // the genotypes have no values at all without any key, but the FORMAT column must not be empty
+        if ( ! keepAny )
+            return tokens.getString(start, end);
+
+        // copy the values of the kept keys, in the FORMAT column and then in each sample
+        if ( projectedGenotypes == null || projectedGenotypes.length < end - start )
+            projectedGenotypes = new byte[Math.max(end - start, projectedGenotypes == null ? 0 : 2 * projectedGenotypes.length)];
+        int length = 0;
+        int field = 0;
+        boolean firstField = true;
+        for ( int i = start, fieldStart = start; i <= end; i++ ) {
+            if ( i == end || buffer[i] == VCFConstants.FIELD_SEPARATOR_CHAR || buffer[i] == VCFConstants.GENOTYPE_FIELD_SEPARATOR_CHAR ) {
+                // leave a sample with too many values to be reported when the genotypes are decoded
+                if ( field == nKeys )
+                    return tokens.getString(start, end);
+                if ( keptFormatKeys[field] ) {
+                    if ( ! firstField ) projectedGenotypes[length++] = VCFConstants.GENOTYPE_FIELD_SEPARATOR_CHAR;
+                    System.arraycopy(buffer, fieldStart, projectedGenotypes, length, i - fieldStart);
+                    length += i - fieldStart;
+                    firstField = false;
+                }
+                if ( i < end && buffer[i] == VCFConstants.FIELD_SEPARATOR_CHAR ) {
+                    projectedGenotypes[length++] = VCFConstants.FIELD_SEPARATOR_CHAR;
+                    field = 0;
+                    firstField = true;
+                } else {
+                    field++;
+                }
+                fieldStart = i + 1;
+            }
+        }
+        return new String(projectedGenotypes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Return the chromosome of a tokenized line, reusing the string of the previous line when it is the same.
+     */
+    private String getCachedChromosome(final VCFRecordTokenizer tokens) {
+        if ( lastChromosome == null || !tokens.columnEquals(0, lastChromosome) )
+            lastChromosome = getCachedString(tokens, 0);
+        return lastChromosome;
+    }
+
+    /**
+     * Find the END key in the INFO column of a tokenized line without parsing the other keys.
+     *
+     * @return the END value or Integer.MIN_VALUE if there is none
+     */
+    private int findInfoEnd(final VCFRecordTokenizer tokens) {
+        final int infoEnd = tokens.getEnd(7);
+        int entryStart = tokens.getStart(7);
+        while ( entryStart < infoEnd ) {
+            int entryEnd = tokens.indexOf((byte) VCFConstants.INFO_FIELD_SEPARATOR_CHAR, entryStart, infoEnd);
+            if ( entryEnd == -1 ) entryEnd = infoEnd;
+            final int eq = tokens.indexOf((byte) '=', entryStart, entryEnd);
+            if ( eq != -1 && tokens.regionEquals(entryStart, eq, VCFConstants.END_KEY) ) {
+                try {
+                    return tokens.parseInt(eq + 1, entryEnd);
+                } catch (NumberFormatException e) {
+                    generateException("the END value in the INFO field is not valid");
+                }
+            }
+            entryStart = entryEnd + 1;
+        }
+        return Integer.MIN_VALUE;
+    }
+
+    /**
+     * parse out the info fields in the projection from a tokenized line, skipping the other keys
+     */
+    private Map<String, Object> parseInfo(final VCFRecordTokenizer tokens, final VCFProjection projection) {
+        Map<String, Object> attributes = new HashMap<String, Object>();
+
+        if ( tokens.getLength(7) == 0 )
+            generateException("The VCF specification requires a valid (non-zero length) info field");
+
+        if ( !tokens.columnEquals(7, VCFConstants.EMPTY_INFO_FIELD) ) {
+            final byte[][] keys = projection.getInfoKeyBytes();
+            final int infoEnd = tokens.getEnd(7);
+            int entryStart = tokens.getStart(7);
+            while ( entryStart < infoEnd ) {
+                int entryEnd = tokens.indexOf((byte) VCFConstants.INFO_FIELD_SEPARATOR_CHAR, entryStart, infoEnd);
+                if ( entryEnd == -1 ) entryEnd = infoEnd;
+                final int eq = tokens.indexOf((byte) '=', entryStart, entryEnd);
+                final int keyEnd = eq == -1 ? entryEnd : eq;
+                for ( final byte[] key : keys ) {
+                    if ( tokens.regionEquals(entryStart, keyEnd, key) ) {
+                        if ( tokens.indexOf((byte) ' ', entryStart, entryEnd) != -1 )
+                            generateException("The VCF specification does not allow for whitespace in the INFO field. Offending field value was \"" + tokens.getString(7) + "\"");
+                        addInfoAttribute(attributes, tokens.getString(entryStart, keyEnd), eq == -1 ? null : tokens.getString(eq + 1, entryEnd));
+                        break;
+                    }
+                }
+                entryStart = entryEnd + 1;
+            }
+        }
+
+        return attributes;
+    }
+
     private VariantContext decodeLine(final String line, final boolean includeGenotypes) {
         // the same line reader is not used for parsing the header and parsing lines, if we see a #, we've seen a header line
         if (line.startsWith(VCFHeader.HEADER_INDICATOR)) return null;
@@ -342,7 +607,9 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
         builder.alleles(alleles);
 
         // do we have genotyping data
-        if (parts.length > NUM_STANDARD_FIELDS && includeGenotypes) {
+        if (parts.length > NUM_STANDARD_FIELDS && includeGenotypes && columnarGenotypes) {
+            builder.genotypesNoValidation(createColumnarGenotypes(parts[8], alleles, chr, pos, VCFProjection.ALL));
+        } else if (parts.length > NUM_STANDARD_FIELDS && includeGenotypes) {
             final LazyGenotypesContext.LazyParser lazyParser = new LazyVCFGenotypesParser(alleles, chr, pos);
             final int nGenotypes = header.getNGenotypeSamples();
             LazyGenotypesContext lazy = new LazyGenotypesContext(lazyParser, parts[8], nGenotypes);
@@ -389,12 +656,14 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
      * @return interned string
      */
     protected String getCachedString(String str) {
-        String internedString = stringCache.get(str);
-        if ( internedString == null ) {
-            internedString = new String(str);
-            stringCache.put(internedString, internedString);
-        }
-        return internedString;
+        return AlleleInterner.getDefault().internString(str);
+    }
+
+    /**
+     * Return a cached copy of a column of a tokenized line, without creating a string if it is cached.
+     */
+    private String getCachedString(final VCFRecordTokenizer tokens, final int column) {
+        return AlleleInterner.getDefault().internString(tokens.getBuffer(), tokens.getStart(column), tokens.getEnd(column));
     }
 
     /**
@@ -414,50 +683,58 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
 
             List<String> infoFields = ParsingUtils.split(infoField, VCFConstants.INFO_FIELD_SEPARATOR_CHAR);
             for (int i = 0; i < infoFields.size(); i++) {
-                String key;
-                Object value;
-
                 int eqI = infoFields.get(i).indexOf("=");
-                if ( eqI != -1 ) {
-                    key = infoFields.get(i).substring(0, eqI);
-                    String valueString = infoFields.get(i).substring(eqI + 1);
-
-                    // split on the INFO field separator
-                    List<String> infoValueSplit = ParsingUtils.split(valueString, VCFConstants.INFO_FIELD_ARRAY_SEPARATOR_CHAR);
-                    if ( infoValueSplit.size() == 1 ) {
-                        value = infoValueSplit.get(0);
-                        final VCFInfoHeaderLine headerLine = header.getInfoHeaderLine(key);
-                        if ( headerLine != null && headerLine.getType() == VCFHeaderLineType.Flag && value.equals("0") ) {
-                            // deal with the case where a flag field has =0, such as DB=0, by skipping the add
-                            continue;
-                        }
-                    } else {
-                        value = infoValueSplit;
-                    }
-                } else {
-                    key = infoFields.get(i);
-                    final VCFInfoHeaderLine headerLine = header.getInfoHeaderLine(key);
-                    if ( headerLine != null && headerLine.getType() != VCFHeaderLineType.Flag ) {
-                        if ( GeneralUtils.DEBUG_MODE_ENABLED && ! warnedAboutNoEqualsForNonFlag ) {
-                            System.err.println("Found info key " + key + " without a = value, but the header says the field is of type "
-                                               + headerLine.getType() + " but this construct is only value for FLAG type fields");
-                            warnedAboutNoEqualsForNonFlag = true;
-                        }
+                if ( eqI != -1 )
+                    addInfoAttribute(attributes, infoFields.get(i).substring(0, eqI), infoFields.get(i).substring(eqI + 1));
+                else
+                    addInfoAttribute(attributes, infoFields.get(i), null);
+            }
+        }
 
-                        value = VCFConstants.MISSING_VALUE_v4;
-                    } else {
-                        value = true;
-                    }
-                }
+        return attributes;
+    }
 
-                // this line ensures that key/value pairs that look like key=; are parsed correctly as MISSING
-                if ( "".equals(value) ) value = VCFConstants.MISSING_VALUE_v4;
+    /**
+     * add the value of an info field to the attributes
+     * @param attributes the attributes to add to
+     * @param key the key of the field
+     * @param valueString the value of the field, or null if the field has no = value
+     */
+    private void addInfoAttribute(final Map<String, Object> attributes, final String key, final String valueString) {
+        Object value;
+
+        if ( valueString != null ) {
+            // split on the INFO field separator
+            List<String> infoValueSplit = ParsingUtils.split(valueString, VCFConstants.INFO_FIELD_ARRAY_SEPARATOR_CHAR);
+            if ( infoValueSplit.size() == 1 ) {
+                value = infoValueSplit.get(0);
+                final VCFInfoHeaderLine headerLine = header.getInfoHeaderLine(key);
+                if ( headerLine != null && headerLine.getType() == VCFHeaderLineType.Flag && value.equals("0") ) {
+                    // deal with the case where a flag field has =0, such as DB=0, by skipping the add
+                    return;
+                }
+            } else {
+                value = infoValueSplit;
+            }
+        } else {
+            final VCFInfoHeaderLine headerLine = header.getInfoHeaderLine(key);
+            if ( headerLine != null && headerLine.getType() != VCFHeaderLineType.Flag ) {
+                if ( GeneralUtils.DEBUG_MODE_ENABLED && ! warnedAboutNoEqualsForNonFlag ) {
+                    System.err.println("Found info key " + key + " without a = value, but the header says the field is of type "
+                                       + headerLine.getType() + " but this construct is only value for FLAG type fields");
+                    warnedAboutNoEqualsForNonFlag = true;
+                }
 
-                attributes.put(key, value);
+                value = VCFConstants.MISSING_VALUE_v4;
+            } else {
+                value = true;
             }
         }
 
-        return attributes;
+        // this line ensures that key/value pairs that look like key=; are parsed correctly as MISSING
+        if ( "".equals(value) ) value = VCFConstants.MISSING_VALUE_v4;
+
+        attributes.put(key, value);
     }
 
     /**
@@ -536,7 +813,7 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
         List<Allele> alleles = new ArrayList<Allele>(2); // we are almost always biallelic
         // ref
         checkAllele(ref, true, lineNo);
-        Allele refAllele = Allele.create(ref, true);
+        Allele refAllele = AlleleInterner.getDefault().intern(ref, true);
         alleles.add(refAllele);
 
         if ( alts.indexOf(',') == -1 ) // only 1 alternatives, don't call string split
@@ -615,7 +892,7 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
     private static void parseSingleAltAllele(List<Allele> alleles, String alt, int lineNo) {
         checkAllele(alt, false, lineNo);
 
-        Allele allele = Allele.create(alt, false);
+        Allele allele = AlleleInterner.getDefault().intern(alt, false);
         if ( ! allele.isNoCall() )
             alleles.add(allele);
     }
@@ -661,6 +938,60 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
                                                               final List<Allele> alleles,
                                                               final String chr,
                                                               final int pos) {
+        return createGenotypeMap(str, alleles, chr, pos, VCFProjection.ALL);
+    }
+
+    /**
+     * Create a genotype map, decoding only the FORMAT keys in the projection
+     *
+     * @param str the string
+     * @param alleles the list of alleles
+     * @param projection the FORMAT keys to decode
+     * @return a mapping of sample name to genotype object
+     */
+    public LazyGenotypesContext.LazyData createGenotypeMap(final String str,
+                                                              final List<Allele> alleles,
+                                                              final String chr,
+                                                              final int pos,
+                                                              final VCFProjection projection) {
+        final ArrayList<Genotype> genotypes = new ArrayList<Genotype>(header.getNGenotypeSamples());
+        decodeGenotypes(str, alleles, chr, pos, projection, genotypes);
+        return new LazyGenotypesContext.LazyData(genotypes, header.getSampleNamesInOrder(), header.getSampleNameToOffset());
+    }
+
+    /**
+     * Create a columnar genotypes context, decoding only the FORMAT keys in the projection.  The genotypes are
+     * stored in primitive columns rather than as one Genotype object per sample.
+     *
+     * @param str the string
+     * @param alleles the list of alleles
+     * @param projection the FORMAT keys to decode
+     * @return the genotypes of all samples
+     */
+    public ColumnarGenotypesContext createColumnarGenotypes(final String str,
+                                                            final List<Allele> alleles,
+                                                            final String chr,
+                                                            final int pos,
+                                                            final VCFProjection projection) {
+        final byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        return getColumnarDecoder().decode(bytes, 0, bytes.length, alleles, chr, pos, projection);
+    }
+
+    private VCFColumnarGenotypesDecoder getColumnarDecoder() {
+        if ( columnarDecoder == null )
+            columnarDecoder = new VCFColumnarGenotypesDecoder(this);
+        return columnarDecoder;
+    }
+
+    /**
+     * Decode the genotype columns of a line into genotypes
+     */
+    private void decodeGenotypes(final String str,
+                                 final List<Allele> alleles,
+                                 final String chr,
+                                 final int pos,
+                                 final VCFProjection projection,
+                                 final List<Genotype> genotypes) {
         if (genotypeParts == null)
             genotypeParts = new String[header.getColumnCount() - NUM_STANDARD_FIELDS];
 
@@ -668,8 +999,6 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
         if ( nParts != genotypeParts.length )
             generateException("there are " + (nParts-1) + " genotypes while the header requires that " + (genotypeParts.length-1) + " genotypes be present for all records at " + chr + ":" + pos, lineNo);
 
-        ArrayList<Genotype> genotypes = new ArrayList<Genotype>(nParts);
-
         // get the format keys
         List<String> genotypeKeys = ParsingUtils.split(genotypeParts[0], VCFConstants.GENOTYPE_FIELD_SEPARATOR_CHAR);
 
@@ -688,7 +1017,7 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
 
             // check to see if the value list is longer than the key list, which is a problem
             if (genotypeKeys.size() < genotypeValues.size())
-                generateException("There are too many keys for the sample " + sampleName + ", keys = " + parts[8] + ", values = " + parts[genotypeOffset]);
+                generateException("There are too many keys for the sample " + sampleName + ", keys = " + genotypeParts[0] + ", values = " + genotypeParts[genotypeOffset]);
 
             int genotypeAlleleLocation = -1;
             if (!genotypeKeys.isEmpty()) {
@@ -701,8 +1030,8 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
                     // todo -- all of these on the fly parsing of the missing value should be static constants
                     if (gtKey.equals(VCFConstants.GENOTYPE_KEY)) {
                         genotypeAlleleLocation = i;
-                    } else if ( missing ) {
-                        // if its truly missing (there no provided value) skip adding it to the attributes
+                    } else if ( missing || !projection.includesFormatKey(gtKey) ) {
+                        // if its truly missing (there no provided value) or not wanted skip adding it to the attributes
                     } else if (gtKey.equals(VCFConstants.GENOTYPE_FILTER_KEY)) {
                         final List<String> filters = parseFilters(getCachedString(genotypeValues.get(i)));
                         if ( filters != null ) gb.filters(filters);
@@ -746,8 +1075,6 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
                 throw new TribbleException.InternalCodecException(e.getMessage() + ", at position " + chr+":"+pos);
             }
         }
-
-        return new LazyGenotypesContext.LazyData(genotypes, header.getSampleNamesInOrder(), header.getSampleNameToOffset());
     }
 
     private static final int[] decodeInts(final String string) {
@@ -763,6 +1090,21 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
         return values;
     }
 
+    /**
+     * Decode the genotypes of records into a {@link ColumnarGenotypesContext} instead of lazily decoded
+     * Genotype objects.  The genotypes are then decoded along with the rest of the record, but take a fraction of
+     * the memory, which pays off for records with a large number of samples.
+     *
+     * @param columnarGenotypes true to decode the genotypes into primitive columns
+     */
+    public void setColumnarGenotypes(final boolean columnarGenotypes) {
+        this.columnarGenotypes = columnarGenotypes;
+    }
+
+    public boolean isColumnarGenotypes() {
+        return columnarGenotypes;
+    }
+
     /**
      * Forces all VCFCodecs to not perform any on the fly modifications to the VCF header
      * of VCF records.  Useful primarily for raw comparisons such as when comparing
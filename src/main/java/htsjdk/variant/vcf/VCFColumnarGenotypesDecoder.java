@@ -0,0 +1,364 @@
+package htsjdk.variant.vcf;
+
+import htsjdk.tribble.TribbleException;
+import htsjdk.tribble.util.ParsingUtils;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.ColumnarGenotypesContext;
+import htsjdk.variant.variantcontext.GenotypeLikelihoods;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decodes the genotype columns of VCF lines held in byte buffers straight into the columns of a
+ * {@link ColumnarGenotypesContext}, as {@link AbstractVCFCodec#createGenotypeMap} decodes them into Genotype objects.
+ * <p>
+ * The FORMAT keys are matched against the projection as bytes, and GT, GQ, DP, AD and PL values are parsed from the
+ * bytes into the columns, so that no Genotype, allele list or array is created per sample.  Only the values of FT,
+ * GL and the other projected keys are turned into strings.
+ * <p>
+ * An instance belongs to a codec, is reused for every line it decodes and is not thread safe.
+ */
+final class VCFColumnarGenotypesDecoder {
+    private static final byte TAB = (byte) VCFConstants.FIELD_SEPARATOR_CHAR;
+    private static final byte COLON = (byte) VCFConstants.GENOTYPE_FIELD_SEPARATOR_CHAR;
+
+    /** the FORMAT key of the log10 likelihoods, which VCFConstants only has as a deprecated constant */
+    private static final String LOG10_LIKELIHOODS_KEY = "GL";
+
+    /** marks the end of the values of a sample in the AD and PL matrices */
+    private static final int MISSING = Integer.MIN_VALUE;
+
+    // what to do with the values of a FORMAT key
+    private static final int SKIP = 0;
+    private static final int GT = 1;
+    private static final int FT = 2;
+    private static final int GQ = 3;
+    private static final int DP = 4;
+    private static final int AD = 5;
+    private static final int PL = 6;
+    private static final int GL = 7;
+    private static final int OTHER = 8;
+
+    private final AbstractVCFCodec codec;
+
+    // the FORMAT keys of the current line
+    private int nKeys = 0;
+    private int[] keyTypes = new int[16];
+    private String[] keyNames = new String[16];
+
+    // the columns copied by the builder, reused for every line
+    private int[] ploidy = new int[0];
+    private boolean[] phased = new boolean[0];
+    private int[] gqs = new int[0];
+    private int[] dps = new int[0];
+
+    // the values of an AD or PL field
+    private int[] ints = new int[16];
+
+    VCFColumnarGenotypesDecoder(final AbstractVCFCodec codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * Rows of int values, one per sample, in a matrix as wide as the longest row.  Rows end at their first missing value.
+     */
+    private static final class IntRows {
+        private final int nRows;
+        private int width;
+        private int[] values;
+
+        private IntRows(final int nRows, final int width) {
+            this.nRows = nRows;
+            this.width = width;
+            this.values = new int[nRows * width];
+            Arrays.fill(values, MISSING);
+        }
+
+        private void set(final int row, final int[] rowValues, final int length) {
+            if ( length > width ) {
+                final int[] widened = new int[nRows * length];
+                Arrays.fill(widened, MISSING);
+                for ( int i = 0; i < nRows; i++ )
+                    System.arraycopy(values, i * width, widened, i * length, width);
+                values = widened;
+                width = length;
+            }
+            System.arraycopy(rowValues, 0, values, row * width, length);
+            Arrays.fill(values, row * width + length, (row + 1) * width, MISSING);
+        }
+    }
+
+    /**
+     * Decode the genotype columns of a line, FORMAT included, between the offsets of the buffer
+     *
+     * @param alleles    the alleles of the site
+     * @param projection the FORMAT keys to decode
+     */
+    ColumnarGenotypesContext decode(final byte[] buffer, final int start, final int end, final List<Allele> alleles,
+                                    final String chr, final int pos, final VCFProjection projection) {
+        final VCFHeader header = codec.header;
+        final int nSamples = header.getNGenotypeSamples();
+        int nParts = 1;
+        for ( int i = start; i < end; i++ )
+            if ( buffer[i] == TAB ) nParts++;
+        if ( nParts != nSamples + 1 )
+            AbstractVCFCodec.generateException("there are " + (nParts-1) + " genotypes while the header requires that " + nSamples + " genotypes be present for all records at " + chr + ":" + pos, codec.lineNo);
+
+        int formatEnd = start;
+        while ( formatEnd < end && buffer[formatEnd] != TAB ) formatEnd++;
+        final boolean hasGT = parseKeys(buffer, start, formatEnd, projection);
+        if ( nSamples > 0 ) {
+            // check to make sure we found a genotype field if our version is less than 4.1 file
+            if ( ! codec.version.isAtLeastAsRecentAs(VCFHeaderVersion.VCF4_1) && ! hasGT )
+                codec.generateException("Unable to find the GT field for the record; the GT field is required before VCF4.1");
+            for ( int i = 1; i < nKeys; i++ )
+                if ( keyTypes[i] == GT )
+                    codec.generateException("Saw GT field at position " + i + ", but it must be at the first position for genotypes when present");
+        }
+
+        final ColumnarGenotypesContext.Builder builder = new ColumnarGenotypesContext.Builder(header.getGenotypeSamples(),
+                header.getSampleNameToOffset(), header.getSampleNamesInOrder(), alleles);
+        if ( ploidy.length < nSamples ) {
+            ploidy = new int[nSamples];
+            phased = new boolean[nSamples];
+            gqs = new int[nSamples];
+            dps = new int[nSamples];
+        }
+        Arrays.fill(ploidy, 0, nSamples, 0);
+        Arrays.fill(phased, 0, nSamples, false);
+        Arrays.fill(gqs, 0, nSamples, -1);
+        Arrays.fill(dps, 0, nSamples, -1);
+        int gtWidth = 2;
+        int[] codes = new int[nSamples * gtWidth];
+        IntRows ad = null;
+        IntRows pl = null;
+
+        int sampleStart = formatEnd + 1;
+        for ( int sample = 0; sample < nSamples; sample++ ) {
+            int sampleEnd = sampleStart;
+            while ( sampleEnd < end && buffer[sampleEnd] != TAB ) sampleEnd++;
+
+            int key = 0;
+            for ( int valueStart = sampleStart, i = sampleStart; i <= sampleEnd; i++ ) {
+                if ( i < sampleEnd && buffer[i] != COLON )
+                    continue;
+                if ( key == nKeys )
+                    codec.generateException("There are too many keys for the sample " + header.getGenotypeSamples().get(sample) +
+                            ", keys = " + string(buffer, start, formatEnd) + ", values = " + string(buffer, sampleStart, sampleEnd));
+                final int valueEnd = i;
+                final int type = keyTypes[key];
+                if ( type == GT ) {
+                    // the alleles separated by any of the phasing tokens, skipping empty ones
+                    int n = 0;
+                    for ( int alleleStart = valueStart, j = valueStart; j <= valueEnd; j++ ) {
+                        if ( j < valueEnd && buffer[j] != '/' && buffer[j] != '|' && buffer[j] != '\\' )
+                            continue;
+                        if ( j > alleleStart ) {
+                            if ( n == gtWidth ) {
+                                final int[] widened = new int[nSamples * (gtWidth + 1)];
+                                for ( int s = 0; s < sample; s++ )
+                                    System.arraycopy(codes, s * gtWidth, widened, s * (gtWidth + 1), ploidy[s]);
+                                System.arraycopy(codes, sample * gtWidth, widened, sample * (gtWidth + 1), n);
+                                codes = widened;
+                                gtWidth++;
+                            }
+                            codes[sample * gtWidth + n++] = alleleCode(buffer, alleleStart, j, alleles);
+                        }
+                        if ( j < valueEnd && buffer[j] == '|' )
+                            phased[sample] = true;
+                        alleleStart = j + 1;
+                    }
+                    ploidy[sample] = n;
+                } else if ( type == SKIP ) {
+                    // not in the projection
+                } else if ( type == FT ) {
+                    final String filter = filter(codec.parseFilters(codec.getCachedString(string(buffer, valueStart, valueEnd))));
+                    if ( filter != null ) builder.filter(sample, filter);
+                } else if ( valueEnd - valueStart == 1 && buffer[valueStart] == '.' ) {
+                    // don't add missing values
+                } else if ( type == GQ ) {
+                    if ( ! isMissingGQ(buffer, valueStart, valueEnd) ) {
+                        final long value = parseInt(buffer, valueStart, valueEnd);
+                        gqs[sample] = value != Long.MIN_VALUE ? (int) value : (int) Math.round(Double.valueOf(string(buffer, valueStart, valueEnd)));
+                    }
+                } else if ( type == DP ) {
+                    final long value = parseInt(buffer, valueStart, valueEnd);
+                    dps[sample] = value != Long.MIN_VALUE ? (int) value : Integer.valueOf(string(buffer, valueStart, valueEnd));
+                } else if ( type == AD || type == PL ) {
+                    final int n = parseInts(buffer, valueStart, valueEnd);
+                    if ( n >= 0 && type == AD ) {
+                        if ( ad == null ) ad = new IntRows(nSamples, n);
+                        ad.set(sample, ints, n);
+                    } else if ( n >= 0 ) {
+                        if ( pl == null ) pl = new IntRows(nSamples, n);
+                        pl.set(sample, ints, n);
+                    }
+                } else if ( type == GL ) {
+                    final double[] log10Likelihoods = parseLog10Likelihoods(string(buffer, valueStart, valueEnd));
+                    if ( log10Likelihoods != null ) {
+                        final int[] pls = GenotypeLikelihoods.fromLog10Likelihoods(log10Likelihoods).getAsPLs();
+                        if ( pl == null ) pl = new IntRows(nSamples, pls.length);
+                        pl.set(sample, pls, pls.length);
+                    }
+                } else {
+                    builder.attribute(sample, keyNames[key], string(buffer, valueStart, valueEnd));
+                }
+                key++;
+                valueStart = i + 1;
+            }
+            sampleStart = sampleEnd + 1;
+        }
+
+        try {
+            builder.genotypes(codes, gtWidth, ploidy, phased).GQ(gqs).DP(dps);
+            if ( ad != null ) builder.AD(ad.values, ad.width, MISSING);
+            if ( pl != null ) builder.PL(pl.values, pl.width, MISSING);
+            return builder.make();
+        } catch (TribbleException e) {
+            throw new TribbleException.InternalCodecException(e.getMessage() + ", at position " + chr+":"+pos);
+        }
+    }
+
+    /**
+     * Find what to do with each FORMAT key, creating strings only for the keys stored as generic attributes
+     *
+     * @return true if there is a GT key
+     */
+    private boolean parseKeys(final byte[] buffer, final int start, final int end, final VCFProjection projection) {
+        nKeys = 0;
+        boolean hasGT = false;
+        for ( int keyStart = start, i = start; i <= end; i++ ) {
+            if ( i < end && buffer[i] != COLON )
+                continue;
+            if ( nKeys == keyTypes.length ) {
+                keyTypes = Arrays.copyOf(keyTypes, 2 * nKeys);
+                keyNames = Arrays.copyOf(keyNames, 2 * nKeys);
+            }
+            final int type;
+            if ( equals(buffer, keyStart, i, VCFConstants.GENOTYPE_KEY) )
+                type = GT;
+            else if ( ! projection.includesFormatKey(buffer, keyStart, i) )
+                type = SKIP;
+            else if ( equals(buffer, keyStart, i, VCFConstants.GENOTYPE_FILTER_KEY) )
+                type = FT;
+            else if ( equals(buffer, keyStart, i, VCFConstants.GENOTYPE_QUALITY_KEY) )
+                type = GQ;
+            else if ( equals(buffer, keyStart, i, VCFConstants.DEPTH_KEY) )
+                type = DP;
+            else if ( equals(buffer, keyStart, i, VCFConstants.GENOTYPE_ALLELE_DEPTHS) )
+                type = AD;
+            else if ( equals(buffer, keyStart, i, VCFConstants.GENOTYPE_PL_KEY) )
+                type = PL;
+            else if ( equals(buffer, keyStart, i, LOG10_LIKELIHOODS_KEY) )
+                type = GL;
+            else
+                type = OTHER;
+            hasGT |= type == GT;
+            keyTypes[nKeys] = type;
+            keyNames[nKeys] = type == OTHER ? codec.getCachedString(string(buffer, keyStart, i)) : null;
+            nKeys++;
+            keyStart = i + 1;
+        }
+        return hasGT;
+    }
+
+    /**
+     * @return the code of an allele in the columns, the index of the allele in the site alleles plus one, or 0 for a
+     * no-call, as {@link AbstractVCFCodec#oneAllele} finds the allele
+     */
+    private static int alleleCode(final byte[] buffer, final int start, final int end, final List<Allele> alleles) {
+        if ( equals(buffer, start, end, VCFConstants.EMPTY_ALLELE) )
+            return 0;
+        final long index = parseInt(buffer, start, end);
+        if ( index == Long.MIN_VALUE )
+            throw new TribbleException.InternalCodecException("The following invalid GT allele index was encountered in the file: " + string(buffer, start, end));
+        if ( index < 0 || index >= alleles.size() )
+            throw new TribbleException.InternalCodecException("The allele with index " + string(buffer, start, end) + " is not defined in the REF/ALT columns in the record");
+        return (int) index + 1;
+    }
+
+    /**
+     * @return the filter string of a genotype with the given filters, as {@link htsjdk.variant.variantcontext.GenotypeBuilder#filters(List)}
+     * sets it, or null if it is unfiltered
+     */
+    private static String filter(final List<String> filters) {
+        if ( filters == null || filters.isEmpty() )
+            return null;
+        if ( filters.size() == 1 )
+            return filters.get(0);
+        return ParsingUtils.join(";", ParsingUtils.sortList(filters));
+    }
+
+    private static boolean isMissingGQ(final byte[] buffer, final int start, final int end) {
+        return equals(buffer, start, end, VCFConstants.MISSING_GENOTYPE_QUALITY_v3);
+    }
+
+    /**
+     * Parse comma-separated integers into ints, as AbstractVCFCodec decodes AD and PL values
+     *
+     * @return the number of values, or -1 if any of them is not an integer
+     */
+    private int parseInts(final byte[] buffer, final int start, final int end) {
+        int n = 0;
+        for ( int valueStart = start, i = start; i <= end; i++ ) {
+            if ( i < end && buffer[i] != ',' )
+                continue;
+            final long value = parseInt(buffer, valueStart, i);
+            if ( value == Long.MIN_VALUE )
+                return -1;
+            if ( n == ints.length ) ints = Arrays.copyOf(ints, 2 * n);
+            ints[n++] = (int) value;
+            valueStart = i + 1;
+        }
+        return n;
+    }
+
+    /**
+     * Parse comma-separated log10 likelihoods, as GenotypeLikelihoods decodes GL values
+     *
+     * @return the likelihoods, or null if the value is missing
+     */
+    private static double[] parseLog10Likelihoods(final String value) {
+        if ( value.equals(VCFConstants.MISSING_VALUE_v4) )
+            return null;
+        final String[] values = value.split(",");
+        final double[] likelihoods = new double[values.length];
+        for ( int i = 0; i < values.length; i++ )
+            likelihoods[i] = Double.parseDouble(values[i]);
+        return likelihoods;
+    }
+
+    /**
+     * Parse a decimal integer with an optional sign, as {@link Integer#parseInt(String)} does
+     *
+     * @return the value, or Long.MIN_VALUE if the bytes are not an int
+     */
+    private static long parseInt(final byte[] buffer, final int start, final int end) {
+        int i = start;
+        final boolean negative = i < end && buffer[i] == '-';
+        if ( i < end && (negative || buffer[i] == '+') ) i++;
+        if ( i == end ) return Long.MIN_VALUE;
+        long value = 0;
+        for ( ; i < end; i++ ) {
+            final int digit = buffer[i] - '0';
+            if ( digit < 0 || digit > 9 ) return Long.MIN_VALUE;
+            value = value * 10 + digit;
+            if ( value > (long) Integer.MAX_VALUE + 1 ) return Long.MIN_VALUE;
+        }
+        if ( negative ) value = -value;
+        return value > Integer.MAX_VALUE ? Long.MIN_VALUE : value;
+    }
+
+    private static boolean equals(final byte[] buffer, final int start, final int end, final String value) {
+        if ( end - start != value.length() ) return false;
+        for ( int i = 0; i < value.length(); i++ )
+            if ( buffer[start + i] != value.charAt(i) ) return false;
+        return true;
+    }
+
+    private static String string(final byte[] buffer, final int start, final int end) {
+        return new String(buffer, start, end - start, StandardCharsets.UTF_8);
+    }
+}
@@ -9,16 +9,20 @@ import htsjdk.variant.variantcontext.LazyGenotypesContext;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.writer.IntGenotypeFieldAccessors;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.reflect.Array;
 import java.nio.charset.Charset;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 
 /**
  * Functions specific to encoding VCF records.
+ * <p>
+ * Records are encoded as ISO-8859-1 bytes into a buffer that is reused from one record to the next, so an encoder
+ * must not be used by several threads at once.
  */
 public class VCFEncoder {
 
@@ -37,6 +41,8 @@ public class VCFEncoder {
 
     private boolean outputTrailingFormatFields = false;
 
+    private final LineBuffer line = new LineBuffer(1024);
+
     /**
      * Prepare a VCFEncoder that will encode records appropriate to the given VCF header, optionally
      * allowing missing fields in the header.
@@ -65,62 +71,63 @@ public class VCFEncoder {
     }
 
     public String encode(final VariantContext context) {
+        line.reset();
+        encode(context, line);
+        return line.toString();
+    }
+
+    /**
+     * Encode a record followed by a new line and write it to the stream with a single call.
+     */
+    public void write(final VariantContext context, final OutputStream outputStream) throws IOException {
+        line.reset();
+        encode(context, line);
+        line.append('\n');
+        outputStream.write(line.bytes, 0, line.size);
+    }
+
+    private void encode(final VariantContext context, final LineBuffer line) {
         if (this.header == null) {
             throw new NullPointerException("The header field must be set on the VCFEncoder before encoding records.");
         }
 
-        final StringBuilder stringBuilder = new StringBuilder();
-
         // CHROM
-        stringBuilder.append(context.getContig()).append(VCFConstants.FIELD_SEPARATOR)
+        line.append(context.getContig()).append(VCFConstants.FIELD_SEPARATOR_CHAR)
                 // POS
-                .append(String.valueOf(context.getStart())).append(VCFConstants.FIELD_SEPARATOR)
+                .appendInt(context.getStart()).append(VCFConstants.FIELD_SEPARATOR_CHAR)
                 // ID
-                .append(context.getID()).append(VCFConstants.FIELD_SEPARATOR)
+                .append(context.getID()).append(VCFConstants.FIELD_SEPARATOR_CHAR)
                 // REF
-                .append(context.getReference().getDisplayString()).append(VCFConstants.FIELD_SEPARATOR);
+                .append(context.getReference().getDisplayString()).append(VCFConstants.FIELD_SEPARATOR_CHAR);
 
         // ALT
         if (context.isVariant()) {
-            Allele altAllele = context.getAlternateAllele(0);
-            String alt = altAllele.getDisplayString();
-            stringBuilder.append(alt);
-
-            for (int i = 1; i < context.getAlternateAlleles().size(); i++) {
-                altAllele = context.getAlternateAllele(i);
-                alt = altAllele.getDisplayString();
-                stringBuilder.append(',');
-                stringBuilder.append(alt);
+            final List<Allele> alleles = context.getAlleles();
+            for (int i = 1; i < alleles.size(); i++) {
+                if (i > 1) line.append(',');
+                line.append(alleles.get(i).getDisplayString());
             }
         } else {
-            stringBuilder.append(VCFConstants.EMPTY_ALTERNATE_ALLELE_FIELD);
+            line.append(VCFConstants.EMPTY_ALTERNATE_ALLELE_FIELD);
         }
 
-        stringBuilder.append(VCFConstants.FIELD_SEPARATOR);
+        line.append(VCFConstants.FIELD_SEPARATOR_CHAR);
 
         // QUAL
-        if (!context.hasLog10PError()) stringBuilder.append(VCFConstants.MISSING_VALUE_v4);
-        else stringBuilder.append(formatQualValue(context.getPhredScaledQual()));
-        stringBuilder.append(VCFConstants.FIELD_SEPARATOR)
+        if (!context.hasLog10PError()) line.append(VCFConstants.MISSING_VALUE_v4);
+        else line.appendQual(context.getPhredScaledQual());
+        line.append(VCFConstants.FIELD_SEPARATOR_CHAR)
                 // FILTER
-                .append(getFilterString(context)).append(VCFConstants.FIELD_SEPARATOR);
+                .append(getFilterString(context)).append(VCFConstants.FIELD_SEPARATOR_CHAR);
 
         // INFO
-        final Map<String, String> infoFields = new TreeMap<>();
-        for (final Map.Entry<String, Object> field : context.getAttributes().entrySet()) {
-            if (!this.header.hasInfoLine(field.getKey()))
-                fieldIsMissingFromHeaderError(context, field.getKey(), "INFO");
-
-            final String outputValue = formatVCFField(field.getValue());
-            if (outputValue != null) infoFields.put(field.getKey(), outputValue);
-        }
-        writeInfoString(infoFields, stringBuilder);
+        writeInfo(context, line);
 
         // FORMAT
         final GenotypesContext gc = context.getGenotypes();
         if (gc.isLazyWithData() && ((LazyGenotypesContext) gc).getUnparsedGenotypeData() instanceof String) {
-            stringBuilder.append(VCFConstants.FIELD_SEPARATOR);
-            stringBuilder.append(((LazyGenotypesContext) gc).getUnparsedGenotypeData().toString());
+            line.append(VCFConstants.FIELD_SEPARATOR_CHAR);
+            line.append(((LazyGenotypesContext) gc).getUnparsedGenotypeData().toString());
         } else {
             final List<String> genotypeAttributeKeys = context.calcVCFGenotypeKeys(this.header);
             if (!genotypeAttributeKeys.isEmpty()) {
@@ -128,17 +135,15 @@ public class VCFEncoder {
                     if (!this.header.hasFormatLine(format))
                         fieldIsMissingFromHeaderError(context, format, "FORMAT");
 
-                final String genotypeFormatString = ParsingUtils.join(VCFConstants.GENOTYPE_FIELD_SEPARATOR, genotypeAttributeKeys);
-
-                stringBuilder.append(VCFConstants.FIELD_SEPARATOR);
-                stringBuilder.append(genotypeFormatString);
+                line.append(VCFConstants.FIELD_SEPARATOR_CHAR);
+                for (int i = 0; i < genotypeAttributeKeys.size(); i++) {
+                    if (i > 0) line.append(VCFConstants.GENOTYPE_FIELD_SEPARATOR_CHAR);
+                    line.append(genotypeAttributeKeys.get(i));
+                }
 
-                final Map<Allele, String> alleleStrings = buildAlleleStrings(context);
-                addGenotypeData(context, alleleStrings, genotypeAttributeKeys, stringBuilder);
+                writeGenotypeData(context, null, genotypeAttributeKeys, line);
             }
         }
-
-        return stringBuilder.toString();
     }
 
     VCFHeader getVCFHeader() {
@@ -160,13 +165,6 @@ public class VCFEncoder {
         else return VCFConstants.UNFILTERED;
     }
 
-    private String formatQualValue(final double qual) {
-        String s = String.format(QUAL_FORMAT_STRING, qual);
-        if (s.endsWith(QUAL_FORMAT_EXTENSION_TO_TRIM))
-            s = s.substring(0, s.length() - QUAL_FORMAT_EXTENSION_TO_TRIM.length());
-        return s;
-    }
-
     private void fieldIsMissingFromHeaderError(final VariantContext vc, final String id, final String field) {
         if (!allowMissingFieldsInHeader)
             throw new IllegalStateException("Key " + id + " found in VariantContext field " + field
@@ -175,32 +173,6 @@ public class VCFEncoder {
                     + " complete VCF headers by default.");
     }
 
-    String formatVCFField(final Object val) {
-        final String result;
-        if (val == null)
-            result = VCFConstants.MISSING_VALUE_v4;
-        else if (val instanceof Double)
-            result = formatVCFDouble((Double) val);
-        else if (val instanceof Boolean)
-            result = (Boolean) val ? "" : null; // empty string for true, null for false
-        else if (val instanceof List) {
-            result = formatVCFField(((List) val).toArray());
-        } else if (val.getClass().isArray()) {
-            final int length = Array.getLength(val);
-            if (length == 0)
-                return formatVCFField(null);
-            final StringBuilder sb = new StringBuilder(formatVCFField(Array.get(val, 0)));
-            for (int i = 1; i < length; i++) {
-                sb.append(',');
-                sb.append(formatVCFField(Array.get(val, i)));
-            }
-            result = sb.toString();
-        } else
-            result = val.toString();
-
-        return result;
-    }
-
     /**
      * Takes a double value and pretty prints it to a String for display
      * <p>
@@ -212,154 +184,164 @@ public class VCFEncoder {
      * @return
      */
     public static String formatVCFDouble(final double d) {
-        final String format;
-        if (d < 1) {
-            if (d < 0.01) {
-                if (Math.abs(d) >= 1e-20)
-                    format = "%.3e";
-                else {
-                    // return a zero format
-                    return "0.00";
-                }
-            } else {
-                format = "%.3f";
-            }
-        } else {
-            format = "%.2f";
-        }
-
-        return String.format(format, d);
-    }
-
-    static int countOccurrences(final char c, final String s) {
-        int count = 0;
-        for (int i = 0; i < s.length(); i++) {
-            count += s.charAt(i) == c ? 1 : 0;
-        }
-        return count;
-    }
-
-    static boolean isMissingValue(final String s) {
-        // we need to deal with the case that it's a list of missing values
-        return (countOccurrences(VCFConstants.MISSING_VALUE_v4.charAt(0), s) + countOccurrences(',', s) == s.length());
+        return new LineBuffer(16).appendVCFDouble(d).toString();
     }
 
     /*
      * Add the genotype data
      */
     public void addGenotypeData(final VariantContext vc, final Map<Allele, String> alleleMap, final List<String> genotypeFormatKeys, final StringBuilder builder) {
+        final LineBuffer genotypes = new LineBuffer(256);
+        writeGenotypeData(vc, alleleMap, genotypeFormatKeys, genotypes);
+        builder.append(genotypes.toString());
+    }
+
+    /**
+     * How a FORMAT field is written, resolved once per record rather than once per sample
+     */
+    private static final int GT_FIELD = 0;
+    private static final int FT_FIELD = 1;
+    private static final int INT_FIELD = 2;
+    private static final int OTHER_FIELD = 3;
+
+    /**
+     * @param alleleMap the encoding of each allele, or null to encode the alleles by their index in the record
+     */
+    private void writeGenotypeData(final VariantContext vc, final Map<Allele, String> alleleMap, final List<String> genotypeFormatKeys, final LineBuffer line) {
         final int ploidy = vc.getMaxPloidy(2);
+        final List<Allele> alleles = vc.getAlleles();
+
+        final int nFields = genotypeFormatKeys.size();
+        final int[] fieldTypes = new int[nFields];
+        final IntGenotypeFieldAccessors.Accessor[] accessors = new IntGenotypeFieldAccessors.Accessor[nFields];
+        final String[] missingValues = new String[nFields];
+        boolean hasGT = false;
+        for (int i = 0; i < nFields; i++) {
+            final String field = genotypeFormatKeys.get(i);
+            if (field.equals(VCFConstants.GENOTYPE_KEY)) {
+                fieldTypes[i] = GT_FIELD;
+                hasGT = true;
+            } else if (field.equals(VCFConstants.GENOTYPE_FILTER_KEY)) {
+                fieldTypes[i] = FT_FIELD;
+            } else if ((accessors[i] = GENOTYPE_FIELD_ACCESSORS.getAccessor(field)) != null) {
+                fieldTypes[i] = INT_FIELD;
+            } else {
+                fieldTypes[i] = OTHER_FIELD;
+                missingValues[i] = VCFConstants.MISSING_VALUE_v4;
+                final VCFFormatHeaderLine metaData = this.header.getFormatHeaderLine(field);
+                if (metaData != null) {
+                    final int numInFormatField = metaData.getCount(vc);
+                    if (numInFormatField > 1) {
+                        // If we have a missing field but multiple values are expected, we need to construct a new string with all fields.
+                        // For example, if Number=2, the string has to be ".,."
+                        final StringBuilder sb = new StringBuilder(VCFConstants.MISSING_VALUE_v4);
+                        for (int j = 1; j < numInFormatField; j++) {
+                            sb.append(',');
+                            sb.append(VCFConstants.MISSING_VALUE_v4);
+                        }
+                        missingValues[i] = sb.toString();
+                    }
+                }
+            }
+        }
 
-        for (final String sample : this.header.getGenotypeSamples()) {
-            builder.append(VCFConstants.FIELD_SEPARATOR);
+        final GenotypesContext genotypes = vc.getGenotypes();
+        final List<String> samples = this.header.getGenotypeSamples();
+        for (int s = 0; s < samples.size(); s++) {
+            final String sample = samples.get(s);
+            line.append(VCFConstants.FIELD_SEPARATOR_CHAR);
 
-            Genotype g = vc.getGenotype(sample);
+            // records usually hold their genotypes in the order of the header samples
+            Genotype g = s < genotypes.size() ? genotypes.get(s) : null;
+            if (g == null || !g.getSampleName().equals(sample)) g = vc.getGenotype(sample);
             if (g == null) g = GenotypeBuilder.createMissing(sample, ploidy);
 
-            final List<String> attrs = new ArrayList<String>(genotypeFormatKeys.size());
-            for (final String field : genotypeFormatKeys) {
-                if (field.equals(VCFConstants.GENOTYPE_KEY)) {
+            // the end of the sample's data once trailing missing values are stripped off
+            int keepEnd = line.size;
+            int nValues = 0;
+            for (int i = 0; i < nFields; i++) {
+                if (fieldTypes[i] == GT_FIELD) {
                     if (!g.isAvailable()) {
                         throw new IllegalStateException("GTs cannot be missing for some samples if they are available for others in the record");
                     }
 
-                    writeAllele(g.getAllele(0), alleleMap, builder);
-                    for (int i = 1; i < g.getPloidy(); i++) {
-                        builder.append(g.isPhased() ? VCFConstants.PHASED : VCFConstants.UNPHASED);
-                        writeAllele(g.getAllele(i), alleleMap, builder);
+                    writeAllele(g.getAllele(0), alleles, alleleMap, line);
+                    for (int j = 1; j < g.getPloidy(); j++) {
+                        line.append(g.isPhased() ? VCFConstants.PHASED : VCFConstants.UNPHASED);
+                        writeAllele(g.getAllele(j), alleles, alleleMap, line);
                     }
+                    keepEnd = line.size;
                     continue;
+                }
 
+                final Object value;
+                if (fieldTypes[i] == FT_FIELD) {
+                    value = g.isFiltered() ? g.getFilters() : VCFConstants.PASSES_FILTERS_v4;
+                } else if (fieldTypes[i] == INT_FIELD) {
+                    value = null;
                 } else {
-                    final String outputValue;
-                    if (field.equals(VCFConstants.GENOTYPE_FILTER_KEY)) {
-                        outputValue = g.isFiltered() ? g.getFilters() : VCFConstants.PASSES_FILTERS_v4;
+                    final Object val = g.hasExtendedAttribute(genotypeFormatKeys.get(i)) ? g.getExtendedAttribute(genotypeFormatKeys.get(i)) : VCFConstants.MISSING_VALUE_v4;
+                    value = val.equals(VCFConstants.MISSING_VALUE_v4) ? missingValues[i] : val;
+                    if (Boolean.FALSE.equals(value)) continue; // false flags are not written
+                }
+
+                if (nValues > 0 || hasGT) line.append(VCFConstants.GENOTYPE_FIELD_SEPARATOR_CHAR);
+                nValues++;
+                final int valueStart = line.size;
+                if (fieldTypes[i] == INT_FIELD) {
+                    final int[] intValues = accessors[i].getValues(g);
+                    if (intValues == null) {
+                        line.append(VCFConstants.MISSING_VALUE_v4);
                     } else {
-                        final IntGenotypeFieldAccessors.Accessor accessor = GENOTYPE_FIELD_ACCESSORS.getAccessor(field);
-                        if (accessor != null) {
-                            final int[] intValues = accessor.getValues(g);
-                            if (intValues == null)
-                                outputValue = VCFConstants.MISSING_VALUE_v4;
-                            else if (intValues.length == 1) // fast path
-                                outputValue = Integer.toString(intValues[0]);
-                            else {
-                                final StringBuilder sb = new StringBuilder();
-                                sb.append(intValues[0]);
-                                for (int i = 1; i < intValues.length; i++) {
-                                    sb.append(',');
-                                    sb.append(intValues[i]);
-                                }
-                                outputValue = sb.toString();
-                            }
-                        } else {
-                            Object val = g.hasExtendedAttribute(field) ? g.getExtendedAttribute(field) : VCFConstants.MISSING_VALUE_v4;
-
-                            final VCFFormatHeaderLine metaData = this.header.getFormatHeaderLine(field);
-                            if (metaData != null) {
-                                final int numInFormatField = metaData.getCount(vc);
-                                if (numInFormatField > 1 && val.equals(VCFConstants.MISSING_VALUE_v4)) {
-                                    // If we have a missing field but multiple values are expected, we need to construct a new string with all fields.
-                                    // For example, if Number=2, the string has to be ".,."
-                                    final StringBuilder sb = new StringBuilder(VCFConstants.MISSING_VALUE_v4);
-                                    for (int i = 1; i < numInFormatField; i++) {
-                                        sb.append(',');
-                                        sb.append(VCFConstants.MISSING_VALUE_v4);
-                                    }
-                                    val = sb.toString();
-                                }
-                            }
-
-                            // assume that if key is absent, then the given string encoding suffices
-                            outputValue = formatVCFField(val);
+                        line.appendInt(intValues[0]);
+                        for (int j = 1; j < intValues.length; j++) {
+                            line.append(',').appendInt(intValues[j]);
                         }
                     }
-
-                    if (outputValue != null)
-                        attrs.add(outputValue);
+                } else {
+                    // assume that if key is absent, then the given string encoding suffices
+                    line.appendVCFField(value);
                 }
+                if (!line.isMissingValue(valueStart)) keepEnd = line.size;
             }
 
             // strip off trailing missing values
-            if (!outputTrailingFormatFields) {
-                for (int i = attrs.size() - 1; i >= 0; i--) {
-                    if (isMissingValue(attrs.get(i))) attrs.remove(i);
-                    else break;
-                }
-            }
-
-            for (int i = 0; i < attrs.size(); i++) {
-                if (i > 0 || genotypeFormatKeys.contains(VCFConstants.GENOTYPE_KEY)) {
-                    builder.append(VCFConstants.GENOTYPE_FIELD_SEPARATOR);
-                }
-                builder.append(attrs.get(i));
-            }
+            if (!outputTrailingFormatFields) line.size = keepEnd;
         }
     }
 
     /*
-     * Create the info string; assumes that no values are null
+     * Write the info column; assumes that no values are null
      */
-    private void writeInfoString(final Map<String, String> infoFields, final StringBuilder builder) {
-        if (infoFields.isEmpty()) {
-            builder.append(VCFConstants.EMPTY_INFO_FIELD);
-            return;
+    private void writeInfo(final VariantContext vc, final LineBuffer line) {
+        final Map<String, Object> attributes = vc.getAttributes();
+        final String[] keys = attributes.keySet().toArray(new String[attributes.size()]);
+        for (final String key : keys) {
+            if (!this.header.hasInfoLine(key))
+                fieldIsMissingFromHeaderError(vc, key, "INFO");
         }
-
-        boolean isFirst = true;
-        for (final Map.Entry<String, String> entry : infoFields.entrySet()) {
-            if (isFirst) isFirst = false;
-            else builder.append(VCFConstants.INFO_FIELD_SEPARATOR);
-
-            builder.append(entry.getKey());
-
-            if (!entry.getValue().equals("")) {
-                final VCFInfoHeaderLine metaData = this.header.getInfoHeaderLine(entry.getKey());
-                if (metaData == null || metaData.getCountType() != VCFHeaderLineCount.INTEGER || metaData.getCount() != 0) {
-                    builder.append('=');
-                    builder.append(entry.getValue());
-                }
+        Arrays.sort(keys);
+
+        final int infoStart = line.size;
+        for (final String key : keys) {
+            final Object value = attributes.get(key);
+            if (Boolean.FALSE.equals(value)) continue; // false flags are not written
+
+            if (line.size > infoStart) line.append(VCFConstants.INFO_FIELD_SEPARATOR_CHAR);
+            line.append(key);
+
+            final VCFInfoHeaderLine metaData = this.header.getInfoHeaderLine(key);
+            if (metaData == null || metaData.getCountType() != VCFHeaderLineCount.INTEGER || metaData.getCount() != 0) {
+                final int valueStart = line.size;
+                line.append('=').appendVCFField(value);
+                // empty values, as for true flags, are written without the =
+                if (line.size == valueStart + 1) line.size = valueStart;
             }
         }
+
+        if (line.size == infoStart) {
+            line.append(VCFConstants.EMPTY_INFO_FIELD);
+        }
     }
 
     public Map<Allele, String> buildAlleleStrings(final VariantContext vc) {
@@ -374,10 +356,215 @@ public class VCFEncoder {
         return alleleMap;
     }
 
-    private void writeAllele(final Allele allele, final Map<Allele, String> alleleMap, final StringBuilder builder) {
-        final String encoding = alleleMap.get(allele);
-        if (encoding == null)
-            throw new RuntimeException("Allele " + allele + " is not an allele in the variant context");
-        builder.append(encoding);
+    private void writeAllele(final Allele allele, final List<Allele> alleles, final Map<Allele, String> alleleMap, final LineBuffer line) {
+        if (alleleMap != null) {
+            final String encoding = alleleMap.get(allele);
+            if (encoding == null)
+                throw new RuntimeException("Allele " + allele + " is not an allele in the variant context");
+            line.append(encoding);
+            return;
+        }
+
+        if (allele.isNoCall()) {
+            line.append(VCFConstants.EMPTY_ALLELE);
+            return;
+        }
+        // the alleles of genotypes are usually the very instances of the record
+        for (int i = 0; i < alleles.size(); i++) {
+            if (alleles.get(i) == allele) {
+                line.appendInt(i);
+                return;
+            }
+        }
+        for (int i = 0; i < alleles.size(); i++) {
+            if (alleles.get(i).equals(allele)) {
+                line.appendInt(i);
+                return;
+            }
+        }
+        throw new RuntimeException("Allele " + allele + " is not an allele in the variant context");
+    }
+
+    /**
+     * A growable buffer of ISO-8859-1 encoded text, with the VCF specific number formatting.
+     * Characters outside of ISO-8859-1 are written as '?', as an ISO-8859-1 writer does.
+     */
+    private static final class LineBuffer {
+        private byte[] bytes;
+        private int size = 0;
+
+        LineBuffer(final int initialCapacity) {
+            bytes = new byte[initialCapacity];
+        }
+
+        void reset() {
+            size = 0;
+        }
+
+        private void ensureCapacity(final int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+
+        LineBuffer append(final char c) {
+            ensureCapacity(1);
+            bytes[size++] = c <= 0xFF ? (byte) c : (byte) '?';
+            return this;
+        }
+
+        LineBuffer append(final String s) {
+            final int length = s.length();
+            ensureCapacity(length);
+            for (int i = 0; i < length; i++) {
+                final char c = s.charAt(i);
+                bytes[size++] = c <= 0xFF ? (byte) c : (byte) '?';
+            }
+            return this;
+        }
+
+        LineBuffer appendInt(final int value) {
+            if (value == Integer.MIN_VALUE) return append(Integer.toString(value));
+            int v = value;
+            if (v < 0) {
+                append('-');
+                v = -v;
+            }
+            int digits = 1;
+            for (int p = 10; digits < 10 && v >= p; p *= 10) digits++;
+            ensureCapacity(digits);
+            for (int i = size + digits - 1; i >= size; i--) {
+                bytes[i] = (byte) ('0' + v % 10);
+                v /= 10;
+            }
+            size += digits;
+            return this;
+        }
+
+        LineBuffer appendQual(final double qual) {
+            final int start = size;
+            appendFixed(qual, 2);
+            if (size - start >= QUAL_FORMAT_EXTENSION_TO_TRIM.length() && bytes[size - 3] == '.' && bytes[size - 2] == '0' && bytes[size - 1] == '0') {
+                size -= QUAL_FORMAT_EXTENSION_TO_TRIM.length();
+            }
+            return this;
+        }
+
+        /**
+         * @see VCFEncoder#formatVCFDouble(double)
+         */
+        LineBuffer appendVCFDouble(final double d) {
+            if (d < 1) {
+                if (d < 0.01) {
+                    if (Math.abs(d) >= 1e-20)
+                        return append(String.format("%.3e", d));
+                    else {
+                        // return a zero format
+                        return append("0.00");
+                    }
+                } else {
+                    return appendFixed(d, 3);
+                }
+            } else {
+                return appendFixed(d, 2);
+            }
+        }
+
+        /**
+         * Append the value with a fixed number of decimals, as String.format("%.Nf") does: by rounding half up the
+         * shortest decimal representation of the value, the one of Double.toString.
+         */
+        private LineBuffer appendFixed(final double d, final int decimals) {
+            final String s = Double.toString(d);
+            final int dot = s.indexOf('.');
+            if (Double.isNaN(d) || Double.isInfinite(d) || dot < 0 || s.indexOf('E') >= 0) {
+                return append(String.format(decimals == 2 ? QUAL_FORMAT_STRING : "%.3f", d));
+            }
+
+            final int intStart = s.charAt(0) == '-' ? 1 : 0;
+            final int nInt = dot - intStart;
+            // one extra leading digit for the carry
+            final byte[] digits = new byte[1 + nInt + decimals];
+            digits[0] = '0';
+            for (int i = 0; i < nInt; i++) digits[1 + i] = (byte) s.charAt(intStart + i);
+            for (int i = 0; i < decimals; i++) {
+                final int p = dot + 1 + i;
+                digits[1 + nInt + i] = p < s.length() ? (byte) s.charAt(p) : (byte) '0';
+            }
+            final int roundingDigit = dot + 1 + decimals;
+            if (roundingDigit < s.length() && s.charAt(roundingDigit) >= '5') {
+                int i = digits.length - 1;
+                while (digits[i] == '9') digits[i--] = '0';
+                digits[i]++;
+            }
+
+            if (intStart == 1) append('-');
+            final int first = digits[0] == '0' ? 1 : 0;
+            ensureCapacity(digits.length + 1);
+            for (int i = first; i < 1 + nInt; i++) bytes[size++] = digits[i];
+            bytes[size++] = '.';
+            for (int i = 1 + nInt; i < digits.length; i++) bytes[size++] = digits[i];
+            return this;
+        }
+
+        /**
+         * Append a field value: missing for null, nothing for true, lists and arrays separated by commas
+         */
+        LineBuffer appendVCFField(final Object val) {
+            if (val == null)
+                return append(VCFConstants.MISSING_VALUE_v4);
+            else if (val instanceof String)
+                return append((String) val);
+            else if (val instanceof Integer)
+                return appendInt((Integer) val);
+            else if (val instanceof Double)
+                return appendVCFDouble((Double) val);
+            else if (val instanceof Boolean)
+                return this; // empty string for true, false values are not written
+            else if (val instanceof List) {
+                final List<?> list = (List<?>) val;
+                if (list.isEmpty())
+                    return appendVCFField(null);
+                for (int i = 0; i < list.size(); i++) {
+                    if (i > 0) append(',');
+                    appendVCFField(list.get(i));
+                }
+                return this;
+            } else if (val instanceof int[]) {
+                final int[] array = (int[]) val;
+                if (array.length == 0)
+                    return appendVCFField(null);
+                for (int i = 0; i < array.length; i++) {
+                    if (i > 0) append(',');
+                    appendInt(array[i]);
+                }
+                return this;
+            } else if (val.getClass().isArray()) {
+                final int length = Array.getLength(val);
+                if (length == 0)
+                    return appendVCFField(null);
+                for (int i = 0; i < length; i++) {
+                    if (i > 0) append(',');
+                    appendVCFField(Array.get(val, i));
+                }
+                return this;
+            } else
+                return append(val.toString());
+        }
+
+        /**
+         * @return true if the text from the offset to the end is a missing value, or a list of missing values
+         */
+        boolean isMissingValue(final int start) {
+            for (int i = start; i < size; i++) {
+                if (bytes[i] != '.' && bytes[i] != ',') return false;
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, 0, size, VCF_CHARSET);
+        }
     }
 }
@@ -10,18 +10,23 @@ import htsjdk.tribble.AbstractFeatureReader;
 import htsjdk.tribble.FeatureCodec;
 import htsjdk.tribble.FeatureReader;
 import htsjdk.tribble.TribbleException;
+import htsjdk.tribble.util.ParsingUtils;
 import htsjdk.variant.bcf2.BCF2Codec;
 import htsjdk.variant.variantcontext.VariantContext;
 
+import java.io.BufferedInputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Simplified interface for reading from VCF/BCF files.
  */
 public class VCFFileReader implements Closeable, Iterable<VariantContext> {
 
+	private final File file;
 	private final FeatureReader<VariantContext> reader;
 
 	/**
@@ -55,6 +60,7 @@ public class VCFFileReader implements Closeable, Iterable<VariantContext> {
 	  // Note how we deal with type safety here, just casting to (FeatureCodec)
 	  // in the call to getFeatureReader is not enough for Java 8.
       FeatureCodec<VariantContext, ?> codec = isBCF(file) ? new BCF2Codec() : new VCFCodec();
+      this.file = file;
       this.reader = AbstractFeatureReader.getFeatureReader(
                       file.getAbsolutePath(),
                       codec,
@@ -66,6 +72,7 @@ public class VCFFileReader implements Closeable, Iterable<VariantContext> {
       // Note how we deal with type safety here, just casting to (FeatureCodec)
       // in the call to getFeatureReader is not enough for Java 8.
       FeatureCodec<VariantContext, ?> codec = isBCF(file) ? new BCF2Codec() : new VCFCodec();
+      this.file = file;
       this.reader = AbstractFeatureReader.getFeatureReader(
                       file.getAbsolutePath(),
                       indexFile.getAbsolutePath(),
@@ -137,6 +144,25 @@ public class VCFFileReader implements Closeable, Iterable<VariantContext> {
 		}
 	}
 
+    /**
+     * Returns an iterator over all records in this VCF file that decodes the records on a pool of worker threads,
+     * delivering them in file order. See {@link VCFParallelIterator}.
+     * BCF files are decoded on the calling thread, as by {@link #iterator()}.
+     * @param threads number of decoding threads
+     */
+    public CloseableIterator<VariantContext> iterator(final int threads) {
+        if (isBCF(file)) return iterator();
+        try {
+            InputStream inputStream = ParsingUtils.openInputStream(file.getAbsolutePath());
+            if (AbstractFeatureReader.hasBlockCompressedExtension(file)) {
+                inputStream = new GZIPInputStream(new BufferedInputStream(inputStream, 512000));
+            }
+            return new VCFParallelIterator(inputStream, threads);
+        } catch (final IOException ioe) {
+            throw new TribbleException("Could not create an iterator from a feature reader.", ioe);
+        }
+    }
+
     /**
      * Queries for records overlapping the region specified.
      * Note that this method requires VCF files with an associated index.  If no index exists a TribbleException will be thrown.
@@ -0,0 +1,258 @@
+package htsjdk.variant.vcf;
+
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.CloserUtil;
+import htsjdk.samtools.util.Log;
+import htsjdk.tribble.TribbleException;
+import htsjdk.tribble.readers.LineIterator;
+import htsjdk.variant.variantcontext.GenotypesContext;
+import htsjdk.variant.variantcontext.LazyGenotypesContext;
+import htsjdk.variant.variantcontext.VariantContext;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Iterator over the records of a VCF text stream that decodes them on a pool of worker threads.
+ * <p>
+ * A background thread reads lines ahead and hands them to the workers in batches. Each worker decodes with its own
+ * {@link VCFCodec}, so the per-codec caches (alleles, strings, filters) are never shared between threads, and the
+ * decoded batches are delivered in file order. Genotypes are decoded on the workers as well: decoding them lazily on
+ * the consumer thread would use the state of a codec that is busy with another batch.
+ * <p>
+ * Line numbers reported in decoding errors are those of the lines in the stream, as for sequential decoding.
+ * Note that this implementation is not synchronized, only one thread may consume the records.
+ */
+public class VCFParallelIterator implements CloseableIterator<VariantContext> {
+    private static final Log log = Log.getInstance(VCFParallelIterator.class);
+    private static final AtomicInteger threadsCreated = new AtomicInteger(0);
+
+    /**
+     * Default number of lines decoded as one task.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+     * Marks the end of the stream in the queue of decoded batches.
+     */
+    private static final Future<DecodedBatch> END_OF_STREAM = CompletableFuture.completedFuture(null);
+
+    private final InputStream inputStream;
+    private final LineIterator lineIterator;
+    private final VCFHeader header;
+    private final int batchSize;
+    private final BlockingQueue<AbstractVCFCodec> codecs;
+    private final ExecutorService workers;
+    private final BlockingQueue<Future<DecodedBatch>> batches;
+    private Thread readerThread;
+    private Iterator<VariantContext> currentBatch = Collections.emptyIterator();
+    /** the error decoding the line after the records of the current batch, raised once they have been consumed */
+    private RuntimeException pendingError = null;
+    private boolean endOfStream = false;
+
+    /**
+     * @param inputStream the uncompressed VCF text, read from the start of the header
+     * @param threads     number of decoding threads
+     */
+    public VCFParallelIterator(final InputStream inputStream, final int threads) {
+        this(inputStream, threads, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param inputStream the uncompressed VCF text, read from the start of the header
+     * @param threads     number of decoding threads
+     * @param batchSize   number of lines decoded as one task. Larger batches reduce the scheduling overhead but increase
+     *                    the number of records held in memory, up to {@code 2 * threads * batchSize}.
+     */
+    public VCFParallelIterator(final InputStream inputStream, final int threads, final int batchSize) {
+        if (threads <= 0) throw new IllegalArgumentException("Must use at least 1 decoding thread.");
+        if (batchSize <= 0) throw new IllegalArgumentException("Batch size must be at least 1 line.");
+        this.inputStream = inputStream;
+        this.batchSize = batchSize;
+
+        final VCFCodec headerCodec = new VCFCodec();
+        this.lineIterator = headerCodec.makeSourceFromStream(inputStream);
+        this.header = (VCFHeader) headerCodec.readActualHeader(lineIterator);
+        final int headerLines = headerCodec.lineNo;
+
+        this.codecs = new ArrayBlockingQueue<>(threads);
+        for (int i = 0; i < threads; i++) {
+            final VCFCodec codec = new VCFCodec();
+            codec.setVCFHeader(header, headerCodec.version);
+            codecs.add(codec);
+        }
+        this.batches = new ArrayBlockingQueue<>(2 * threads);
+
+        final int threadNumber = threadsCreated.incrementAndGet();
+        final AtomicInteger workerNumber = new AtomicInteger(0);
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable, "VCFParallelIterator" + threadNumber + "-decoder" + workerNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.readerThread = new Thread(() -> readLines(headerLines), "VCFParallelIterator" + threadNumber + "-reader");
+        this.readerThread.setDaemon(true);
+        log.debug("Starting thread " + readerThread.getName());
+        this.readerThread.start();
+    }
+
+    public VCFHeader getHeader() {
+        return header;
+    }
+
+    /**
+     * Reads batches of lines and queues their decoding (background thread method)
+     */
+    private void readLines(final int headerLines) {
+        int linesRead = headerLines;
+        try {
+            while (true) {
+                final List<String> lines = new ArrayList<>(batchSize);
+                while (lines.size() < batchSize && lineIterator.hasNext()) {
+                    lines.add(lineIterator.next());
+                }
+                if (lines.isEmpty()) break;
+
+                final int firstLineNo = linesRead;
+                linesRead += lines.size();
+                batches.put(workers.submit(() -> decode(lines, firstLineNo)));
+            }
+            batches.put(END_OF_STREAM);
+        } catch (final InterruptedException e) {
+            // stop thread, the iterator has been closed
+        } catch (final Throwable t) {
+            // raise reading errors on the consumer thread when it gets to them, then end the stream there so that
+            // asking for more records does not wait forever
+            final CompletableFuture<DecodedBatch> failed = new CompletableFuture<>();
+            failed.completeExceptionally(t);
+            try {
+                batches.put(failed);
+                batches.put(END_OF_STREAM);
+            } catch (final InterruptedException e) {
+                // stop thread, the iterator has been closed
+            }
+        }
+    }
+
+    /**
+     * The records decoded from a batch of lines, up to the first line that failed to decode
+     */
+    private static final class DecodedBatch {
+        private final List<VariantContext> records;
+        /** the error decoding the line after the records, or null if the whole batch was decoded */
+        private final RuntimeException error;
+
+        private DecodedBatch(final List<VariantContext> records, final RuntimeException error) {
+            this.records = records;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Decodes a batch of lines (worker thread method). Decoding stops at the first line that fails, so that the
+     * records before it are delivered before its error, as for sequential decoding.
+     *
+     * @param lines       the lines to decode
+     * @param firstLineNo the number of lines in the stream before the batch
+     */
+    private DecodedBatch decode(final List<String> lines, final int firstLineNo) throws InterruptedException {
+        final AbstractVCFCodec codec = codecs.take();
+        try {
+            codec.lineNo = firstLineNo;
+            final List<VariantContext> decoded = new ArrayList<>(lines.size());
+            for (final String line : lines) {
+                try {
+                    final VariantContext vc = codec.decode(line);
+                    if (vc == null) {
+                        codec.lineNo++;
+                        continue;
+                    }
+                    final GenotypesContext genotypes = vc.getGenotypes();
+                    if (genotypes instanceof LazyGenotypesContext) ((LazyGenotypesContext) genotypes).decode();
+                    decoded.add(vc);
+                } catch (final RuntimeException e) {
+                    return new DecodedBatch(decoded, e);
+                }
+            }
+            return new DecodedBatch(decoded, null);
+        } finally {
+            codecs.put(codec);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (readerThread == null) {
+            throw new IllegalStateException("iterator has been closed");
+        }
+        while (!currentBatch.hasNext()) {
+            if (pendingError != null) {
+                final RuntimeException error = pendingError;
+                pendingError = null;
+                throw error;
+            }
+            if (endOfStream) return false;
+            final DecodedBatch batch;
+            try {
+                batch = batches.take().get();
+            } catch (final InterruptedException e) {
+                throw new RuntimeException("Interrupted waiting for decoded records", e);
+            } catch (final ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof Error) throw (Error) cause;
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new TribbleException("Failed to decode VCF records", cause);
+            }
+            if (batch == null) {
+                endOfStream = true;
+                return false;
+            }
+            currentBatch = batch.records.iterator();
+            pendingError = batch.error;
+        }
+        return true;
+    }
+
+    @Override
+    public VariantContext next() {
+        if (hasNext()) {
+            return currentBatch.next();
+        }
+        throw new NoSuchElementException("next");
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Remove not supported.");
+    }
+
+    @Override
+    public void close() {
+        if (readerThread != null) {
+            try {
+                readerThread.interrupt();
+                batches.clear();
+                workers.shutdownNow();
+                readerThread.join();
+            } catch (final InterruptedException e) {
+                throw new RuntimeException("Interrupted waiting for background thread to complete", e);
+            } finally {
+                CloserUtil.close(inputStream);
+                readerThread = null;
+                currentBatch = null;
+            }
+        }
+    }
+}
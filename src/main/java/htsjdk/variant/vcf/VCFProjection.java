@@ -0,0 +1,145 @@
+package htsjdk.variant.vcf;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The parts of VCF records a caller is interested in, used by
+ * {@link AbstractVCFCodec#decode(byte[], int, int, VCFProjection)} to materialise only those.
+ * <p>
+ * The fixed columns CHROM, POS, ID, REF, ALT, QUAL and FILTER are always decoded, as is the END INFO key that
+ * determines the end of a record. INFO keys and FORMAT keys outside of the projection are skipped over without being
+ * parsed and are absent from the decoded records. The GT key is always decoded when genotypes are.
+ * <p>
+ * Instances are immutable; the {@code with...} methods return modified copies.
+ */
+public final class VCFProjection {
+    /**
+     * Decode everything, as {@link AbstractVCFCodec#decode(String)} does.
+     */
+    public static final VCFProjection ALL = new VCFProjection(null, true, null);
+
+    /**
+     * Decode the site information with all INFO keys but no genotypes.
+     */
+    public static final VCFProjection SITES_ONLY = new VCFProjection(null, false, null);
+
+    private static final byte[] GENOTYPE_KEY_BYTES = VCFConstants.GENOTYPE_KEY.getBytes(StandardCharsets.UTF_8);
+
+    private final Set<String> infoKeys;
+    private final byte[][] infoKeyBytes;
+    private final boolean includeGenotypes;
+    private final Set<String> formatKeys;
+    private final byte[][] formatKeyBytes;
+
+    private VCFProjection(final Set<String> infoKeys, final boolean includeGenotypes, final Set<String> formatKeys) {
+        this.infoKeys = infoKeys;
+        this.includeGenotypes = includeGenotypes;
+        this.formatKeys = formatKeys;
+        this.infoKeyBytes = toBytes(infoKeys);
+        this.formatKeyBytes = toBytes(formatKeys);
+    }
+
+    private static byte[][] toBytes(final Set<String> keys) {
+        if (keys == null) return null;
+        final byte[][] bytes = new byte[keys.size()][];
+        int i = 0;
+        for (final String key : keys) {
+            bytes[i++] = key.getBytes(StandardCharsets.UTF_8);
+        }
+        return bytes;
+    }
+
+    private static Set<String> copyOf(final Collection<String> keys) {
+        return keys == null ? null : Collections.unmodifiableSet(new LinkedHashSet<>(keys));
+    }
+
+    /**
+     * @param keys the INFO keys to decode, or null to decode all of them
+     */
+    public VCFProjection withInfoKeys(final Collection<String> keys) {
+        return new VCFProjection(copyOf(keys), includeGenotypes, formatKeys);
+    }
+
+    public VCFProjection withInfoKeys(final String... keys) {
+        return withInfoKeys(Arrays.asList(keys));
+    }
+
+    public VCFProjection withGenotypes(final boolean includeGenotypes) {
+        return new VCFProjection(infoKeys, includeGenotypes, formatKeys);
+    }
+
+    /**
+     * @param keys the FORMAT keys to decode in addition to GT, or null to decode all of them
+     */
+    public VCFProjection withFormatKeys(final Collection<String> keys) {
+        return new VCFProjection(infoKeys, includeGenotypes, copyOf(keys));
+    }
+
+    public VCFProjection withFormatKeys(final String... keys) {
+        return withFormatKeys(Arrays.asList(keys));
+    }
+
+    /**
+     * @return the INFO keys to decode, or null if all of them are decoded
+     */
+    public Set<String> getInfoKeys() {
+        return infoKeys;
+    }
+
+    public boolean includesAllInfoKeys() {
+        return infoKeys == null;
+    }
+
+    /**
+     * @return the INFO keys to decode as UTF-8 bytes, in the iteration order of {@link #getInfoKeys()}
+     */
+    byte[][] getInfoKeyBytes() {
+        return infoKeyBytes;
+    }
+
+    public boolean includesGenotypes() {
+        return includeGenotypes;
+    }
+
+    /**
+     * @return the FORMAT keys to decode in addition to GT, or null if all of them are decoded
+     */
+    public Set<String> getFormatKeys() {
+        return formatKeys;
+    }
+
+    public boolean includesFormatKey(final String key) {
+        return formatKeys == null || formatKeys.contains(key) || VCFConstants.GENOTYPE_KEY.equals(key);
+    }
+
+    /**
+     * @return true if the FORMAT key held in the bytes between the offsets is decoded, without creating a string for it
+     */
+    boolean includesFormatKey(final byte[] buffer, final int start, final int end) {
+        if (formatKeys == null || regionEquals(buffer, start, end, GENOTYPE_KEY_BYTES)) return true;
+        for (final byte[] key : formatKeyBytes) {
+            if (regionEquals(buffer, start, end, key)) return true;
+        }
+        return false;
+    }
+
+    private static boolean regionEquals(final byte[] buffer, final int start, final int end, final byte[] value) {
+        if (end - start != value.length) return false;
+        for (int i = 0; i < value.length; i++) {
+            if (buffer[start + i] != value[i]) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "VCFProjection{infoKeys=" + (infoKeys == null ? "all" : infoKeys) +
+                ", genotypes=" + includeGenotypes +
+                ", formatKeys=" + (formatKeys == null ? "all" : formatKeys) + "}";
+    }
+}
@@ -0,0 +1,154 @@
+package htsjdk.variant.vcf;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits a VCF record held in a byte buffer into columns by recording the column offsets, without copying the line or
+ * creating any objects. Columns are only turned into strings when asked for, so callers can skip the columns (and
+ * INFO entries) they are not interested in.
+ * <p>
+ * An instance is reused for every line it tokenizes and is not thread safe.
+ */
+public class VCFRecordTokenizer {
+    private static final byte TAB = '\t';
+
+    private byte[] buffer;
+    private final int[] starts;
+    private final int[] ends;
+    private int nColumns;
+
+    /**
+     * @param maxColumns the maximum number of columns to split a line into, the last column holds the rest of the line
+     */
+    public VCFRecordTokenizer(final int maxColumns) {
+        if (maxColumns <= 0) throw new IllegalArgumentException("Must split into at least one column.");
+        starts = new int[maxColumns];
+        ends = new int[maxColumns];
+    }
+
+    /**
+     * Tokenize a line. The buffer is referenced, not copied, and must not be modified while the columns are read.
+     *
+     * @param buffer  the buffer holding the line
+     * @param start   offset of the first byte of the line
+     * @param end     offset one past the last byte of the line, not including the line terminator
+     * @param columns the maximum number of columns to split the line into, at most the maximum given at construction;
+     *                the last column holds the rest of the line
+     * @return the number of columns found
+     */
+    public int tokenize(final byte[] buffer, final int start, final int end, final int columns) {
+        if (columns > starts.length) throw new IllegalArgumentException("Cannot split into more than " + starts.length + " columns.");
+        this.buffer = buffer;
+        nColumns = 0;
+        int columnStart = start;
+        for (int i = start; i < end && nColumns < columns - 1; i++) {
+            if (buffer[i] == TAB) {
+                starts[nColumns] = columnStart;
+                ends[nColumns] = i;
+                nColumns++;
+                columnStart = i + 1;
+            }
+        }
+        starts[nColumns] = columnStart;
+        ends[nColumns] = end;
+        nColumns++;
+        return nColumns;
+    }
+
+    public int getColumnCount() {
+        return nColumns;
+    }
+
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    public int getStart(final int column) {
+        return starts[column];
+    }
+
+    public int getEnd(final int column) {
+        return ends[column];
+    }
+
+    public int getLength(final int column) {
+        return ends[column] - starts[column];
+    }
+
+    public String getString(final int column) {
+        return getString(starts[column], ends[column]);
+    }
+
+    /**
+     * @return the bytes between the offsets decoded as UTF-8
+     */
+    public String getString(final int start, final int end) {
+        return new String(buffer, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return true if the column holds exactly the given ASCII string
+     */
+    public boolean columnEquals(final int column, final String value) {
+        return regionEquals(starts[column], ends[column], value);
+    }
+
+    /**
+     * @return true if the bytes between the offsets are exactly the given ASCII string
+     */
+    public boolean regionEquals(final int start, final int end, final String value) {
+        if (end - start != value.length()) return false;
+        for (int i = 0; i < value.length(); i++) {
+            if (buffer[start + i] != value.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the bytes between the offsets are exactly the given bytes
+     */
+    public boolean regionEquals(final int start, final int end, final byte[] value) {
+        if (end - start != value.length) return false;
+        for (int i = 0; i < value.length; i++) {
+            if (buffer[start + i] != value[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the offset of the first occurrence of the byte between the offsets, or -1 if there is none
+     */
+    public int indexOf(final byte b, final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            if (buffer[i] == b) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Parse a decimal integer, with an optional sign, between the offsets without creating a string.
+     *
+     * @throws NumberFormatException if the bytes are not a valid integer
+     */
+    public int parseInt(final int start, final int end) {
+        if (start >= end) throw new NumberFormatException("Empty integer");
+        int i = start;
+        final boolean negative = buffer[i] == '-';
+        if (negative || buffer[i] == '+') i++;
+        if (i == end) throw new NumberFormatException(getString(start, end));
+        long value = 0;
+        for (; i < end; i++) {
+            final int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) throw new NumberFormatException(getString(start, end));
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) throw new NumberFormatException(getString(start, end));
+        }
+        if (negative) value = -value;
+        if (value > Integer.MAX_VALUE) throw new NumberFormatException(getString(start, end));
+        return (int) value;
+    }
+
+    public int parseInt(final int column) {
+        return parseInt(starts[column], ends[column]);
+    }
+}
@@ -92,6 +92,60 @@ public class BAMIndexWriterTest extends HtsjdkTest {
         CloserUtil.close(bam);
     }
 
+    @DataProvider(name = "rawIndexThreads")
+    public Object[][] rawIndexThreads() {
+        return new Object[][]{{0}, {1}, {4}};
+    }
+
+    @Test(dataProvider = "rawIndexThreads")
+    public void testWriteBinaryFromRawRecords(final int threads) throws Exception {
+        // the index read from the raw records must be identical to the c-generated one
+        final File rawBaiFile = File.createTempFile("rawBai.", ".bai");
+        rawBaiFile.deleteOnExit();
+        BAMIndexer.createIndex(BAM_FILE.toPath(), rawBaiFile.toPath(), threads);
+
+        final File cRegeneratedBaiFile = File.createTempFile("cBai.", ".bai");
+        cRegeneratedBaiFile.deleteOnExit();
+        BAMIndexer.createAndWriteIndex(BAI_FILE, cRegeneratedBaiFile, false);
+        IOUtil.assertFilesEqual(rawBaiFile, cRegeneratedBaiFile);
+    }
+
+    @Test
+    public void testRawRecordsSpanningRanges() throws Exception {
+        // one block per range, so that many records are split between two ranges
+        final File rawBaiFile = File.createTempFile("rawBai.", ".bai");
+        rawBaiFile.deleteOnExit();
+        final long records;
+        try (final BAMIndexScanner scanner = new BAMIndexScanner(BAM_FILE.toPath(), 3, 1)) {
+            final BAMIndexer indexer = new BAMIndexer(rawBaiFile, scanner.getFileHeader());
+            records = scanner.scan((reference, alignmentStart, alignmentEnd, bin, flags, chunkStart, chunkEnd) ->
+                    indexer.processAlignment(reference, alignmentStart, alignmentEnd, bin,
+                            (flags & SAMFlag.READ_UNMAPPED.intValue()) != 0, chunkStart, chunkEnd));
+            indexer.finish();
+        }
+
+        final File javaBaiFile = File.createTempFile("javaBai.", ".bai");
+        javaBaiFile.deleteOnExit();
+        long expectedRecords = 0;
+        try (final SamReader bam = SamReaderFactory.makeDefault().enable(SamReaderFactory.Option.INCLUDE_SOURCE_IN_RECORDS).open(BAM_FILE)) {
+            final BAMIndexer indexer = new BAMIndexer(javaBaiFile, bam.getFileHeader());
+            for (final SAMRecord rec : bam) {
+                indexer.processAlignment(rec);
+                expectedRecords++;
+            }
+            indexer.finish();
+        }
+        assertEquals(records, expectedRecords);
+        IOUtil.assertFilesEqual(rawBaiFile, javaBaiFile);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNegativeRawIndexThreads() throws Exception {
+        final File rawBaiFile = File.createTempFile("rawBai.", ".bai");
+        rawBaiFile.deleteOnExit();
+        BAMIndexer.createIndex(BAM_FILE.toPath(), rawBaiFile.toPath(), -1);
+    }
+
     @Test(enabled = false, dataProvider = "linearIndexTestData")
     /** Test linear index at specific references and windows */
     public void testLinearIndex(String testName, String filepath, int problemReference, int problemWindowStart, int problemWindowEnd, int expectedCount) {
@@ -18,7 +18,9 @@ import org.testng.annotations.BeforeTest;
 import org.testng.annotations.Test;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeSet;
 
@@ -304,6 +306,33 @@ public class CRAMFileCRAIIndexTest extends HtsjdkTest {
         reader.close();
     }
 
+    @Test
+    public void testMultipleIntervalQueryMatchesBAM() throws IOException {
+        final QueryInterval[] query = QueryInterval.optimizeIntervals(new QueryInterval[]{
+                new QueryInterval(0, 100, 2000),
+                new QueryInterval(0, 1500, 9000),
+                new QueryInterval(1, 1, 500000),
+                new QueryInterval(2, 10000, 0)});
+
+        for (final boolean contained : new boolean[]{false, true}) {
+            final List<String> expected = new ArrayList<>();
+            try (final SamReader bamReader = SamReaderFactory.makeDefault().open(BAM_FILE);
+                 final CloseableIterator<SAMRecord> iterator = bamReader.query(query, contained)) {
+                iterator.forEachRemaining(r -> expected.add(r.getReadName() + ":" + r.getAlignmentStart()));
+            }
+
+            final List<String> actual = new ArrayList<>();
+            final CRAMFileReader reader = new CRAMFileReader(tmpCramFile, tmpCraiFile, source, ValidationStringency.SILENT);
+            try (final CloseableIterator<SAMRecord> iterator = reader.query(query, contained)) {
+                iterator.forEachRemaining(r -> actual.add(r.getReadName() + ":" + r.getAlignmentStart()));
+            }
+            reader.close();
+
+            Assert.assertFalse(expected.isEmpty());
+            Assert.assertEquals(actual, expected);
+        }
+    }
+
     @BeforeTest
     public void prepare() throws IOException {
         Log.setGlobalLogLevel(Log.LogLevel.ERROR);
@@ -0,0 +1,180 @@
+package htsjdk.samtools;
+
+import htsjdk.HtsjdkTest;
+import htsjdk.samtools.util.BinaryCodec;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CSIIndexerTest extends HtsjdkTest {
+    private static final File BAM_FILE = new File("src/test/resources/htsjdk/samtools/BAMFileIndexTest/index_test.bam");
+
+    /**
+     * The content of a CSI index, as read back from the file
+     */
+    private static class CSIContent {
+        int minShift;
+        int depth;
+        // for each reference, each bin has its smallest offset followed by its chunks
+        final List<Map<Integer, long[]>> references = new ArrayList<>();
+        long noCoordinateCount;
+
+        int metaBin() {
+            return ((1 << (3 * depth + 3)) - 1) / 7 + 1;
+        }
+    }
+
+    private static CSIContent read(final File csi) throws IOException {
+        try (final BlockCompressedInputStream stream = new BlockCompressedInputStream(csi)) {
+            final BinaryCodec codec = new BinaryCodec(stream);
+            final byte[] magic = new byte[4];
+            codec.readBytes(magic);
+            Assert.assertEquals(magic, CSIIndexer.CSI_MAGIC);
+            final CSIContent content = new CSIContent();
+            content.minShift = codec.readInt();
+            content.depth = codec.readInt();
+            Assert.assertEquals(codec.readInt(), 0);
+            final int nReferences = codec.readInt();
+            for (int i = 0; i < nReferences; i++) {
+                final Map<Integer, long[]> bins = new HashMap<>();
+                final int nBins = codec.readInt();
+                for (int b = 0; b < nBins; b++) {
+                    final int bin = (int) codec.readUInt();
+                    final long offset = codec.readLong();
+                    final long[] values = new long[1 + 2 * codec.readInt()];
+                    values[0] = offset;
+                    for (int c = 1; c < values.length; c++) {
+                        values[c] = codec.readLong();
+                    }
+                    Assert.assertNull(bins.put(bin, values));
+                }
+                content.references.add(bins);
+            }
+            content.noCoordinateCount = codec.readLong();
+            Assert.assertEquals(stream.read(), -1);
+            return content;
+        }
+    }
+
+    /**
+     * Check that every record is in a chunk of its bin, after the smallest offset of the bin, and that the meta data
+     * counts all the records
+     */
+    private static void assertRecordsAreIndexed(final File bam, final CSIContent content) throws IOException {
+        final Map<Integer, long[]> counts = new HashMap<>();
+        long noCoordinateCount = 0;
+        try (final SamReader reader = SamReaderFactory.makeDefault()
+                .enable(SamReaderFactory.Option.INCLUDE_SOURCE_IN_RECORDS)
+                .validationStringency(ValidationStringency.SILENT)
+                .open(bam)) {
+            for (final SAMRecord rec : reader) {
+                if (rec.getAlignmentStart() == SAMRecord.NO_ALIGNMENT_START) {
+                    noCoordinateCount++;
+                    continue;
+                }
+                counts.computeIfAbsent(rec.getReferenceIndex(), r -> new long[2])[rec.getReadUnmappedFlag() ? 1 : 0]++;
+
+                final Chunk chunk = ((BAMFileSpan) rec.getFileSource().getFilePointer()).getSingleChunk();
+                final long end = Math.max(rec.getAlignmentEnd(), rec.getAlignmentStart());
+                final int bin = CSIIndexer.regionToBin(rec.getAlignmentStart() - 1, end, content.minShift, content.depth);
+                final long[] values = content.references.get(rec.getReferenceIndex()).get(bin);
+                Assert.assertNotNull(values, rec.getSAMString());
+                Assert.assertTrue(values[0] <= chunk.getChunkStart(), rec.getSAMString());
+                boolean found = false;
+                for (int c = 1; c < values.length && !found; c += 2) {
+                    found = values[c] <= chunk.getChunkStart() && chunk.getChunkEnd() <= values[c + 1];
+                }
+                Assert.assertTrue(found, rec.getSAMString());
+            }
+        }
+        Assert.assertEquals(content.noCoordinateCount, noCoordinateCount);
+        for (int reference = 0; reference < content.references.size(); reference++) {
+            final long[] meta = content.references.get(reference).get(content.metaBin());
+            final long[] expected = counts.get(reference);
+            if (expected == null) {
+                Assert.assertTrue(content.references.get(reference).isEmpty());
+            } else {
+                Assert.assertEquals(meta[3], expected[0]);
+                Assert.assertEquals(meta[4], expected[1]);
+            }
+        }
+    }
+
+    @DataProvider(name = "threads")
+    public Object[][] threads() {
+        return new Object[][]{{0}, {3}};
+    }
+
+    @Test(dataProvider = "threads")
+    public void testIndexCoversRecords(final int threads) throws IOException {
+        final File csi = File.createTempFile("index_test.", ".bam.csi");
+        csi.deleteOnExit();
+        CSIIndexer.createIndex(BAM_FILE.toPath(), csi.toPath(), threads);
+
+        final CSIContent content = read(csi);
+        Assert.assertEquals(content.minShift, CSIIndexer.DEFAULT_MIN_SHIFT);
+        try (final SamReader reader = SamReaderFactory.makeDefault().open(BAM_FILE)) {
+            Assert.assertEquals(content.depth, CSIIndexer.depthFor(reader.getFileHeader().getSequenceDictionary(), CSIIndexer.DEFAULT_MIN_SHIFT));
+            Assert.assertEquals(content.references.size(), reader.getFileHeader().getSequenceDictionary().size());
+        }
+        assertRecordsAreIndexed(BAM_FILE, content);
+    }
+
+    @Test
+    public void testLongReference() throws IOException {
+        // a reference too long for a BAI index
+        final SAMFileHeader header = new SAMFileHeader();
+        header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+        header.addSequence(new SAMSequenceRecord("short", 10000));
+        header.addSequence(new SAMSequenceRecord("long", 1500000000));
+        final File bam = File.createTempFile("long_reference.", ".bam");
+        bam.deleteOnExit();
+        final SAMRecordSetBuilder records = new SAMRecordSetBuilder(true, SAMFileHeader.SortOrder.coordinate);
+        records.setHeader(header);
+        records.addFrag("a", 0, 100, false);
+        for (int i = 0; i < 200; i++) {
+            records.addPair("pair" + i, 1, 1 + i * 7000000, 1 + i * 7000000 + 300);
+        }
+        records.addUnmappedFragment("unmapped");
+        try (final SAMFileWriter writer = new SAMFileWriterFactory().makeBAMWriter(header, true, bam)) {
+            for (final SAMRecord rec : records) {
+                if (rec.getAlignmentEnd() > 1 << 29) {
+                    // the bin samtools stores for records out of the range of a BAI index, reg2bin(-1, 0)
+                    rec.setIndexingBin(4680);
+                }
+                writer.addAlignment(rec);
+            }
+        }
+
+        final File csi = File.createTempFile("long_reference.", ".bam.csi");
+        csi.deleteOnExit();
+        CSIIndexer.createIndex(bam.toPath(), csi.toPath(), 2);
+        final CSIContent content = read(csi);
+        Assert.assertEquals(content.depth, 6);
+        assertRecordsAreIndexed(bam, content);
+    }
+
+    @Test
+    public void testRegionToBin() {
+        // with 14 bits and 5 levels, the binning scheme of a BAI index
+        for (final int[] region : new int[][]{{0, 1}, {16383, 16385}, {100000, 100100}, {0, 1 << 29}, {1 << 20, (1 << 20) + (1 << 17)}}) {
+            Assert.assertEquals(CSIIndexer.regionToBin(region[0], region[1], 14, 5), GenomicIndexUtil.regionToBin(region[0], region[1]));
+        }
+    }
+
+    @Test(expectedExceptions = SAMException.class)
+    public void testRequireCoordinateSortOrder() {
+        final SAMFileHeader header = new SAMFileHeader();
+        header.setSortOrder(SAMFileHeader.SortOrder.queryname);
+        new CSIIndexer(new ByteArrayOutputStream(), header, CSIIndexer.DEFAULT_MIN_SHIFT);
+    }
+}
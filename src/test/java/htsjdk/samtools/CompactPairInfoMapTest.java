@@ -0,0 +1,206 @@
+package htsjdk.samtools;
+
+import htsjdk.HtsjdkTest;
+import htsjdk.samtools.util.CloseableIterator;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class CompactPairInfoMapTest extends HtsjdkTest {
+
+    private static class Codec implements CoordinateSortedPairInfoMap.Codec<String, Integer> {
+        private DataInputStream in;
+        private DataOutputStream out;
+
+        @Override
+        public void setOutputStream(final OutputStream os) {
+            out = new DataOutputStream(os);
+        }
+
+        @Override
+        public void setInputStream(final InputStream is) {
+            in = new DataInputStream(is);
+        }
+
+        @Override
+        public void encode(final String key, final Integer record) {
+            try {
+                out.writeUTF(key);
+                out.writeInt(record);
+            } catch (IOException e) {
+                throw new SAMException(e);
+            }
+        }
+
+        @Override
+        public Map.Entry<String, Integer> decode() {
+            try {
+                return new AbstractMap.SimpleEntry<>(in.readUTF(), in.readInt());
+            } catch (IOException e) {
+                throw new SAMException(e);
+            }
+        }
+    }
+
+    @DataProvider(name = "budgets")
+    public Object[][] budgets() {
+        return new Object[][]{{CompactPairInfoMap.DEFAULT_MAX_BYTES_IN_RAM}, {16 * 1024}, {0}};
+    }
+
+    /**
+     * Pairs on a few sequences, with mates on the same or a later sequence, processed in coordinate order.
+     */
+    @Test(dataProvider = "budgets")
+    public void testMatchesHashMap(final long maxBytesInRam) {
+        final CompactPairInfoMap<Integer> map = new CompactPairInfoMap<>(maxBytesInRam, new Codec());
+        final Map<Integer, Map<String, Integer>> expected = new HashMap<>();
+        final Random random = new Random(42);
+        int nextRead = 0;
+        for (int sequence = 0; sequence < 5; sequence++) {
+            for (int i = 0; i < 3000; i++) {
+                final String name = "read:" + random.nextInt(1000) + ":" + nextRead++;
+                final int mateSequence = sequence + (random.nextInt(4) == 0 ? 1 + random.nextInt(3) : 0);
+                Assert.assertNull(map.remove(sequence, name));
+                map.put(mateSequence, name, nextRead);
+                expected.computeIfAbsent(mateSequence, s -> new HashMap<>()).put(name, nextRead);
+            }
+            // the mates of about half of the reads on this sequence
+            final Map<String, Integer> onSequence = expected.getOrDefault(sequence, new HashMap<>());
+            for (final String name : new ArrayList<>(onSequence.keySet())) {
+                if (random.nextBoolean()) {
+                    Assert.assertEquals(map.remove(sequence, name), onSequence.remove(name));
+                    Assert.assertNull(map.remove(sequence, name));
+                }
+            }
+        }
+
+        int size = 0;
+        for (final Map<String, Integer> records : expected.values()) {
+            size += records.size();
+        }
+        Assert.assertEquals(map.size(), size);
+        Assert.assertTrue(map.sizeInRam() <= size);
+        if (maxBytesInRam < CompactPairInfoMap.DEFAULT_MAX_BYTES_IN_RAM) {
+            Assert.assertTrue(map.getSpills() > 0);
+            Assert.assertTrue(map.getSpilledRecords() > 0);
+        } else {
+            Assert.assertEquals(map.getSpills(), 0);
+            Assert.assertEquals(map.sizeInRam(), size);
+        }
+        Assert.assertTrue(map.getPeakBytesInRam() >= map.getBytesInRam());
+
+        final Map<Integer, Map<String, Integer>> iterated = new HashMap<>();
+        try (final CloseableIterator<Map.Entry<String, Integer>> it = map.iterator()) {
+            Assert.assertThrows(IllegalStateException.class, () -> map.put(0, "x", 0));
+            while (it.hasNext()) {
+                final Map.Entry<String, Integer> entry = it.next();
+                Assert.assertNull(iterated.computeIfAbsent(0, s -> new HashMap<>()).put(entry.getKey(), entry.getValue()));
+            }
+        }
+        final Map<String, Integer> all = new HashMap<>();
+        expected.values().forEach(all::putAll);
+        Assert.assertEquals(iterated.getOrDefault(0, new HashMap<>()), all);
+
+        // every remaining record can still be removed, from spilled sequences too
+        for (final Map.Entry<Integer, Map<String, Integer>> sequence : expected.entrySet()) {
+            for (final Map.Entry<String, Integer> record : sequence.getValue().entrySet()) {
+                Assert.assertEquals(map.remove(sequence.getKey(), record.getKey()), record.getValue());
+            }
+        }
+        Assert.assertEquals(map.size(), 0);
+        Assert.assertEquals(map.sizeInRam(), 0);
+    }
+
+    @Test
+    public void testDrainedSequencesAreFreed() {
+        final CompactPairInfoMap<Integer> map = new CompactPairInfoMap<>(100000, new Codec());
+        for (int i = 0; i < 5000; i++) {
+            map.put(0, "read" + i, i);
+        }
+        final long spills = map.getSpills();
+        for (int i = 0; i < 5000; i++) {
+            Assert.assertEquals(map.remove(0, "read" + i), Integer.valueOf(i));
+            if (i == 4500) {
+                // the arrays shrink as the records are removed
+                Assert.assertTrue(map.getBytesInRam() < 100000, "bytes in RAM: " + map.getBytesInRam());
+            }
+        }
+        Assert.assertEquals(map.size(), 0);
+        Assert.assertEquals(map.getBytesInRam(), 0);
+
+        // inserting again does not spill until the budget is reached again
+        for (int i = 0; i < 1000; i++) {
+            map.put(1, "next" + i, i);
+        }
+        Assert.assertEquals(map.getSpills(), spills);
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(map.remove(1, "next" + i), Integer.valueOf(i));
+        }
+        Assert.assertEquals(map.getBytesInRam(), 0);
+    }
+
+    @Test
+    public void testMaxTempFiles() {
+        final CompactPairInfoMap<Integer> map = new CompactPairInfoMap<>(0, 2, new Codec());
+        for (int sequence = 0; sequence < 5; sequence++) {
+            for (int i = 0; i < 100; i++) {
+                map.put(sequence, "read" + sequence + ":" + i, i);
+            }
+        }
+        // only two sequences were spilled, the others stay in RAM over the budget
+        Assert.assertEquals(map.sizeInRam(), 300);
+        for (int sequence = 0; sequence < 5; sequence++) {
+            for (int i = 0; i < 100; i++) {
+                Assert.assertEquals(map.remove(sequence, "read" + sequence + ":" + i), Integer.valueOf(i));
+            }
+        }
+        Assert.assertEquals(map.size(), 0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testPutTwiceInRam() {
+        final CompactPairInfoMap<Integer> map = new CompactPairInfoMap<>(new Codec());
+        map.put(1, "a", 1);
+        map.put(1, "a", 2);
+    }
+
+    @Test(expectedExceptions = SAMException.class)
+    public void testPutTwiceAcrossSpill() {
+        final CompactPairInfoMap<Integer> map = new CompactPairInfoMap<>(0, new Codec());
+        map.put(1, "a", 1);
+        map.put(1, "a", 2);
+        map.remove(1, "a");
+    }
+
+    @Test
+    public void testHashesAreNeverZeroAndSpreadOverLowBits() {
+        final List<Long> hashes = new ArrayList<>();
+        for (int i = 0; i < 1024; i++) {
+            hashes.add(CompactPairInfoMap.hash("HWI-ST:8:1101:" + i));
+        }
+        final boolean[] buckets = new boolean[1024];
+        int used = 0;
+        for (final long hash : hashes) {
+            Assert.assertNotEquals(hash, 0L);
+            if (!buckets[(int) hash & 1023]) {
+                buckets[(int) hash & 1023] = true;
+                used++;
+            }
+        }
+        // about 1 - 1/e of the buckets for random hashes
+        Assert.assertTrue(used > 550, "Only " + used + " buckets used");
+        Assert.assertEquals(CompactPairInfoMap.hash(""), CompactPairInfoMap.hash(""));
+    }
+}
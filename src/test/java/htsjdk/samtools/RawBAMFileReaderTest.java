@@ -0,0 +1,152 @@
+package htsjdk.samtools;
+
+import htsjdk.HtsjdkTest;
+import htsjdk.samtools.util.CloseableIterator;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class RawBAMFileReaderTest extends HtsjdkTest {
+    private static final File BAM_FILE = new File("src/test/resources/htsjdk/samtools/BAMFileIndexTest/index_test.bam");
+
+    private static List<SAMRecord> readAll(final File bam) throws IOException {
+        final List<SAMRecord> records = new ArrayList<>();
+        try (final SamReader reader = SamReaderFactory.makeDefault().open(bam)) {
+            reader.forEach(records::add);
+        }
+        return records;
+    }
+
+    private static List<RawBAMRecord> readAllRaw(final CloseableIterator<RawBAMRecord> iterator) {
+        final List<RawBAMRecord> records = new ArrayList<>();
+        iterator.forEachRemaining(records::add);
+        iterator.close();
+        return records;
+    }
+
+    @Test
+    public void testFieldsMatchDecodedRecords() throws IOException {
+        final List<SAMRecord> expected = readAll(BAM_FILE);
+        final List<RawBAMRecord> actual;
+        try (final RawBAMFileReader reader = new RawBAMFileReader(BAM_FILE)) {
+            actual = readAllRaw(reader.iterator());
+        }
+        Assert.assertEquals(actual.size(), expected.size());
+        for (int i = 0; i < actual.size(); i++) {
+            final RawBAMRecord raw = actual.get(i);
+            final SAMRecord rec = expected.get(i);
+            Assert.assertEquals(raw.getReadName(), rec.getReadName());
+            Assert.assertEquals(raw.getReferenceIndex(), rec.getReferenceIndex().intValue());
+            Assert.assertEquals(raw.getAlignmentStart(), rec.getAlignmentStart());
+            Assert.assertEquals(raw.getAlignmentEnd(), rec.getAlignmentEnd(), rec.getSAMString());
+            Assert.assertEquals(raw.getMappingQuality(), rec.getMappingQuality());
+            Assert.assertEquals(raw.getFlags(), rec.getFlags());
+            Assert.assertEquals(raw.getReadLength(), rec.getReadLength());
+            Assert.assertEquals(raw.getMateReferenceIndex(), rec.getMateReferenceIndex().intValue());
+            Assert.assertEquals(raw.getMateAlignmentStart(), rec.getMateAlignmentStart());
+            Assert.assertEquals(raw.getInferredInsertSize(), rec.getInferredInsertSize());
+            Assert.assertEquals(raw.getReadGroup(), rec.getReadGroup() == null ? null : rec.getReadGroup().getId());
+            for (final SAMRecord.SAMTagAndValue tag : rec.getAttributes()) {
+                Assert.assertEquals(raw.getAttribute(tag.tag), tag.value, tag.tag);
+            }
+            Assert.assertNull(raw.getAttribute("ZZ"));
+            Assert.assertEquals(raw.toSAMRecord(), rec);
+        }
+    }
+
+    @Test
+    public void testQueryMatchesSamReader() throws IOException {
+        final QueryInterval[] intervals = {new QueryInterval(0, 1, 50000), new QueryInterval(1, 20000, 30000)};
+        for (final boolean contained : new boolean[]{false, true}) {
+            final List<String> expected = new ArrayList<>();
+            try (final SamReader reader = SamReaderFactory.makeDefault().open(BAM_FILE);
+                 final CloseableIterator<SAMRecord> iterator = reader.query(intervals, contained)) {
+                iterator.forEachRemaining(rec -> expected.add(rec.getSAMString()));
+            }
+            final List<String> actual = new ArrayList<>();
+            try (final RawBAMFileReader reader = new RawBAMFileReader(BAM_FILE)) {
+                Assert.assertTrue(reader.hasIndex());
+                for (final RawBAMRecord raw : readAllRaw(reader.query(intervals, contained))) {
+                    actual.add(raw.toSAMRecord().getSAMString());
+                }
+            }
+            Assert.assertFalse(expected.isEmpty());
+            Assert.assertEquals(actual, expected);
+        }
+    }
+
+    @Test
+    public void testCopyWithFilter() throws IOException {
+        final File output = File.createTempFile("raw_copy.", ".bam");
+        output.deleteOnExit();
+        try (final RawBAMFileReader reader = new RawBAMFileReader(BAM_FILE);
+             final RawBAMFileWriter writer = new SAMFileWriterFactory().setCreateIndex(true)
+                     .makeRawBAMWriter(reader.getFileHeader(), output);
+             final CloseableIterator<RawBAMRecord> records = reader.iterator()) {
+            while (records.hasNext()) {
+                final RawBAMRecord record = records.next();
+                if (!record.getReadUnmappedFlag()) {
+                    writer.addRecord(record);
+                }
+            }
+        }
+
+        final File expected = File.createTempFile("decoded_copy.", ".bam");
+        expected.deleteOnExit();
+        try (final SamReader reader = SamReaderFactory.makeDefault().open(BAM_FILE);
+             final SAMFileWriter writer = new SAMFileWriterFactory().setCreateIndex(true)
+                     .makeBAMWriter(reader.getFileHeader(), true, expected)) {
+            for (final SAMRecord rec : reader) {
+                if (!rec.getReadUnmappedFlag()) {
+                    writer.addAlignment(rec);
+                }
+            }
+        }
+        Assert.assertEquals(readAll(output), readAll(expected));
+        final File outputIndex = SamFiles.findIndex(output);
+        final File expectedIndex = SamFiles.findIndex(expected);
+        outputIndex.deleteOnExit();
+        expectedIndex.deleteOnExit();
+        Assert.assertEquals(Files.readAllBytes(outputIndex.toPath()), Files.readAllBytes(expectedIndex.toPath()));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testDifferentDictionary() throws IOException {
+        final File output = File.createTempFile("raw_copy.", ".bam");
+        output.deleteOnExit();
+        try (final RawBAMFileReader reader = new RawBAMFileReader(BAM_FILE);
+             final CloseableIterator<RawBAMRecord> records = reader.iterator()) {
+            final SAMFileHeader header = new SAMFileHeader();
+            header.addSequence(new SAMSequenceRecord("other", 1000));
+            try (final RawBAMFileWriter writer = new SAMFileWriterFactory().makeRawBAMWriter(header, output)) {
+                writer.addRecord(records.next());
+            }
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testOutOfOrder() throws IOException {
+        final File output = File.createTempFile("raw_copy.", ".bam");
+        output.deleteOnExit();
+        try (final RawBAMFileReader reader = new RawBAMFileReader(BAM_FILE)) {
+            final List<RawBAMRecord> records = readAllRaw(reader.iterator());
+            try (final RawBAMFileWriter writer = new SAMFileWriterFactory().makeRawBAMWriter(reader.getFileHeader(), output)) {
+                writer.addRecord(records.get(records.size() / 2));
+                writer.addRecord(records.get(0));
+            }
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testOneIteratorAtATime() {
+        try (final RawBAMFileReader reader = new RawBAMFileReader(BAM_FILE)) {
+            reader.iterator();
+            reader.iterator();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package htsjdk.samtools;
+
+import htsjdk.HtsjdkTest;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.SortingCollection;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class SAMRecordCoordinateComparatorTest extends HtsjdkTest {
+
+    private static final SAMRecordCoordinateComparator COMPARATOR = new SAMRecordCoordinateComparator();
+
+    private static List<SAMRecord> makeRecords() {
+        final SAMRecordSetBuilder builder = new SAMRecordSetBuilder(false, SAMFileHeader.SortOrder.unsorted);
+        final Random random = new Random(11);
+        for (int i = 0; i < 2000; i++) {
+            // few distinct starts, so that many records share a key prefix
+            builder.addPair("pair" + i, random.nextInt(3), 1 + random.nextInt(50), 1 + random.nextInt(50));
+            if (i % 10 == 0) {
+                builder.addUnmappedFragment("unmapped" + i);
+            }
+        }
+        return new ArrayList<>(builder.getRecords());
+    }
+
+    @Test
+    public void testKeyPrefixIsConsistentWithCompare() {
+        final List<SAMRecord> records = makeRecords();
+        final Random random = new Random(5);
+        for (int i = 0; i < 10000; i++) {
+            final SAMRecord a = records.get(random.nextInt(records.size()));
+            final SAMRecord b = records.get(random.nextInt(records.size()));
+            final int prefixComparison = Long.compare(COMPARATOR.getKeyPrefix(a), COMPARATOR.getKeyPrefix(b));
+            if (prefixComparison != 0) {
+                Assert.assertEquals(Integer.signum(COMPARATOR.compare(a, b)), prefixComparison);
+            }
+        }
+    }
+
+    @Test
+    public void testOffHeapSort() throws Exception {
+        final List<SAMRecord> records = makeRecords();
+        final SAMFileHeader header = records.get(0).getHeader();
+        final Path tmpDir = Files.createTempDirectory("SAMRecordCoordinateComparatorTest");
+        final SortingCollection<SAMRecord> sortingCollection = SortingCollection.newInstance(SAMRecord.class,
+                new BAMRecordCodec(header), COMPARATOR, 1, tmpDir);
+        sortingCollection.setMaxBytesInRam(50000, COMPARATOR);
+        records.forEach(sortingCollection::add);
+        records.sort(COMPARATOR);
+
+        int i = 0;
+        try (final CloseableIterator<SAMRecord> iterator = sortingCollection.iterator()) {
+            while (iterator.hasNext()) {
+                Assert.assertEquals(iterator.next().getSAMString(), records.get(i++).getSAMString());
+            }
+        }
+        Assert.assertEquals(i, records.size());
+        Assert.assertTrue(tmpDir.toFile().list().length > 1);
+        sortingCollection.cleanup();
+        Assert.assertEquals(tmpDir.toFile().list().length, 0);
+        Files.delete(tmpDir);
+    }
+}
@@ -31,8 +31,11 @@ import htsjdk.samtools.metrics.MetricsFile;
 import htsjdk.samtools.reference.FastaSequenceFile;
 import htsjdk.samtools.reference.ReferenceSequence;
 import htsjdk.samtools.reference.ReferenceSequenceFile;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
 import htsjdk.samtools.util.CloserUtil;
 import htsjdk.samtools.util.Histogram;
+import htsjdk.samtools.util.IOUtil;
 import htsjdk.samtools.util.StringUtil;
 import org.testng.Assert;
 import org.testng.annotations.DataProvider;
@@ -41,6 +44,7 @@ import org.testng.annotations.Test;
 import java.nio.channels.FileChannel;
 import java.nio.file.StandardOpenOption;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
@@ -48,6 +52,7 @@ import java.io.InputStream;
 import java.io.LineNumberReader;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -588,6 +593,101 @@ public class ValidateSamFileTest extends HtsjdkTest {
         Assert.assertEquals(results.get(errorType.getHistogramString()).getValue(), 1.0);
     }
 
+    @DataProvider(name = "parallelValidationData")
+    public Object[][] parallelValidationData() {
+        return new Object[][]{
+                {new File(TEST_DATA_DIR, "valid.sam"), true},
+                {new File(TEST_DATA_DIR, "invalid_coord_sort_order.sam"), true},
+                {new File(TEST_DATA_DIR, "invalid_queryname_sort_order.sam"), true},
+                {new File(TEST_DATA_DIR, "invalid_mate_cigar_string.sam"), true},
+                {new File(TEST_DATA_DIR, "not_stored_qualities_more_than_100.sam"), true},
+                {new File(TEST_DATA_DIR, "truncated.bam"), true},
+                {new File("src/test/resources/htsjdk/samtools/BAMFileIndexTest/index_test.bam"), true},
+                {new File("src/test/resources/htsjdk/samtools/BAMFileIndexTest/index_test.bam"), false},
+        };
+    }
+
+    @Test(dataProvider = "parallelValidationData")
+    public void testParallelValidationReportsTheSameErrors(final File input, final boolean verbose) throws IOException {
+        final String serial = validate(input, verbose, 0);
+        for (final int threads : new int[]{1, 3}) {
+            Assert.assertEquals(validate(input, verbose, threads), serial);
+        }
+    }
+
+    private static String validate(final File input, final boolean verbose, final int threads) throws IOException {
+        final StringWriter report = new StringWriter();
+        final SamFileValidator validator = new SamFileValidator(new PrintWriter(report), 8000);
+        validator.setValidationThreads(threads);
+        try (final SamReader reader = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT).open(input)) {
+            if (verbose) {
+                validator.setVerbose(true, 1000);
+                validator.validateSamFileVerbose(reader, null);
+            } else {
+                validator.validateSamFileSummary(reader, null);
+            }
+        }
+        return report.toString();
+    }
+
+    @Test
+    public void testParallelValidationOfMalformedRecord() throws IOException {
+        // the second batch of records has a malformed tag, which is only decoded when the record is checked:
+        final SAMFileHeader header = new SAMFileHeader();
+        final File bam = File.createTempFile("malformed_tag.", ".bam");
+        bam.deleteOnExit();
+        try (final SAMFileWriter writer = new SAMFileWriterFactory().makeBAMWriter(header, false, bam)) {
+            for (int i = 1; i <= 2 * SamFileValidator.VALIDATION_BATCH_SIZE; i++) {
+                final SAMRecord record = new SAMRecord(header);
+                record.setReadName("read" + i);
+                record.setReadUnmappedFlag(true);
+                // unmapped reads should have a mapping quality of 0:
+                record.setMappingQuality(i % 10 == 0 ? 60 : 0);
+                record.setReadString("ACGT");
+                record.setBaseQualityString("IIII");
+                record.setAttribute("XB", i == 1500 ? "BAD" : "OK");
+                writer.addAlignment(record);
+            }
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final BlockCompressedInputStream in = new BlockCompressedInputStream(bam)) {
+            IOUtil.copyStream(in, bytes);
+        }
+        final String uncompressed = new String(bytes.toByteArray(), StandardCharsets.ISO_8859_1);
+        final File malformed = File.createTempFile("malformed_tag.", ".bam");
+        malformed.deleteOnExit();
+        try (final BlockCompressedOutputStream out = new BlockCompressedOutputStream(malformed)) {
+            out.write(uncompressed.replace("XBZBAD", "XB!BAD").getBytes(StandardCharsets.ISO_8859_1));
+        }
+
+        final String serial = validateReportingFailure(malformed, 0);
+        Assert.assertTrue(serial.contains("SAMFormatException"), serial);
+        Assert.assertTrue(serial.contains("read1490"), serial);
+        for (final int threads : new int[]{1, 3}) {
+            Assert.assertEquals(validateReportingFailure(malformed, threads), serial);
+        }
+    }
+
+    private static String validateReportingFailure(final File input, final int threads) throws IOException {
+        final StringWriter report = new StringWriter();
+        final SamFileValidator validator = new SamFileValidator(new PrintWriter(report), 8000);
+        validator.setValidationThreads(threads);
+        validator.setIgnoreWarnings(true);
+        validator.setVerbose(true, 1000);
+        try (final SamReader reader = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT).open(input)) {
+            validator.validateSamFileVerbose(reader, null);
+            Assert.fail("Expected the malformed record to fail validation");
+        } catch (final SAMException e) {
+            report.append(e.getMessage());
+        }
+        return report.toString();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNegativeValidationThreads() {
+        new SamFileValidator(new PrintWriter(new StringWriter()), 8000).setValidationThreads(-1);
+    }
+
     @DataProvider(name = "validateBamFileTerminationData")
     public Object[][] validateBamFileTerminationData() throws IOException {
         return new Object[][]{
@@ -10,7 +10,12 @@ import org.testng.annotations.Test;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
 import java.util.function.BiFunction;
 import java.util.zip.GZIPOutputStream;
 
@@ -56,6 +61,51 @@ public class CRAIIndexTest extends HtsjdkTest {
         Assert.assertFalse(allFoundEntriesIntersectQueryInFind(index, sequenceId, 4, 1));
     }
 
+    @Test
+    public void testGetSlicesOverlapping() {
+        final List<CRAIEntry> index = new ArrayList<CRAIEntry>();
+        // two containers with two slices each on sequence 0, one container on sequence 1:
+        index.add(newEntry(0, 1, 100, 1000, 10));
+        index.add(newEntry(0, 101, 100, 1000, 20));
+        index.add(newEntry(0, 150, 100, 2000, 10));
+        index.add(newEntry(0, 301, 100, 2000, 20));
+        index.add(newEntry(1, 1, 100, 3000, 10));
+        // unmapped slice:
+        index.add(newEntry(-1, 0, 0, 4000, 10));
+
+        SortedMap<Long, Set<Integer>> slices = CRAIIndex.getSlicesOverlapping(index,
+                new QueryInterval[]{new QueryInterval(0, 120, 130)});
+        Assert.assertEquals(slices.keySet(), Collections.singleton(1000L));
+        Assert.assertEquals(slices.get(1000L), Collections.singleton(20));
+
+        // overlapping slices of several intervals are merged:
+        slices = CRAIIndex.getSlicesOverlapping(index,
+                new QueryInterval[]{new QueryInterval(0, 160, 170), new QueryInterval(0, 190, 320), new QueryInterval(1, 50, 60)});
+        Assert.assertEquals(new ArrayList<>(slices.keySet()), Arrays.asList(1000L, 2000L, 3000L));
+        Assert.assertEquals(slices.get(1000L), Collections.singleton(20));
+        Assert.assertEquals(slices.get(2000L), new HashSet<>(Arrays.asList(10, 20)));
+        Assert.assertEquals(slices.get(3000L), Collections.singleton(10));
+
+        // an end of 0 means to the end of the sequence:
+        slices = CRAIIndex.getSlicesOverlapping(index, new QueryInterval[]{new QueryInterval(0, 260, 0)});
+        Assert.assertEquals(slices.keySet(), Collections.singleton(2000L));
+        Assert.assertEquals(slices.get(2000L), Collections.singleton(20));
+
+        Assert.assertTrue(CRAIIndex.getSlicesOverlapping(index, new QueryInterval[]{new QueryInterval(2, 1, 10)}).isEmpty());
+        Assert.assertTrue(CRAIIndex.getSlicesOverlapping(index, new QueryInterval[]{new QueryInterval(0, 500, 600)}).isEmpty());
+    }
+
+    private static CRAIEntry newEntry(final int sequenceId, final int start, final int span, final long containerOffset, final int sliceOffset) {
+        final CRAIEntry e = new CRAIEntry();
+        e.sequenceId = sequenceId;
+        e.alignmentStart = start;
+        e.alignmentSpan = span;
+        e.containerStartOffset = containerOffset;
+        e.sliceOffset = sliceOffset;
+        e.sliceSize = 10;
+        return e;
+    }
+
     private boolean allFoundEntriesIntersectQueryInFind(final List<CRAIEntry> index, final int sequenceId, final int start, final int span) {
         int foundCount = 0;
         for (final CRAIEntry found : CRAIIndex.find(index, sequenceId, start, span)) {
@@ -0,0 +1,96 @@
+package htsjdk.samtools.cram.encoding.reader;
+
+import htsjdk.HtsjdkTest;
+import htsjdk.samtools.cram.encoding.ExternalByteEncoding;
+import htsjdk.samtools.cram.encoding.ExternalIntegerEncoding;
+import htsjdk.samtools.cram.encoding.NullEncoding;
+import htsjdk.samtools.cram.encoding.huffman.codec.HuffmanIntegerEncoding;
+import htsjdk.samtools.cram.io.DefaultBitInputStream;
+import htsjdk.samtools.cram.io.ExposedByteArrayInputStream;
+import htsjdk.samtools.cram.io.ExposedByteArrayOutputStream;
+import htsjdk.samtools.cram.io.ITF8;
+import htsjdk.samtools.cram.structure.CompressionHeader;
+import htsjdk.samtools.cram.structure.EncodingKey;
+import htsjdk.samtools.cram.structure.EncodingParams;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class DataReaderFactoryTest extends HtsjdkTest {
+    private static final int EXTERNAL_ID = 1;
+
+    private static class TestReader extends AbstractReader {
+    }
+
+    private static CompressionHeader createHeader() {
+        final CompressionHeader header = new CompressionHeader();
+        header.encodingMap = new TreeMap<EncodingKey, EncodingParams>();
+        header.tMap = new TreeMap<Integer, EncodingParams>();
+        // two series sharing one external block:
+        header.encodingMap.put(EncodingKey.BF_BitFlags, ExternalIntegerEncoding.toParam(EXTERNAL_ID));
+        header.encodingMap.put(EncodingKey.CF_CompressionBitFlags, ExternalByteEncoding.toParam(EXTERNAL_ID));
+        // a single symbol huffman code takes no bits:
+        header.encodingMap.put(EncodingKey.RL_ReadLength, HuffmanIntegerEncoding.toParam(new int[]{100}, new int[]{0}));
+        header.encodingMap.put(EncodingKey.MQ_MappingQualityScore, NullEncoding.toParam());
+        return header;
+    }
+
+    private static byte[] createBlock(final int[] flags, final byte[] compressionFlags) throws IOException {
+        final ExposedByteArrayOutputStream baos = new ExposedByteArrayOutputStream();
+        for (int i = 0; i < flags.length; i++) {
+            ITF8.writeUnsignedITF8(flags[i], baos);
+            baos.write(compressionFlags[i]);
+        }
+        return baos.toByteArray();
+    }
+
+    @DataProvider(name = "blockStreams")
+    public Object[][] blockStreams() {
+        return new Object[][]{{true}, {false}};
+    }
+
+    @Test(dataProvider = "blockStreams")
+    public void testReadSeries(final boolean exposed) throws IOException {
+        final int[] flags = new int[]{0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, -1};
+        final byte[] compressionFlags = new byte[]{0, 1, 2, 3, -1, 127, -128, 5};
+        final byte[] block = createBlock(flags, compressionFlags);
+
+        final Map<Integer, InputStream> inputMap = new HashMap<Integer, InputStream>();
+        inputMap.put(EXTERNAL_ID, exposed ? new ExposedByteArrayInputStream(block) : new ByteArrayInputStream(block));
+
+        final TestReader reader = new TestReader();
+        new DataReaderFactory().buildReader(reader, new DefaultBitInputStream(new ByteArrayInputStream(new byte[0])),
+                inputMap, createHeader(), 0);
+
+        for (int i = 0; i < flags.length; i++) {
+            Assert.assertEquals(reader.bitFlagsCodec.readInt(), flags[i]);
+            Assert.assertEquals(reader.compressionBitFlagsCodec.readByte(), compressionFlags[i]);
+            Assert.assertEquals(reader.readLengthCodec.readInt(), 100);
+            Assert.assertEquals(reader.mappingScoreCodec.readInt(), 0);
+        }
+        Assert.assertEquals(inputMap.get(EXTERNAL_ID).read(), -1);
+        Assert.assertNull(reader.readGroupCodec);
+    }
+
+    @Test
+    public void testHeaderReusedAcrossSlices() throws IOException {
+        final CompressionHeader header = createHeader();
+        for (int slice = 0; slice < 3; slice++) {
+            final Map<Integer, InputStream> inputMap = new HashMap<Integer, InputStream>();
+            inputMap.put(EXTERNAL_ID, new ExposedByteArrayInputStream(createBlock(new int[]{slice}, new byte[]{(byte) slice})));
+
+            final TestReader reader = new TestReader();
+            new DataReaderFactory().buildReader(reader, new DefaultBitInputStream(new ByteArrayInputStream(new byte[0])),
+                    inputMap, header, 0);
+            Assert.assertEquals(reader.bitFlagsCodec.readInt(), slice);
+            Assert.assertEquals(reader.compressionBitFlagsCodec.readByte(), slice);
+        }
+    }
+}
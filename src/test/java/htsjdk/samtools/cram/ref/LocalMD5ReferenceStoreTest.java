@@ -0,0 +1,99 @@
+package htsjdk.samtools.cram.ref;
+
+import htsjdk.HtsjdkTest;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.reference.ReferenceSequence;
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
+import htsjdk.samtools.util.IOUtil;
+import htsjdk.samtools.util.SequenceUtil;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.Arrays;
+
+public class LocalMD5ReferenceStoreTest extends HtsjdkTest {
+    private static final File FASTA = new File("src/test/resources/htsjdk/samtools/cram/c1.fa");
+
+    private File storeDir;
+
+    @BeforeMethod
+    public void createStore() {
+        storeDir = IOUtil.createTempDir("LocalMD5ReferenceStoreTest", null);
+    }
+
+    @AfterMethod
+    public void deleteStore() {
+        IOUtil.deleteDirectoryTree(storeDir);
+    }
+
+    @Test
+    public void testAddAndRead() {
+        final LocalMD5ReferenceStore store = new LocalMD5ReferenceStore(storeDir.toPath());
+        final byte[] bases = "acgtNNACGT".getBytes();
+        final String md5 = store.add(bases);
+        // the caller's bases are left alone:
+        Assert.assertEquals(bases, "acgtNNACGT".getBytes());
+
+        final byte[] upperCased = "ACGTNNACGT".getBytes();
+        Assert.assertEquals(md5, SequenceUtil.calculateMD5String(upperCased, 0, upperCased.length));
+        Assert.assertTrue(store.contains(md5));
+        Assert.assertTrue(store.contains(md5.toUpperCase()));
+        Assert.assertEquals(store.getPath(md5), storeDir.toPath().resolve(md5.substring(0, 2))
+                .resolve(md5.substring(2, 4)).resolve(md5));
+
+        Assert.assertEquals(store.getBases(md5), upperCased);
+        Assert.assertEquals(store.getBases(md5, 2, 4), "GTNN".getBytes());
+        Assert.assertEquals(store.getBases(md5, 8, 10), "GT".getBytes());
+        Assert.assertEquals(store.getBases(md5, 20, 10), new byte[0]);
+
+        // adding the same sequence again is a no-op:
+        Assert.assertEquals(store.add(Arrays.copyOf(bases, bases.length)), md5);
+    }
+
+    @Test
+    public void testMissingSequence() {
+        final LocalMD5ReferenceStore store = new LocalMD5ReferenceStore(storeDir.toPath());
+        final byte[] bases = "ACGT".getBytes();
+        final String md5 = SequenceUtil.calculateMD5String(bases, 0, bases.length);
+        Assert.assertFalse(store.contains(md5));
+        Assert.assertNull(store.map(md5));
+        Assert.assertNull(store.getBases(md5));
+        Assert.assertNull(store.getBases(md5, 0, 2));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRejectsInvalidMD5() {
+        new LocalMD5ReferenceStore(storeDir.toPath()).contains("../../etc/passwd");
+    }
+
+    @Test
+    public void testReferenceSourceUsesStore() {
+        final LocalMD5ReferenceStore store = new LocalMD5ReferenceStore(storeDir.toPath());
+        Assert.assertEquals(store.addAll(FASTA.toPath()), 1);
+
+        final ReferenceSequenceFile fastaFile = ReferenceSequenceFileFactory.getReferenceSequenceFile(FASTA);
+        final ReferenceSequence sequence = fastaFile.nextSequence();
+        final byte[] expected = SequenceUtil.upperCase(sequence.getBases());
+        final String md5 = SequenceUtil.calculateMD5String(expected, 0, expected.length);
+
+        // a source without a reference file can only find the sequence by md5 in the store:
+        final ReferenceCache cache = new ReferenceCache();
+        final ReferenceSource referenceSource = new ReferenceSource(null, cache);
+        referenceSource.setReferenceStore(store);
+        final SAMSequenceRecord record = new SAMSequenceRecord("unknown", expected.length);
+        record.setAttribute(SAMSequenceRecord.MD5_TAG, md5);
+
+        Assert.assertEquals(referenceSource.getReferenceBasesByRegion(record, 1, 3), Arrays.copyOfRange(expected, 1, 4));
+        Assert.assertEquals(referenceSource.getReferenceBases(record, false), expected);
+        // the store is already memory-mapped, its sequences do not take up the cache:
+        Assert.assertEquals(cache.getCachedBytes(), 0);
+
+        referenceSource.setReferenceStore(null);
+        referenceSource.clearCache();
+        Assert.assertNull(referenceSource.getReferenceBases(record, false));
+    }
+}
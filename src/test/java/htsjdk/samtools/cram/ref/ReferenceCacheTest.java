@@ -0,0 +1,112 @@
+package htsjdk.samtools.cram.ref;
+
+import htsjdk.HtsjdkTest;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.reference.InMemoryReferenceSequenceFile;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ReferenceCacheTest extends HtsjdkTest {
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        final ReferenceCache cache = new ReferenceCache(10);
+        // hold on to "b" so that the garbage collector cannot reclaim it once evicted:
+        final byte[] b = new byte[4];
+        cache.put("a", new byte[4]);
+        cache.put("b", b);
+        Assert.assertNotNull(cache.get("a"));
+        cache.put("c", new byte[4]);
+
+        Assert.assertEquals(cache.getCachedBytes(), 8);
+        Assert.assertEquals(cache.getEvictions(), 1);
+
+        // "b" was evicted but is still weakly reachable, getting it again brings it back and evicts "a":
+        Assert.assertSame(cache.get("b"), b);
+        Assert.assertEquals(cache.getCachedBytes(), 8);
+        Assert.assertEquals(cache.getEvictions(), 2);
+    }
+
+    @Test
+    public void testSequencesLargerThanBudgetAreHeldWeakly() {
+        final ReferenceCache cache = new ReferenceCache(10);
+        final byte[] bases = cache.get("a", () -> new byte[11]);
+        Assert.assertEquals(bases.length, 11);
+        Assert.assertEquals(cache.getCachedBytes(), 0);
+
+        // not counted against the budget, but found again while still reachable:
+        Assert.assertSame(cache.get("a"), bases);
+        Assert.assertEquals(cache.getCachedBytes(), 0);
+        Assert.assertEquals(cache.getMisses(), 1);
+    }
+
+    @Test
+    public void testConcurrentRequestsShareOneLoad() throws Exception {
+        final ReferenceCache cache = new ReferenceCache(1000);
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<byte[]>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(() -> cache.get("chr1", () -> {
+                    loads.incrementAndGet();
+                    release.await();
+                    return new byte[100];
+                })));
+            }
+            // give all threads a chance to ask for the same key before the load completes:
+            Thread.sleep(100);
+            release.countDown();
+            final byte[] first = results.get(0).get(10, TimeUnit.SECONDS);
+            for (final Future<byte[]> result : results) {
+                Assert.assertSame(result.get(10, TimeUnit.SECONDS), first);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(loads.get(), 1);
+    }
+
+    @Test
+    public void testSourcesSharingCacheDoNotSeeEachOthersNames() {
+        final ReferenceCache cache = new ReferenceCache(1000);
+        final InMemoryReferenceSequenceFile file1 = new InMemoryReferenceSequenceFile();
+        file1.add("1", "AAAA".getBytes());
+        final InMemoryReferenceSequenceFile file2 = new InMemoryReferenceSequenceFile();
+        file2.add("1", "CCCC".getBytes());
+
+        final SAMSequenceRecord record = new SAMSequenceRecord("1", 4);
+        Assert.assertEquals(new ReferenceSource(file1, cache).getReferenceBases(record, false), "AAAA".getBytes());
+        Assert.assertEquals(new ReferenceSource(file2, cache).getReferenceBases(record, false), "CCCC".getBytes());
+        Assert.assertEquals(cache.getCachedBytes(), 8);
+    }
+
+    @Test
+    public void testPrivateNamespaceReleasedWithOwner() throws InterruptedException {
+        final ReferenceCache cache = new ReferenceCache(1000);
+        Object owner = new Object();
+        final String prefix = cache.privateNamespace(owner);
+        cache.put(prefix + "1", new byte[10]);
+        cache.put("md5:1", new byte[5]);
+        Assert.assertEquals(cache.getCachedBytes(), 15);
+
+        owner = null;
+        for (int i = 0; i < 100 && cache.getCachedBytes() > 5; i++) {
+            System.gc();
+            Thread.sleep(10);
+            cache.get("md5:1");
+        }
+        Assert.assertEquals(cache.getCachedBytes(), 5);
+        Assert.assertNull(cache.get(prefix + "1"));
+    }
+}
@@ -3,10 +3,13 @@ package htsjdk.samtools.cram.ref;
 import htsjdk.HtsjdkTest;
 import htsjdk.samtools.SAMSequenceRecord;
 import htsjdk.samtools.reference.InMemoryReferenceSequenceFile;
+import htsjdk.samtools.reference.ReferenceSequence;
+import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
 import htsjdk.samtools.util.SequenceUtil;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.io.File;
 import java.util.Arrays;
 
 /**
@@ -31,4 +34,126 @@ public class ReferenceSourceTest extends HtsjdkTest{
         Assert.assertNotEquals(refBasesFromSource, originalRefBases);
         Assert.assertEquals(refBasesFromSource, SequenceUtil.upperCase(originalRefBases));
     }
+
+    @Test
+    public void testReferenceBasesByRegion() {
+        final String sequenceName = "1";
+        final byte[] originalRefBases = "acgtACGTnnAACCGGTT".getBytes();
+        final SAMSequenceRecord sequenceRecord = new SAMSequenceRecord(sequenceName, originalRefBases.length);
+
+        final InMemoryReferenceSequenceFile memoryReferenceSequenceFile = new InMemoryReferenceSequenceFile();
+        memoryReferenceSequenceFile.add(sequenceName, Arrays.copyOf(originalRefBases, originalRefBases.length));
+        final ReferenceSource referenceSource = new ReferenceSource(memoryReferenceSequenceFile, new ReferenceCache());
+
+        final byte[] upperCased = SequenceUtil.upperCase(Arrays.copyOf(originalRefBases, originalRefBases.length));
+        Assert.assertEquals(referenceSource.getReferenceBasesByRegion(sequenceRecord, 2, 5),
+                Arrays.copyOfRange(upperCased, 2, 7));
+        // regions running past the end of the sequence are clipped:
+        Assert.assertEquals(referenceSource.getReferenceBasesByRegion(sequenceRecord, 15, 10),
+                Arrays.copyOfRange(upperCased, 15, upperCased.length));
+        Assert.assertEquals(referenceSource.getReferenceBasesByRegion(sequenceRecord, 100, 10), new byte[0]);
+
+        // once the whole sequence is cached regions are cut from it:
+        referenceSource.getReferenceBases(sequenceRecord, false);
+        Assert.assertEquals(referenceSource.getReferenceBasesByRegion(sequenceRecord, 0, 4),
+                Arrays.copyOfRange(upperCased, 0, 4));
+    }
+
+    @Test
+    public void testReferenceBasesByRegionAreCachedInWindows() {
+        final File fasta = new File("src/test/resources/htsjdk/samtools/cram/amb.fa");
+        final ReferenceSequence firstSequence = ReferenceSequenceFileFactory.getReferenceSequenceFile(fasta).nextSequence();
+        final SAMSequenceRecord sequenceRecord = new SAMSequenceRecord(firstSequence.getName(), firstSequence.length());
+        final byte[] wholeSequence = new ReferenceSource(ReferenceSequenceFileFactory.getReferenceSequenceFile(fasta),
+                new ReferenceCache()).getReferenceBases(sequenceRecord, true);
+        final int length = wholeSequence.length;
+
+        final ReferenceCache cache = new ReferenceCache();
+        final ReferenceSource referenceSource = new ReferenceSource(ReferenceSequenceFileFactory.getReferenceSequenceFile(fasta), cache);
+        referenceSource.setRegionWindowSize(10);
+
+        // a region spanning three windows:
+        Assert.assertEquals(referenceSource.getReferenceBasesByRegion(sequenceRecord, 5, 20),
+                Arrays.copyOfRange(wholeSequence, 5, 25));
+        Assert.assertEquals(cache.getMisses(), 3);
+        Assert.assertEquals(cache.getCachedBytes(), 30);
+
+        // regions within the windows already read do not read the file again:
+        Assert.assertEquals(referenceSource.getReferenceBasesByRegion(sequenceRecord, 10, 10),
+                Arrays.copyOfRange(wholeSequence, 10, 20));
+        Assert.assertEquals(cache.getMisses(), 3);
+
+        // the last window of the 31 bases is clipped to the end of the sequence:
+        Assert.assertEquals(length, 31);
+        Assert.assertEquals(referenceSource.getReferenceBasesByRegion(sequenceRecord, 28, 10),
+                Arrays.copyOfRange(wholeSequence, 28, 31));
+        Assert.assertEquals(cache.getMisses(), 4);
+        Assert.assertEquals(cache.getCachedBytes(), 31);
+    }
+
+    @Test
+    public void testReferenceBasesByRegionFromFastaWithoutDictionary() {
+        final File fasta = new File("src/test/resources/htsjdk/samtools/cram/c1.fa");
+        final ReferenceSource referenceSource = new ReferenceSource(fasta);
+        final ReferenceSource wholeSequenceSource = new ReferenceSource(
+                ReferenceSequenceFileFactory.getReferenceSequenceFile(fasta), new ReferenceCache());
+
+        final ReferenceSequence firstSequence = ReferenceSequenceFileFactory.getReferenceSequenceFile(fasta).nextSequence();
+        final SAMSequenceRecord sequenceRecord = new SAMSequenceRecord(firstSequence.getName(), firstSequence.length());
+        final byte[] wholeSequence = wholeSequenceSource.getReferenceBases(sequenceRecord, true);
+
+        final byte[] region = referenceSource.getReferenceBasesByRegion(sequenceRecord, 2, 5);
+        Assert.assertEquals(region, Arrays.copyOfRange(wholeSequence, 2, 7));
+    }
+
+    @Test
+    public void testSourcesOfTheSameFileShareSequences() {
+        final File fasta = new File("src/test/resources/htsjdk/samtools/cram/c1.fa");
+        final ReferenceSequence firstSequence = ReferenceSequenceFileFactory.getReferenceSequenceFile(fasta).nextSequence();
+        final SAMSequenceRecord sequenceRecord = new SAMSequenceRecord(firstSequence.getName(), firstSequence.length());
+
+        final byte[] bases = new ReferenceSource(fasta).getReferenceBases(sequenceRecord, false);
+        Assert.assertSame(new ReferenceSource(new File(fasta.getAbsolutePath())).getReferenceBases(sequenceRecord, false), bases);
+    }
+
+    @Test
+    public void testSequencesLoadedByNameAreNotCheckedAgainstMD5() {
+        final SAMSequenceRecord record = new SAMSequenceRecord("1", 8);
+        record.setAttribute(SAMSequenceRecord.MD5_TAG, SequenceUtil.calculateMD5String("ACGTACGT".getBytes(), 0, 8));
+
+        // sequences found by name are cached under the name only, without hashing them:
+        final ReferenceCache cache = new ReferenceCache(1000);
+        final InMemoryReferenceSequenceFile file = new InMemoryReferenceSequenceFile();
+        file.add("1", "TTTTTTTT".getBytes());
+        Assert.assertEquals(new ReferenceSource(file, cache).getReferenceBases(record, false), "TTTTTTTT".getBytes());
+        Assert.assertNull(new ReferenceSource(null, cache).getReferenceBases(record, false));
+    }
+
+    @Test
+    public void testClearCacheOnlyRemovesOwnSequences() {
+        final ReferenceCache cache = new ReferenceCache(1000);
+        final InMemoryReferenceSequenceFile file1 = new InMemoryReferenceSequenceFile();
+        file1.add("1", "AAAA".getBytes());
+        final InMemoryReferenceSequenceFile file2 = new InMemoryReferenceSequenceFile();
+        file2.add("1", "CCCCCC".getBytes());
+        final ReferenceSource source1 = new ReferenceSource(file1, cache);
+        final ReferenceSource source2 = new ReferenceSource(file2, cache);
+
+        final SAMSequenceRecord record = new SAMSequenceRecord("1", 4);
+        source1.getReferenceBases(record, false);
+        source2.getReferenceBases(record, false);
+        Assert.assertEquals(cache.getCachedBytes(), 10);
+
+        source1.clearCache();
+        Assert.assertEquals(cache.getCachedBytes(), 6);
+    }
+
+    @Test
+    public void testReferenceBasesByRegionMissingSequence() {
+        final InMemoryReferenceSequenceFile memoryReferenceSequenceFile = new InMemoryReferenceSequenceFile();
+        memoryReferenceSequenceFile.add("1", "ACGT".getBytes());
+        final ReferenceSource referenceSource = new ReferenceSource(memoryReferenceSequenceFile, new ReferenceCache());
+
+        Assert.assertNull(referenceSource.getReferenceBasesByRegion(new SAMSequenceRecord("2", 4), 0, 4));
+    }
 }
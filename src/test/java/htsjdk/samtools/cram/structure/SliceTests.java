@@ -12,6 +12,7 @@ import org.testng.annotations.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Iterator;
 
 /**
@@ -43,6 +44,21 @@ public class SliceTests extends HtsjdkTest {
         Assert.assertTrue(slice.validateRefMD5(ref));
     }
 
+    @Test
+    public void test_validateRefRegion() {
+        final byte[] ref = "CCCCCAAAAAGGGGG".getBytes();
+        Slice slice = new Slice();
+        slice.sequenceId=0;
+        slice.alignmentSpan=5;
+        slice.alignmentStart=6;
+        slice.setRefMD5(ref);
+
+        Assert.assertTrue(slice.validateRefMD5(ref));
+        // a region of the reference starting at zero based position 3:
+        Assert.assertTrue(slice.validateRefMD5(Arrays.copyOfRange(ref, 3, 12), 3));
+        Assert.assertFalse(slice.validateRefMD5(Arrays.copyOfRange(ref, 4, 13), 3));
+    }
+
     @Test(expectedExceptions= CRAMException.class)
     public void testFailsMD5Check() throws IOException {
         // auxf.alteredForMD5test.fa has been altered slightly from the original reference
@@ -0,0 +1,230 @@
+package htsjdk.samtools.util;
+
+import htsjdk.HtsjdkTest;
+import htsjdk.samtools.seekablestream.SeekableFileStream;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+public class BGZFBlockCacheTest extends HtsjdkTest {
+
+    private File compressed;
+    private byte[] uncompressed;
+    /** the virtual file pointers of every 1000th byte, and their offsets in the uncompressed data */
+    private final List<long[]> pointers = new ArrayList<>();
+
+    @BeforeClass
+    public void writeCompressedFile() throws IOException {
+        compressed = File.createTempFile("BGZFBlockCacheTest.", ".gz");
+        compressed.deleteOnExit();
+        final Random random = new Random(7);
+        uncompressed = new byte[1000000];
+        for (int i = 0; i < uncompressed.length; i++) {
+            uncompressed[i] = (byte) ('A' + random.nextInt(4));
+        }
+        try (final BlockCompressedOutputStream out = new BlockCompressedOutputStream(compressed)) {
+            out.write(uncompressed);
+        }
+        try (final BlockCompressedInputStream in = new BlockCompressedInputStream(compressed)) {
+            for (int i = 0; i < uncompressed.length; i++) {
+                if (i % 1000 == 0) pointers.add(new long[]{in.getFilePointer(), i});
+                in.read();
+            }
+        }
+    }
+
+    @Test
+    public void testEviction() {
+        final BGZFBlockCache cache = new BGZFBlockCache(100);
+        cache.put("a", 0, new byte[40], 10);
+        cache.put("a", 10, new byte[40], 10);
+        Assert.assertEquals(cache.getCachedBytes(), 80);
+
+        // the first block is now the most recently used
+        Assert.assertEquals(cache.get("a", 0).getCompressedSize(), 10);
+        Assert.assertNull(cache.get("b", 0));
+        cache.put("b", 0, new byte[40], 10);
+        Assert.assertEquals(cache.getCachedBytes(), 80);
+        Assert.assertEquals(cache.getEvictions(), 1);
+        Assert.assertNotNull(cache.get("a", 0));
+        Assert.assertNull(cache.get("a", 10));
+        Assert.assertNotNull(cache.get("b", 0));
+        Assert.assertEquals(cache.getHits(), 3);
+        Assert.assertEquals(cache.getMisses(), 2);
+        Assert.assertEquals(cache.getHitRate(), 0.6, 1e-9);
+
+        // blocks larger than the whole budget are not cached
+        cache.put("c", 0, new byte[101], 10);
+        Assert.assertNull(cache.get("c", 0));
+
+        cache.invalidate("a");
+        Assert.assertNull(cache.get("a", 0));
+        Assert.assertEquals(cache.getCachedBytes(), 40);
+        cache.clear();
+        Assert.assertEquals(cache.getCachedBytes(), 0);
+        Assert.assertNull(cache.get("b", 0));
+    }
+
+    @DataProvider(name = "streams")
+    public Object[][] streams() {
+        final Function<File, BlockCompressedInputStream> sync = file -> {
+            try {
+                return new BlockCompressedInputStream(new SeekableFileStream(file));
+            } catch (IOException e) {
+                throw new RuntimeIOException(e);
+            }
+        };
+        final Function<File, BlockCompressedInputStream> async = file -> {
+            try {
+                return new AsyncBlockCompressedInputStream(new SeekableFileStream(file));
+            } catch (IOException e) {
+                throw new RuntimeIOException(e);
+            }
+        };
+        return new Object[][]{{sync}, {async}};
+    }
+
+    @Test(dataProvider = "streams")
+    public void testCachedStreamsReadTheSameData(final Function<File, BlockCompressedInputStream> open) throws IOException {
+        final BGZFBlockCache cache = new BGZFBlockCache();
+        final byte[] read = new byte[uncompressed.length];
+        try (final BlockCompressedInputStream in = open.apply(compressed)) {
+            in.setBlockCache(cache);
+            Assert.assertEquals(in.read(read), read.length);
+            Assert.assertEquals(read, uncompressed);
+            Assert.assertEquals(in.read(), -1);
+        }
+        final long blocks = cache.getMisses();
+        Assert.assertTrue(blocks > 10);
+
+        // another stream over the same file finds all the blocks in the cache
+        final List<long[]> shuffled = new ArrayList<>(pointers);
+        Collections.shuffle(shuffled, new Random(3));
+        final byte[] buffer = new byte[2500];
+        try (final BlockCompressedInputStream in = open.apply(compressed)) {
+            in.setBlockCache(cache);
+            for (final long[] pointer : shuffled) {
+                in.seek(pointer[0]);
+                final int length = Math.min(buffer.length, uncompressed.length - (int) pointer[1]);
+                Assert.assertEquals(in.read(buffer, 0, length), length);
+                for (int i = 0; i < length; i++) {
+                    Assert.assertEquals(buffer[i], uncompressed[(int) pointer[1] + i]);
+                }
+            }
+            // reading past the cached blocks continues from the right position in the file
+            in.seek(pointers.get(pointers.size() - 1)[0]);
+            Assert.assertEquals(in.read(buffer, 0, 1000), 1000);
+            Assert.assertEquals(in.read(), -1);
+        }
+        Assert.assertEquals(cache.getMisses(), blocks);
+        Assert.assertTrue(cache.getHits() >= blocks);
+    }
+
+    /** A file stream that records whether its position was used by two threads at the same time */
+    private static class ConcurrencyCheckingStream extends SeekableFileStream {
+        private final AtomicInteger users = new AtomicInteger();
+        private volatile boolean overlapped = false;
+
+        ConcurrencyCheckingStream(final File file) throws FileNotFoundException {
+            super(file);
+        }
+
+        private void enter() throws IOException {
+            if (users.getAndIncrement() != 0) overlapped = true;
+            try {
+                // widen the window for another thread
+                Thread.sleep(1);
+            } catch (final InterruptedException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public void seek(final long position) throws IOException {
+            try {
+                enter();
+                super.seek(position);
+            } finally {
+                users.decrementAndGet();
+            }
+        }
+
+        @Override
+        public boolean eof() throws IOException {
+            try {
+                enter();
+                return super.eof();
+            } finally {
+                users.decrementAndGet();
+            }
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            try {
+                enter();
+                return super.read(buffer, offset, length);
+            } finally {
+                users.decrementAndGet();
+            }
+        }
+    }
+
+    @Test
+    public void testAsyncCachedSeekToEndOfLastBlock() throws IOException {
+        final BGZFBlockCache cache = new BGZFBlockCache();
+        final long[] last = pointers.get(pointers.size() - 1);
+        final ConcurrencyCheckingStream file = new ConcurrencyCheckingStream(compressed);
+        try (final BlockCompressedInputStream in = new AsyncBlockCompressedInputStream(file)) {
+            in.setBlockCache(cache);
+            // fill the cache, and find the pointer to the end of the last block
+            Assert.assertEquals(in.read(new byte[uncompressed.length]), uncompressed.length);
+            in.seek(last[0]);
+            Assert.assertEquals(in.skip(uncompressed.length - 1 - last[1]), uncompressed.length - 1 - last[1]);
+            final long lastByte = in.getFilePointer();
+            final long end = BlockCompressedFilePointerUtil.makeFilePointer(
+                    BlockCompressedFilePointerUtil.getBlockAddress(lastByte), BlockCompressedFilePointerUtil.getBlockOffset(lastByte) + 1);
+
+            // seeking to the end checks for the end of the file while the next block is read ahead
+            final Random random = new Random(5);
+            for (int i = 0; i < 50; i++) {
+                in.seek(end);
+                Assert.assertEquals(in.read(), -1);
+                final long[] pointer = pointers.get(random.nextInt(pointers.size()));
+                in.seek(pointer[0]);
+                Assert.assertEquals(in.read(), Byte.toUnsignedInt(uncompressed[(int) pointer[1]]));
+            }
+        }
+        Assert.assertFalse(file.overlapped, "the file was used by two threads at the same time");
+    }
+
+    @Test
+    public void testSmallCacheFallsBackToInflating() throws IOException {
+        // room for a single block, so that blocks are evicted all the time
+        final BGZFBlockCache cache = new BGZFBlockCache(BlockCompressedStreamConstants.DEFAULT_UNCOMPRESSED_BLOCK_SIZE);
+        try (final BlockCompressedInputStream in = new BlockCompressedInputStream(compressed)) {
+            in.setBlockCache(cache);
+            for (int i = pointers.size() - 1; i >= 0; i -= 37) {
+                in.seek(pointers.get(i)[0]);
+                Assert.assertEquals(in.read(), Byte.toUnsignedInt(uncompressed[(int) pointers.get(i)[1]]));
+            }
+            in.seek(0);
+            final byte[] read = new byte[uncompressed.length];
+            Assert.assertEquals(in.read(read), read.length);
+            Assert.assertEquals(read, uncompressed);
+        }
+        Assert.assertTrue(cache.getEvictions() > 0);
+        Assert.assertTrue(cache.getCachedBytes() <= cache.getMaxBytes());
+    }
+}
@@ -0,0 +1,114 @@
+package htsjdk.samtools.util;
+
+import htsjdk.HtsjdkTest;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMSequenceRecord;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+public class IntervalIndexTest extends HtsjdkTest {
+
+    private static List<Interval> randomIntervals(final Random random, final int count, final int maxLength) {
+        final List<Interval> intervals = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final int start = 1 + random.nextInt(100000);
+            // mostly short intervals, and a few very long ones
+            final int length = random.nextInt(20) == 0 ? random.nextInt(50000) : random.nextInt(maxLength);
+            intervals.add(new Interval(random.nextBoolean() ? "chr1" : "chr2", start, start + length, false, "i" + i));
+        }
+        return intervals;
+    }
+
+    /** the overlaps, in the order the index returns them */
+    private static List<Interval> bruteForceOverlaps(final List<Interval> intervals, final Locatable query) {
+        return intervals.stream()
+                .filter(i -> i.getContig().equals(query.getContig()) && i.getStart() <= query.getEnd() && i.getEnd() >= query.getStart())
+                .sorted(Comparator.comparingInt(Interval::getStart))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testRandomQueries() {
+        final Random random = new Random(17);
+        final List<Interval> intervals = randomIntervals(random, 5000, 500);
+        final IntervalIndex<Interval> index = IntervalIndex.create(intervals);
+        final OverlapDetector<Interval> detector = OverlapDetector.create(intervals);
+        Assert.assertEquals(index.size(), intervals.size());
+
+        for (final Interval query : randomIntervals(random, 2000, 2000)) {
+            final List<Interval> overlaps = index.getOverlaps(query);
+            Assert.assertEquals(overlaps, bruteForceOverlaps(intervals, query));
+            Assert.assertEquals(new HashSet<>(overlaps), detector.getOverlaps(query));
+            Assert.assertEquals(index.overlapsAny(query), !overlaps.isEmpty());
+        }
+    }
+
+    @Test
+    public void testSweep() {
+        final Random random = new Random(23);
+        final List<Interval> intervals = randomIntervals(random, 5000, 500);
+        final IntervalIndex<Interval> index = IntervalIndex.create(intervals);
+
+        final List<Interval> queries = randomIntervals(random, 3000, 3000);
+        queries.sort(Comparator.comparing(Interval::getContig).thenComparingInt(Interval::getStart));
+        final IntervalIndex<Interval>.Sweep sweep = index.sweep();
+        final IntervalIndex<Interval>.Sweep anySweep = index.sweep();
+        for (final Interval query : queries) {
+            final List<Interval> expected = bruteForceOverlaps(intervals, query);
+            Assert.assertEquals(sweep.getOverlaps(query), expected);
+            Assert.assertEquals(anySweep.overlapsAny(query), !expected.isEmpty());
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnsortedSweep() {
+        final IntervalIndex<Interval> index = IntervalIndex.create(Collections.singletonList(new Interval("chr1", 10, 20)));
+        final IntervalIndex<Interval>.Sweep sweep = index.sweep();
+        Assert.assertTrue(sweep.overlapsAny("chr1", 15, 15));
+        Assert.assertFalse(sweep.overlapsAny("chr2", 1, 100));
+        // back to the first contig, which starts over
+        Assert.assertTrue(sweep.overlapsAny("chr1", 12, 12));
+        sweep.overlapsAny("chr1", 11, 11);
+    }
+
+    @Test
+    public void testEdgeCases() {
+        final IntervalIndex<String> index = new IntervalIndex.Builder<String>()
+                .add("chr1", 10, 20, "a")
+                .add("chr1", 10, 20, "b")
+                .add("chr1", 21, 20, "empty")
+                .add("chr1", 1, 5, "c")
+                .build();
+        Assert.assertEquals(index.size(), 3);
+        final List<String> overlaps = new ArrayList<>();
+        index.forEachOverlap("chr1", 5, 10, overlaps::add);
+        Assert.assertEquals(overlaps, Arrays.asList("c", "a", "b"));
+        Assert.assertTrue(index.overlapsAny("chr1", 20, 30));
+        Assert.assertFalse(index.overlapsAny("chr1", 21, 30));
+        Assert.assertFalse(index.overlapsAny("chr1", 6, 9));
+        Assert.assertFalse(index.overlapsAny("chr1", 15, 14));
+        Assert.assertFalse(index.overlapsAny("chrX", 1, 100));
+        Assert.assertEquals(new IntervalIndex.Builder<String>().build().size(), 0);
+    }
+
+    @Test
+    public void testFromIntervalList() {
+        final SAMFileHeader header = new SAMFileHeader();
+        header.addSequence(new SAMSequenceRecord("chr1", 1000));
+        final IntervalList list = new IntervalList(header);
+        list.add(new Interval("chr1", 100, 200));
+        list.add(new Interval("chr1", 150, 300));
+        final IntervalIndex<Interval> index = IntervalIndex.create(list);
+        Assert.assertEquals(index.getOverlaps(new Interval("chr1", 250, 250)), Collections.singletonList(new Interval("chr1", 150, 300)));
+        Assert.assertEquals(index.getOverlaps(new Interval("chr1", 1, 1000)).size(), 2);
+    }
+}
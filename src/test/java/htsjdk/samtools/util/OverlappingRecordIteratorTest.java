@@ -0,0 +1,182 @@
+package htsjdk.samtools.util;
+
+import htsjdk.HtsjdkTest;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.tribble.AbstractFeatureReader;
+import htsjdk.tribble.FeatureReader;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFCodec;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+public class OverlappingRecordIteratorTest extends HtsjdkTest {
+    private static final File BAM = new File("src/test/resources/htsjdk/samtools/BAMFileIndexTest/index_test.bam");
+    private static final String VCF = "src/test/resources/htsjdk/tribble/tabix/YRI.trio.2010_07.indel.sites.vcf.gz";
+
+    private static List<Interval> randomIntervals(final SAMSequenceDictionary dictionary, final int count, final int maxLength) {
+        final Random random = new Random(count);
+        final List<Interval> intervals = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final SAMSequenceRecord sequence = dictionary.getSequence(random.nextInt(dictionary.size()));
+            final int start = 1 + random.nextInt(sequence.getSequenceLength());
+            intervals.add(new Interval(sequence.getSequenceName(), start, start + random.nextInt(maxLength)));
+        }
+        return intervals;
+    }
+
+    private static boolean overlapsAny(final Locatable record, final List<Interval> intervals) {
+        return record.getContig() != null && intervals.stream().anyMatch(i -> i.overlaps(record));
+    }
+
+    private static <T> List<T> drain(final CloseableIterator<T> iterator) {
+        final List<T> list = new ArrayList<>();
+        while (iterator.hasNext()) {
+            list.add(iterator.next());
+        }
+        iterator.close();
+        return list;
+    }
+
+    @DataProvider(name = "intervals")
+    public Object[][] intervals() {
+        return new Object[][]{
+                {5, 1000},
+                {50, 100},
+                {50, 500000},
+                {2000, 20},
+        };
+    }
+
+    @Test(dataProvider = "intervals")
+    public void testSamRecords(final int count, final int maxLength) throws IOException {
+        try (final SamReader reader = SamReaderFactory.makeDefault().open(BAM)) {
+            final List<SAMRecord> records = drain(reader.iterator());
+            // intervals next to the records, as most contigs of the file have no record
+            final Random random = new Random(maxLength);
+            final List<Interval> intervals = new ArrayList<>();
+            while (intervals.size() < count) {
+                final SAMRecord record = records.get(random.nextInt(records.size()));
+                if (record.getContig() != null) {
+                    final int start = Math.max(1, record.getStart() + random.nextInt(2 * maxLength) - maxLength);
+                    intervals.add(new Interval(record.getContig(), start, start + random.nextInt(maxLength)));
+                }
+            }
+            final List<String> expected = new ArrayList<>();
+            for (final SAMRecord record : records) {
+                if (overlapsAny(record, intervals)) {
+                    expected.add(record.getSAMString());
+                }
+            }
+            Assert.assertFalse(expected.isEmpty());
+
+            for (final int jumpDistance : new int[]{0, 1000, OverlappingRecordIterator.DEFAULT_JUMP_DISTANCE, Integer.MAX_VALUE}) {
+                final List<String> actual = new ArrayList<>();
+                for (final SAMRecord record : drain(OverlappingRecordIterator.overlapping(reader, intervals, jumpDistance))) {
+                    actual.add(record.getSAMString());
+                }
+                Assert.assertEquals(actual, expected, "jump distance " + jumpDistance);
+            }
+
+            final List<String> sequential = new ArrayList<>();
+            for (final SAMRecord record : drain(new OverlappingRecordIterator<>(reader.iterator(), intervals, reader.getFileHeader().getSequenceDictionary()))) {
+                sequential.add(record.getSAMString());
+            }
+            Assert.assertEquals(sequential, expected);
+        }
+    }
+
+    @Test
+    public void testVariants() throws IOException {
+        try (final FeatureReader<VariantContext> reader = AbstractFeatureReader.getFeatureReader(VCF, new VCFCodec(), true)) {
+            final SAMSequenceDictionary dictionary = new SAMSequenceDictionary(
+                    Collections.singletonList(new SAMSequenceRecord("1", 250000000)));
+            final List<Interval> intervals = randomIntervals(dictionary, 200, 200000);
+            final List<String> expected = new ArrayList<>();
+            for (final VariantContext vc : reader.iterator()) {
+                if (overlapsAny(vc, intervals)) {
+                    expected.add(vc.toStringDecodeGenotypes());
+                }
+            }
+            Assert.assertFalse(expected.isEmpty());
+
+            final List<String> actual = new ArrayList<>();
+            final OverlappingRecordIterator<VariantContext> iterator = new OverlappingRecordIterator<>(
+                    (contig, start) -> {
+                        try {
+                            return reader.query(contig, start, Integer.MAX_VALUE);
+                        } catch (IOException e) {
+                            throw new RuntimeIOException(e);
+                        }
+                    }, intervals, dictionary, 10000);
+            for (final VariantContext vc : drain(iterator)) {
+                actual.add(vc.toStringDecodeGenotypes());
+            }
+            Assert.assertEquals(actual, expected);
+        }
+    }
+
+    @Test
+    public void testLongRecordsBeforeJump() {
+        // records spanning more than the jump distance, at the same start as the record that triggers the jump
+        final SAMSequenceDictionary dictionary = new SAMSequenceDictionary(Collections.singletonList(new SAMSequenceRecord("c", 1000000)));
+        final List<Interval> records = Arrays.asList(
+                new Interval("c", 100, 200000, false, "long1"),
+                new Interval("c", 100, 150000, false, "long2"),
+                new Interval("c", 100, 110, false, "short"),
+                new Interval("c", 100, 300000, false, "long3"),
+                new Interval("c", 500, 100005, false, "long4"));
+        final List<Interval> intervals = Arrays.asList(new Interval("c", 90, 95), new Interval("c", 100000, 100010));
+        final OverlappingRecordIterator.Query<Interval> query = (contig, start) -> new CloseableIterator<Interval>() {
+            private final Iterator<Interval> iterator = records.stream()
+                    .filter(r -> r.getContig().equals(contig) && r.getEnd() >= start).iterator();
+
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Interval next() {
+                return iterator.next();
+            }
+        };
+        final List<String> actual = new ArrayList<>();
+        for (final Interval record : drain(new OverlappingRecordIterator<>(query, intervals, dictionary,
+                OverlappingRecordIterator.DEFAULT_JUMP_DISTANCE))) {
+            actual.add(record.getName());
+        }
+        Assert.assertEquals(actual, Arrays.asList("long1", "long2", "long3", "long4"));
+    }
+
+    @Test
+    public void testNoIntervals() throws IOException {
+        try (final SamReader reader = SamReaderFactory.makeDefault().open(BAM)) {
+            Assert.assertFalse(OverlappingRecordIterator.overlapping(reader, Collections.emptyList()).hasNext());
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnknownContig() throws IOException {
+        try (final SamReader reader = SamReaderFactory.makeDefault().open(BAM)) {
+            OverlappingRecordIterator.overlapping(reader, Collections.singletonList(new Interval("chrNope", 1, 10)));
+        }
+    }
+}
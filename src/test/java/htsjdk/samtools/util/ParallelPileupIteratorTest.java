@@ -0,0 +1,169 @@
+package htsjdk.samtools.util;
+
+import htsjdk.HtsjdkTest;
+import htsjdk.samtools.SAMException;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.filter.SamRecordFilter;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.function.Supplier;
+
+public class ParallelPileupIteratorTest extends HtsjdkTest {
+    private static final File BAM = new File("src/test/resources/htsjdk/samtools/BAMFileIndexTest/index_test.bam");
+
+    private static final Supplier<SamReader> READERS = () -> SamReaderFactory.makeDefault().open(BAM);
+
+    /**
+     * chrM, and a few hundred bases around the first records of chr1 and chr2
+     */
+    private static IntervalList intervals() {
+        try (final SamReader reader = READERS.get()) {
+            final SAMFileHeader header = reader.getFileHeader();
+            final IntervalList intervals = new IntervalList(header);
+            intervals.add(new Interval("chrM", 1, header.getSequence("chrM").getSequenceLength()));
+            for (final String contig : new String[]{"chr1", "chr2"}) {
+                try (final SAMRecordIterator records = reader.queryOverlapping(contig, 1, 0)) {
+                    for (int i = 0; i < 50 && records.hasNext(); i++) {
+                        final SAMRecord rec = records.next();
+                        intervals.add(new Interval(contig, Math.max(1, rec.getAlignmentStart() - 300), rec.getAlignmentEnd() + 300));
+                    }
+                }
+            }
+            return intervals;
+        } catch (final IOException e) {
+            throw new RuntimeIOException(e);
+        }
+    }
+
+    @DataProvider(name = "settings")
+    public Object[][] settings() {
+        return new Object[][]{
+                // threads, shard size, base quality cutoff, mapping quality cutoff
+                {1, ParallelPileupIterator.DEFAULT_SHARD_SIZE, Integer.MIN_VALUE, Integer.MIN_VALUE},
+                {4, 500, Integer.MIN_VALUE, Integer.MIN_VALUE},
+                {3, 37, 20, 30},
+        };
+    }
+
+    @Test(dataProvider = "settings")
+    public void testSameCountsAsSamLocusIterator(final int threads, final int shardSize, final int baseQualityCutoff,
+                                                 final int mappingQualityCutoff) throws Exception {
+        final IntervalList intervals = intervals();
+        try (final SamReader reader = READERS.get();
+             final ParallelPileupIterator pileup = new ParallelPileupIterator(READERS, intervals, threads, shardSize)) {
+            final SamLocusIterator loci = new SamLocusIterator(reader, intervals);
+            loci.setEmitUncoveredLoci(true);
+            loci.setIncludeIndels(true);
+            loci.setQualityScoreCutoff(baseQualityCutoff);
+            loci.setMappingQualityScoreCutoff(mappingQualityCutoff);
+            pileup.setQualityScoreCutoff(baseQualityCutoff);
+            pileup.setMappingQualityScoreCutoff(mappingQualityCutoff);
+
+            final Iterator<SamLocusIterator.LocusInfo> expected = loci.iterator();
+            long covered = 0;
+            String lastContig = null;
+            int lastEnd = 0;
+            while (pileup.hasNext()) {
+                final ParallelPileupIterator.Shard shard = pileup.next();
+                Assert.assertTrue(shard.getEnd() - shard.getStart() < shardSize);
+                Assert.assertTrue(!shard.getContig().equals(lastContig) || shard.getStart() > lastEnd, shard.toString());
+                lastContig = shard.getContig();
+                lastEnd = shard.getEnd();
+
+                for (int position = shard.getStart(); position <= shard.getEnd(); position++) {
+                    Assert.assertTrue(expected.hasNext());
+                    final SamLocusIterator.LocusInfo locus = expected.next();
+                    Assert.assertEquals(shard.getContig(), locus.getSequenceName());
+                    Assert.assertEquals(position, locus.getPosition());
+
+                    final int[] bases = new int[ParallelPileupIterator.BASES.length];
+                    int negative = 0;
+                    int qualities = 0;
+                    for (final SamLocusIterator.RecordAndOffset recordAndOffset : locus.getRecordAndOffsets()) {
+                        bases[ParallelPileupIterator.baseIndex(recordAndOffset.getReadBase())]++;
+                        if (recordAndOffset.getRecord().getReadNegativeStrandFlag()) negative++;
+                        qualities += recordAndOffset.getBaseQuality();
+                    }
+                    Assert.assertEquals(shard.getDepth(position), locus.getRecordAndOffsets().size(), locus.toString());
+                    Assert.assertEquals(shard.getBaseCounts(position), bases);
+                    Assert.assertEquals(shard.getNegativeStrandDepth(position), negative);
+                    Assert.assertEquals(shard.getBaseQualitySum(position), qualities);
+                    Assert.assertEquals(shard.getDeletionCount(position), locus.getDeletedInRecord().size());
+                    Assert.assertTrue(shard.getRecordAndOffsets(position).isEmpty());
+                    covered += shard.getDepth(position);
+                }
+            }
+            Assert.assertFalse(expected.hasNext());
+            Assert.assertTrue(covered > 1000, "Only " + covered + " bases");
+        }
+    }
+
+    @Test
+    public void testKeepRecordsAndHistogram() {
+        final IntervalList intervals = intervals();
+        try (final ParallelPileupIterator pileup = new ParallelPileupIterator(READERS, intervals, 2, 1000)) {
+            pileup.setKeepRecords(true);
+            pileup.setSamFilters(Collections.emptyList());
+            while (pileup.hasNext()) {
+                final ParallelPileupIterator.Shard shard = pileup.next();
+                long depth = 0;
+                for (int position = shard.getStart(); position <= shard.getEnd(); position++) {
+                    Assert.assertEquals(shard.getRecordAndOffsets(position).size(), shard.getDepth(position));
+                    for (final SamLocusIterator.RecordAndOffset recordAndOffset : shard.getRecordAndOffsets(position)) {
+                        Assert.assertEquals(recordAndOffset.getRecord().getReferencePositionAtReadPosition(recordAndOffset.getOffset() + 1), position);
+                    }
+                    depth += shard.getDepth(position);
+                }
+                long histogramTotal = 0;
+                for (final long count : shard.getQualityHistogram()) {
+                    histogramTotal += count;
+                }
+                Assert.assertEquals(histogramTotal, depth);
+                if (depth > 0) {
+                    Assert.assertTrue(shard.getRecordCount() > 0);
+                }
+            }
+            Assert.assertThrows(IllegalStateException.class, () -> pileup.setKeepRecords(false));
+        }
+    }
+
+    @Test
+    public void testFiltersAreApplied() {
+        final IntervalList intervals = intervals();
+        final SamRecordFilter everything = new SamRecordFilter() {
+            @Override
+            public boolean filterOut(final SAMRecord record) {
+                return true;
+            }
+
+            @Override
+            public boolean filterOut(final SAMRecord first, final SAMRecord second) {
+                return true;
+            }
+        };
+        try (final ParallelPileupIterator pileup = new ParallelPileupIterator(READERS, intervals, 2, 5000)) {
+            pileup.setSamFilters(Collections.singletonList(everything));
+            while (pileup.hasNext()) {
+                final ParallelPileupIterator.Shard shard = pileup.next();
+                Assert.assertEquals(shard.getRecordCount(), 0);
+                Assert.assertThrows(IllegalArgumentException.class, () -> shard.getDepth(shard.getEnd() + 1));
+            }
+        }
+    }
+
+    @Test(expectedExceptions = SAMException.class)
+    public void testIndexIsRequired() {
+        new ParallelPileupIterator(() -> SamReaderFactory.makeDefault().open(
+                new File("src/test/resources/htsjdk/samtools/compressed.bam")), 2);
+    }
+}
@@ -103,6 +103,156 @@ public class SortingCollectionTest extends HtsjdkTest {
         Assert.assertEquals(tmpDir().list().length, 0);
     }
 
+    @Test(dataProvider = "test1")
+    public void testSpillInBackground(final String testName, final int numStringsToGenerate, final int maxRecordsInRam) {
+        final String[] strings = new String[numStringsToGenerate];
+        int numStringsGenerated = 0;
+        final SortingCollection<String> sortingCollection = makeSortingCollection(maxRecordsInRam);
+        sortingCollection.setSpillInBackground(true);
+        Assert.assertTrue(sortingCollection.isSpillInBackground());
+        for (final String s : new RandomStringGenerator(numStringsToGenerate)) {
+            sortingCollection.add(s);
+            strings[numStringsGenerated++] = s;
+        }
+        Arrays.sort(strings, new StringComparator());
+
+        sortingCollection.setDestructiveIteration(false);
+        assertIteratorEqualsList(strings, sortingCollection.iterator());
+        Assert.assertEquals(tmpDirIsEmpty(), numStringsToGenerate <= maxRecordsInRam);
+        assertIteratorEqualsList(strings, sortingCollection.iterator());
+
+        sortingCollection.cleanup();
+        Assert.assertEquals(tmpDir().list().length, 0);
+    }
+
+    @DataProvider(name = "mergeFiles")
+    public Object[][] createMergeFilesData() {
+        return new Object[][] {
+                {false, 2},
+                {false, 3},
+                {true, 7},
+                {true, 100},
+        };
+    }
+
+    /**
+     * Spill many more files than can be merged at once, with a comparator that only looks at the first character so
+     * that many records compare equal, and confirm that they come out in the order a stable sort would give.
+     */
+    @Test(dataProvider = "mergeFiles")
+    public void testMergeFilesInPasses(final boolean spillInBackground, final int maxFilesToMerge) {
+        final Comparator<String> firstCharacter = Comparator.comparingInt(s -> s.charAt(0));
+        final SortingCollection<String> sortingCollection =
+                SortingCollection.newInstance(String.class, new StringCodec(), firstCharacter, 10, tmpDir().toPath());
+        sortingCollection.setSpillInBackground(spillInBackground);
+        sortingCollection.setMaxFilesToMerge(maxFilesToMerge);
+        final String[] strings = new String[1005];
+        int numStringsGenerated = 0;
+        for (final String s : new RandomStringGenerator(strings.length)) {
+            sortingCollection.add(s);
+            strings[numStringsGenerated++] = s;
+        }
+        Arrays.sort(strings, firstCharacter);
+
+        sortingCollection.setDestructiveIteration(false);
+        assertIteratorEqualsList(strings, sortingCollection.iterator());
+        Assert.assertTrue(tmpDir().list().length <= maxFilesToMerge);
+        assertIteratorEqualsList(strings, sortingCollection.iterator());
+
+        sortingCollection.cleanup();
+        Assert.assertEquals(tmpDir().list().length, 0);
+    }
+
+    @DataProvider(name = "offHeap")
+    public Object[][] createOffHeapData() {
+        final SortingCollection.KeyPrefix<String> firstCharacter = s -> s.charAt(0);
+        final SortingCollection.KeyPrefix<String> twoCharacters = s -> s.charAt(0) << 16 | (s.length() > 1 ? s.charAt(1) : 0);
+        return new Object[][] {
+                {"empty", 0, 1000, null, false},
+                {"singleton", 1, 1000, firstCharacter, false},
+                {"in memory", 100, 10000, firstCharacter, false},
+                {"in memory without key prefix", 100, 10000, null, false},
+                {"spilled", 1000, 1000, firstCharacter, false},
+                {"spilled without key prefix", 1000, 1000, null, false},
+                {"spilled in background", 1000, 1000, firstCharacter, true},
+                {"longer prefix in background", 1000, 1000, twoCharacters, true},
+                {"budget smaller than a record", 100, 1, firstCharacter, false},
+        };
+    }
+
+    @Test(dataProvider = "offHeap")
+    public void testOffHeap(final String testName, final int numStringsToGenerate, final long maxBytesInRam,
+                            final SortingCollection.KeyPrefix<String> keyPrefix, final boolean spillInBackground) {
+        final String[] strings = new String[numStringsToGenerate];
+        int numStringsGenerated = 0;
+        final SortingCollection<String> sortingCollection = makeSortingCollection(10);
+        sortingCollection.setMaxBytesInRam(maxBytesInRam, keyPrefix);
+        sortingCollection.setSpillInBackground(spillInBackground);
+        sortingCollection.setMaxFilesToMerge(10);
+        Assert.assertEquals(sortingCollection.getMaxBytesInRam(), maxBytesInRam);
+        long bytes = 0;
+        for (final String s : new RandomStringGenerator(numStringsToGenerate)) {
+            sortingCollection.add(s);
+            strings[numStringsGenerated++] = s;
+            bytes += 4 + s.length();
+        }
+        Arrays.sort(strings, new StringComparator());
+
+        Assert.assertEquals(tmpDirIsEmpty(), bytes <= maxBytesInRam);
+        sortingCollection.setDestructiveIteration(false);
+        assertIteratorEqualsList(strings, sortingCollection.iterator());
+        assertIteratorEqualsList(strings, sortingCollection.iterator());
+
+        sortingCollection.cleanup();
+        Assert.assertEquals(tmpDir().list().length, 0);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testMaxBytesInRamAfterAdding() {
+        final SortingCollection<String> sortingCollection = makeSortingCollection(10);
+        sortingCollection.add("a");
+        sortingCollection.setMaxBytesInRam(1000, null);
+    }
+
+    @Test
+    public void testTempStreamCodecPerSpill() {
+        final String[] strings = new String[250];
+        int numStringsGenerated = 0;
+        final SortingCollection<String> sortingCollection = makeSortingCollection(100);
+        sortingCollection.getTempStreamFactory().setCodec(TempStreamFactory.deflate(1));
+        for (final String s : new RandomStringGenerator(strings.length)) {
+            if (numStringsGenerated == 150) {
+                sortingCollection.getTempStreamFactory().setCodec(TempStreamFactory.NO_COMPRESSION);
+            }
+            sortingCollection.add(s);
+            strings[numStringsGenerated++] = s;
+        }
+        Arrays.sort(strings, new StringComparator());
+
+        assertIteratorEqualsList(strings, sortingCollection.iterator());
+        final TempStreamFactory factory = sortingCollection.getTempStreamFactory();
+        Assert.assertEquals(factory.getFilesWritten(), 3);
+        Assert.assertTrue(factory.getBytesWritten() > 0);
+        Assert.assertTrue(factory.getCompressedBytesWritten() > 0);
+        sortingCollection.cleanup();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testTooFewFilesToMerge() {
+        makeSortingCollection(10).setMaxFilesToMerge(1);
+    }
+
+    @Test
+    public void testCleanupWhileSpilling() {
+        final SortingCollection<String> sortingCollection = makeSortingCollection(10);
+        sortingCollection.setSpillInBackground(true);
+        for (final String s : new RandomStringGenerator(25)) {
+            sortingCollection.add(s);
+        }
+        sortingCollection.cleanup();
+        Assert.assertEquals(tmpDir().list().length, 0);
+    }
+
     private void assertIteratorEqualsList(final String[] strings, final Iterator<String> sortingCollection) {
         int i = 0;
         while (sortingCollection.hasNext()) {
@@ -0,0 +1,164 @@
+package htsjdk.samtools.util;
+
+import htsjdk.HtsjdkTest;
+import htsjdk.samtools.SAMException;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+public class TempStreamFactoryTest extends HtsjdkTest {
+
+    /**
+     * A codec found by the ServiceLoader, which inverts every byte.
+     */
+    public static class InvertingCodec implements TempStreamCodec {
+        @Override
+        public String getName() {
+            return "test-inverting";
+        }
+
+        @Override
+        public OutputStream wrapOutputStream(final OutputStream outputStream) {
+            return new FilterOutputStream(outputStream) {
+                @Override
+                public void write(final int b) throws IOException {
+                    out.write(~b);
+                }
+            };
+        }
+
+        @Override
+        public InputStream wrapInputStream(final InputStream inputStream) {
+            return new FilterInputStream(inputStream) {
+                @Override
+                public int read() throws IOException {
+                    final int b = in.read();
+                    return b < 0 ? b : ~b & 0xFF;
+                }
+
+                @Override
+                public int read(final byte[] b, final int off, final int len) throws IOException {
+                    final int n = in.read(b, off, len);
+                    for (int i = 0; i < n; i++) {
+                        b[off + i] = (byte) ~b[off + i];
+                    }
+                    return n;
+                }
+            };
+        }
+    }
+
+    private static byte[] makeData() {
+        // compressible data: random bases
+        final Random random = new Random(42);
+        final byte[] data = new byte[300000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) "ACGT".charAt(random.nextInt(4));
+        }
+        return data;
+    }
+
+    private static byte[] write(final TempStreamFactory factory, final byte[] data, final int bufferSize) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final OutputStream os = factory.wrapTempOutputStream(bytes, bufferSize)) {
+            os.write(data, 0, 1000);
+            for (int i = 1000; i < 2000; i++) {
+                os.write(data[i]);
+            }
+            os.write(data, 2000, data.length - 2000);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] read(final TempStreamFactory factory, final byte[] file, final int bufferSize) throws IOException {
+        try (final InputStream is = factory.wrapTempInputStream(new ByteArrayInputStream(file), bufferSize)) {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[777];
+            int n;
+            while ((n = is.read(buffer)) > 0) {
+                bytes.write(buffer, 0, n);
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+    @DataProvider(name = "codecs")
+    public Object[][] codecs() {
+        return new Object[][]{
+                {TempStreamFactory.NO_COMPRESSION, 0},
+                {TempStreamFactory.NO_COMPRESSION, 1024},
+                {TempStreamFactory.SNAPPY, 1024},
+                {TempStreamFactory.SNAPPY_FRAMED, 0},
+                {TempStreamFactory.deflate(1), 1024},
+                {TempStreamFactory.deflate(9), 0},
+                {TempStreamFactory.getCodec("test-inverting"), 1024},
+        };
+    }
+
+    @Test(dataProvider = "codecs")
+    public void testRoundTrip(final TempStreamCodec codec, final int bufferSize) throws IOException {
+        final byte[] data = makeData();
+        final TempStreamFactory factory = new TempStreamFactory(codec);
+        final byte[] file = write(factory, data, bufferSize);
+        Assert.assertEquals(read(factory, file, bufferSize), data);
+        // the file records its codec, so any factory reads it
+        Assert.assertEquals(read(new TempStreamFactory(TempStreamFactory.NO_COMPRESSION), file, 0), data);
+
+        Assert.assertEquals(factory.getFilesWritten(), 1);
+        Assert.assertEquals(factory.getBytesWritten(), data.length);
+        Assert.assertEquals(factory.getCompressedBytesWritten(), file.length);
+        if (codec.getName().startsWith("none") || codec.getName().startsWith("test")) {
+            Assert.assertTrue(factory.getCompressionRatio() < 1);
+        } else {
+            Assert.assertTrue(factory.getCompressionRatio() > 2, "ratio " + factory.getCompressionRatio());
+        }
+        Assert.assertTrue(factory.getWriteMegabytesPerSecond() > 0);
+    }
+
+    @Test
+    public void testCodecPerFile() throws IOException {
+        final byte[] data = makeData();
+        final TempStreamFactory factory = new TempStreamFactory(TempStreamFactory.deflate(6));
+        final byte[] deflated = write(factory, data, 0);
+        factory.setCodec(TempStreamFactory.NO_COMPRESSION);
+        final byte[] uncompressed = write(factory, data, 0);
+        Assert.assertTrue(deflated.length < uncompressed.length);
+        Assert.assertEquals(read(factory, deflated, 0), data);
+        Assert.assertEquals(read(factory, uncompressed, 0), data);
+        Assert.assertEquals(factory.getFilesWritten(), 2);
+        Assert.assertEquals(factory.getBytesWritten(), 2L * data.length);
+        Assert.assertEquals(factory.getCompressedBytesWritten(), (long) deflated.length + uncompressed.length);
+    }
+
+    @Test
+    public void testMetricsBeforeWriting() {
+        final TempStreamFactory factory = new TempStreamFactory();
+        Assert.assertEquals(factory.getCodec(), TempStreamFactory.getDefaultCodec());
+        Assert.assertEquals(factory.getCompressionRatio(), 0.0);
+        Assert.assertEquals(factory.getWriteMegabytesPerSecond(), 0.0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnknownCodec() {
+        TempStreamFactory.getCodec("no-such-codec");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidDeflateLevel() {
+        TempStreamFactory.deflate(10);
+    }
+
+    @Test(expectedExceptions = SAMException.class)
+    public void testEmptyFile() {
+        new TempStreamFactory().wrapTempInputStream(new ByteArrayInputStream(new byte[0]), 0);
+    }
+}
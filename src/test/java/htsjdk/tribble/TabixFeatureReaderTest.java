@@ -0,0 +1,66 @@
+package htsjdk.tribble;
+
+import htsjdk.HtsjdkTest;
+import htsjdk.samtools.util.Interval;
+import htsjdk.samtools.util.Locatable;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFCodec;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TabixFeatureReaderTest extends HtsjdkTest {
+
+    private static final String YRI_VCF = TestUtils.DATA_DIR + "tabix/YRI.trio.2010_07.indel.sites.vcf.gz";
+
+    @DataProvider(name = "threads")
+    public Object[][] threads() {
+        return new Object[][]{{0}, {1}, {4}};
+    }
+
+    @Test(dataProvider = "threads")
+    public void testBatchQueryMatchesSingleQueries(final int threads) throws IOException {
+        final Random random = new Random(17);
+        final List<Locatable> intervals = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            final int start = 1 + random.nextInt(77000000);
+            intervals.add(new Interval("1", start, start + random.nextInt(i % 20 == 0 ? 2000000 : 50000)));
+        }
+        intervals.add(new Interval("UN", 1, 1000));
+        intervals.add(new Interval("1", 769173, 769173));
+        intervals.add(new Interval("1", 769173, 769173));
+        intervals.add(new Interval("1", 76837502, 100000000));
+
+        try (final TabixFeatureReader<VariantContext, ?> reader = new TabixFeatureReader<>(YRI_VCF, new VCFCodec())) {
+            final List<List<String>> expected = new ArrayList<>();
+            for (final Locatable interval : intervals) {
+                final List<String> features = new ArrayList<>();
+                for (final VariantContext vc : reader.query(interval.getContig(), interval.getStart(), interval.getEnd())) {
+                    features.add(vc.toStringDecodeGenotypes());
+                }
+                expected.add(features);
+            }
+            Assert.assertEquals(expected.get(301).size(), 1);
+
+            final List<List<VariantContext>> results = reader.query(intervals, threads);
+            Assert.assertEquals(results.size(), intervals.size());
+            for (int i = 0; i < intervals.size(); i++) {
+                final List<String> actual = new ArrayList<>();
+                for (final VariantContext vc : results.get(i)) {
+                    actual.add(vc.toStringDecodeGenotypes());
+                }
+                Assert.assertEquals(actual, expected.get(i), "interval " + intervals.get(i));
+            }
+            // overlapping intervals share the features decoded once
+            Assert.assertSame(results.get(301).get(0), results.get(302).get(0));
+
+            // the reader can still be used for single queries afterwards
+            Assert.assertEquals(reader.query("1", 769173, 769173).stream().count(), 1);
+        }
+    }
+}
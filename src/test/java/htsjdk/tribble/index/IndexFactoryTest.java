@@ -33,8 +33,13 @@ import htsjdk.tribble.TestUtils;
 import htsjdk.tribble.Tribble;
 import htsjdk.tribble.TribbleException;
 import htsjdk.tribble.bed.BEDCodec;
+import htsjdk.tribble.bed.BEDFeature;
+import htsjdk.tribble.index.linear.LinearIndexCreator;
 import htsjdk.tribble.index.tabix.TabixFormat;
 import htsjdk.tribble.index.tabix.TabixIndex;
+import htsjdk.tribble.index.tabix.TabixIndexCreator;
+import htsjdk.tribble.readers.LineIterator;
+import htsjdk.tribble.util.LittleEndianOutputStream;
 import htsjdk.variant.bcf2.BCF2Codec;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.vcf.VCFCodec;
@@ -43,6 +48,7 @@ import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.Iterator;
@@ -89,6 +95,23 @@ public class IndexFactoryTest extends HtsjdkTest {
         IndexFactory.createIndex(discontinuousFile, new BEDCodec(), type);
     }
 
+    @Test
+    public void testIteratorClosedOnMalformedFile() {
+        final File unsortedBedFile = new File(TestUtils.DATA_DIR, "bed/unsorted.bed");
+        final boolean[] closed = {false};
+        final IndexFactory.FeatureIterator<BEDFeature, LineIterator> features =
+                new IndexFactory.FeatureIterator<BEDFeature, LineIterator>(unsortedBedFile, new BEDCodec()) {
+                    @Override
+                    public void close() {
+                        closed[0] = true;
+                        super.close();
+                    }
+                };
+        Assert.assertThrows(TribbleException.MalformedFeatureFile.class,
+                () -> IndexFactory.createIndex(unsortedBedFile, features, new LinearIndexCreator(unsortedBedFile, 1000)));
+        Assert.assertTrue(closed[0]);
+    }
+
     @DataProvider(name = "indexFactoryProvider")
     public Object[][] getIndexFactoryTypes(){
         return new Object[][] {
@@ -175,6 +198,53 @@ public class IndexFactoryTest extends HtsjdkTest {
         }
     }
 
+    @DataProvider(name = "parallelIndexProvider")
+    public Object[][] getParallelIndexData() {
+        final File yri = new File(TestUtils.DATA_DIR, "tabix/YRI.trio.2010_07.indel.sites.vcf.gz");
+        final File hg38 = new File(TestUtils.DATA_DIR, "tabix/4featuresHG38Header.vcf.gz");
+        return new Object[][]{
+                {yri, 1, 1},
+                {yri, 3, 1},
+                {yri, 4, 2},
+                {yri, 2, ParallelFeatureIterator.BLOCKS_PER_RANGE},
+                {hg38, 3, 1},
+        };
+    }
+
+    @Test(dataProvider = "parallelIndexProvider")
+    public void testParallelIndexMatchesSequential(final File inputVCF, final int threads, final int blocksPerRange) throws IOException {
+        final TabixIndex expectedTabix = IndexFactory.createTabixIndex(inputVCF, new VCFCodec(), TabixFormat.VCF, null);
+        final Index actualTabix = IndexFactory.createIndex(inputVCF,
+                new ParallelFeatureIterator<>(inputVCF, VCFCodec::new, threads, blocksPerRange),
+                new TabixIndexCreator(TabixFormat.VCF));
+        Assert.assertEquals(indexBytes(actualTabix), indexBytes(expectedTabix));
+
+        final Index expectedLinear = IndexFactory.createLinearIndex(inputVCF, new VCFCodec());
+        final Index actualLinear = IndexFactory.createIndex(inputVCF,
+                new ParallelFeatureIterator<>(inputVCF, VCFCodec::new, threads, blocksPerRange),
+                new LinearIndexCreator(inputVCF, LinearIndexCreator.DEFAULT_BIN_WIDTH));
+        Assert.assertEquals(indexBytes(actualLinear), indexBytes(expectedLinear));
+
+        // through the public API
+        Assert.assertEquals(indexBytes(IndexFactory.createTabixIndex(inputVCF, VCFCodec::new, TabixFormat.VCF, null, threads)),
+                indexBytes(expectedTabix));
+    }
+
+    @Test
+    public void testParallelIndexOfUncompressedFile() throws IOException {
+        final File inputVCF = new File(TestUtils.DATA_DIR, "tabix/4featuresHG38Header.vcf");
+        Assert.assertEquals(indexBytes(IndexFactory.createTabixIndex(inputVCF, VCFCodec::new, TabixFormat.VCF, null, 4)),
+                indexBytes(IndexFactory.createTabixIndex(inputVCF, new VCFCodec(), TabixFormat.VCF, null)));
+    }
+
+    private static byte[] indexBytes(final Index index) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final LittleEndianOutputStream out = new LittleEndianOutputStream(bytes)) {
+            index.write(out);
+        }
+        return bytes.toByteArray();
+    }
+
     @DataProvider(name = "bcfDataFactory")
     public Object[][] getBCFData(){
         return new Object[][] {
@@ -11,7 +11,9 @@ import org.testng.annotations.Test;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 /**
@@ -112,6 +114,56 @@ public class TabixReaderTest extends HtsjdkTest {
     
     
     
+    /**
+     * Test that querying many intervals at once returns the lines of each single query
+     */
+    @Test
+    public void testBatchQuery() throws IOException {
+        final TabixReader reader = new TabixReader(TestUtils.DATA_DIR + "tabix/YRI.trio.2010_07.indel.sites.vcf.gz");
+        try {
+            final Random random = new Random(42);
+            final int tid = reader.chr2tid("1");
+            final int[] begs = new int[500];
+            final int[] ends = new int[begs.length];
+            for (int i = 0; i < begs.length; i++) {
+                begs[i] = random.nextInt(77000000);
+                ends[i] = begs[i] + 1 + random.nextInt(i % 10 == 0 ? 1000000 : 20000);
+            }
+
+            final List<List<String>> expected = new ArrayList<>();
+            for (int i = 0; i < begs.length; i++) {
+                final List<String> lines = new ArrayList<>();
+                final TabixReader.Iterator it = reader.query(tid, begs[i], ends[i]);
+                for (String line = it.next(); line != null; line = it.next()) {
+                    lines.add(line);
+                }
+                expected.add(lines);
+            }
+
+            final List<List<String>> actual = new ArrayList<>();
+            for (int i = 0; i < begs.length; i++) {
+                actual.add(new ArrayList<>());
+            }
+            final List<TabixReader.RegionLine> lines = reader.query(tid, begs, ends, null);
+            final Set<String> distinct = new HashSet<>();
+            for (final TabixReader.RegionLine line : lines) {
+                Assert.assertTrue(distinct.add(line.getLine()), "each line is only read once");
+                for (final int region : line.getRegions()) {
+                    actual.get(region).add(line.getLine());
+                }
+            }
+            Assert.assertEquals(actual, expected);
+            Assert.assertTrue(lines.size() < expected.stream().mapToInt(List::size).sum());
+
+            Assert.assertTrue(reader.query(reader.chr2tid("UN"), begs, ends, null).isEmpty());
+            Assert.assertNull(reader.getChunkSpan(tid, Integer.MAX_VALUE - 1, Integer.MAX_VALUE));
+            final long[] span = reader.getChunkSpan(tid, 0, 100000000);
+            Assert.assertTrue(span[0] < span[1]);
+        } finally {
+            reader.close();
+        }
+    }
+
     /**
      * Test reading a local tabix file
      *
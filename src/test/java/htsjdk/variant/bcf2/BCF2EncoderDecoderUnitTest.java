@@ -481,6 +481,53 @@ public class BCF2EncoderDecoderUnitTest extends VariantBaseTest {
         return tests.toArray(new Object[][]{});
     }
 
+    @DataProvider(name = "IntMatrixTypes")
+    public Object[][] makeIntMatrixTypes() {
+        return new Object[][]{{BCF2Type.INT8}, {BCF2Type.INT16}, {BCF2Type.INT32}};
+    }
+
+    @Test(dataProvider = "IntMatrixTypes")
+    public void testIntMatrix(final BCF2Type type) throws IOException {
+        final int nRows = 7, width = 3;
+        final BCF2Encoder encoder = new BCF2Encoder();
+        encoder.encodeTypedInt(42, BCF2Type.INT8);
+        final int[] expected = new int[nRows * width];
+        for ( int i = 0; i < expected.length; i++ ) {
+            if ( i % 5 == 4 ) {
+                encoder.encodeRawMissingValue(type);
+                expected[i] = -999;
+            } else {
+                expected[i] = (i % 2 == 0 ? 1 : -1) * i * 3;
+                encoder.encodeRawInt(expected[i], type);
+            }
+        }
+        encoder.encodeTypedInt(43, BCF2Type.INT8);
+
+        final BCF2Decoder decoder = new BCF2Decoder(encoder.getRecordBytes());
+        Assert.assertEquals(decoder.decodeTypedValue(), 42);
+        Assert.assertEquals(decoder.decodeIntMatrix(width, nRows, type, -999, null), expected);
+        // the values after the matrix are read from the right position
+        Assert.assertEquals(decoder.decodeTypedValue(), 43);
+        Assert.assertTrue(decoder.blockIsFullyDecoded());
+    }
+
+    @Test
+    public void testFloatMatrix() throws IOException {
+        final double[] floats = {1.5, -0.0, 1e-10, 3};
+        final BCF2Encoder encoder = new BCF2Encoder();
+        for ( final double f : floats )
+            encoder.encodeRawFloat(f);
+        encoder.encodeRawMissingValue(BCF2Type.FLOAT);
+        encoder.encodeRawFloat(2);
+
+        final BCF2Decoder decoder = new BCF2Decoder(encoder.getRecordBytes());
+        final int[] bits = decoder.decodeIntMatrix(2, 3, BCF2Type.FLOAT, BCF2Type.FLOAT.getMissingBytes(), new int[6]);
+        for ( int i = 0; i < floats.length; i++ )
+            Assert.assertEquals(Float.floatToRawIntBits(Float.intBitsToFloat(bits[i])), Float.floatToRawIntBits((float) floats[i]));
+        Assert.assertEquals(bits[4], BCF2Type.FLOAT.getMissingBytes());
+        Assert.assertEquals(Float.intBitsToFloat(bits[5]), 2.0f);
+    }
+
     @Test(dataProvider = "IntArrays")
     public void testIntArrays(final List<Integer> ints) throws IOException {
         final BCF2Encoder encoder = new BCF2Encoder();
@@ -27,7 +27,10 @@ package htsjdk.variant.bcf2;
 
 import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.util.TestUtil;
+import htsjdk.tribble.AbstractFeatureReader;
+import htsjdk.tribble.FeatureReader;
 import htsjdk.tribble.Tribble;
+import htsjdk.tribble.TribbleException;
 import htsjdk.tribble.readers.PositionalBufferedStream;
 import htsjdk.variant.VariantBaseTest;
 import htsjdk.variant.variantcontext.Allele;
@@ -52,7 +55,9 @@ import org.testng.annotations.Test;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -253,6 +258,73 @@ public class BCF2WriterUnitTest extends VariantBaseTest {
         }
     }
 
+    private File writeBCF(final VCFHeader header, final Iterable<VariantContext> records, final int encodingThreads) throws IOException {
+        final File bcfOutputFile = File.createTempFile("testParallelEncoding.", ".bcf", tempDir);
+        bcfOutputFile.deleteOnExit();
+        Tribble.indexFile(bcfOutputFile).deleteOnExit();
+        try (final VariantContextWriter writer = new VariantContextWriterBuilder()
+                .setOutputFile(bcfOutputFile).setReferenceDictionary(header.getSequenceDictionary())
+                .setOptions(EnumSet.of(Options.INDEX_ON_THE_FLY))
+                .setEncodingThreads(encodingThreads)
+                .build()) {
+            writer.writeHeader(header);
+            for (final VariantContext vc : records) {
+                writer.add(vc);
+            }
+        }
+        return bcfOutputFile;
+    }
+
+    private static List<String> readRecords(final File bcf) throws IOException {
+        final List<String> records = new ArrayList<>();
+        try (final FeatureReader<VariantContext> reader = AbstractFeatureReader.getFeatureReader(bcf.getAbsolutePath(), new BCF2Codec(), false)) {
+            for (final VariantContext vc : reader.iterator()) {
+                records.add(vc.toStringDecodeGenotypes());
+            }
+        }
+        return records;
+    }
+
+    /**
+     * test that encoding records on several threads writes the same file as encoding them on the calling thread,
+     * both for records built in memory and for records read from a BCF file with their raw genotypes data
+     */
+    @Test
+    public void testParallelEncodingMatchesSequential() throws IOException {
+        final VCFHeader header = createFakeHeader();
+        final List<VariantContext> records = new ArrayList<>();
+        for (int i = 0; i < 2517; i++) { // a few batches of records for the encoding threads
+            final VariantContext vc = createVC(header);
+            records.add(new VariantContextBuilder(vc).start(i + 1).stop(i + 1)
+                    .genotypes(new GenotypeBuilder(vc.getGenotype("extra1")).GQ(i % 100).make(),
+                            new GenotypeBuilder(vc.getGenotype("extra2")).noGQ().phased(i % 2 == 0).make())
+                    .make());
+        }
+
+        final File sequential = writeBCF(header, records, 0);
+        final File parallel = writeBCF(header, records, 3);
+        Assert.assertEquals(Files.readAllBytes(parallel.toPath()), Files.readAllBytes(sequential.toPath()));
+        Assert.assertTrue(Tribble.indexFile(parallel).exists());
+
+        final List<String> expected = readRecords(sequential);
+        Assert.assertEquals(expected.size(), records.size());
+
+        final List<VariantContext> lazyRecords = new ArrayList<>();
+        try (final FeatureReader<VariantContext> reader = AbstractFeatureReader.getFeatureReader(sequential.getAbsolutePath(), new BCF2Codec(), false)) {
+            for (final VariantContext vc : reader.iterator()) {
+                lazyRecords.add(vc);
+            }
+        }
+        Assert.assertEquals(readRecords(writeBCF(header, lazyRecords, 2)), expected);
+    }
+
+    @Test(expectedExceptions = TribbleException.class)
+    public void testParallelEncodingReportsErrors() throws IOException {
+        final VCFHeader header = createFakeHeader();
+        final VariantContext vc = new VariantContextBuilder(createVC(header)).attribute("NOT_IN_HEADER", 1).make();
+        writeBCF(header, Collections.singletonList(vc), 2);
+    }
+
     /**
      * create a fake VCF record
      *
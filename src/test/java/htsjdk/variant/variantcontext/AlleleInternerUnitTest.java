@@ -0,0 +1,136 @@
+package htsjdk.variant.variantcontext;
+
+import htsjdk.tribble.AbstractFeatureReader;
+import htsjdk.tribble.FeatureReader;
+import htsjdk.variant.VariantBaseTest;
+import htsjdk.variant.vcf.VCFCodec;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class AlleleInternerUnitTest extends VariantBaseTest {
+
+    @Test
+    public void testInternAlleles() {
+        final AlleleInterner interner = new AlleleInterner(16);
+        final byte[] line = "chr1\t10\tACGT\tacgt\t<DEL>".getBytes(StandardCharsets.US_ASCII);
+
+        final Allele ref = interner.intern(line, 8, 12, true);
+        Assert.assertEquals(ref, Allele.create("ACGT", true));
+        Assert.assertSame(interner.intern(line, 8, 12, true), ref);
+        Assert.assertSame(interner.intern("ACGT", true), ref);
+        Assert.assertEquals(interner.getHits(), 2);
+        Assert.assertEquals(interner.getMisses(), 1);
+
+        // the reference state is part of the key
+        final Allele alt = interner.intern("ACGT", false);
+        Assert.assertEquals(alt, Allele.create("ACGT", false));
+        Assert.assertNotSame(alt, ref);
+
+        // lower case bases are upper cased, but the original bytes are left alone
+        final Allele lower = interner.intern(line, 13, 17, false);
+        Assert.assertEquals(lower, alt);
+        Assert.assertEquals(new String(line, 13, 4, StandardCharsets.US_ASCII), "acgt");
+
+        Assert.assertTrue(interner.intern(line, 18, 23, false).isSymbolic());
+        Assert.assertSame(interner.intern(line, 8, 9, true), Allele.create("A", true));
+        Assert.assertSame(interner.intern(".", false), Allele.NO_CALL);
+        Assert.assertEquals(interner.getHitRate(), 2.0 / 6.0, 1e-9);
+
+        interner.resetStatistics();
+        Assert.assertEquals(interner.getHits(), 0);
+        Assert.assertEquals(interner.getHitRate(), 0.0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidAllele() {
+        new AlleleInterner(16).intern("AC-GT", false);
+    }
+
+    @Test
+    public void testInternStrings() {
+        final AlleleInterner interner = new AlleleInterner(16);
+        final byte[] bytes = "xchr20x".getBytes(StandardCharsets.US_ASCII);
+        final String chr = interner.internString(bytes, 1, 6);
+        Assert.assertEquals(chr, "chr20");
+        Assert.assertSame(interner.internString(bytes, 1, 6), chr);
+        Assert.assertSame(interner.internString(new String("chr20")), chr);
+
+        final String notAscii = "chré";
+        Assert.assertSame(interner.internString(notAscii), notAscii);
+        final byte[] utf8 = notAscii.getBytes(StandardCharsets.UTF_8);
+        Assert.assertEquals(interner.internString(utf8, 0, utf8.length), notAscii);
+    }
+
+    @Test
+    public void testBounded() {
+        final AlleleInterner interner = new AlleleInterner(5);
+        Assert.assertEquals(interner.getCapacity(), 8);
+        final Map<String, Allele> alleles = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            final String bases = Integer.toBinaryString(i).replace('0', 'A').replace('1', 'C') + "G";
+            alleles.put(bases, interner.intern(bases, false));
+        }
+        // every allele is still looked up correctly, whether or not it has been evicted
+        for (final Map.Entry<String, Allele> entry : alleles.entrySet()) {
+            Assert.assertEquals(interner.intern(entry.getKey(), false), entry.getValue());
+        }
+        Assert.assertTrue(interner.getMisses() >= 1000);
+
+        final AlleleInterner disabled = new AlleleInterner(0);
+        Assert.assertEquals(disabled.intern("ACGT", true), Allele.create("ACGT", true));
+        Assert.assertEquals(disabled.getHits() + disabled.getMisses(), 0);
+    }
+
+    @Test
+    public void testConcurrentInterning() throws Exception {
+        final AlleleInterner interner = new AlleleInterner(64);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 10000; i++) {
+                        final String bases = "AC" + "GT".substring(0, i % 3) + Integer.toBinaryString(i % 97).replace('0', 'A').replace('1', 'T');
+                        final boolean isRef = i % 2 == 0;
+                        Assert.assertEquals(interner.intern(bases, isRef), Allele.create(bases, isRef));
+                        Assert.assertEquals(interner.internString(bases), bases);
+                    }
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(interner.getHits() + interner.getMisses(), 4 * 10000 * 2);
+    }
+
+    @Test
+    public void testCodecsShareAlleles() throws IOException {
+        final String file = variantTestDataRoot + "ILLUMINA.wex.broad_phase2_baseline.20111114.both.exome.genotypes.1000.vcf";
+        final Map<Allele, Allele> seen = new HashMap<>();
+        AlleleInterner.getDefault().clear();
+        try (final FeatureReader<VariantContext> reader = AbstractFeatureReader.getFeatureReader(file, new VCFCodec(), false)) {
+            for (final VariantContext vc : reader.iterator()) {
+                for (final Allele allele : vc.getAlleles()) {
+                    final Allele previous = seen.putIfAbsent(allele, allele);
+                    if (previous != null && allele.length() < 5) {
+                        // short alleles are seen over and over, and shared once interned
+                        Assert.assertSame(allele, previous);
+                    }
+                }
+            }
+        }
+    }
+}
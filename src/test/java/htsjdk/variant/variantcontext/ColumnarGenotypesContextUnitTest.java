@@ -0,0 +1,297 @@
+package htsjdk.variant.variantcontext;
+
+import htsjdk.samtools.util.TestUtil;
+import htsjdk.tribble.AbstractFeatureReader;
+import htsjdk.tribble.FeatureCodec;
+import htsjdk.variant.VariantBaseTest;
+import htsjdk.variant.bcf2.BCF2Codec;
+import htsjdk.variant.variantcontext.writer.Options;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.variantcontext.writer.VariantContextWriterBuilder;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFFileReader;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class ColumnarGenotypesContextUnitTest extends VariantBaseTest {
+    private final Allele Aref = Allele.create("A", true);
+    private final Allele C = Allele.create("C");
+    private final Allele T = Allele.create("T");
+    private final List<String> samples = Arrays.asList("s3", "s1", "s2", "s4");
+
+    private ColumnarGenotypesContext makeContext() {
+        final ColumnarGenotypesContext.Builder builder = new ColumnarGenotypesContext.Builder(samples, Arrays.asList(Aref, C));
+        builder.add(new GenotypeBuilder("s3", Arrays.asList(Aref, C)).phased(true).GQ(30).DP(12).AD(new int[]{7, 5}).PL(new int[]{40, 0, 50}));
+        builder.add(new GenotypeBuilder("s1", Arrays.asList(C, C)).GQ(99).attribute("XX", "y"));
+        // an allele that is not a site allele, with a longer AD than the previous samples
+        builder.add(new GenotypeBuilder("s2", Arrays.asList(Aref, T, T)).AD(new int[]{1, 2, 3, 4}).filter("LowQual"));
+        builder.add(GenotypeBuilder.createMissing("s4", 2));
+        return builder.make();
+    }
+
+    @Test
+    public void testGenotypeViews() {
+        final ColumnarGenotypesContext context = makeContext();
+        Assert.assertEquals(context.size(), 4);
+        Assert.assertEquals(context.getMaxPloidy(2), 3);
+
+        final Genotype s3 = context.get(0);
+        Assert.assertEquals(s3.getSampleName(), "s3");
+        Assert.assertEquals(s3.getAlleles(), Arrays.asList(Aref, C));
+        Assert.assertTrue(s3.isPhased());
+        Assert.assertTrue(s3.isHet());
+        Assert.assertEquals(s3.getGQ(), 30);
+        Assert.assertEquals(s3.getDP(), 12);
+        Assert.assertEquals(s3.getAD(), new int[]{7, 5});
+        Assert.assertEquals(s3.getPL(), new int[]{40, 0, 50});
+        Assert.assertTrue(s3.getExtendedAttributes().isEmpty());
+        Assert.assertFalse(s3.isFiltered());
+        Assert.assertSame(context.get("s3"), s3);
+
+        final Genotype s1 = context.get("s1");
+        Assert.assertTrue(s1.isHomVar());
+        Assert.assertFalse(s1.isPhased());
+        Assert.assertFalse(s1.hasAD());
+        Assert.assertFalse(s1.hasPL());
+        Assert.assertFalse(s1.hasDP());
+        Assert.assertEquals(s1.getExtendedAttribute("XX"), "y");
+
+        final Genotype s2 = context.get("s2");
+        Assert.assertEquals(s2.getAlleles(), Arrays.asList(Aref, T, T));
+        Assert.assertEquals(s2.getPloidy(), 3);
+        Assert.assertEquals(s2.getAD(), new int[]{1, 2, 3, 4});
+        Assert.assertEquals(s2.getFilters(), "LowQual");
+
+        final Genotype s4 = context.get("s4");
+        Assert.assertTrue(s4.isNoCall());
+        Assert.assertEquals(s4.getPloidy(), 2);
+
+        Assert.assertNull(context.get("missing"));
+        Assert.assertEquals(context.getSampleNamesOrderedByName(), Arrays.asList("s1", "s2", "s3", "s4"));
+        Assert.assertTrue(context.containsSample("s4"));
+        Assert.assertTrue(context.contains(s2));
+
+        final List<String> names = new ArrayList<String>();
+        for ( final Genotype g : context )
+            names.add(g.getSampleName());
+        Assert.assertEquals(names, samples);
+    }
+
+    @Test
+    public void testBulkAccessors() {
+        final ColumnarGenotypesContext context = makeContext();
+        Assert.assertEquals(context.getSiteAlleles(), Arrays.asList(Aref, C));
+        Assert.assertEquals(context.getAlleleCounts(), new int[]{2, 3});
+        Assert.assertEquals(context.getCalledChrCount(), 7);
+        Assert.assertEquals(context.getCalledChrCount(T), 2);
+        Assert.assertEquals(context.getCalledChrCount(Allele.create("G")), 0);
+        Assert.assertEquals(context.getAlleleIndex(0, 1), 1);
+        Assert.assertEquals(context.getAlleleIndex(3, 0), -1);
+        Assert.assertEquals(context.getPloidy(2), 3);
+        Assert.assertEquals(context.getGQ(2), -1);
+        Assert.assertEquals(context.getDP(0), 12);
+        Assert.assertEquals(context.getAD(0), new int[]{7, 5});
+        Assert.assertNull(context.getPL(1));
+        Assert.assertEquals(context.getGenotypeType(1), GenotypeType.HOM_VAR);
+        Assert.assertEquals(context.getGenotypeType(3), GenotypeType.NO_CALL);
+
+        for ( int i = 0; i < context.size(); i++ )
+            Assert.assertEquals(context.getGenotypeType(i), GenotypeBuilder.create("x", context.get(i).getAlleles()).getType());
+    }
+
+    @Test(expectedExceptions = IllegalAccessError.class)
+    public void testImmutable() {
+        makeContext().add(GenotypeBuilder.create("s5", Arrays.asList(Aref, Aref)));
+    }
+
+    @Test
+    public void testCopyIsMutable() {
+        final GenotypesContext copy = GenotypesContext.copy(makeContext());
+        copy.add(GenotypeBuilder.create("s5", Arrays.asList(Aref, Aref)));
+        Assert.assertEquals(copy.size(), 5);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testMissingGenotypes() {
+        new ColumnarGenotypesContext.Builder(samples, Arrays.asList(Aref, C))
+                .add(GenotypeBuilder.create("s3", Arrays.asList(Aref, C)))
+                .make();
+    }
+
+    @Test
+    public void testSerialization() throws IOException, ClassNotFoundException {
+        final ColumnarGenotypesContext context = makeContext();
+        final GenotypesContext deserialized = TestUtil.serializeAndDeserialize(context);
+        Assert.assertEquals(deserialized.toString(), context.toString());
+    }
+
+    private static final String FORMAT_TEST_VCF =
+            "##fileformat=VCFv4.2\n" +
+            "##FILTER=<ID=LowQual,Description=\"Low quality\">\n" +
+            "##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">\n" +
+            "##FORMAT=<ID=GQ,Number=1,Type=Integer,Description=\"Genotype Quality\">\n" +
+            "##FORMAT=<ID=DP,Number=1,Type=Integer,Description=\"Depth\">\n" +
+            "##FORMAT=<ID=AD,Number=R,Type=Integer,Description=\"Allelic depths\">\n" +
+            "##FORMAT=<ID=PL,Number=G,Type=Integer,Description=\"Likelihoods\">\n" +
+            "##FORMAT=<ID=GL,Number=G,Type=Float,Description=\"Log10 likelihoods\">\n" +
+            "##FORMAT=<ID=FT,Number=1,Type=String,Description=\"Genotype filter\">\n" +
+            "##FORMAT=<ID=XF,Number=2,Type=Float,Description=\"Floats\">\n" +
+            "##FORMAT=<ID=XI,Number=1,Type=Integer,Description=\"Integer\">\n" +
+            "##FORMAT=<ID=XS,Number=1,Type=String,Description=\"String\">\n" +
+            "##contig=<ID=1,length=1000>\n" +
+            "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\ts1\ts2\ts3\ts4\n" +
+            "1\t10\t.\tA\tC,G\t50\tPASS\t.\tGT:GQ:DP:AD:PL:FT:XF:XI:XS\t" +
+                "0|1:30:12:5,7,0:10,0,20,30,40,50:PASS:0.5,-1.25:3:abc\t1/2:.:.:.:.:LowQual:.:.:.\t" +
+                "./.:5:1:1,0,0:.:.:2.0,.:7:x\t0:99:40:20,20,0:0,10,20:.:.:-4:.\n" +
+            "1\t20\t.\tT\tTA\t10\t.\t.\tGT:XI\t0/0:1\t1/1:.\t0/1/1:300\t.:70000\n" +
+            "1\t30\t.\tG\tT\t20\t.\t.\tGT:GL\t0/1:-1.0,-0.1,-2.5\t0/0:.\t1/1:-9,-3,0\t./.:.\n";
+
+    /**
+     * @return a VCF file with a variety of FORMAT fields, types and ploidies
+     */
+    private static File makeFormatTestVCF() throws IOException {
+        final File vcf = File.createTempFile("columnar", ".vcf");
+        vcf.deleteOnExit();
+        Files.write(vcf.toPath(), FORMAT_TEST_VCF.getBytes(StandardCharsets.UTF_8));
+        return vcf;
+    }
+
+    /**
+     * @return a BCF file with a variety of FORMAT fields, types and ploidies
+     */
+    private static File makeFormatTestBCF() throws IOException {
+        final File vcf = makeFormatTestVCF();
+        final File bcf = File.createTempFile("columnar", ".bcf");
+        bcf.deleteOnExit();
+        try (final VCFFileReader reader = new VCFFileReader(vcf, false);
+             final VariantContextWriter writer = new VariantContextWriterBuilder()
+                     .setOutputFile(bcf).setReferenceDictionary(reader.getFileHeader().getSequenceDictionary())
+                     .unsetOption(Options.INDEX_ON_THE_FLY)
+                     .build()) {
+            writer.writeHeader(reader.getFileHeader());
+            for ( final VariantContext vc : reader )
+                writer.add(vc);
+        }
+        return bcf;
+    }
+
+    @Test
+    public void testBulkDecodedBCFAggregates() throws IOException {
+        final List<VariantContext> records = read(makeFormatTestBCF(), "bcf", true);
+        final ColumnarGenotypesContext first = (ColumnarGenotypesContext) records.get(0).getGenotypes();
+        Assert.assertEquals(first.getAlleleCounts(), new int[]{2, 2, 1});
+        final double[] frequencies = first.getAlleleFrequencies();
+        Assert.assertEquals(frequencies.length, 3);
+        Assert.assertEquals(frequencies[0], 0.4, 1e-9);
+        Assert.assertEquals(frequencies[1], 0.4, 1e-9);
+        Assert.assertEquals(frequencies[2], 0.2, 1e-9);
+        Assert.assertEquals(first.getCallRate(), 0.75, 1e-9);
+        Assert.assertEquals(first.getMissingCount("GT"), 1);
+        Assert.assertEquals(first.getMissingCount("GQ"), 1);
+        Assert.assertEquals(first.getMissingCount("PL"), 2);
+        Assert.assertEquals(first.getMissingCount("XF"), 2);
+        Assert.assertEquals(first.getMissingCount("XS"), 2);
+        Assert.assertEquals(first.getMissingCount("NOPE"), 4);
+        Assert.assertEquals(first.get("s1").getExtendedAttribute("XF"), Arrays.asList(0.5, -1.25));
+        Assert.assertEquals(first.get("s3").getExtendedAttribute("XF"), 2.0);
+        Assert.assertEquals(first.get("s4").getExtendedAttribute("XI"), -4);
+        Assert.assertEquals(first.get("s2").getFilters(), "LowQual");
+        Assert.assertTrue(first.get("s1").isPhased());
+
+        final ColumnarGenotypesContext second = (ColumnarGenotypesContext) records.get(1).getGenotypes();
+        Assert.assertEquals(second.getPloidy(2), 3);
+        Assert.assertEquals(second.getAlleleCounts(), new int[]{3, 4});
+        Assert.assertEquals(second.get("s4").getExtendedAttribute("XI"), 70000);
+        Assert.assertFalse(second.get("s2").hasExtendedAttribute("XI"));
+    }
+
+    @DataProvider(name = "codecs")
+    public Object[][] codecs() throws IOException {
+        return new Object[][]{
+                {makeFormatTestBCF(), "bcf"},
+                {makeFormatTestVCF(), "vcf"},
+                {new File(variantTestDataRoot + "ILLUMINA.wex.broad_phase2_baseline.20111114.both.exome.genotypes.1000.vcf"), "vcf"},
+                {new File(variantTestDataRoot + "HiSeq.10000.vcf"), "vcf"},
+                {new File(variantTestDataRoot + "serialization_test.bcf"), "bcf"},
+        };
+    }
+
+    private static List<VariantContext> read(final File file, final String type, final boolean columnar) throws IOException {
+        final FeatureCodec<VariantContext, ?> codec;
+        if ( type.equals("bcf") ) {
+            final BCF2Codec bcf2Codec = new BCF2Codec();
+            bcf2Codec.setColumnarGenotypes(columnar);
+            codec = bcf2Codec;
+        } else {
+            final VCFCodec vcfCodec = new VCFCodec();
+            vcfCodec.setColumnarGenotypes(columnar);
+            codec = vcfCodec;
+        }
+        final List<VariantContext> records = new ArrayList<VariantContext>();
+        try (final AbstractFeatureReader<VariantContext, ?> reader = AbstractFeatureReader.getFeatureReader(file.getAbsolutePath(), codec, false)) {
+            for ( final VariantContext vc : reader.iterator() )
+                records.add(vc);
+        }
+        return records;
+    }
+
+    @Test(dataProvider = "codecs")
+    public void testMatchesCodecGenotypes(final File file, final String type) throws IOException {
+        final List<VariantContext> expected = read(file, type, false);
+        final List<VariantContext> actual = read(file, type, true);
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(actual.size(), expected.size());
+
+        for ( int i = 0; i < actual.size(); i++ ) {
+            final VariantContext e = expected.get(i);
+            final VariantContext a = actual.get(i);
+            Assert.assertEquals(a.toStringDecodeGenotypes(), e.toStringDecodeGenotypes());
+            if ( ! e.hasGenotypes() )
+                continue;
+
+            Assert.assertTrue(a.getGenotypes() instanceof ColumnarGenotypesContext);
+            final ColumnarGenotypesContext columns = (ColumnarGenotypesContext) a.getGenotypes();
+            for ( int s = 0; s < e.getNSamples(); s++ ) {
+                final Genotype eg = e.getGenotype(s);
+                final Genotype ag = a.getGenotype(s);
+                Assert.assertEquals(ag.getSampleName(), eg.getSampleName());
+                Assert.assertEquals(ag.getAlleles(), eg.getAlleles());
+                Assert.assertEquals(ag.isPhased(), eg.isPhased());
+                Assert.assertEquals(ag.getGQ(), eg.getGQ());
+                Assert.assertEquals(ag.getDP(), eg.getDP());
+                Assert.assertEquals(ag.getAD(), eg.getAD());
+                Assert.assertEquals(ag.getPL(), eg.getPL());
+                Assert.assertEquals(ag.getFilters(), eg.getFilters());
+                Assert.assertEquals(ag.getExtendedAttributes(), eg.getExtendedAttributes());
+                Assert.assertEquals(columns.getGenotypeType(s), eg.getType());
+            }
+
+            final int[] alleleCounts = columns.getAlleleCounts();
+            for ( int allele = 0; allele < e.getNAlleles(); allele++ )
+                Assert.assertEquals(alleleCounts[allele], e.getCalledChrCount(e.getAlleles().get(allele)));
+            Assert.assertEquals(a.getCalledChrCount(), e.getCalledChrCount());
+            Assert.assertEquals(a.getNoCallCount(), e.getNoCallCount());
+            Assert.assertEquals(a.getHetCount(), e.getHetCount());
+            Assert.assertEquals(a.getMaxPloidy(2), e.getMaxPloidy(2));
+        }
+    }
+
+    @Test
+    public void testEmptySamples() {
+        final ColumnarGenotypesContext context =
+                new ColumnarGenotypesContext.Builder(Collections.<String>emptyList(), Arrays.asList(Aref)).make();
+        Assert.assertTrue(context.isEmpty());
+        Assert.assertEquals(context.getMaxPloidy(2), 2);
+        Assert.assertEquals(context.getAlleleCounts(), new int[]{0});
+    }
+}
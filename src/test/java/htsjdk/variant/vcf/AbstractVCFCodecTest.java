@@ -2,14 +2,24 @@ package htsjdk.variant.vcf;
 
 import htsjdk.tribble.TribbleException;
 import htsjdk.tribble.index.tabix.TabixFormat;
+import htsjdk.tribble.readers.LineIteratorImpl;
+import htsjdk.tribble.readers.SynchronousLineReader;
 import htsjdk.variant.VariantBaseTest;
 import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.ColumnarGenotypesContext;
+import htsjdk.variant.variantcontext.LazyGenotypesContext;
 import htsjdk.variant.variantcontext.VariantContext;
 import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 
@@ -57,4 +67,180 @@ public class AbstractVCFCodecTest extends VariantBaseTest {
 		Assert.assertEquals(new VCFCodec().getTabixFormat(), TabixFormat.VCF);
 		Assert.assertEquals(new VCF3Codec().getTabixFormat(), TabixFormat.VCF);
 	}
+
+	@DataProvider(name="projectionFiles")
+	public Object[][] getProjectionFiles(){
+		return new Object[][] {
+				{new File(VariantBaseTest.variantTestDataRoot + "ILLUMINA.wex.broad_phase2_baseline.20111114.both.exome.genotypes.1000.vcf")},
+				{new File(VariantBaseTest.variantTestDataRoot + "dbsnp_135.b37.1000.vcf")},
+				{new File(VariantBaseTest.variantTestDataRoot + "structuralvariants.vcf")},
+				{new File(VariantBaseTest.variantTestDataRoot + "HiSeq.10000.vcf")}
+		};
+	}
+
+	private static List<VariantContext> decodeBytes(final File file, final VCFProjection projection) throws IOException {
+		final List<String> lines = Files.readAllLines(file.toPath());
+		final VCFCodec headerCodec = new VCFCodec();
+		final List<String> headerLines = new ArrayList<>();
+		for (final String line : lines) {
+			if (!line.startsWith(VCFHeader.HEADER_INDICATOR)) break;
+			headerLines.add(line);
+		}
+		final VCFHeader header = (VCFHeader) headerCodec.readActualHeader(new LineIteratorImpl(
+				new SynchronousLineReader(new StringReader(String.join("\n", headerLines)))));
+		final VCFCodec codec = new VCFCodec();
+		codec.setVCFHeader(header, headerCodec.version);
+
+		final List<VariantContext> decoded = new ArrayList<>();
+		for (final String line : lines) {
+			final byte[] bytes = ("#" + line + "\n").getBytes(StandardCharsets.UTF_8);
+			final VariantContext vc = codec.decode(bytes, 1, bytes.length - 1, projection);
+			if (vc != null) decoded.add(vc);
+		}
+		return decoded;
+	}
+
+	@Test(dataProvider = "projectionFiles")
+	public void testDecodeBytesMatchesDecodeString(final File file) throws IOException {
+		final List<String> expected = new ArrayList<>();
+		try (final VCFFileReader reader = new VCFFileReader(file, false)) {
+			reader.forEach(vc -> expected.add(vc.toStringDecodeGenotypes()));
+		}
+		final List<String> actual = new ArrayList<>();
+		for (final VariantContext vc : decodeBytes(file, VCFProjection.ALL)) {
+			actual.add(vc.toStringDecodeGenotypes());
+		}
+		Assert.assertFalse(expected.isEmpty());
+		Assert.assertEquals(actual, expected);
+	}
+
+	@Test(dataProvider = "projectionFiles")
+	public void testDecodeBytesWithProjection(final File file) throws IOException {
+		final List<VariantContext> expected = new ArrayList<>();
+		try (final VCFFileReader reader = new VCFFileReader(file, false)) {
+			reader.forEach(expected::add);
+		}
+		final VCFProjection projection = VCFProjection.ALL.withInfoKeys("DP", "AC", "SVTYPE").withFormatKeys("GQ");
+		final List<VariantContext> actual = decodeBytes(file, projection);
+		Assert.assertEquals(actual.size(), expected.size());
+		for (int i = 0; i < actual.size(); i++) {
+			final VariantContext e = expected.get(i);
+			final VariantContext a = actual.get(i);
+			Assert.assertEquals(a.getContig(), e.getContig());
+			Assert.assertEquals(a.getStart(), e.getStart());
+			Assert.assertEquals(a.getEnd(), e.getEnd());
+			Assert.assertEquals(a.getID(), e.getID());
+			Assert.assertEquals(a.getAlleles(), e.getAlleles());
+			Assert.assertEquals(a.getPhredScaledQual(), e.getPhredScaledQual());
+			Assert.assertEquals(a.getFilters(), e.getFilters());
+			for (final String key : e.getAttributes().keySet()) {
+				if (projection.getInfoKeys().contains(key)) {
+					Assert.assertEquals(a.getAttribute(key), e.getAttribute(key));
+				}
+			}
+			Assert.assertTrue(projection.getInfoKeys().containsAll(a.getAttributes().keySet()), a.getAttributes().toString());
+			Assert.assertEquals(a.getNSamples(), e.getNSamples());
+			for (int s = 0; s < a.getNSamples(); s++) {
+				Assert.assertEquals(a.getGenotype(s).getGenotypeString(), e.getGenotype(s).getGenotypeString());
+				Assert.assertEquals(a.getGenotype(s).getGQ(), e.getGenotype(s).getGQ());
+				Assert.assertFalse(a.getGenotype(s).hasDP());
+				Assert.assertFalse(a.getGenotype(s).hasAD());
+				Assert.assertFalse(a.getGenotype(s).hasPL());
+			}
+		}
+	}
+
+	@Test
+	public void testDecodeBytesSitesOnly() throws IOException {
+		final File file = new File(VariantBaseTest.variantTestDataRoot + "ILLUMINA.wex.broad_phase2_baseline.20111114.both.exome.genotypes.1000.vcf");
+		for (final VariantContext vc : decodeBytes(file, VCFProjection.SITES_ONLY.withInfoKeys(Collections.<String>emptyList()))) {
+			Assert.assertEquals(vc.getNSamples(), 0);
+			Assert.assertTrue(vc.getAttributes().isEmpty());
+		}
+	}
+
+	private static VCFCodec codecFor(final String... headerLines) {
+		final VCFCodec headerCodec = new VCFCodec();
+		final VCFHeader header = (VCFHeader) headerCodec.readActualHeader(new LineIteratorImpl(
+				new SynchronousLineReader(new StringReader(String.join("\n", headerLines)))));
+		final VCFCodec codec = new VCFCodec();
+		codec.setVCFHeader(header, headerCodec.version);
+		return codec;
+	}
+
+	private static VariantContext decodeBytes(final VCFCodec codec, final String line, final VCFProjection projection) {
+		final byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+		return codec.decode(bytes, 0, bytes.length, projection);
+	}
+
+	private static final String[] FORMAT_HEADER = {
+			"##fileformat=VCFv4.2",
+			"##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">",
+			"##FORMAT=<ID=AD,Number=R,Type=Integer,Description=\"Allelic depths\">",
+			"##FORMAT=<ID=GQ,Number=1,Type=Integer,Description=\"Genotype quality\">",
+			"##FORMAT=<ID=XX,Number=1,Type=String,Description=\"Other\">",
+			"#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\ts1\ts2\ts3"
+	};
+
+	@Test
+	public void testFormatKeysProjectedFromBytes() {
+		final VCFCodec codec = codecFor(FORMAT_HEADER);
+		final VCFProjection projection = VCFProjection.ALL.withFormatKeys("GQ");
+		final VariantContext vc = decodeBytes(codec, "1\t100\t.\tA\tC\t.\tPASS\t.\tGT:AD:GQ:XX\t0/1:3,4:50:x\t1|1:.:.\t./.", projection);
+		// only the kept keys are left in the unparsed genotypes
+		Assert.assertEquals(((LazyGenotypesContext) vc.getGenotypes()).getUnparsedGenotypeData(), "GT:GQ\t0/1:50\t1|1:.\t./.");
+		Assert.assertEquals(vc.getGenotype("s1").getGenotypeString(), "A/C");
+		Assert.assertEquals(vc.getGenotype("s1").getGQ(), 50);
+		Assert.assertFalse(vc.getGenotype("s1").hasAD());
+		Assert.assertFalse(vc.getGenotype("s1").hasExtendedAttribute("XX"));
+		Assert.assertTrue(vc.getGenotype("s2").isPhased());
+		Assert.assertFalse(vc.getGenotype("s2").hasGQ());
+		Assert.assertTrue(vc.getGenotype("s3").isNoCall());
+
+		// without any kept key, the genotypes only have their sample names
+		final VariantContext noKeys = decodeBytes(codec, "1\t100\t.\tA\tC\t.\tPASS\t.\tAD:XX\t3,4:x\t.\t.", projection);
+		Assert.assertEquals(noKeys.getNSamples(), 3);
+		Assert.assertFalse(noKeys.getGenotype("s1").hasAD());
+		Assert.assertFalse(noKeys.getGenotype("s1").hasExtendedAttribute("XX"));
+	}
+
+	@Test
+	public void testColumnarFormatKeysProjectedFromBytes() {
+		final VCFCodec codec = codecFor(FORMAT_HEADER);
+		codec.setColumnarGenotypes(true);
+		final VCFProjection projection = VCFProjection.ALL.withFormatKeys("AD", "XX");
+		final VariantContext vc = decodeBytes(codec, "1\t100\t.\tA\tC\t.\tPASS\t.\tGT:AD:GQ:XX\t0/1:3,4:50:x\t1|1|0:.:.\t./.:3,x", projection);
+		Assert.assertTrue(vc.getGenotypes() instanceof ColumnarGenotypesContext);
+		Assert.assertEquals(vc.getGenotype("s1").getGenotypeString(), "A/C");
+		Assert.assertEquals(vc.getGenotype("s1").getAD(), new int[]{3, 4});
+		Assert.assertFalse(vc.getGenotype("s1").hasGQ());
+		Assert.assertEquals(vc.getGenotype("s1").getExtendedAttribute("XX"), "x");
+		Assert.assertEquals(vc.getGenotype("s2").getGenotypeString(), "C|C|A");
+		Assert.assertTrue(vc.getGenotype("s2").isPhased());
+		Assert.assertFalse(vc.getGenotype("s2").hasAD());
+		Assert.assertTrue(vc.getGenotype("s3").isNoCall());
+		// AD values which are not all integers are dropped, as when decoding genotype objects
+		Assert.assertFalse(vc.getGenotype("s3").hasAD());
+	}
+
+	@Test(expectedExceptions = TribbleException.class)
+	public void testColumnarUndefinedAllele() {
+		final VCFCodec codec = codecFor(FORMAT_HEADER);
+		codec.setColumnarGenotypes(true);
+		decodeBytes(codec, "1\t100\t.\tA\tC\t.\tPASS\t.\tGT\t0/2\t0/1\t0/1", VCFProjection.ALL);
+	}
+
+	@Test(expectedExceptions = TribbleException.class)
+	public void testProjectedMisplacedGT() {
+		final VCFCodec codec = codecFor(FORMAT_HEADER);
+		decodeBytes(codec, "1\t100\t.\tA\tC\t.\tPASS\t.\tGQ:GT\t50:0/1\t50:0/1\t50:0/1", VCFProjection.ALL.withFormatKeys("AD"))
+				.getGenotype("s1");
+	}
+
+	@Test(expectedExceptions = TribbleException.class)
+	public void testProjectedTooManyValues() {
+		final VCFCodec codec = codecFor(FORMAT_HEADER);
+		decodeBytes(codec, "1\t100\t.\tA\tC\t.\tPASS\t.\tGT:GQ\t0/1:50:x\t0/1\t0/1", VCFProjection.ALL.withFormatKeys("GQ"))
+				.getGenotype("s1");
+	}
 }
@@ -10,12 +10,15 @@ import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -54,6 +57,79 @@ public class VCFEncoderTest extends HtsjdkTest {
 		Assert.assertEquals(VCFEncoder.formatVCFDouble(d), expected, "Failed to pretty print double in VCFWriter");
 	}
 
+    /**
+     * @return the double formatted with String.format, as formatVCFDouble is specified
+     */
+    private static String formatWithStringFormat(final double d) {
+        if (d < 1) {
+            if (d < 0.01) {
+                return Math.abs(d) >= 1e-20 ? String.format("%.3e", d) : "0.00";
+            }
+            return String.format("%.3f", d);
+        }
+        return String.format("%.2f", d);
+    }
+
+    @Test
+    public void testVCFWriterDoubleFormatMatchesStringFormat() {
+        final Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            final double d;
+            switch (i % 4) {
+                case 0: d = random.nextDouble(); break;
+                case 1: d = random.nextDouble() * Math.pow(10, random.nextInt(12)); break;
+                // values on a rounding tie of the shortest decimal representation
+                case 2: d = (random.nextInt(100000) * 10 + 5) / 1000.0; break;
+                default: d = (random.nextInt(100000) * 10 + 5) / 10000.0; break;
+            }
+            Assert.assertEquals(VCFEncoder.formatVCFDouble(d), formatWithStringFormat(d), "formatting " + d);
+        }
+        for (final double d : new double[]{9.995, 99.995, 999999.995, 0.9995, 0.0105, 1.005, 2.675, 1e7 + 0.005, 123456789.125}) {
+            Assert.assertEquals(VCFEncoder.formatVCFDouble(d), formatWithStringFormat(d), "formatting " + d);
+        }
+    }
+
+    @Test
+    public void testEncodeCommonFormatFields() throws IOException {
+        final Set<VCFHeaderLine> metaData = createSyntheticMetadata();
+        metaData.add(new VCFFormatHeaderLine(VCFConstants.GENOTYPE_ALLELE_DEPTHS, VCFHeaderLineCount.R, VCFHeaderLineType.Integer, "ad"));
+        metaData.add(new VCFFormatHeaderLine(VCFConstants.DEPTH_KEY, 1, VCFHeaderLineType.Integer, "dp"));
+        metaData.add(new VCFFormatHeaderLine(VCFConstants.GENOTYPE_QUALITY_KEY, 1, VCFHeaderLineType.Integer, "gq"));
+        metaData.add(new VCFFormatHeaderLine(VCFConstants.GENOTYPE_PL_KEY, VCFHeaderLineCount.G, VCFHeaderLineType.Integer, "pl"));
+        metaData.add(new VCFFormatHeaderLine("XF", 2, VCFHeaderLineType.Float, "xf"));
+        metaData.add(new VCFInfoHeaderLine("FLAG", 0, VCFHeaderLineType.Flag, "flag"));
+        metaData.add(new VCFInfoHeaderLine("AF", VCFHeaderLineCount.A, VCFHeaderLineType.Float, "af"));
+        metaData.add(new VCFInfoHeaderLine("DP", 1, VCFHeaderLineType.Integer, "dp"));
+        final VCFHeader header = new VCFHeader(metaData, Arrays.asList("s1", "s2", "s3"));
+
+        final Allele ref = Allele.create("A", true);
+        final Allele alt = Allele.create("C", false);
+        final VariantContext vc = new VariantContextBuilder().chr("1").start(100).stop(100).id("rs1")
+                .alleles(Arrays.asList(ref, alt)).log10PError(-123.456 / 10).passFilters()
+                .attribute("FLAG", true).attribute("AF", Arrays.asList(0.5)).attribute("DP", 30)
+                .genotypes(
+                        // out of the header order, and with alleles that are not the record's instances
+                        new GenotypeBuilder("s2").alleles(Arrays.asList(Allele.create("A", true), Allele.create("C"))).phased(true)
+                                .AD(new int[]{5, 6}).DP(11).GQ(-1).attribute("XF", Arrays.asList(1.5, 0.25)).make(),
+                        new GenotypeBuilder("s1").alleles(Arrays.asList(ref, ref)).AD(new int[]{10, 0}).DP(10).GQ(30).PL(new int[]{0, 30, 300}).make(),
+                        new GenotypeBuilder("s3").alleles(Arrays.asList(Allele.NO_CALL, Allele.NO_CALL)).make())
+                .make();
+
+        final String expected = "1\t100\trs1\tA\tC\t123.46\tPASS\tAF=0.500;DP=30;FLAG\tGT:AD:DP:GQ:PL:XF" +
+                "\t0/0:10,0:10:30:0,30,300\t0|1:5,6:11:.:.:1.50,0.250\t./.";
+        final VCFEncoder encoder = new VCFEncoder(header, false, false);
+        Assert.assertEquals(encoder.encode(vc), expected);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.write(vc, out);
+        encoder.write(vc, out);
+        Assert.assertEquals(new String(out.toByteArray(), VCFEncoder.VCF_CHARSET), expected + "\n" + expected + "\n");
+
+        Assert.assertEquals(new VCFEncoder(header, false, true).encode(vc),
+                "1\t100\trs1\tA\tC\t123.46\tPASS\tAF=0.500;DP=30;FLAG\tGT:AD:DP:GQ:PL:XF" +
+                "\t0/0:10,0:10:30:0,30,300:.,.\t0|1:5,6:11:.:.:1.50,0.250\t./.:.:.:.:.:.,.");
+    }
+
     @DataProvider(name = "MissingFormatTestData")
     public Object[][] makeMissingFormatTestData() {
         final VCFHeader header = createSyntheticHeader(Arrays.asList("Sample1"));
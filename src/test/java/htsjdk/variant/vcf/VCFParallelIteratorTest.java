@@ -0,0 +1,166 @@
+package htsjdk.variant.vcf;
+
+import htsjdk.HtsjdkTest;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.tribble.TribbleException;
+import htsjdk.variant.variantcontext.VariantContext;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class VCFParallelIteratorTest extends HtsjdkTest {
+    private static final File VARIANT_DIR = new File("src/test/resources/htsjdk/variant/");
+    private static final File TRIBBLE_DIR = new File("src/test/resources/htsjdk/tribble/");
+
+    @DataProvider(name = "files")
+    public Object[][] files() {
+        return new Object[][]{
+                {new File(VARIANT_DIR, "ILLUMINA.wex.broad_phase2_baseline.20111114.both.exome.genotypes.1000.vcf"), 1},
+                {new File(VARIANT_DIR, "ILLUMINA.wex.broad_phase2_baseline.20111114.both.exome.genotypes.1000.vcf"), 4},
+                {new File(VARIANT_DIR, "dbsnp_135.b37.1000.vcf"), 3},
+                {new File(TRIBBLE_DIR, "tabix/YRI.trio.2010_07.indel.sites.vcf.gz"), 2},
+        };
+    }
+
+    @Test(dataProvider = "files")
+    public void testMatchesSequentialIteration(final File file, final int threads) {
+        final List<String> expected = new ArrayList<>();
+        try (final VCFFileReader reader = new VCFFileReader(file, false);
+             final CloseableIterator<VariantContext> iterator = reader.iterator()) {
+            iterator.forEachRemaining(vc -> expected.add(vc.toStringDecodeGenotypes()));
+        }
+
+        final List<String> actual = new ArrayList<>();
+        try (final VCFFileReader reader = new VCFFileReader(file, false);
+             final CloseableIterator<VariantContext> iterator = reader.iterator(threads)) {
+            iterator.forEachRemaining(vc -> actual.add(vc.toStringDecodeGenotypes()));
+        }
+
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(actual, expected);
+    }
+
+    @Test
+    public void testSmallBatches() throws IOException {
+        final File file = new File(VARIANT_DIR, "dbsnp_135.b37.1000.vcf");
+        final List<Integer> expected = new ArrayList<>();
+        try (final VCFFileReader reader = new VCFFileReader(file, false)) {
+            reader.forEach(vc -> expected.add(vc.getStart()));
+        }
+
+        final List<Integer> actual = new ArrayList<>();
+        try (final VCFParallelIterator iterator = new VCFParallelIterator(Files.newInputStream(file.toPath()), 3, 7)) {
+            Assert.assertNotNull(iterator.getHeader());
+            iterator.forEachRemaining(vc -> actual.add(vc.getStart()));
+        }
+        Assert.assertEquals(actual, expected);
+    }
+
+    @Test
+    public void testErrorReportsLineNumber() {
+        final String vcf = "##fileformat=VCFv4.1\n" +
+                "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n" +
+                "1\t100\t.\tA\tC\t.\t.\t.\n" +
+                "1\t200\t.\tA\tC\t.\t.\t.\n" +
+                "1\tx\t.\tA\tC\t.\t.\t.\n";
+        final List<Integer> starts = new ArrayList<>();
+        try (final VCFParallelIterator iterator = new VCFParallelIterator(new ByteArrayInputStream(vcf.getBytes()), 2, 2)) {
+            iterator.forEachRemaining(vc -> starts.add(vc.getStart()));
+            Assert.fail("Expected a decoding error");
+        } catch (final TribbleException e) {
+            Assert.assertTrue(e.getMessage().contains("line number 5"), e.getMessage());
+        }
+        // records before the malformed line are delivered first:
+        Assert.assertEquals(starts, Arrays.asList(100, 200));
+    }
+
+    @Test
+    public void testErrorInTheMiddleOfABatch() {
+        final StringBuilder vcf = new StringBuilder("##fileformat=VCFv4.1\n" +
+                "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n");
+        for (int i = 1; i <= 2 * VCFParallelIterator.DEFAULT_BATCH_SIZE; i++) {
+            vcf.append("1\t").append(i == 1500 ? "x" : String.valueOf(i)).append("\t.\tA\tC\t.\t.\t.\n");
+        }
+        final List<Integer> starts = new ArrayList<>();
+        try (final VCFParallelIterator iterator = new VCFParallelIterator(new ByteArrayInputStream(vcf.toString().getBytes()), 2)) {
+            iterator.forEachRemaining(vc -> starts.add(vc.getStart()));
+            Assert.fail("Expected a decoding error");
+        } catch (final TribbleException e) {
+            Assert.assertTrue(e.getMessage().contains("line number 1502"), e.getMessage());
+        }
+        // every record before the malformed line is delivered first, including those of its batch:
+        Assert.assertEquals(starts.size(), 1499);
+        Assert.assertEquals((int) starts.get(starts.size() - 1), 1499);
+    }
+
+    @Test(timeOut = 30000)
+    public void testReadErrorEndsStream() {
+        final String header = "##fileformat=VCFv4.1\n" +
+                "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n";
+        final StringBuilder vcf = new StringBuilder(header);
+        for (int i = 1; i <= 5000; i++) {
+            vcf.append("1\t").append(i).append("\t.\tA\tC\t.\t.\t.\n");
+        }
+        final byte[] bytes = vcf.toString().getBytes();
+        // fail in the middle of the records, after the header has been read:
+        final InputStream failing = new FilterInputStream(new ByteArrayInputStream(bytes)) {
+            private int bytesRead = 0;
+
+            @Override
+            public int read() throws IOException {
+                checkFailure();
+                return super.read();
+            }
+
+            @Override
+            public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+                checkFailure();
+                final int n = super.read(buffer, offset, Math.min(length, 64));
+                if (n > 0) bytesRead += n;
+                return n;
+            }
+
+            private void checkFailure() throws IOException {
+                if (bytesRead > header.length() + 30000) throw new IOException("simulated read failure");
+            }
+        };
+
+        final VCFParallelIterator iterator = new VCFParallelIterator(failing, 2, 5);
+        try {
+            final List<Integer> starts = new ArrayList<>();
+            try {
+                iterator.forEachRemaining(vc -> starts.add(vc.getStart()));
+                Assert.fail("Expected a read error");
+            } catch (final RuntimeException e) {
+                Assert.assertTrue(e instanceof RuntimeIOException || e.getCause() instanceof IOException, e.toString());
+            }
+            // the records read before the failure were delivered, and the stream ends after it:
+            Assert.assertFalse(starts.isEmpty());
+            Assert.assertTrue(starts.size() < 5000);
+            Assert.assertFalse(iterator.hasNext());
+        } finally {
+            iterator.close();
+        }
+    }
+
+    @Test
+    public void testCloseBeforeEnd() throws IOException {
+        final File file = new File(VARIANT_DIR, "dbsnp_135.b37.1000.vcf");
+        final VCFParallelIterator iterator = new VCFParallelIterator(Files.newInputStream(file.toPath()), 2, 10);
+        Assert.assertTrue(iterator.hasNext());
+        iterator.next();
+        iterator.close();
+        Assert.assertThrows(IllegalStateException.class, iterator::hasNext);
+    }
+}
@@ -0,0 +1,77 @@
+package htsjdk.variant.vcf;
+
+import htsjdk.HtsjdkTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class VCFRecordTokenizerTest extends HtsjdkTest {
+
+    @Test
+    public void testTokenize() {
+        final byte[] line = "xx1\t100\trs1\tA\tC,G\t.\tPASS\tDP=5;DB\tGT\t0/1\t1/1xx".getBytes(StandardCharsets.UTF_8);
+        final VCFRecordTokenizer tokenizer = new VCFRecordTokenizer(9);
+        Assert.assertEquals(tokenizer.tokenize(line, 2, line.length - 2, 9), 9);
+        Assert.assertEquals(tokenizer.getColumnCount(), 9);
+        Assert.assertEquals(tokenizer.getString(0), "1");
+        Assert.assertEquals(tokenizer.parseInt(1), 100);
+        Assert.assertTrue(tokenizer.columnEquals(2, "rs1"));
+        Assert.assertFalse(tokenizer.columnEquals(2, "rs"));
+        Assert.assertEquals(tokenizer.getString(4), "C,G");
+        Assert.assertEquals(tokenizer.getLength(7), "DP=5;DB".length());
+        // the last column holds the rest of the line
+        Assert.assertEquals(tokenizer.getString(8), "GT\t0/1\t1/1");
+
+        final int eq = tokenizer.indexOf((byte) '=', tokenizer.getStart(7), tokenizer.getEnd(7));
+        Assert.assertTrue(tokenizer.regionEquals(tokenizer.getStart(7), eq, "DP"));
+        Assert.assertTrue(tokenizer.regionEquals(tokenizer.getStart(7), eq, "DP".getBytes(StandardCharsets.UTF_8)));
+        Assert.assertEquals(tokenizer.parseInt(eq + 1, eq + 2), 5);
+        Assert.assertEquals(tokenizer.indexOf((byte) '!', tokenizer.getStart(7), tokenizer.getEnd(7)), -1);
+    }
+
+    @Test
+    public void testFewerColumns() {
+        final byte[] line = "1\t100\t.".getBytes(StandardCharsets.UTF_8);
+        final VCFRecordTokenizer tokenizer = new VCFRecordTokenizer(9);
+        Assert.assertEquals(tokenizer.tokenize(line, 0, line.length, 8), 3);
+        Assert.assertEquals(tokenizer.getString(2), ".");
+        Assert.assertEquals(tokenizer.tokenize(line, 0, 0, 8), 1);
+        Assert.assertEquals(tokenizer.getLength(0), 0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testTooManyColumns() {
+        new VCFRecordTokenizer(2).tokenize(new byte[0], 0, 0, 3);
+    }
+
+    @DataProvider(name = "ints")
+    public Object[][] ints() {
+        return new Object[][]{
+                {"0", 0}, {"42", 42}, {"+7", 7}, {"-13", -13},
+                {"2147483647", Integer.MAX_VALUE}, {"-2147483648", Integer.MIN_VALUE}
+        };
+    }
+
+    @Test(dataProvider = "ints")
+    public void testParseInt(final String value, final int expected) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        final VCFRecordTokenizer tokenizer = new VCFRecordTokenizer(1);
+        tokenizer.tokenize(bytes, 0, bytes.length, 1);
+        Assert.assertEquals(tokenizer.parseInt(0), expected);
+    }
+
+    @DataProvider(name = "badInts")
+    public Object[][] badInts() {
+        return new Object[][]{{""}, {"-"}, {"1a"}, {"1.5"}, {"2147483648"}, {"-2147483649"}, {"99999999999999999999"}};
+    }
+
+    @Test(dataProvider = "badInts", expectedExceptions = NumberFormatException.class)
+    public void testParseIntInvalid(final String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        final VCFRecordTokenizer tokenizer = new VCFRecordTokenizer(1);
+        tokenizer.tokenize(bytes, 0, bytes.length, 1);
+        tokenizer.parseInt(0);
+    }
+}